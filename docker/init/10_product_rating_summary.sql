@@ -0,0 +1,26 @@
+-- Denormalized rating summary on Products
+-- Purpose: product listings read avg/count from the product row instead of
+-- running AVG/COUNT over Reviews for every product on the page.
+-- Kept current incrementally by ReviewService (create/update/delete) and
+-- reconciled on application startup.
+
+BEGIN;
+
+ALTER TABLE Products ADD COLUMN IF NOT EXISTS rating_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE Products ADD COLUMN IF NOT EXISTS rating_sum BIGINT NOT NULL DEFAULT 0;
+
+COMMENT ON COLUMN Products.rating_count IS 'Number of reviews (denormalized from Reviews)';
+COMMENT ON COLUMN Products.rating_sum IS 'Sum of review ratings (denormalized from Reviews), average = rating_sum / rating_count';
+
+-- Backfill from existing reviews
+UPDATE Products p
+SET rating_count = s.cnt,
+    rating_sum = s.total
+FROM (
+    SELECT product_id, COUNT(*) AS cnt, SUM(rating) AS total
+    FROM Reviews
+    GROUP BY product_id
+) s
+WHERE p.id = s.product_id;
+
+COMMIT;
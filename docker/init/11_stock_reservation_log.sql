@@ -0,0 +1,23 @@
+-- Write-behind stock log for hot products (flash sales)
+-- Purpose: while a product is in hot mode, checkouts reserve stock from in-memory
+-- counters and append one row here in the order's transaction instead of updating
+-- the single Products row. HotStockService periodically folds the rows into
+-- Products.stock_quantity and deletes them. Rows left behind by a crash are still
+-- applied on the next flush, so committed orders never lose their reservation.
+-- quantity > 0 takes stock, quantity < 0 gives it back (cancellations).
+-- No foreign key on purpose: appends must not lock the hot Products row.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS stock_reservation_log (
+    id BIGSERIAL PRIMARY KEY,
+    product_id BIGINT NOT NULL,
+    quantity INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_stock_reservation_log_product_id ON stock_reservation_log(product_id);
+
+COMMENT ON TABLE stock_reservation_log IS 'Nhật ký giữ hàng chưa ghi vào Products (chế độ flash sale)';
+
+COMMIT;
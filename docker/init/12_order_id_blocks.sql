@@ -0,0 +1,12 @@
+-- Block allocation for order IDs
+-- Purpose: OrderIdGeneratorService reserves 50 order numbers per nextval and hands them
+-- out from memory, instead of one sequence round trip per order. The application reads
+-- the block size from the sequence, so it only has to be changed here.
+-- Deploy together with the application: an older version would hand out single numbers
+-- from inside blocks reserved by the new one.
+
+BEGIN;
+
+ALTER SEQUENCE daily_order_counter INCREMENT BY 50;
+
+COMMIT;
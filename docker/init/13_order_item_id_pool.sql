@@ -0,0 +1,14 @@
+-- Pooled ids for order items
+-- Purpose: OrderItem takes its ids from orderitems_id_seq with a pooled optimizer
+-- (allocationSize = 50), so Hibernate knows them before the INSERT and can send all items
+-- of an order as one JDBC batch. The increment must match allocationSize in OrderItem.
+-- Hibernate uses the pooled-lo optimizer (hibernate.id.optimizer.pooled.preferred in
+-- application.yml): the value nextval returns is the first id of the block it hands out.
+-- Do not insert order items out of band with explicit ids; an INSERT relying on the column
+-- default takes a nextval of its own and so burns a whole block, but never reuses an id.
+
+BEGIN;
+
+ALTER SEQUENCE orderitems_id_seq INCREMENT BY 50;
+
+COMMIT;
@@ -0,0 +1,166 @@
+-- Customer analytics projection
+-- Purpose: the admin customer list filters, sorts and pages in SQL on one row per customer
+-- instead of loading every user and walking their orders in Java.
+-- Kept current incrementally by triggers on Orders (insert, status/amount change, delete)
+-- and Reviews (insert, delete), so every code path that touches an order is covered,
+-- including bulk JPQL updates such as OrderRepository.transitionStatus.
+-- Customers without orders have no row; queries LEFT JOIN and treat that as zeros.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS customer_stats (
+    user_id BIGINT PRIMARY KEY REFERENCES Users(id) ON DELETE CASCADE,
+    orders_count INTEGER NOT NULL DEFAULT 0,
+    completed_orders_count INTEGER NOT NULL DEFAULT 0,
+    total_spent NUMERIC(14,2) NOT NULL DEFAULT 0,
+    first_order_at TIMESTAMP,
+    last_order_at TIMESTAMP,
+    reviews_count INTEGER NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON TABLE customer_stats IS 'Per-customer order/review aggregates, maintained by triggers on Orders and Reviews';
+COMMENT ON COLUMN customer_stats.orders_count IS 'Orders placed, any status';
+COMMENT ON COLUMN customer_stats.total_spent IS 'Sum of total_amount over COMPLETED and RECEIVED orders';
+
+CREATE INDEX IF NOT EXISTS idx_customer_stats_total_spent ON customer_stats(total_spent);
+CREATE INDEX IF NOT EXISTS idx_customer_stats_orders_count ON customer_stats(orders_count);
+CREATE INDEX IF NOT EXISTS idx_customer_stats_first_order_at ON customer_stats(first_order_at);
+CREATE INDEX IF NOT EXISTS idx_customer_stats_last_order_at ON customer_stats(last_order_at);
+CREATE INDEX IF NOT EXISTS idx_users_role_created_at ON Users(role, created_at);
+
+-- Recompute one customer from scratch (deletes and re-dated orders, where a delta is not enough)
+CREATE OR REPLACE FUNCTION refresh_customer_stats(user_id_param BIGINT) RETURNS VOID AS $$
+BEGIN
+    INSERT INTO customer_stats (user_id, orders_count, completed_orders_count, total_spent,
+                                first_order_at, last_order_at, reviews_count, updated_at)
+    SELECT user_id_param,
+           COUNT(o.id),
+           COUNT(o.id) FILTER (WHERE o.status IN ('COMPLETED', 'RECEIVED')),
+           COALESCE(SUM(o.total_amount) FILTER (WHERE o.status IN ('COMPLETED', 'RECEIVED')), 0),
+           MIN(o.order_date),
+           MAX(o.order_date),
+           (SELECT COUNT(*) FROM Reviews r WHERE r.user_id = user_id_param),
+           CURRENT_TIMESTAMP
+    FROM Orders o
+    WHERE o.user_id = user_id_param
+    ON CONFLICT (user_id) DO UPDATE SET
+        orders_count = EXCLUDED.orders_count,
+        completed_orders_count = EXCLUDED.completed_orders_count,
+        total_spent = EXCLUDED.total_spent,
+        first_order_at = EXCLUDED.first_order_at,
+        last_order_at = EXCLUDED.last_order_at,
+        reviews_count = EXCLUDED.reviews_count,
+        updated_at = EXCLUDED.updated_at;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: apply an order change to customer_stats
+CREATE OR REPLACE FUNCTION maintain_customer_stats_orders() RETURNS TRIGGER AS $$
+DECLARE
+    completed_delta INTEGER;
+    spent_delta NUMERIC(14,2);
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO customer_stats (user_id, orders_count, completed_orders_count, total_spent,
+                                    first_order_at, last_order_at)
+        VALUES (NEW.user_id, 1,
+                CASE WHEN NEW.status IN ('COMPLETED', 'RECEIVED') THEN 1 ELSE 0 END,
+                CASE WHEN NEW.status IN ('COMPLETED', 'RECEIVED') THEN NEW.total_amount ELSE 0 END,
+                NEW.order_date, NEW.order_date)
+        ON CONFLICT (user_id) DO UPDATE SET
+            orders_count = customer_stats.orders_count + 1,
+            completed_orders_count = customer_stats.completed_orders_count + EXCLUDED.completed_orders_count,
+            total_spent = customer_stats.total_spent + EXCLUDED.total_spent,
+            first_order_at = LEAST(customer_stats.first_order_at, EXCLUDED.first_order_at),
+            last_order_at = GREATEST(customer_stats.last_order_at, EXCLUDED.last_order_at),
+            updated_at = CURRENT_TIMESTAMP;
+        RETURN NEW;
+    END IF;
+
+    IF TG_OP = 'DELETE' THEN
+        PERFORM refresh_customer_stats(OLD.user_id);
+        RETURN OLD;
+    END IF;
+
+    -- UPDATE
+    IF NEW.user_id <> OLD.user_id OR NEW.order_date <> OLD.order_date THEN
+        PERFORM refresh_customer_stats(OLD.user_id);
+        IF NEW.user_id <> OLD.user_id THEN
+            PERFORM refresh_customer_stats(NEW.user_id);
+        END IF;
+        RETURN NEW;
+    END IF;
+
+    completed_delta := (CASE WHEN NEW.status IN ('COMPLETED', 'RECEIVED') THEN 1 ELSE 0 END)
+                     - (CASE WHEN OLD.status IN ('COMPLETED', 'RECEIVED') THEN 1 ELSE 0 END);
+    spent_delta := (CASE WHEN NEW.status IN ('COMPLETED', 'RECEIVED') THEN NEW.total_amount ELSE 0 END)
+                 - (CASE WHEN OLD.status IN ('COMPLETED', 'RECEIVED') THEN OLD.total_amount ELSE 0 END);
+
+    IF completed_delta <> 0 OR spent_delta <> 0 THEN
+        UPDATE customer_stats
+        SET completed_orders_count = completed_orders_count + completed_delta,
+            total_spent = total_spent + spent_delta,
+            updated_at = CURRENT_TIMESTAMP
+        WHERE user_id = NEW.user_id;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_customer_stats_orders ON Orders;
+CREATE TRIGGER trg_customer_stats_orders
+    AFTER INSERT OR DELETE OR UPDATE OF status, total_amount, order_date, user_id ON Orders
+    FOR EACH ROW
+    EXECUTE FUNCTION maintain_customer_stats_orders();
+
+-- Function: apply a review insert/delete to customer_stats
+CREATE OR REPLACE FUNCTION maintain_customer_stats_reviews() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO customer_stats (user_id, reviews_count)
+        VALUES (NEW.user_id, 1)
+        ON CONFLICT (user_id) DO UPDATE SET
+            reviews_count = customer_stats.reviews_count + 1,
+            updated_at = CURRENT_TIMESTAMP;
+        RETURN NEW;
+    END IF;
+
+    UPDATE customer_stats
+    SET reviews_count = GREATEST(reviews_count - 1, 0),
+        updated_at = CURRENT_TIMESTAMP
+    WHERE user_id = OLD.user_id;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_customer_stats_reviews ON Reviews;
+CREATE TRIGGER trg_customer_stats_reviews
+    AFTER INSERT OR DELETE ON Reviews
+    FOR EACH ROW
+    EXECUTE FUNCTION maintain_customer_stats_reviews();
+
+-- Backfill from existing orders and reviews
+INSERT INTO customer_stats (user_id, orders_count, completed_orders_count, total_spent,
+                            first_order_at, last_order_at, reviews_count)
+SELECT u.id,
+       COALESCE(o.cnt, 0), COALESCE(o.completed, 0), COALESCE(o.spent, 0),
+       o.first_at, o.last_at, COALESCE(r.cnt, 0)
+FROM Users u
+LEFT JOIN (
+    SELECT user_id,
+           COUNT(*) AS cnt,
+           COUNT(*) FILTER (WHERE status IN ('COMPLETED', 'RECEIVED')) AS completed,
+           SUM(total_amount) FILTER (WHERE status IN ('COMPLETED', 'RECEIVED')) AS spent,
+           MIN(order_date) AS first_at,
+           MAX(order_date) AS last_at
+    FROM Orders
+    GROUP BY user_id
+) o ON o.user_id = u.id
+LEFT JOIN (
+    SELECT user_id, COUNT(*) AS cnt FROM Reviews GROUP BY user_id
+) r ON r.user_id = u.id
+WHERE o.user_id IS NOT NULL OR r.user_id IS NOT NULL
+ON CONFLICT (user_id) DO NOTHING;
+
+COMMIT;
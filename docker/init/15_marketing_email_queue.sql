@@ -0,0 +1,56 @@
+-- Marketing campaign send queue
+-- Purpose: a campaign is queued in one set-based INSERT ... SELECT (one row per recipient)
+-- and sent in the background by MarketingEmailDispatcher, instead of one SMTP transaction
+-- per customer inside the admin's HTTP request.
+-- Workers claim due rows with FOR UPDATE SKIP LOCKED and lease them (status SENDING,
+-- locked_until); rows of a crashed worker are reclaimed when the lease runs out, so a
+-- recipient may rarely get a message twice but is never skipped.
+-- Failed sends go back to PENDING with next_attempt_at pushed out (exponential backoff)
+-- until max attempts, then FAILED. Campaign counters give the progress.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS marketing_campaigns (
+    id BIGSERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    segment VARCHAR(20) NOT NULL,
+    subject VARCHAR(500) NOT NULL,
+    voucher_code VARCHAR(50) NOT NULL,
+    voucher_expiry DATE NOT NULL,
+    discount_value INTEGER NOT NULL,
+    discount_type VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'SENDING' CHECK (status IN ('SENDING', 'COMPLETED')),
+    total_count INTEGER NOT NULL DEFAULT 0,
+    sent_count INTEGER NOT NULL DEFAULT 0,
+    failed_count INTEGER NOT NULL DEFAULT 0,
+    created_by VARCHAR(255),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS marketing_email_queue (
+    id BIGSERIAL PRIMARY KEY,
+    campaign_id BIGINT NOT NULL REFERENCES marketing_campaigns(id) ON DELETE CASCADE,
+    user_id BIGINT,
+    email VARCHAR(255) NOT NULL,
+    first_name VARCHAR(100),
+    domain VARCHAR(255) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING' CHECK (status IN ('PENDING', 'SENDING', 'SENT', 'FAILED')),
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    locked_until TIMESTAMP,
+    last_error VARCHAR(500),
+    sent_at TIMESTAMP,
+    UNIQUE (campaign_id, email)
+);
+
+-- Only open rows are indexed: the claim query scans these, sent/failed rows are history
+CREATE INDEX IF NOT EXISTS idx_marketing_email_queue_pending
+    ON marketing_email_queue(next_attempt_at) WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_marketing_email_queue_sending
+    ON marketing_email_queue(locked_until) WHERE status = 'SENDING';
+
+COMMENT ON TABLE marketing_campaigns IS 'Chiến dịch email marketing và tiến độ gửi';
+COMMENT ON TABLE marketing_email_queue IS 'Hàng đợi email marketing, mỗi dòng một người nhận';
+
+COMMIT;
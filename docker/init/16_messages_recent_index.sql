@@ -0,0 +1,18 @@
+-- Recent messages of a conversation
+-- Purpose: the AI context loader (MessageRepository.findRecentTurns) reads the last N
+-- messages of one conversation, newest first. With (conversation_id, sent_at DESC, id DESC)
+-- that is an index range scan which stops after N rows, instead of reading the whole
+-- conversation and sorting it. The id column breaks ties between messages saved in the
+-- same instant, so the page boundary is stable.
+-- The single-column index on conversation_id is a prefix of the new one and is dropped.
+
+BEGIN;
+
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_recent
+    ON Messages(conversation_id, sent_at DESC, id DESC);
+
+DROP INDEX IF EXISTS idx_messages_conversation_id;
+
+COMMENT ON INDEX idx_messages_conversation_recent IS 'Tin nhắn gần nhất của một cuộc hội thoại (ngữ cảnh AI)';
+
+COMMIT;
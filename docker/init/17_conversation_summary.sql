@@ -0,0 +1,18 @@
+-- Rolling conversation summary for AI prompts
+-- Purpose: instead of resending a long raw history to Gemini on every turn, prompts carry
+-- a short summary of the older messages plus the last few turns verbatim.
+-- ConversationSummaryService rewrites the summary in the background every few turns,
+-- folding in the messages that have left the verbatim window. summary_message_id is the
+-- last message folded in; it only moves forward.
+
+BEGIN;
+
+ALTER TABLE Conversations ADD COLUMN IF NOT EXISTS history_summary TEXT;
+ALTER TABLE Conversations ADD COLUMN IF NOT EXISTS summary_message_id BIGINT;
+ALTER TABLE Conversations ADD COLUMN IF NOT EXISTS summary_updated_at TIMESTAMP;
+
+COMMENT ON COLUMN Conversations.history_summary IS 'Tóm tắt các tin nhắn cũ của cuộc hội thoại, dùng làm ngữ cảnh AI';
+COMMENT ON COLUMN Conversations.summary_message_id IS 'ID tin nhắn cuối cùng đã được đưa vào bản tóm tắt';
+COMMENT ON COLUMN Conversations.summary_updated_at IS 'Thời điểm cập nhật bản tóm tắt gần nhất';
+
+COMMIT;
@@ -0,0 +1,16 @@
+-- Who made each routing decision
+-- Purpose: IntentPreClassifier answers greetings, store FAQs and explicit requests for a
+-- staff member locally, without Gemini. Its decisions are stored like the others but
+-- marked LOCAL, so analytics can tell them apart and the classifier only trains on
+-- Gemini's decisions (never on its own output).
+
+BEGIN;
+
+ALTER TABLE routing_decisions ADD COLUMN IF NOT EXISTS decided_by VARCHAR(20) NOT NULL DEFAULT 'GEMINI';
+
+ALTER TABLE routing_decisions DROP CONSTRAINT IF EXISTS chk_routing_decided_by;
+ALTER TABLE routing_decisions ADD CONSTRAINT chk_routing_decided_by CHECK (decided_by IN ('GEMINI', 'LOCAL'));
+
+COMMENT ON COLUMN routing_decisions.decided_by IS 'Nguồn quyết định: GEMINI (phân tích AI) hoặc LOCAL (bộ phân loại nội bộ)';
+
+COMMIT;
@@ -0,0 +1,13 @@
+-- Routing decisions answered from the AI response cache
+-- Purpose: AiResponseCache reuses an earlier Gemini reply for a repeated store, shipping or
+-- promotion question. Those turns are stored with decided_by = 'CACHE', so they are
+-- counted apart from Gemini's own decisions and never used to train IntentPreClassifier.
+
+BEGIN;
+
+ALTER TABLE routing_decisions DROP CONSTRAINT IF EXISTS chk_routing_decided_by;
+ALTER TABLE routing_decisions ADD CONSTRAINT chk_routing_decided_by CHECK (decided_by IN ('GEMINI', 'LOCAL', 'CACHE'));
+
+COMMENT ON COLUMN routing_decisions.decided_by IS 'Nguồn quyết định: GEMINI (phân tích AI), LOCAL (bộ phân loại nội bộ) hoặc CACHE (câu trả lời đã lưu)';
+
+COMMIT;
@@ -0,0 +1,83 @@
+package com.example.demo.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Email bodies rendered with String.format (before) and with compiled EmailTemplates (now)
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * The transactional emails (OTP, password reset) fill every slot per send; the marketing email
+ * is rendered per recipient from a campaign template with the offer already bound, as
+ * MarketingEmailDispatcher does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailRenderingBenchmark {
+
+    private String customerName = "Nguyễn Thị Lan";
+    private String otp = "482913";
+    private String dateTime = "17/10/2026 09:30";
+    private String voucherCode = "VIP2026";
+    private String expiryDate = "31/12/2026";
+    private int discountValue = 20;
+    private String discountType = "PERCENTAGE";
+
+    private EmailTemplate otpTemplate;
+    private EmailTemplate passwordResetTemplate;
+    private EmailTemplate vipCampaign;
+
+    @Setup
+    public void compile() {
+        otpTemplate = EmailTemplate.compile(EmailService.OTP_EMAIL_PATTERN);
+        passwordResetTemplate = EmailTemplate.compile(EmailService.PASSWORD_RESET_CONFIRMATION_PATTERN);
+        vipCampaign = new MarketingEmailTemplates().compileCampaignTemplate("VIP", voucherCode, expiryDate,
+                "Tri ân khách hàng VIP", discountValue, discountType);
+    }
+
+    @Benchmark
+    public String otpFormat() {
+        return String.format(EmailService.OTP_EMAIL_PATTERN, customerName, otp, dateTime);
+    }
+
+    @Benchmark
+    public String otpTemplate() {
+        return otpTemplate.render(customerName, otp, dateTime);
+    }
+
+    @Benchmark
+    public String passwordResetFormat() {
+        return String.format(EmailService.PASSWORD_RESET_CONFIRMATION_PATTERN, customerName, dateTime, dateTime);
+    }
+
+    @Benchmark
+    public String passwordResetTemplate() {
+        return passwordResetTemplate.render(customerName, dateTime, dateTime);
+    }
+
+    @Benchmark
+    public String marketingFormat() {
+        // What buildVipTemplate did for every recipient
+        String discountDisplay = discountType.equals("PERCENTAGE") ? discountValue + "%" : discountValue + "₫";
+        return String.format(MarketingEmailTemplates.VIP_PATTERN, customerName, voucherCode, discountDisplay, expiryDate);
+    }
+
+    @Benchmark
+    public String marketingTemplate() {
+        return vipCampaign.render(customerName);
+    }
+}
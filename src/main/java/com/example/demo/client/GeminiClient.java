@@ -8,36 +8,63 @@ import com.example.demo.service.AiGenerationProfileService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.*;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Client for interacting with Google Gemini API
  * Handles API calls, retries, and error handling
+ *
+ * All calls share one JDK HttpClient, so connections (HTTP/2 where available) are
+ * pooled and kept alive between requests instead of doing a TCP + TLS handshake per call.
+ * Streaming uses streamGenerateContent with alt=sse and forwards each chunk as it arrives.
  */
 @Component
 @Slf4j
 public class GeminiClient {
 
+    // Longest pause between two events of a streamed reply
+    private static final Duration STREAM_IDLE_TIMEOUT = Duration.ofSeconds(10);
+
     private final GeminiProperties geminiProperties;
+    private final HttpClient httpClient;
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final GeminiRetryExecutor retryExecutor;
+    // One RestTemplate per read timeout, all backed by the shared HttpClient
+    private final Map<Integer, RestTemplate> restTemplatesByTimeout = new ConcurrentHashMap<>();
 
-    public GeminiClient(GeminiProperties geminiProperties, ObjectMapper objectMapper) {
+    public GeminiClient(GeminiProperties geminiProperties, ObjectMapper objectMapper,
+                        GeminiRetryExecutor retryExecutor) {
         this.geminiProperties = geminiProperties;
         this.objectMapper = objectMapper;
+        this.retryExecutor = retryExecutor;
         
-        // Create RestTemplate with timeout
-        this.restTemplate = new RestTemplate();
-        this.restTemplate.setRequestFactory(
-            new org.springframework.http.client.SimpleClientHttpRequestFactory() {{
-                setConnectTimeout(Duration.ofSeconds(geminiProperties.getTimeoutSeconds()));
-                setReadTimeout(Duration.ofSeconds(geminiProperties.getTimeoutSeconds()));
-            }}
-        );
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(geminiProperties.getTimeoutSeconds()))
+            .build();
+        this.restTemplate = createRestTemplateWithTimeout(geminiProperties.getTimeoutSeconds());
     }
 
     /**
@@ -205,37 +232,27 @@ public class GeminiClient {
 
     /**
      * Generate content with retry logic
+     * The caller is parked until the outcome; request threads should use generateContentWithRetryAsync.
      * 
      * @param prompt The prompt
      * @param maxRetries Maximum number of retries
      * @return GeminiResponse or null if all retries fail
      */
     public GeminiResponse generateContentWithRetry(String prompt, int maxRetries) {
-        int attempts = 0;
-        GeminiResponse response = null;
-
-        while (attempts < maxRetries && response == null) {
-            attempts++;
-            log.debug("Gemini API call attempt {} of {}", attempts, maxRetries);
-            
-            response = generateContent(prompt);
-            
-            if (response == null && attempts < maxRetries) {
-                try {
-                    // Wait before retry (exponential backoff)
-                    Thread.sleep(1000L * attempts);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        }
-
-        if (response == null) {
-            log.error("Failed to get response from Gemini after {} attempts", maxRetries);
-        }
+        return generateContentWithRetryAsync(prompt, maxRetries).join();
+    }
 
-        return response;
+    /**
+     * Generate content with retry logic without blocking the caller
+     * Backoffs are scheduled on GeminiRetryExecutor; the future completes with null if all attempts fail.
+     * 
+     * @param prompt The prompt
+     * @param maxRetries Maximum number of attempts
+     * @return Future of the GeminiResponse (null if all retries fail)
+     */
+    public CompletableFuture<GeminiResponse> generateContentWithRetryAsync(String prompt, int maxRetries) {
+        return retryExecutor.executeAsync("generate_content", () -> generateContent(prompt),
+            maxRetries, retryDeadline(geminiProperties.getTimeoutSeconds(), maxRetries));
     }
 
     /**
@@ -308,6 +325,8 @@ public class GeminiClient {
 
     /**
      * Generate content with generation profile and retry logic
+     * The caller is parked until the outcome, at most retryDeadline: for background callers such as
+     * the conversation summary. Chat requests use analyzeMessageWithProfile, whose wait is capped.
      * 
      * @param systemPrompt System instructions
      * @param userMessage User's message
@@ -318,43 +337,14 @@ public class GeminiClient {
     public GeminiResponse generateContentWithProfileAndRetry(String systemPrompt, String userMessage, 
                                                              AiGenerationProfileService.GenerationProfile profile, 
                                                              int maxRetries) {
-        int attempts = 0;
-        GeminiResponse response = null;
-        long startTime = System.currentTimeMillis();
-
-        while (attempts < maxRetries && response == null) {
-            attempts++;
-            log.debug("Gemini API call attempt {} of {} with profile", attempts, maxRetries);
-            
-            response = generateContentWithProfile(systemPrompt, userMessage, profile);
-            
-            if (response == null && attempts < maxRetries) {
-                try {
-                    // Exponential backoff: 400ms, 800ms, 1600ms with jitter
-                    long baseBackoff = (long) (400 * Math.pow(2, attempts - 1));
-                    long jitter = (long) (Math.random() * 150);
-                    long backoffMs = baseBackoff + jitter;
-                    log.warn("Retrying Gemini after {}ms backoff (attempt {}/{})", backoffMs, attempts + 1, maxRetries);
-                    Thread.sleep(backoffMs);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        }
-
-        long totalTime = System.currentTimeMillis() - startTime;
-        if (response == null) {
-            log.error("Failed to get response from Gemini after {} attempts in {}ms", maxRetries, totalTime);
-        } else {
-            log.debug("Gemini API succeeded on attempt {} in {}ms", attempts, totalTime);
-        }
-
-        return response;
+        return retryExecutor.execute("generate_with_profile",
+            () -> generateContentWithProfile(systemPrompt, userMessage, profile),
+            maxRetries, retryDeadline(profile.getTimeoutSeconds(), maxRetries));
     }
 
     /**
      * Analyze message with generation profile
+     * Runs on the chat request thread, which waits at most chatDeadline (gemini.chat-wait-seconds).
      * 
      * @param systemPrompt System instructions
      * @param userMessage User's message
@@ -363,7 +353,9 @@ public class GeminiClient {
      */
     public AiAnalysisResult analyzeMessageWithProfile(String systemPrompt, String userMessage, 
                                                       AiGenerationProfileService.GenerationProfile profile) {
-        GeminiResponse response = generateContentWithProfileAndRetry(systemPrompt, userMessage, profile, 3);
+        GeminiResponse response = retryExecutor.execute("analyze_message",
+            () -> generateContentWithProfile(systemPrompt, userMessage, profile),
+            3, chatDeadline(profile.getTimeoutSeconds(), 3));
         
         if (response == null || !response.isSuccessful()) {
             log.error("Failed to get response from Gemini for analysis");
@@ -454,42 +446,15 @@ public class GeminiClient {
 
     /**
      * Generate final response with retry/backoff
+     * Runs on the chat request thread like the rest of ChatService's message pipeline, which
+     * waits at most chatDeadline (gemini.chat-wait-seconds).
      */
     public GeminiResponse generateFinalResponseWithProfileAndRetry(String systemPrompt, String userMessage,
                                                                    AiGenerationProfileService.GenerationProfile profile,
                                                                    int maxRetries) {
-        int attempts = 0;
-        GeminiResponse response = null;
-        long startTime = System.currentTimeMillis();
-
-        while (attempts < maxRetries && response == null) {
-            attempts++;
-            log.debug("Gemini FINAL call attempt {} of {} with profile", attempts, maxRetries);
-
-            response = generateFinalResponseWithProfile(systemPrompt, userMessage, profile);
-
-            if (response == null && attempts < maxRetries) {
-                try {
-                    long baseBackoff = (long) (400 * Math.pow(2, attempts - 1));
-                    long jitter = (long) (Math.random() * 150);
-                    long backoffMs = baseBackoff + jitter;
-                    log.warn("Retrying Gemini FINAL after {}ms backoff (attempt {}/{})", backoffMs, attempts + 1, maxRetries);
-                    Thread.sleep(backoffMs);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        }
-
-        long totalTime = System.currentTimeMillis() - startTime;
-        if (response == null) {
-            log.error("Failed to get FINAL response from Gemini after {} attempts in {}ms", maxRetries, totalTime);
-        } else {
-            log.debug("Gemini FINAL succeeded on attempt {} in {}ms", attempts, totalTime);
-        }
-
-        return response;
+        return retryExecutor.execute("generate_final_response",
+            () -> generateFinalResponseWithProfile(systemPrompt, userMessage, profile),
+            maxRetries, chatDeadline(profile.getTimeoutSeconds(), maxRetries));
     }
 
     /**
@@ -509,6 +474,15 @@ public class GeminiClient {
             return null;
         }
 
+        // Gemini is known to be down: don't hold the SSE connection open for a doomed call
+        if (retryExecutor.isCircuitOpen()) {
+            log.warn("Gemini circuit open, skipping streaming generation");
+            if (streamCallback != null) {
+                streamCallback.onError("AI tạm thời không khả dụng");
+            }
+            return null;
+        }
+
         // Check if streaming is supported and requested
         boolean useStreaming = streamCallback != null && profile.isStreamingEnabled();
         
@@ -526,63 +500,216 @@ public class GeminiClient {
 
     /**
      * Generate content with server-side streaming
+     * Each SSE event carries a partial GeminiResponse; its text is forwarded to the callback
+     * immediately and the pieces are joined into the returned response.
+     *
+     * Lines are handed over by an SseLines subscriber, so the wait for each one is bounded:
+     * the profile timeout until the first event, STREAM_IDLE_TIMEOUT between events, and
+     * gemini.chat-wait-seconds for the whole stream. A stream that stalls, or ends without a
+     * finishReason, is cut off: answered by a regular call if nothing was sent yet, else an error.
      */
     private GeminiResponse generateWithStreaming(String systemPrompt, String userMessage,
                                                  AiGenerationProfileService.GenerationProfile profile,
                                                  StreamingCallback streamCallback) {
+        StringBuilder fullText = new StringBuilder();
+        long startTime = System.currentTimeMillis();
+        SseLines lines = new SseLines();
+        
         try {
-            // Streaming parameters are intentionally not used in the current simulation
-
-            // Use streaming-compatible HTTP client
-            StringBuilder finalResponse = new StringBuilder();
+            GeminiRequest request = GeminiRequest.createWithSystemPrompt(
+                systemPrompt,
+                userMessage,
+                profile.getTemperature(),
+                profile.getTopP(),
+                profile.getMaxTokens(),
+                "text/plain"
+            );
+            
+            // The request timeout only covers the wait for response headers
+            HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(geminiProperties.getStreamGenerateContentUrl()))
+                .timeout(Duration.ofSeconds(profile.getTimeoutSeconds()))
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(request), StandardCharsets.UTF_8))
+                .build();
+            
+            httpClient.sendAsync(httpRequest, lines)
+                .whenComplete((response, error) -> lines.finish(error));
             
-            // Simulate streaming with chunked processing (real implementation would use SSE)
-            GeminiResponse response = generateFinalResponseWithProfile(systemPrompt, userMessage, profile);
+            long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(geminiProperties.getChatWaitSeconds());
+            long firstEventNanos = TimeUnit.SECONDS.toNanos(profile.getTimeoutSeconds());
+            boolean receivedEvent = false;
+            String finishReason = null;
+            GeminiResponse.UsageMetadata usage = null;
             
-            if (response != null && response.isSuccessful()) {
-                String fullText = response.getTextResponse();
-                simulateStreaming(fullText, streamCallback, finalResponse);
+            while (true) {
+                long waitNanos = Math.min(receivedEvent ? STREAM_IDLE_TIMEOUT.toNanos() : firstEventNanos,
+                    deadlineNanos - System.nanoTime());
+                Optional<String> next = lines.next(waitNanos);
+                if (next == null) {
+                    throw new TimeoutException(System.nanoTime() >= deadlineNanos
+                        ? "Gemini stream exceeded " + geminiProperties.getChatWaitSeconds() + "s"
+                        : "Gemini stream idle after " + fullText.length() + " chars");
+                }
+                if (next.isEmpty() && lines.error() != null) {
+                    throw new IOException("Gemini stream failed", lines.error());
+                }
+                if (lines.statusCode() != 200) {
+                    log.warn("Gemini streaming returned HTTP {}: {}", lines.statusCode(), next.orElse(""));
+                    lines.cancel();
+                    return fallbackToNonStreaming(systemPrompt, userMessage, profile, streamCallback);
+                }
+                if (next.isEmpty()) {
+                    break;
+                }
+                String line = next.get();
+                if (!line.startsWith("data:")) {
+                    continue; // blank separators, comments, event names
+                }
+                receivedEvent = true;
+                GeminiResponse event = objectMapper.readValue(line.substring(5).trim(), GeminiResponse.class);
                 
-                // Return final response
-                return response;
+                String chunk = event.getTextResponse();
+                if (chunk != null && !chunk.isEmpty()) {
+                    if (fullText.length() == 0) {
+                        log.debug("Gemini first chunk after {}ms", System.currentTimeMillis() - startTime);
+                    }
+                    fullText.append(chunk);
+                    streamCallback.onChunk(chunk);
+                }
+                if (event.getCandidates() != null && !event.getCandidates().isEmpty()
+                        && event.getCandidates().get(0).getFinishReason() != null) {
+                    finishReason = event.getCandidates().get(0).getFinishReason();
+                }
+                if (event.getUsageMetadata() != null) {
+                    usage = event.getUsageMetadata();
+                }
             }
             
-            return null;
+            if (finishReason == null) {
+                // The last event carries the finishReason; without it the reply was cut off
+                throw new IOException("Gemini stream ended without finishReason after " + fullText.length() + " chars");
+            }
+            if (fullText.length() == 0) {
+                log.warn("Gemini streaming returned no text (finishReason={})", finishReason);
+                return fallbackToNonStreaming(systemPrompt, userMessage, profile, streamCallback);
+            }
             
+            log.debug("Gemini streaming completed: {} chars in {}ms", fullText.length(), System.currentTimeMillis() - startTime);
+            streamCallback.onComplete();
+            
+            GeminiResponse.Candidate candidate = new GeminiResponse.Candidate(
+                new GeminiResponse.Content(List.of(new GeminiResponse.Part(fullText.toString())), "model"),
+                finishReason, 0, null);
+            return new GeminiResponse(List.of(candidate), usage);
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lines.cancel();
+            streamCallback.onError("Streaming interrupted");
+            return null;
         } catch (Exception e) {
             log.error("Error in streaming generation", e);
+            // Closes the connection if the stream is still open
+            lines.cancel();
+            if (fullText.length() == 0) {
+                // Nothing reached the client yet, so a normal call can still answer cleanly
+                return fallbackToNonStreaming(systemPrompt, userMessage, profile, streamCallback);
+            }
             streamCallback.onError("Streaming error: " + e.getMessage());
             return null;
         }
     }
 
     /**
-     * Simulate streaming by sending chunks (placeholder for real SSE implementation)
+     * Answer with a regular generateContent call and deliver it as a single chunk
      */
-    private void simulateStreaming(String fullText, StreamingCallback callback, StringBuilder finalResponse) {
-        try {
-            String[] words = fullText.split(" ");
-            StringBuilder currentChunk = new StringBuilder();
-            
-            for (int i = 0; i < words.length; i++) {
-                currentChunk.append(words[i]).append(" ");
-                finalResponse.append(words[i]).append(" ");
-                
-                // Send chunk every 5-10 words or at the end
-                if ((i + 1) % 7 == 0 || i == words.length - 1) {
-                    callback.onChunk(currentChunk.toString().trim());
-                    currentChunk = new StringBuilder();
-                    
-                    // Small delay to simulate streaming
-                    Thread.sleep(50);
-                }
+    private GeminiResponse fallbackToNonStreaming(String systemPrompt, String userMessage,
+                                                  AiGenerationProfileService.GenerationProfile profile,
+                                                  StreamingCallback streamCallback) {
+        GeminiResponse response = generateFinalResponseWithProfile(systemPrompt, userMessage, profile);
+        if (response != null && response.isSuccessful()) {
+            streamCallback.onChunk(response.getTextResponse());
+            streamCallback.onComplete();
+        }
+        return response;
+    }
+
+    /**
+     * Body handler that hands the response lines to the reading thread through a queue,
+     * so the reader can give up on a stalled stream (next with a timeout, then cancel)
+     */
+    private static final class SseLines implements HttpResponse.BodyHandler<Void>, Flow.Subscriber<String> {
+
+        // Optional.empty() marks the end of the stream (completed or failed)
+        private final BlockingQueue<Optional<String>> queue = new LinkedBlockingQueue<>();
+        private volatile int statusCode;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public HttpResponse.BodySubscriber<Void> apply(HttpResponse.ResponseInfo responseInfo) {
+            statusCode = responseInfo.statusCode();
+            return HttpResponse.BodySubscribers.fromLineSubscriber(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(String line) {
+            queue.add(Optional.of(line));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            finish(null);
+        }
+
+        /**
+         * End of the exchange; also called when the request fails before any body arrives
+         */
+        void finish(Throwable throwable) {
+            if (throwable != null && error == null) {
+                error = throwable;
+            }
+            queue.add(Optional.empty());
+        }
+
+        /**
+         * Next line, Optional.empty() at the end of the stream, or null if none arrived in time
+         */
+        Optional<String> next(long timeoutNanos) throws InterruptedException {
+            return queue.poll(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+        }
+
+        int statusCode() {
+            return statusCode;
+        }
+
+        Throwable error() {
+            return error;
+        }
+
+        void cancel() {
+            cancelled = true;
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
             }
-            
-            callback.onComplete();
-            
-        } catch (Exception e) {
-            log.error("Error in streaming simulation", e);
-            callback.onError("Streaming simulation error");
         }
     }
 
@@ -597,17 +724,34 @@ public class GeminiClient {
     }
 
     /**
-     * Create RestTemplate with specific timeout
+     * Get RestTemplate with specific read timeout (cached, sharing the pooled HttpClient)
      */
     private RestTemplate createRestTemplateWithTimeout(int timeoutSeconds) {
-        RestTemplate customRestTemplate = new RestTemplate();
-        customRestTemplate.setRequestFactory(
-            new org.springframework.http.client.SimpleClientHttpRequestFactory() {{
-                setConnectTimeout(Duration.ofSeconds(timeoutSeconds));
-                setReadTimeout(Duration.ofSeconds(timeoutSeconds));
-            }}
-        );
-        return customRestTemplate;
+        return restTemplatesByTimeout.computeIfAbsent(timeoutSeconds, timeout -> {
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(Duration.ofSeconds(timeout));
+            return new RestTemplate(requestFactory);
+        });
+    }
+
+    /**
+     * Deadline for a retried call: every attempt may use its full timeout, plus the longest backoffs
+     */
+    private static Duration retryDeadline(int attemptTimeoutSeconds, int maxAttempts) {
+        int attempts = Math.max(1, maxAttempts);
+        return Duration.ofSeconds((long) attemptTimeoutSeconds * attempts)
+            .plusMillis(GeminiRetryExecutor.maxTotalBackoffMillis(attempts));
+    }
+
+    /**
+     * Deadline for a call a chat request thread waits for: retryDeadline, capped at gemini.chat-wait-seconds
+     * Under the cap an attempt that runs into its timeout leaves no room for another, so retries
+     * there only cover fast failures (refused connections, 429/503 answered at once).
+     */
+    private Duration chatDeadline(int attemptTimeoutSeconds, int maxAttempts) {
+        Duration deadline = retryDeadline(attemptTimeoutSeconds, maxAttempts);
+        Duration cap = Duration.ofSeconds(geminiProperties.getChatWaitSeconds());
+        return deadline.compareTo(cap) <= 0 ? deadline : cap;
     }
 
     /**
@@ -0,0 +1,266 @@
+package com.example.demo.client;
+
+import com.example.demo.service.AiMonitoringService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Shared retry engine for Gemini calls
+ *
+ * - Attempts run on a bounded "gemini-call" pool; waits between attempts are scheduled on
+ *   a single timer thread, so no thread ever sleeps through a backoff.
+ * - Backoff is exponential with jitter, and every call has a deadline: no retry is
+ *   scheduled that could not start before it, and the returned future completes by then.
+ * - A circuit breaker opens after consecutive failed calls and fails fast (result null)
+ *   until a probe call succeeds after the cool-down.
+ *
+ * Calls follow the GeminiClient convention: a null result (or an exception) is a failure.
+ * Attempts, recoveries and breaker events are reported to AiMonitoringService.
+ */
+@Component
+@Slf4j
+public class GeminiRetryExecutor {
+
+    private static final long BASE_BACKOFF_MS = 400;
+    private static final long MAX_BACKOFF_MS = 5_000;
+
+    private final AiMonitoringService aiMonitoringService;
+    private final ThreadPoolExecutor callExecutor;
+    private final ScheduledExecutorService retryScheduler;
+    private final CircuitBreaker circuitBreaker;
+
+    public GeminiRetryExecutor(AiMonitoringService aiMonitoringService,
+                               @Value("${gemini.retry.max-concurrent-calls:16}") int maxConcurrentCalls,
+                               @Value("${gemini.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                               @Value("${gemini.circuit-breaker.open-seconds:30}") int openSeconds) {
+        this.aiMonitoringService = aiMonitoringService;
+        this.callExecutor = new ThreadPoolExecutor(
+            maxConcurrentCalls, maxConcurrentCalls, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(maxConcurrentCalls * 8),
+            namedThreadFactory("gemini-call-"));
+        this.callExecutor.allowCoreThreadTimeOut(true);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("gemini-retry-"));
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, Duration.ofSeconds(openSeconds));
+    }
+
+    /**
+     * Run a call with retries, returning immediately
+     * @param operation Name used in logs and monitoring
+     * @param call The Gemini call; null or an exception means the attempt failed
+     * @param maxAttempts Maximum number of attempts (including the first)
+     * @param deadline Time budget for all attempts together
+     * @return Future completing with the first successful result, or null on failure/deadline/open circuit
+     */
+    public <T> CompletableFuture<T> executeAsync(String operation, Supplier<T> call, int maxAttempts, Duration deadline) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        Permit permit = circuitBreaker.allowRequest();
+        if (permit == Permit.REJECTED) {
+            log.warn("Gemini circuit open, failing fast for {}", operation);
+            aiMonitoringService.recordError(operation, "circuit_open", "Gemini circuit breaker is open", null);
+            result.complete(null);
+            return result;
+        }
+
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        submitAttempt(operation, call, 1, Math.max(1, maxAttempts), deadlineNanos, permit == Permit.PROBE, result);
+
+        // Never let callers wait past the deadline, even if an attempt is still in flight
+        return result.completeOnTimeout(null, deadline.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a call with retries and wait for the outcome
+     * The calling thread waits (at most until the deadline) but never sleeps through backoffs,
+     * and returns at once while the circuit is open. It is parked for the whole call though,
+     * so request threads that can return a future should use executeAsync.
+     */
+    public <T> T execute(String operation, Supplier<T> call, int maxAttempts, Duration deadline) {
+        return executeAsync(operation, call, maxAttempts, deadline).join();
+    }
+
+    /**
+     * @param probe whether this call is the half-open probe admitted by the circuit breaker
+     */
+    private <T> void submitAttempt(String operation, Supplier<T> call, int attempt, int maxAttempts,
+                                   long deadlineNanos, boolean probe, CompletableFuture<T> result) {
+        try {
+            callExecutor.execute(() -> runAttempt(operation, call, attempt, maxAttempts, deadlineNanos, probe, result));
+        } catch (RejectedExecutionException e) {
+            log.warn("Gemini call pool saturated, rejecting {}", operation);
+            aiMonitoringService.recordError(operation, "pool_saturated", "Gemini call pool saturated", e);
+            if (probe) {
+                circuitBreaker.recordFailure(true);
+            }
+            result.complete(null);
+        }
+    }
+
+    private <T> void runAttempt(String operation, Supplier<T> call, int attempt, int maxAttempts,
+                                long deadlineNanos, boolean probe, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            // Deadline already passed, caller has moved on; a probe that never ran counts as failed
+            if (probe) {
+                circuitBreaker.recordFailure(true);
+            }
+            return;
+        }
+
+        T value = null;
+        try {
+            value = call.get();
+        } catch (Exception e) {
+            log.warn("Gemini {} attempt {}/{} threw: {}", operation, attempt, maxAttempts, e.getMessage());
+        }
+
+        boolean successful = value != null;
+        aiMonitoringService.recordRetryAttempt(operation, attempt, successful);
+
+        if (successful) {
+            circuitBreaker.recordSuccess(probe);
+            result.complete(value);
+            return;
+        }
+
+        long backoffMs = backoffMillis(attempt);
+        boolean canRetry = attempt < maxAttempts
+            && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs) < deadlineNanos
+            && circuitBreaker.isClosed();
+        if (!canRetry) {
+            circuitBreaker.recordFailure(probe);
+            log.error("Gemini {} failed after {} attempt(s)", operation, attempt);
+            result.complete(null);
+            return;
+        }
+
+        log.warn("Retrying Gemini {} after {}ms backoff (attempt {}/{})", operation, backoffMs, attempt + 1, maxAttempts);
+        retryScheduler.schedule(
+            () -> submitAttempt(operation, call, attempt + 1, maxAttempts, deadlineNanos, probe, result),
+            backoffMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Exponential backoff with jitter: uniform in [c/4, c] where c = min(max, base * 2^(attempt-1))
+     */
+    private static long backoffMillis(int attempt) {
+        long ceiling = backoffCeilingMillis(attempt);
+        return ThreadLocalRandom.current().nextLong(ceiling / 4, ceiling + 1);
+    }
+
+    private static long backoffCeilingMillis(int attempt) {
+        return Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt - 1, 10));
+    }
+
+    /**
+     * Longest total backoff a call with maxAttempts attempts can wait through
+     */
+    public static long maxTotalBackoffMillis(int maxAttempts) {
+        long total = 0;
+        for (int attempt = 1; attempt < maxAttempts; attempt++) {
+            total += backoffCeilingMillis(attempt);
+        }
+        return total;
+    }
+
+    /**
+     * Whether Gemini calls are currently being short-circuited
+     */
+    public boolean isCircuitOpen() {
+        return !circuitBreaker.isClosed();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        callExecutor.shutdownNow();
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private enum Permit { ALLOWED, PROBE, REJECTED }
+
+    /**
+     * Consecutive-failure circuit breaker
+     * CLOSED -> OPEN after {@code failureThreshold} failed calls; after {@code openDuration}
+     * one probe call is let through (HALF-OPEN) and its outcome closes or re-opens the circuit.
+     * Calls admitted before the circuit opened may still fail afterwards; only the probe's
+     * failure re-opens it.
+     */
+    private static final class CircuitBreaker {
+
+        private final int failureThreshold;
+        private final long openNanos;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        // 0 = closed, otherwise System.nanoTime() at which the circuit opened
+        private final AtomicLong openedAt = new AtomicLong();
+        private final AtomicInteger probeInFlight = new AtomicInteger();
+
+        private CircuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openDuration.toNanos();
+        }
+
+        private boolean isClosed() {
+            return openedAt.get() == 0;
+        }
+
+        private Permit allowRequest() {
+            long opened = openedAt.get();
+            if (opened == 0) {
+                return Permit.ALLOWED;
+            }
+            // Half-open: let exactly one probe through once the cool-down has elapsed
+            return System.nanoTime() - opened >= openNanos && probeInFlight.compareAndSet(0, 1)
+                ? Permit.PROBE : Permit.REJECTED;
+        }
+
+        /**
+         * @param probe whether the call was the half-open probe; only the probe frees the probe slot
+         */
+        private void recordSuccess(boolean probe) {
+            consecutiveFailures.set(0);
+            if (openedAt.getAndSet(0) != 0) {
+                log.info("Gemini circuit closed after a successful call");
+            }
+            if (probe) {
+                probeInFlight.set(0);
+            }
+        }
+
+        /**
+         * @param probe whether the failed call was the half-open probe
+         */
+        private void recordFailure(boolean probe) {
+            if (probe) {
+                long opened = openedAt.get();
+                if (opened != 0) {
+                    // Failed probe: stay open for another cool-down
+                    openedAt.compareAndSet(opened, System.nanoTime());
+                    probeInFlight.set(0);
+                    return;
+                }
+                // Closed meanwhile by another call's success: an ordinary failure
+                probeInFlight.set(0);
+            }
+            if (isClosed() && consecutiveFailures.incrementAndGet() >= failureThreshold
+                    && openedAt.compareAndSet(0, System.nanoTime())) {
+                log.error("Gemini circuit opened after {} consecutive failures", consecutiveFailures.get());
+            }
+        }
+    }
+}
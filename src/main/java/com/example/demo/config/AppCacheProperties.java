@@ -0,0 +1,53 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configuration properties for the in-process cache tier
+ * Maps values from application.yml app.cache section
+ *
+ * Each entry is a Caffeine spec string, e.g.
+ * app.cache.specs.districts=maximumSize=100,refreshAfterWrite=12h,expireAfterWrite=48h
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.cache")
+public class AppCacheProperties {
+
+    private Map<String, String> specs = defaultSpecs();
+
+    private static Map<String, String> defaultSpecs() {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        // AI insights cost a Gemini call, but should not be stale for more than 30 minutes
+        defaults.put("adminAiInsights", "maximumSize=16,expireAfterWrite=30m");
+        // GHN master data changes rarely: refresh in background, hard-expire after 2 days
+        defaults.put("provinces", "maximumSize=4,refreshAfterWrite=12h,expireAfterWrite=48h");
+        defaults.put("districts", "maximumSize=128,refreshAfterWrite=12h,expireAfterWrite=48h");
+        defaults.put("wards", "maximumSize=1024,refreshAfterWrite=12h,expireAfterAccess=48h");
+        defaults.put("wardsByProvince", "maximumSize=64,refreshAfterWrite=12h,expireAfterAccess=48h");
+        // Authenticated principals (role + active flag), evicted explicitly on change
+        defaults.put("authPrincipals", "maximumSize=10000,expireAfterWrite=30s");
+        // Last AI-context turns per conversation (ConversationHistoryCache), kept current on every new message
+        defaults.put("conversationHistory", "maximumSize=10000,expireAfterAccess=30m");
+        // Rolling AI summary and turn counter per conversation (ConversationSummaryService)
+        defaults.put("conversationSummaries", "maximumSize=10000,expireAfterAccess=30m");
+        // AI replies to repeated store/shipping/promotion questions (AiResponseCache); shipping fees may drift
+        defaults.put("aiResponses", "maximumSize=2000,expireAfterWrite=15m");
+        return defaults;
+    }
+
+    // Getters and Setters
+    public Map<String, String> getSpecs() {
+        return specs;
+    }
+
+    public void setSpecs(Map<String, String> specs) {
+        // Merge so that overriding one cache keeps the defaults of the others
+        Map<String, String> merged = defaultSpecs();
+        merged.putAll(specs);
+        this.specs = merged;
+    }
+}
@@ -1,31 +1,85 @@
 package com.example.demo.config;
 
+import com.example.demo.service.LocationService;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
 
 /**
  * Cấu hình Spring Cache với Caffeine
+ *
+ * Mỗi cache có giới hạn kích thước và TTL riêng (xem AppCacheProperties).
+ * Các cache địa chỉ GHN dùng refresh-ahead: sau refreshAfterWrite, request tiếp theo
+ * vẫn nhận giá trị cũ trong khi dữ liệu mới được tải ở background.
+ * Thống kê hit/miss/eviction được Actuator xuất ra qua /actuator/metrics/cache.*
  */
 @Configuration
 @EnableCaching
+@Slf4j
 public class CacheConfig {
 
     @Bean
-    public CacheManager cacheManager() {
-        // Sử dụng ConcurrentMapCacheManager đơn giản
-        // Trong production có thể thay bằng Redis hoặc Caffeine
-        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
-        cacheManager.setCacheNames(java.util.Arrays.asList(
-            "adminAiInsights",
-            "provinces",
-            "districts", 
-            "wards",
-            "wardsByProvince"
-        ));
+    public CacheManager cacheManager(AppCacheProperties cacheProperties,
+                                     ObjectProvider<LocationService> locationServiceProvider) {
+        // LocationService is resolved lazily: it is itself proxied by this cache manager
+        Map<String, Function<Object, List<?>>> loaders = Map.of(
+            "provinces", key -> locationServiceProvider.getObject().loadProvinces(),
+            "districts", key -> locationServiceProvider.getObject().loadDistricts((Integer) key),
+            "wards", key -> locationServiceProvider.getObject().loadWards((Integer) key),
+            "wardsByProvince", key -> locationServiceProvider.getObject().loadWardsByProvince((Integer) key)
+        );
+
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        // Only the caches declared in AppCacheProperties exist; unknown names must not create unbounded caches
+        cacheManager.setCacheNames(Collections.emptyList());
+        cacheProperties.getSpecs().forEach((name, spec) -> {
+            Caffeine<Object, Object> builder = Caffeine.from(CaffeineSpec.parse(spec)).recordStats();
+            Function<Object, List<?>> loader = loaders.get(name);
+            if (loader != null) {
+                cacheManager.registerCustomCache(name, builder.build(refreshAheadLoader(name, loader)));
+            } else {
+                cacheManager.registerCustomCache(name, builder.build());
+            }
+            log.info("Registered cache '{}' with spec [{}]", name, spec);
+        });
         return cacheManager;
     }
+
+    /**
+     * Loader that never replaces a good cached list with an empty one.
+     * GHN errors are swallowed by LocationService and surface as empty lists,
+     * so on reload an empty result keeps the previous value until it hard-expires.
+     */
+    private static CacheLoader<Object, Object> refreshAheadLoader(String cacheName, Function<Object, List<?>> loader) {
+        return new CacheLoader<>() {
+            @Override
+            public Object load(Object key) {
+                List<?> result = loader.apply(key);
+                return result.isEmpty() ? null : result;
+            }
+
+            @Override
+            public Object reload(Object key, Object oldValue) {
+                List<?> result = loader.apply(key);
+                if (result.isEmpty()) {
+                    log.warn("Refresh of cache '{}' for key {} returned no data, keeping previous value", cacheName, key);
+                    return oldValue;
+                }
+                return result;
+            }
+        };
+    }
 }
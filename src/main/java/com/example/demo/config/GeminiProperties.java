@@ -18,6 +18,7 @@ public class GeminiProperties {
     private Double topP = 0.85; // Default topP for nucleus sampling
     private Integer maxTokens = 8192; // Enough for 3-5 products with descriptions
     private Integer timeoutSeconds = 30; // Sufficient for complex responses
+    private Integer chatWaitSeconds = 20; // Longest a chat request waits for one Gemini step, retries included
 
     // Getters and Setters
     public String getApiKey() {
@@ -76,6 +77,14 @@ public class GeminiProperties {
         this.timeoutSeconds = timeoutSeconds;
     }
 
+    public Integer getChatWaitSeconds() {
+        return chatWaitSeconds;
+    }
+
+    public void setChatWaitSeconds(Integer chatWaitSeconds) {
+        this.chatWaitSeconds = chatWaitSeconds;
+    }
+
     /**
      * Check if Gemini is properly configured
      */
@@ -89,4 +98,11 @@ public class GeminiProperties {
     public String getGenerateContentUrl() {
         return baseUrl + "/models/" + model + ":generateContent?key=" + apiKey;
     }
+
+    /**
+     * Get full API URL for streaming content as Server-Sent Events
+     */
+    public String getStreamGenerateContentUrl() {
+        return baseUrl + "/models/" + model + ":streamGenerateContent?alt=sse&key=" + apiKey;
+    }
 }
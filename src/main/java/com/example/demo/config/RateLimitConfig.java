@@ -1,51 +1,65 @@
 package com.example.demo.config;
 
+import com.example.demo.security.RateLimitInterceptor;
+import com.example.demo.security.RateLimitRule;
+import com.example.demo.service.RateLimiterService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
- * Rate limiting configuration for AI chat
- * 
- * Note: This is a placeholder configuration.
- * In production, you would implement actual rate limiting using:
- * - Spring Cloud Gateway Rate Limiter
- * - Bucket4j (token bucket algorithm)
- * - Redis-based rate limiting
- * - Custom interceptor with in-memory cache
- * 
- * Recommended limits:
+ * Rate limiting configuration
+ *
+ * Limits are token buckets (see RateLimitRule / RateLimiterService):
  * - 60 messages per 5 minutes per IP
  * - 100 messages per hour per user
- * - 10 messages per minute per conversation
+ * - 10 messages per minute per sender in a conversation (checked in the chat controllers,
+ *   the conversation ID is in the request body / STOMP payload)
+ * - login, OTP, payment creation and the MoMo return URL per IP or user; the MoMo IPN
+ *   (/payment/momo/notify) is verified by signature and not limited
+ *
+ * Disable with app.rate-limit.enabled=false.
  */
 @Configuration
-public class RateLimitConfig {
-    
+@RequiredArgsConstructor
+public class RateLimitConfig implements WebMvcConfigurer {
+
     // Rate limit constants
     public static final int MAX_MESSAGES_PER_5_MIN = 60;
     public static final int MAX_MESSAGES_PER_HOUR = 100;
     public static final int MAX_MESSAGES_PER_MINUTE_PER_CONVERSATION = 10;
-    
-    /**
-     * TODO: Implement actual rate limiting logic
-     * 
-     * Example implementation approaches:
-     * 
-     * 1. Using Bucket4j:
-     * @Bean
-     * public Bucket createBucket() {
-     *     Bandwidth limit = Bandwidth.classic(60, Refill.intervally(60, Duration.ofMinutes(5)));
-     *     return Bucket4j.builder().addLimit(limit).build();
-     * }
-     * 
-     * 2. Using Redis:
-     * - Store message counts with TTL in Redis
-     * - Check count before processing message
-     * - Increment counter after processing
-     * 
-     * 3. Using Spring Interceptor:
-     * - Create HandlerInterceptor
-     * - Check rate limit in preHandle()
-     * - Throw RateLimitExceededException if exceeded
-     */
-}
+    public static final int MAX_LOGIN_ATTEMPTS_PER_MINUTE = 10;
+    public static final int MAX_OTP_REQUESTS_PER_10_MIN = 10;
+    public static final int MAX_PAYMENT_REQUESTS_PER_MINUTE = 10;
+    public static final int MAX_MOMO_RETURNS_PER_MINUTE = 120;
+
+    private final RateLimiterService rateLimiterService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void addInterceptors(@NonNull InterceptorRegistry registry) {
+        // AI chat
+        registry.addInterceptor(interceptor(RateLimitRule.CHAT_PER_IP, RateLimitRule.CHAT_PER_USER))
+                .addPathPatterns("/api/chat/messages", "/api/chat/messages/first", "/api/chat/conversations/start");
 
+        // Login and OTP (registration, forgot/reset password)
+        registry.addInterceptor(interceptor(RateLimitRule.LOGIN_PER_IP))
+                .addPathPatterns("/api/auth/login");
+        registry.addInterceptor(interceptor(RateLimitRule.OTP_PER_IP))
+                .addPathPatterns("/api/auth/register", "/api/auth/verify-registration",
+                        "/api/auth/forgot-password", "/api/auth/verify-otp", "/api/auth/reset-password");
+
+        // MoMo payment creation and browser returns
+        registry.addInterceptor(interceptor(RateLimitRule.PAYMENT_PER_USER))
+                .addPathPatterns("/api/orders/create-with-payment", "/api/orders/*/payment");
+        registry.addInterceptor(interceptor(RateLimitRule.MOMO_RETURN_PER_IP))
+                .addPathPatterns("/payment/momo/return");
+    }
+
+    private RateLimitInterceptor interceptor(RateLimitRule... rules) {
+        return new RateLimitInterceptor(rateLimiterService, objectMapper, rules);
+    }
+}
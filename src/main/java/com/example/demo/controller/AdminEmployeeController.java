@@ -16,7 +16,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
 import java.util.List;
@@ -31,6 +33,7 @@ public class AdminEmployeeController {
     
     private final EmployeeService employeeService;
     private final com.example.demo.service.ExcelExportService excelExportService;
+    private final com.example.demo.service.ExportJobService exportJobService;
     private final com.example.demo.repository.TimeSheetRepository timeSheetRepository;
     private final com.example.demo.repository.SalaryRepository salaryRepository;
     
@@ -251,29 +254,42 @@ public class AdminEmployeeController {
      * Export employees to Excel
      */
     @GetMapping("/export")
-    public ResponseEntity<byte[]> exportEmployees(
+    public ResponseEntity<StreamingResponseBody> exportEmployees(
             @RequestParam(required = false) String role,
             @RequestParam(required = false) Boolean isActive,
             @RequestParam(required = false) String search
     ) {
+        StreamingResponseBody body = out -> excelExportService.exportEmployees(out,
+                action -> employeeService.forEachEmployeeForExport(search, role, isActive, action));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=employees.xlsx");
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+    
+    /**
+     * Export employees to Excel in the background (see /admin/api/exports for status and download)
+     */
+    @PostMapping("/export/jobs")
+    public ResponseEntity<Map<String, Object>> submitEmployeeExport(
+            @RequestParam(required = false) String role,
+            @RequestParam(required = false) Boolean isActive,
+            @RequestParam(required = false) String search,
+            Authentication authentication
+    ) {
+        Map<String, Object> response = new HashMap<>();
         try {
-            java.util.List<com.example.demo.dto.EmployeeDTO> list;
-            if (search != null && !search.isBlank()) {
-                list = employeeService.searchEmployees(search.trim());
-            } else if (role != null || isActive != null) {
-                var page = employeeService.getEmployeesFiltered(role, isActive, org.springframework.data.domain.PageRequest.of(0, Integer.MAX_VALUE));
-                list = page.getContent();
-            } else {
-                list = employeeService.getAllEmployees();
-            }
-            byte[] bytes = excelExportService.exportEmployees(list);
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
-            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=employees.xlsx");
-            return ResponseEntity.ok().headers(headers).body(bytes);
-        } catch (Exception e) {
-            log.error("Export employees failed", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new byte[0]);
+            ExportJobDTO job = exportJobService.submit("employees", "employees.xlsx", authentication.getName(),
+                    (out, progress) -> excelExportService.exportEmployees(out, progress.counting(
+                            action -> employeeService.forEachEmployeeForExport(search, role, isActive, action))));
+            response.put("success", true);
+            response.put("job", job);
+            response.put("message", "Đã tạo yêu cầu xuất file");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
         }
     }
     
@@ -0,0 +1,96 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ExportJobDTO;
+import com.example.demo.dto.ResponseWrapper;
+import com.example.demo.service.ExportJobService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Admin REST API Controller for background Excel exports
+ * Jobs are created by the POST .../export/jobs endpoints of each admin module
+ */
+@RestController
+@RequestMapping("/admin/api/exports")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "👑 Admin Exports", description = "Admin APIs - Background Excel exports")
+@SecurityRequirement(name = "bearerAuth")
+public class AdminExportJobController {
+
+    private static final MediaType XLSX =
+        MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    private final ExportJobService exportJobService;
+
+    /**
+     * Export jobs of the current admin, newest first
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Danh sách job xuất file", description = "Các job xuất Excel của admin hiện tại")
+    public ResponseEntity<ResponseWrapper<List<ExportJobDTO>>> getJobs(Authentication authentication) {
+        return ResponseEntity.ok(ResponseWrapper.success(exportJobService.getJobs(authentication.getName())));
+    }
+
+    /**
+     * Status and progress of one job
+     */
+    @GetMapping("/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Trạng thái job xuất file", description = "Trạng thái, số dòng đã ghi và link tải khi hoàn tất")
+    public ResponseEntity<ResponseWrapper<ExportJobDTO>> getJob(@PathVariable String jobId,
+                                                                Authentication authentication) {
+        return findOwnJob(jobId, authentication)
+            .map(job -> ResponseEntity.ok(ResponseWrapper.success(job)))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(ResponseWrapper.error("Không tìm thấy job xuất file")));
+    }
+
+    /**
+     * Download the file of a completed job
+     */
+    @GetMapping("/{jobId}/download")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Tải file đã xuất", description = "Chỉ khả dụng khi job ở trạng thái COMPLETED")
+    public ResponseEntity<Resource> download(@PathVariable String jobId, Authentication authentication) {
+        Optional<ExportJobDTO> job = findOwnJob(jobId, authentication);
+        Optional<Path> file = job.flatMap(j -> exportJobService.getFile(j.getId()));
+        if (file.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(XLSX);
+        headers.setContentDisposition(ContentDisposition.attachment()
+            .filename(job.get().getFileName(), StandardCharsets.UTF_8)
+            .build());
+        log.info("Export job {} downloaded by {}", jobId, authentication.getName());
+        return ResponseEntity.ok()
+            .headers(headers)
+            .body(new FileSystemResource(file.get()));
+    }
+
+    private Optional<ExportJobDTO> findOwnJob(String jobId, Authentication authentication) {
+        return exportJobService.getJob(jobId)
+            .filter(job -> job.getRequestedBy().equals(authentication.getName()));
+    }
+}
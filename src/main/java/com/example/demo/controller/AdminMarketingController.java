@@ -1,16 +1,10 @@
 package com.example.demo.controller;
 
-import com.example.demo.dto.CreateVoucherRequest;
 import com.example.demo.dto.MarketingCampaignRequest;
-import com.example.demo.dto.VoucherDTO;
-import com.example.demo.entity.User;
-import com.example.demo.entity.enums.DiscountType;
-import com.example.demo.entity.enums.UserRole;
+import com.example.demo.dto.MarketingCampaignStatusDTO;
 import com.example.demo.repository.UserRepository;
-import com.example.demo.service.AiPromptService;
 import com.example.demo.service.CustomerSegmentationService;
-import com.example.demo.service.EmailService;
-import com.example.demo.service.VoucherService;
+import com.example.demo.service.MarketingCampaignService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -18,15 +12,12 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Tag(name = "📢 Admin Marketing", description = "Marketing campaigns & customer segmentation APIs")
 @RestController
@@ -36,108 +27,47 @@ import java.util.stream.Collectors;
 public class AdminMarketingController {
     
     private final UserRepository userRepository;
-    private final VoucherService voucherService;
-    private final AiPromptService aiPromptService;
-    private final EmailService emailService;
+    private final MarketingCampaignService campaignService;
     private final CustomerSegmentationService segmentationService;
     
     /**
      * Gửi chiến dịch email marketing cho 1 phân khúc khách hàng
+     * Email được xếp hàng và gửi nền (MarketingEmailDispatcher); tiến độ xem qua /campaigns/{id}
      */
     @Operation(
         summary = "Send marketing campaign",
-        description = "Send email marketing campaign to customer segment with voucher"
+        description = "Queue an email marketing campaign to a customer segment with voucher; emails are sent in the background"
     )
     @ApiResponses({
-        @ApiResponse(responseCode = "200", description = "Campaign sent successfully"),
+        @ApiResponse(responseCode = "202", description = "Campaign queued"),
         @ApiResponse(responseCode = "400", description = "Invalid campaign data"),
-        @ApiResponse(responseCode = "500", description = "Error sending campaign")
+        @ApiResponse(responseCode = "500", description = "Error queueing campaign")
     })
     @SecurityRequirement(name = "bearerAuth")
     @PostMapping("/send-campaign")
     public ResponseEntity<Map<String, Object>> sendCampaign(
-            @RequestBody MarketingCampaignRequest request) {
+            @RequestBody MarketingCampaignRequest request,
+            Authentication authentication) {
         
         try {
             log.info("📧 Bắt đầu chiến dịch marketing cho segment: {}", request.getSegment());
             
-            // 1. Lấy danh sách khách hàng theo segment (real-time calculation with orders loaded)
-            List<User> allCustomers = userRepository.findByRoleWithOrders(UserRole.CUSTOMER);
-            log.info("Loaded {} customers with orders for filtering", allCustomers.size());
-            List<User> customers = filterCustomersBySegment(allCustomers, request.getSegment());
-            log.info("Filtered {} customers for segment: {}", customers.size(), request.getSegment());
+            MarketingCampaignStatusDTO campaign = campaignService.createCampaign(
+                request, authentication != null ? authentication.getName() : null);
             
-            if (customers.isEmpty()) {
-                return ResponseEntity.ok(Map.of(
-                    "success", false,
-                    "message", "Không có khách hàng nào trong phân khúc này"
-                ));
-            }
-            
-            // 2. Tạo voucher chung cho campaign
-            CreateVoucherRequest voucherReq = new CreateVoucherRequest();
-            voucherReq.setCode(request.getVoucherCode());
-            voucherReq.setName("Chiến dịch " + request.getCampaignName());
-            voucherReq.setDiscountType(DiscountType.valueOf(request.getDiscountType()));
-            voucherReq.setDiscountValue(request.getDiscountValue());
-            voucherReq.setExpiryDate(LocalDate.now().plusDays(30));
-            voucherReq.setIsActive(true);
-            
-            VoucherDTO voucher = voucherService.createVoucher(voucherReq);
-            log.info("✅ Voucher created: {}", voucher.getCode());
-            
-            // 3. Generate subject based on segment
-            String subject = switch (request.getSegment()) {
-                case "VIP" -> "👑 Tri ân Khách hàng VIP - Ưu đãi độc quyền dành cho bạn!";
-                case "NEW" -> "🎉 Chào mừng bạn đến với StarShop - Quà tặng đặc biệt!";
-                case "AT_RISK" -> "💐 Chúng tôi nhớ bạn! Quay lại và nhận ưu đãi hấp dẫn";
-                default -> "🌸 " + request.getCampaignName() + " - Ưu đãi đặc biệt từ StarShop";
-            };
-            
-            // 4. Gửi email cho từng khách với template đẹp
-            int successCount = 0;
-            int failCount = 0;
-            
-            for (User customer : customers) {
-                try {
-                    // Build beautiful HTML email template
-                    String htmlBody = emailService.buildMarketingEmailTemplate(
-                        request.getSegment(),
-                        customer.getFirstname(),
-                        voucher.getCode(),
-                        voucher.getExpiryDate().toString(),
-                        request.getCampaignName(),
-                        request.getDiscountValue().intValue(),
-                        request.getDiscountType()
-                    );
-                    
-                    // Send email
-                    emailService.sendMarketingEmail(
-                        customer.getEmail(),
-                        customer.getFirstname(),
-                        subject,
-                        htmlBody
-                    );
-                    
-                    successCount++;
-                    
-                } catch (Exception e) {
-                    log.error("Failed to send to {}: {}", customer.getEmail(), e.getMessage());
-                    failCount++;
-                }
-            }
-            
-            log.info("✅ Campaign completed: {} success, {} failed", successCount, failCount);
-            
-            return ResponseEntity.ok(Map.of(
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
                 "success", true,
-                "message", String.format("Đã gửi %d email thành công", successCount),
-                "recipientCount", customers.size(),
-                "emailsSent", successCount,
-                "emailsFailed", failCount,
-                "voucherCode", voucher.getCode()
+                "message", String.format("Đã xếp hàng %d email, hệ thống đang gửi", campaign.getTotalCount()),
+                "campaignId", campaign.getId(),
+                "recipientCount", campaign.getTotalCount(),
+                "voucherCode", campaign.getVoucherCode()
             ));
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.ok(Map.of(
+                "success", false,
+                "message", e.getMessage()
+            ));
         } catch (Exception e) {
             log.error("Error sending campaign", e);
             return ResponseEntity.status(500).body(Map.of(
@@ -147,6 +77,44 @@ public class AdminMarketingController {
         }
     }
     
+    /**
+     * Tiến độ gửi của một chiến dịch
+     */
+    @Operation(
+        summary = "Get campaign progress",
+        description = "Sent, failed and pending email counts of a queued campaign"
+    )
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/campaigns/{campaignId}")
+    public ResponseEntity<Map<String, Object>> getCampaign(@PathVariable Long campaignId) {
+        return campaignService.getCampaign(campaignId)
+            .map(campaign -> ResponseEntity.ok(Map.<String, Object>of(
+                "success", true,
+                "campaign", campaign
+            )))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "success", false,
+                "message", "Không tìm thấy chiến dịch"
+            )));
+    }
+    
+    /**
+     * Các chiến dịch gần đây
+     */
+    @Operation(
+        summary = "List recent campaigns",
+        description = "Most recent marketing campaigns with their progress"
+    )
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/campaigns")
+    public ResponseEntity<Map<String, Object>> getRecentCampaigns(
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(Map.of(
+            "success", true,
+            "campaigns", campaignService.getRecentCampaigns(Math.min(Math.max(limit, 1), 100))
+        ));
+    }
+    
     /**
      * Lấy thống kê số lượng khách hàng theo từng phân khúc
      */
@@ -188,7 +156,7 @@ public class AdminMarketingController {
      */
     @Operation(
         summary = "Trigger customer segmentation",
-        description = "Manually trigger customer segmentation process (normally runs at night)"
+        description = "Manually re-run customer segmentation for all customers (segments otherwise update on order events)"
     )
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Segmentation triggered successfully"),
@@ -213,75 +181,4 @@ public class AdminMarketingController {
             ));
         }
     }
-    
-    /**
-     * Filter customers by segment using real-time calculation
-     * VIP: total_spent > 5M VND AND orders_count >= 3 (matches CustomerSegmentationService)
-     * NEW: Registered within last 30 days OR first order within 30 days
-     * AT_RISK: Has orders but no orders in last 90 days
-     */
-    private List<User> filterCustomersBySegment(List<User> customers, String segment) {
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-        LocalDateTime ninetyDaysAgo = LocalDateTime.now().minusDays(90);
-        BigDecimal vipThreshold = new BigDecimal("5000000"); // 5 million VND (matches CustomerSegmentationService)
-        
-        return customers.stream()
-            .filter(customer -> {
-                try {
-                    switch (segment) {
-                        case "VIP":
-                            // VIP: total_spent > 5M VND AND orders_count >= 3
-                            if (customer.getOrders() == null) return false;
-                            
-                            long ordersCount = customer.getOrders().stream()
-                                .filter(order -> order.getStatus() == com.example.demo.entity.enums.OrderStatus.COMPLETED)
-                                .count();
-                            
-                            BigDecimal totalSpent = customer.getOrders().stream()
-                                .filter(order -> order.getStatus() == com.example.demo.entity.enums.OrderStatus.COMPLETED)
-                                .map(order -> order.getTotalAmount())
-                                .reduce(BigDecimal.ZERO, BigDecimal::add);
-                            
-                            return totalSpent.compareTo(vipThreshold) > 0 && ordersCount >= 3;
-                            
-                        case "NEW":
-                            // NEW: Registered within 30 days OR first order within 30 days
-                            if (customer.getCreatedAt() != null && customer.getCreatedAt().isAfter(thirtyDaysAgo)) {
-                                return true;
-                            }
-                            
-                            if (customer.getOrders() != null && !customer.getOrders().isEmpty()) {
-                                LocalDateTime firstOrderDate = customer.getOrders().stream()
-                                    .map(order -> order.getOrderDate())
-                                    .min(LocalDateTime::compareTo)
-                                    .orElse(null);
-                                
-                                return firstOrderDate != null && firstOrderDate.isAfter(thirtyDaysAgo);
-                            }
-                            
-                            return false;
-                            
-                        case "AT_RISK":
-                            // AT_RISK: Has orders but inactive
-                            if (customer.getOrders() == null || customer.getOrders().isEmpty()) {
-                                return false;
-                            }
-                            
-                            LocalDateTime lastOrderDate = customer.getOrders().stream()
-                                .map(order -> order.getOrderDate())
-                                .max(LocalDateTime::compareTo)
-                                .orElse(null);
-                            
-                            return lastOrderDate != null && lastOrderDate.isBefore(ninetyDaysAgo);
-                            
-                        default:
-                            return false;
-                    }
-                } catch (Exception e) {
-                    log.warn("Error filtering customer {}: {}", customer.getId(), e.getMessage());
-                    return false;
-                }
-            })
-            .collect(Collectors.toList());
-    }
 }
@@ -1,12 +1,16 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.ExportJobDTO;
 import com.example.demo.dto.OrderDTO;
+import com.example.demo.entity.Order;
 import com.example.demo.entity.Product;
 import com.example.demo.entity.User;
 import com.example.demo.entity.enums.OrderStatus;
-import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.UserRepository;
+import com.example.demo.service.ExcelExportService;
+import com.example.demo.service.ExportJobService;
 import com.example.demo.service.OrderService;
+import com.example.demo.service.ProductService;
 import com.example.demo.util.ResponseWrapper;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -19,9 +23,11 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -40,8 +46,9 @@ public class AdminOrderController extends BaseController {
     
     private final OrderService orderService;
     private final UserRepository userRepository;
-    private final ProductRepository productRepository;
-    private final com.example.demo.service.ExcelExportService excelExportService;
+    private final ProductService productService;
+    private final ExcelExportService excelExportService;
+    private final ExportJobService exportJobService;
 
     /**
      * Admin Orders Management Page
@@ -216,39 +223,75 @@ public class AdminOrderController extends BaseController {
      */
     @GetMapping("/api/export")
     @ResponseBody
-    public ResponseEntity<byte[]> exportOrders(
+    public ResponseEntity<StreamingResponseBody> exportOrders(
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String search,
             @RequestParam(required = false) String fromDate,
             @RequestParam(required = false) String toDate
     ) {
         try {
-            // Load data with same filters (no pagination)
-            org.springframework.data.domain.Pageable p = org.springframework.data.domain.PageRequest.of(0, Integer.MAX_VALUE);
-            org.springframework.data.domain.Page<OrderDTO> page;
-            if (fromDate != null && !fromDate.isBlank() && toDate != null && !toDate.isBlank()) {
-                java.time.LocalDateTime start = java.time.LocalDate.parse(fromDate).atStartOfDay();
-                java.time.LocalDateTime end = java.time.LocalDate.parse(toDate).atTime(23,59,59);
-                page = orderService.getOrdersBetweenDates(start, end, p);
-            } else if (status != null && !status.isBlank()) {
-                page = orderService.getOrdersByStatus(com.example.demo.entity.enums.OrderStatus.valueOf(status.toUpperCase()), p);
-            } else if (search != null && !search.isBlank()) {
-                page = orderService.searchOrders(search.trim(), p);
-            } else {
-                page = orderService.getAllOrders(p);
-            }
-
-            byte[] bytes = excelExportService.exportOrders(page.getContent());
+            ExcelExportService.RowSource<Order> rows = orderRows(status, search, fromDate, toDate);
+            // Rows are read through a cursor and written to the response as they come
+            StreamingResponseBody body = out -> excelExportService.exportOrders(out, rows);
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
             headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=orders.xlsx");
-            return ResponseEntity.ok().headers(headers).body(bytes);
+            return ResponseEntity.ok().headers(headers).body(body);
         } catch (Exception e) {
             log.error("Export orders failed", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new byte[0]);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * API: Export orders to Excel in the background (see /admin/api/exports for status and download)
+     */
+    @PostMapping("/api/export/jobs")
+    @ResponseBody
+    public ResponseEntity<ResponseWrapper<ExportJobDTO>> submitOrderExport(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String fromDate,
+            @RequestParam(required = false) String toDate,
+            Authentication authentication
+    ) {
+        try {
+            ExcelExportService.RowSource<Order> rows = orderRows(status, search, fromDate, toDate);
+            ExportJobDTO job = exportJobService.submit("orders", "orders.xlsx", authentication.getName(),
+                    (out, progress) -> excelExportService.exportOrders(out, progress.counting(rows)));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(ResponseWrapper.success(job, "Đã tạo yêu cầu xuất file"));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ResponseWrapper.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Submit order export failed", e);
+            return ResponseEntity.badRequest().body(ResponseWrapper.error("Bộ lọc xuất file không hợp lệ"));
+        }
+    }
+
+    /**
+     * Orders matching the export filters (no pagination): date range, else status, else search
+     */
+    private ExcelExportService.RowSource<Order> orderRows(String status, String search, String fromDate, String toDate) {
+        OrderStatus orderStatus = null;
+        java.time.LocalDateTime start = null;
+        java.time.LocalDateTime end = null;
+        String searchTerm = null;
+        if (fromDate != null && !fromDate.isBlank() && toDate != null && !toDate.isBlank()) {
+            start = java.time.LocalDate.parse(fromDate).atStartOfDay();
+            end = java.time.LocalDate.parse(toDate).atTime(23,59,59);
+        } else if (status != null && !status.isBlank()) {
+            orderStatus = OrderStatus.valueOf(status.toUpperCase());
+        } else if (search != null && !search.isBlank()) {
+            searchTerm = search.trim();
+        }
+
+        OrderStatus filterStatus = orderStatus;
+        java.time.LocalDateTime filterStart = start;
+        java.time.LocalDateTime filterEnd = end;
+        String filterSearch = searchTerm;
+        return action -> orderService.forEachOrderForExport(filterStatus, filterStart, filterEnd, filterSearch, action);
+    }
+
     /**
      * API: Get order statistics
      */
@@ -380,11 +423,11 @@ public class AdminOrderController extends BaseController {
                     .body(ResponseWrapper.error("Query phải có ít nhất 2 ký tự"));
             }
             
-            // Search products using ProductRepository
+            // Search products using the product search index (accent-insensitive, ranked)
             org.springframework.data.domain.Pageable pageable = 
                 org.springframework.data.domain.PageRequest.of(0, 20);
             org.springframework.data.domain.Page<Product> productsPage = 
-                productRepository.searchProducts(query.trim(), pageable);
+                productService.searchProducts(query.trim(), pageable);
             
             java.util.List<ProductSearchResult> results = new java.util.ArrayList<>();
             
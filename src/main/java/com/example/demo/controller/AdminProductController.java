@@ -1,11 +1,14 @@
 package com.example.demo.controller;
 
 import com.example.demo.dto.AdminProductDTO;
+import com.example.demo.dto.ExportJobDTO;
 import com.example.demo.dto.ResponseWrapper;
 import com.example.demo.entity.Catalog;
 import com.example.demo.entity.Product;
 import com.example.demo.entity.enums.ProductStatus;
 import com.example.demo.repository.CatalogRepository;
+import com.example.demo.service.ExcelExportService;
+import com.example.demo.service.ExportJobService;
 import com.example.demo.service.ProductService;
 import com.example.demo.service.AdminProductAiService;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -20,15 +23,18 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Tag(name = "🌸 Admin Products", description = "Admin product management APIs - CRUD, stock, status, AI description")
 @Controller
@@ -46,7 +52,9 @@ public class AdminProductController extends BaseController {
     @Autowired
     private AdminProductAiService adminProductAiService;
     @Autowired
-    private com.example.demo.service.ExcelExportService excelExportService;
+    private ExcelExportService excelExportService;
+    @Autowired
+    private ExportJobService exportJobService;
 
     /**
      * Admin Products Management Page
@@ -116,35 +124,56 @@ public class AdminProductController extends BaseController {
      */
     @GetMapping("/api/export")
     @ResponseBody
-    public ResponseEntity<byte[]> exportProducts(
+    public ResponseEntity<StreamingResponseBody> exportProducts(
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String search
     ) {
         try {
-            // Load data without pagination
-            java.util.List<com.example.demo.entity.Product> list;
-            if (search != null && !search.isBlank()) {
-                var page = productService.searchProducts(search.trim(), org.springframework.data.domain.PageRequest.of(0, Integer.MAX_VALUE));
-                list = page.getContent();
-            } else if (status != null && !status.isBlank()) {
-                var st = com.example.demo.entity.enums.ProductStatus.valueOf(status.toUpperCase());
-                var page = productService.getProductsByStatus(st, org.springframework.data.domain.PageRequest.of(0, Integer.MAX_VALUE));
-                list = page.getContent();
-            } else {
-                list = productService.findAll(org.springframework.data.domain.PageRequest.of(0, Integer.MAX_VALUE)).getContent();
-            }
-
-            byte[] bytes = excelExportService.exportProducts(list);
+            ExcelExportService.RowSource<Product> rows = productRows(status, search);
+            StreamingResponseBody body = out -> excelExportService.exportProducts(out, rows);
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
             headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=products.xlsx");
-            return ResponseEntity.ok().headers(headers).body(bytes);
+            return ResponseEntity.ok().headers(headers).body(body);
         } catch (Exception e) {
             log.error("Export products failed", e);
-            return ResponseEntity.status(org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR).body(new byte[0]);
+            return ResponseEntity.status(org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Export products to Excel in the background (see /admin/api/exports for status and download)
+     */
+    @PostMapping("/api/export/jobs")
+    @ResponseBody
+    public ResponseEntity<ResponseWrapper<ExportJobDTO>> submitProductExport(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String search,
+            Authentication authentication
+    ) {
+        try {
+            ExcelExportService.RowSource<Product> rows = productRows(status, search);
+            ExportJobDTO job = exportJobService.submit("products", "products.xlsx", authentication.getName(),
+                    (out, progress) -> excelExportService.exportProducts(out, progress.counting(rows)));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(ResponseWrapper.success(job, "Đã tạo yêu cầu xuất file"));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ResponseWrapper.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Submit product export failed", e);
+            return ResponseEntity.badRequest().body(ResponseWrapper.error("Bộ lọc xuất file không hợp lệ"));
         }
     }
 
+    /**
+     * Products matching the export filters (no pagination); search takes precedence over status
+     */
+    private ExcelExportService.RowSource<Product> productRows(String status, String search) {
+        ProductStatus st = (search == null || search.isBlank()) && status != null && !status.isBlank()
+                ? ProductStatus.valueOf(status.toUpperCase())
+                : null;
+        return action -> productService.forEachProductForExport(st, search, action);
+    }
+
     // Product Detail Page removed - now using modal dialog instead
 
     // ==================== REST API ENDPOINTS ====================
@@ -429,40 +458,41 @@ public class AdminProductController extends BaseController {
      */
     @PostMapping("/api/generate-description")
     @ResponseBody
-    public ResponseEntity<ResponseWrapper<String>> generateDescription(
+    public CompletableFuture<ResponseEntity<ResponseWrapper<String>>> generateDescription(
             @RequestParam String productName,
             @RequestParam(required = false) Long catalogId,
             @RequestParam(defaultValue = "") String keywords) {
         
         // Validate productName không rỗng
         if (productName == null || productName.trim().isEmpty()) {
-            return ResponseEntity.badRequest()
-                .body(ResponseWrapper.error("Vui lòng nhập tên sản phẩm"));
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                .body(ResponseWrapper.<String>error("Vui lòng nhập tên sản phẩm")));
         }
         
-        try {
-            String description = adminProductAiService.generateProductDescription(
-                productName.trim(), catalogId, keywords
-            );
-            return ResponseEntity.ok(ResponseWrapper.success(description, 
-                "Tạo mô tả thành công"));
-        } catch (Exception e) {
-            log.error("Error generating description for product: {}", productName, e);
-            
-            // Determine error type and return appropriate message
-            String errorMessage = "Không thể tạo mô tả. Vui lòng thử lại.";
-            if (e.getMessage() != null) {
-                if (e.getMessage().contains("timeout") || e.getMessage().contains("Timeout")) {
-                    errorMessage = "AI đang quá tải, vui lòng thử lại";
-                } else if (e.getMessage().contains("quota") || e.getMessage().contains("Quota")) {
-                    errorMessage = "Đã vượt giới hạn sử dụng AI hôm nay";
-                } else if (e.getMessage().contains("network") || e.getMessage().contains("Network")) {
-                    errorMessage = "Không thể kết nối với AI";
+        // Async result: the Tomcat thread is freed while Gemini (and any retries) run
+        return adminProductAiService.generateProductDescription(productName.trim(), catalogId, keywords)
+            .handle((description, e) -> {
+                if (e == null) {
+                    return ResponseEntity.ok(ResponseWrapper.success(description, 
+                        "Tạo mô tả thành công"));
                 }
-            }
-            
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(ResponseWrapper.error(errorMessage));
-        }
+                
+                log.error("Error generating description for product: {}", productName, e);
+                
+                // Determine error type and return appropriate message
+                String errorMessage = "Không thể tạo mô tả. Vui lòng thử lại.";
+                if (e.getMessage() != null) {
+                    if (e.getMessage().contains("timeout") || e.getMessage().contains("Timeout")) {
+                        errorMessage = "AI đang quá tải, vui lòng thử lại";
+                    } else if (e.getMessage().contains("quota") || e.getMessage().contains("Quota")) {
+                        errorMessage = "Đã vượt giới hạn sử dụng AI hôm nay";
+                    } else if (e.getMessage().contains("network") || e.getMessage().contains("Network")) {
+                        errorMessage = "Không thể kết nối với AI";
+                    }
+                }
+                
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ResponseWrapper.<String>error(errorMessage));
+            });
     }
 }
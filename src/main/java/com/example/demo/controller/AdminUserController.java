@@ -2,6 +2,7 @@ package com.example.demo.controller;
 
 import com.example.demo.dto.CreateCustomerRequest;
 import com.example.demo.dto.CustomerDTO;
+import com.example.demo.dto.ExportJobDTO;
 import com.example.demo.dto.UpdateCustomerRequest;
 import com.example.demo.dto.address.AddressDto;
 import com.example.demo.dto.address.AddressUpsertDto;
@@ -21,7 +22,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
 import java.util.List;
@@ -36,6 +39,7 @@ public class AdminUserController {
     
     private final CustomerService customerService;
     private final com.example.demo.service.ExcelExportService excelExportService;
+    private final com.example.demo.service.ExportJobService exportJobService;
     private final AddressService addressService;
     
     /**
@@ -350,7 +354,7 @@ public class AdminUserController {
      */
     @Operation(summary = "Export customers to Excel", description = "Export filtered customer list to Excel file")
     @GetMapping("/export")
-    public ResponseEntity<byte[]> exportUsers(
+    public ResponseEntity<StreamingResponseBody> exportUsers(
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String type,
             @RequestParam(required = false) String segment,
@@ -358,22 +362,42 @@ public class AdminUserController {
             @RequestParam(required = false) String toDate,
             @RequestParam(required = false) String search
     ) {
+        // Rows are read through a cursor and written to the response as they come
+        StreamingResponseBody body = out -> excelExportService.exportUsers(out,
+                action -> customerService.forEachCustomerForExport(search, status, type, segment, fromDate, toDate, action));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users.xlsx");
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+    
+    /**
+     * Export customers to Excel in the background (see /admin/api/exports for status and download)
+     */
+    @Operation(summary = "Export customers to Excel asynchronously", description = "Queue an export job; progress is pushed to /topic/staff/notifications")
+    @PostMapping("/export/jobs")
+    public ResponseEntity<Map<String, Object>> submitUserExport(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String segment,
+            @RequestParam(required = false) String fromDate,
+            @RequestParam(required = false) String toDate,
+            @RequestParam(required = false) String search,
+            Authentication authentication
+    ) {
+        Map<String, Object> response = new HashMap<>();
         try {
-            java.util.List<com.example.demo.dto.CustomerDTO> list;
-            if (search != null && !search.isBlank()) {
-                list = customerService.searchCustomers(search.trim());
-            } else {
-                // get with filters then aggregate content
-                var page = customerService.getCustomersWithFilters(org.springframework.data.domain.PageRequest.of(0, Integer.MAX_VALUE), status, type, segment, fromDate, toDate);
-                list = page.getContent();
-            }
-            byte[] bytes = excelExportService.exportUsers(list);
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
-            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users.xlsx");
-            return ResponseEntity.ok().headers(headers).body(bytes);
-        } catch (Exception e) {
-            return ResponseEntity.status(org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR).body(new byte[0]);
+            ExportJobDTO job = exportJobService.submit("customers", "users.xlsx", authentication.getName(),
+                    (out, progress) -> excelExportService.exportUsers(out, progress.counting(
+                            action -> customerService.forEachCustomerForExport(search, status, type, segment, fromDate, toDate, action))));
+            response.put("success", true);
+            response.put("job", job);
+            response.put("message", "Đã tạo yêu cầu xuất file");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
         }
     }
 }
@@ -21,6 +21,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
 import java.util.List;
@@ -109,7 +110,7 @@ public class AdminVoucherController {
     })
     @SecurityRequirement(name = "bearerAuth")
     @GetMapping("/export")
-    public ResponseEntity<byte[]> exportVouchers(
+    public ResponseEntity<StreamingResponseBody> exportVouchers(
             @Parameter(description = "Filter by discount type") @RequestParam(required = false) String type,
             @Parameter(description = "Filter by status") @RequestParam(required = false) String status,
             @Parameter(description = "Filter from date") @RequestParam(required = false) String fromDate,
@@ -118,13 +119,14 @@ public class AdminVoucherController {
         try {
             var page = voucherService.getVouchersWithFilters(org.springframework.data.domain.PageRequest.of(0, Integer.MAX_VALUE), type, status, fromDate);
             java.util.List<com.example.demo.dto.VoucherDTO> list = page.getContent();
-            byte[] bytes = excelExportService.exportVouchers(list);
+            // Few rows: loaded up front, only the workbook is streamed
+            StreamingResponseBody body = out -> excelExportService.exportVouchers(out, list::forEach);
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
             headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=vouchers.xlsx");
-            return ResponseEntity.ok().headers(headers).body(bytes);
+            return ResponseEntity.ok().headers(headers).body(body);
         } catch (Exception e) {
-            return ResponseEntity.status(org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR).body(new byte[0]);
+            return ResponseEntity.status(org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
     
@@ -1,6 +1,7 @@
 package com.example.demo.controller;
 
 import com.example.demo.entity.User;
+import com.example.demo.entity.enums.UserRole;
 import com.example.demo.repository.FollowRepository;
 import com.example.demo.repository.UserRepository;
 import com.example.demo.service.CartService;
@@ -99,7 +100,11 @@ public class BaseController {
 
     @ModelAttribute("userRole")
     @Transactional(readOnly = true)
-    public String addUserRole(Authentication authentication) {
+    public String addUserRole(Authentication authentication, HttpServletRequest request) {
+        // Set by JwtAuthenticationFilter from the cached principal - no DB lookup needed
+        if (request.getAttribute("userRole") instanceof UserRole role) {
+            return role.name();
+        }
         if (authentication != null && authentication.isAuthenticated() && !authentication.getName().equals("anonymousUser")) {
             User user = userRepository.findByEmail(authentication.getName()).orElse(null);
             if (user != null) {
@@ -114,15 +119,11 @@ public class BaseController {
      */
     @ModelAttribute("cartCount")
     @Transactional(readOnly = true)
-    public Long addCartCount(Authentication authentication) {
+    public Long addCartCount(Authentication authentication, HttpServletRequest request) {
         try {
-            if (authentication != null && 
-                authentication.isAuthenticated() && 
-                !authentication.getName().equals("anonymousUser")) {
-                User user = userRepository.findByEmail(authentication.getName()).orElse(null);
-                if (user != null) {
-                    return cartService.getCartItemsCount(user.getId());
-                }
+            Long userId = getUserIdFromRequest(authentication, request);
+            if (userId != null) {
+                return cartService.getCartItemsCount(userId);
             }
         } catch (Exception e) {
             // Silently handle cart count error
@@ -134,15 +135,11 @@ public class BaseController {
      */
     @ModelAttribute("wishlistCount")
     @Transactional(readOnly = true)
-    public Long addWishlistCount(Authentication authentication) {
+    public Long addWishlistCount(Authentication authentication, HttpServletRequest request) {
         try {
-            if (authentication != null && 
-                authentication.isAuthenticated() && 
-                !authentication.getName().equals("anonymousUser")) {
-                User user = userRepository.findByEmail(authentication.getName()).orElse(null);
-                if (user != null) {
-                    return followRepository.countByUserId(user.getId());
-                }
+            Long userId = getUserIdFromRequest(authentication, request);
+            if (userId != null) {
+                return followRepository.countByUserId(userId);
             }
         } catch (Exception e) {
             // Silently handle wishlist count error
@@ -206,6 +203,17 @@ public class BaseController {
         return (Long) session.getAttribute("userId");
     }
     
+    /**
+     * Get user ID from the request attribute set by JwtAuthenticationFilter,
+     * falling back to a lookup by authentication name (form login / OAuth2 sessions)
+     */
+    protected Long getUserIdFromRequest(Authentication authentication, HttpServletRequest request) {
+        if (request.getAttribute("userId") instanceof Long userId) {
+            return userId;
+        }
+        return getUserIdFromAuthentication(authentication);
+    }
+    
     /**
      * Get user ID from authentication
      */
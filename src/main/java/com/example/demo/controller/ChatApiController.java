@@ -3,13 +3,17 @@ package com.example.demo.controller;
 import com.example.demo.dto.ChatMessageDTO;
 import com.example.demo.dto.ConversationDTO;
 import com.example.demo.dto.ResponseWrapper;
+import com.example.demo.security.RateLimitRule;
 import com.example.demo.service.ChatService;
+import com.example.demo.service.RateLimiterService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -35,6 +39,7 @@ import java.util.List;
 public class ChatApiController extends BaseController {
 
     private final ChatService chatService;
+    private final RateLimiterService rateLimiterService;
 
     /**
      * Start a new conversation (customer only)
@@ -167,7 +172,8 @@ public class ChatApiController extends BaseController {
     @Operation(summary = "Send message", description = "Send a message in a conversation")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Message sent successfully"),
-        @ApiResponse(responseCode = "400", description = "Failed to send message")
+        @ApiResponse(responseCode = "400", description = "Failed to send message"),
+        @ApiResponse(responseCode = "429", description = "Too many messages in this conversation")
     })
     @PostMapping("/messages")
     public ResponseEntity<ResponseWrapper<ChatMessageDTO>> sendMessage(
@@ -180,6 +186,17 @@ public class ChatApiController extends BaseController {
             }
             messageDTO.setSenderId(userId);
             
+            // Per-conversation limit (per-IP/user limits are applied by RateLimitInterceptor)
+            RateLimiterService.Decision decision = rateLimiterService.tryConsume(
+                RateLimitRule.CHAT_PER_CONVERSATION,
+                RateLimitRule.conversationKey(messageDTO.getConversationId(), userId));
+            if (!decision.allowed()) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()))
+                    .body(ResponseWrapper.error("Bạn gửi tin nhắn quá nhanh, vui lòng thử lại sau "
+                        + decision.retryAfterSeconds() + " giây"));
+            }
+            
             log.info("User {} sending message in conversation {}", userId, messageDTO.getConversationId());
             
             ChatMessageDTO sentMessage = chatService.sendMessage(messageDTO);
@@ -3,7 +3,9 @@ package com.example.demo.controller;
 import com.example.demo.dto.ChatMessageDTO;
 import com.example.demo.entity.User;
 import com.example.demo.repository.UserRepository;
+import com.example.demo.security.RateLimitRule;
 import com.example.demo.service.ChatService;
+import com.example.demo.service.RateLimiterService;
 import com.example.demo.service.WebSocketService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,6 +30,7 @@ public class ChatWebSocketController {
     private final ChatService chatService;
     private final WebSocketService webSocketService;
     private final UserRepository userRepository;
+    private final RateLimiterService rateLimiterService;
 
     /**
      * Handle sending chat messages via WebSocket
@@ -81,6 +84,13 @@ public class ChatWebSocketController {
                 throw new RuntimeException("SenderId is still null after attempting to set from authentication");
             }
             
+            // STOMP messages bypass the HTTP interceptors: apply per-user and per-conversation limits here
+            if (!checkRateLimit(RateLimitRule.CHAT_PER_USER, "user:" + message.getSenderId(), message.getSenderId())
+                    || !checkRateLimit(RateLimitRule.CHAT_PER_CONVERSATION,
+                        RateLimitRule.conversationKey(message.getConversationId(), message.getSenderId()), message.getSenderId())) {
+                return;
+            }
+            
             // Send message through chat service
             log.info("🚀 Calling chatService.sendMessage() at {}", System.currentTimeMillis());
             ChatMessageDTO sentMessage = chatService.sendMessage(message);
@@ -96,6 +106,19 @@ public class ChatWebSocketController {
         }
     }
 
+    /**
+     * Check a rate limit rule and tell the sender when the message is dropped
+     */
+    private boolean checkRateLimit(RateLimitRule rule, String key, Long senderId) {
+        RateLimiterService.Decision decision = rateLimiterService.tryConsume(rule, key);
+        if (!decision.allowed()) {
+            webSocketService.sendNotification(senderId,
+                "Bạn gửi tin nhắn quá nhanh, vui lòng thử lại sau " + decision.retryAfterSeconds() + " giây",
+                "rate_limited");
+        }
+        return decision.allowed();
+    }
+
     /**
      * Handle typing indicator
      * Endpoint: /app/chat.typing
@@ -157,17 +157,11 @@ public class PaymentController {
 				if (orderId != null && orderId.startsWith("ORDER-")) {
 					String orderIdString = parseOrderId(orderId);
 					try {
-						orderService.updateOrderStatus(orderIdString, OrderStatus.CANCELLED);
-						log.info("Order {} status updated to CANCELLED due to payment failure", orderIdString);
+						// Cancels only a still-PENDING order and releases its stock reservation
+						orderService.cancelOrderByPaymentFailure(orderIdString);
+						log.info("Order {} cancelled due to payment failure", orderIdString);
 					} catch (Exception e) {
-						log.error("Failed to update order {} status to CANCELLED: {}", orderIdString, e.getMessage());
-						// Fallback to direct repository access if service fails
-						Order order = orderRepository.findOrderWithAllDetails(orderIdString);
-						if (order != null) {
-							order.setStatus(OrderStatus.CANCELLED);
-							orderRepository.save(order);
-							log.info("Order {} status updated to CANCELLED via fallback", orderIdString);
-						}
+						log.error("Failed to cancel order {} after payment failure: {}", orderIdString, e.getMessage());
 					}
 				}
 				
@@ -271,17 +265,11 @@ public class PaymentController {
 				if (orderId != null && orderId.startsWith("ORDER-")) {
 					String orderIdString = parseOrderId(orderId);
 					try {
-						orderService.updateOrderStatus(orderIdString, OrderStatus.CANCELLED);
-						log.info("Order {} status updated to CANCELLED via notify due to payment failure", orderIdString);
+						// Cancels only a still-PENDING order and releases its stock reservation
+						orderService.cancelOrderByPaymentFailure(orderIdString);
+						log.info("Order {} cancelled via notify due to payment failure", orderIdString);
 					} catch (Exception e) {
-						log.error("Failed to update order {} status to CANCELLED via notify: {}", orderIdString, e.getMessage());
-						// Fallback to direct repository access if service fails
-						Order order = orderRepository.findOrderWithAllDetails(orderIdString);
-						if (order != null) {
-							order.setStatus(OrderStatus.CANCELLED);
-							orderRepository.save(order);
-							log.info("Order {} status updated to CANCELLED via fallback in notify", orderIdString);
-						}
+						log.error("Failed to cancel order {} via notify after payment failure: {}", orderIdString, e.getMessage());
 					}
 				}
 				
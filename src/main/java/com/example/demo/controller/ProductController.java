@@ -136,9 +136,9 @@ public class ProductController {
                 model.addAttribute("maxPrice", maxPrice);
             }
 
-            // Get products with rating information
+            // Get rating information for the products actually shown (no extra queries)
             Map<Long, ProductService.ProductWithRating> productsWithRatings = 
-                productService.getProductsWithRatings(sort, direction, pageable);
+                productService.getRatingsForProducts(productsPage.getContent());
 
             // Add model attributes
             model.addAttribute("productsPage", productsPage);
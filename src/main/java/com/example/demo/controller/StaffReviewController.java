@@ -9,6 +9,7 @@ import com.example.demo.entity.Review;
 import com.example.demo.entity.User;
 import com.example.demo.repository.UserRepository;
 import com.example.demo.service.AdminAiInsightsService;
+import com.example.demo.service.ExcelExportService;
 import com.example.demo.service.ReviewService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -18,8 +19,6 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -29,11 +28,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
-import java.io.ByteArrayOutputStream;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
 
 /**
  * Staff REST API Controller for Review Management
@@ -49,6 +46,7 @@ import java.util.List;
 public class StaffReviewController {
 
     private final ReviewService reviewService;
+    private final ExcelExportService excelExportService;
     private final UserRepository userRepository;
     private final AdminAiInsightsService adminAiInsightsService;
 
@@ -353,7 +351,7 @@ public class StaffReviewController {
         @ApiResponse(responseCode = "200", description = "Xuất file thành công"),
         @ApiResponse(responseCode = "403", description = "Không có quyền truy cập")
     })
-    public ResponseEntity<byte[]> exportReviews(
+    public ResponseEntity<StreamingResponseBody> exportReviews(
             @Parameter(description = "Lọc theo rating (1-5)", example = "5")
             @RequestParam(required = false) Integer rating,
             @Parameter(description = "Tìm kiếm theo tên sản phẩm hoặc người dùng", example = "hoa hồng")
@@ -366,120 +364,20 @@ public class StaffReviewController {
             @RequestParam(defaultValue = "newest") String sort,
             Authentication authentication) {
         
-        try {
-            log.info("Admin {} exporting reviews to Excel with filters: rating={}, search={}, sentiment={}, status={}, sort={}", 
-                    authentication.getName(), rating, search, sentiment, status, sort);
-            
-            // Get all reviews without pagination for export
-            Pageable pageable = PageRequest.of(0, Integer.MAX_VALUE);
-            Page<Review> reviewsPage = reviewService.getAllReviews(pageable, rating, search, sentiment, status, sort);
-            List<Review> reviews = reviewsPage.getContent();
-            
-            // Create Excel workbook
-            Workbook workbook = new XSSFWorkbook();
-            Sheet sheet = workbook.createSheet("Đánh giá");
-            
-            // Create header style
-            CellStyle headerStyle = workbook.createCellStyle();
-            Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
-            headerFont.setFontHeightInPoints((short) 12);
-            headerStyle.setFont(headerFont);
-            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-            headerStyle.setBorderBottom(BorderStyle.THIN);
-            headerStyle.setBorderTop(BorderStyle.THIN);
-            headerStyle.setBorderLeft(BorderStyle.THIN);
-            headerStyle.setBorderRight(BorderStyle.THIN);
-            
-            // Create data style
-            CellStyle dataStyle = workbook.createCellStyle();
-            dataStyle.setBorderBottom(BorderStyle.THIN);
-            dataStyle.setBorderTop(BorderStyle.THIN);
-            dataStyle.setBorderLeft(BorderStyle.THIN);
-            dataStyle.setBorderRight(BorderStyle.THIN);
-            dataStyle.setWrapText(true);
-            
-            // Create header row
-            Row headerRow = sheet.createRow(0);
-            String[] columns = {"ID", "Sản phẩm", "Khách hàng", "Đánh giá", "Bình luận", "Sentiment", "Phản hồi Admin", "Ngày tạo"};
-            for (int i = 0; i < columns.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(columns[i]);
-                cell.setCellStyle(headerStyle);
-            }
-            
-            // Fill data rows
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-            int rowNum = 1;
-            for (Review review : reviews) {
-                Row row = sheet.createRow(rowNum++);
-                
-                Cell cell0 = row.createCell(0);
-                cell0.setCellValue(review.getId());
-                cell0.setCellStyle(dataStyle);
-                
-                Cell cell1 = row.createCell(1);
-                cell1.setCellValue(review.getProduct() != null ? review.getProduct().getName() : "N/A");
-                cell1.setCellStyle(dataStyle);
-                
-                Cell cell2 = row.createCell(2);
-                cell2.setCellValue(review.getUser() != null ? 
-                    review.getUser().getFirstname() + " " + review.getUser().getLastname() : "N/A");
-                cell2.setCellStyle(dataStyle);
-                
-                Cell cell3 = row.createCell(3);
-                cell3.setCellValue(review.getRating() + " ⭐");
-                cell3.setCellStyle(dataStyle);
-                
-                Cell cell4 = row.createCell(4);
-                cell4.setCellValue(review.getComment() != null ? review.getComment() : "");
-                cell4.setCellStyle(dataStyle);
-                
-                Cell cell5 = row.createCell(5);
-                cell5.setCellValue(review.getSentiment() != null ? review.getSentiment() : "");
-                cell5.setCellStyle(dataStyle);
-                
-                Cell cell6 = row.createCell(6);
-                cell6.setCellValue(review.getAdminResponse() != null ? review.getAdminResponse() : "");
-                cell6.setCellStyle(dataStyle);
-                
-                Cell cell7 = row.createCell(7);
-                cell7.setCellValue(review.getCreatedAt() != null ? review.getCreatedAt().format(formatter) : "");
-                cell7.setCellStyle(dataStyle);
-            }
-            
-            // Auto-size columns
-            for (int i = 0; i < columns.length; i++) {
-                sheet.autoSizeColumn(i);
-                // Set max width to avoid too wide columns
-                if (sheet.getColumnWidth(i) > 15000) {
-                    sheet.setColumnWidth(i, 15000);
-                }
-            }
-            
-            // Write to byte array
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            workbook.write(outputStream);
-            workbook.close();
-            
-            byte[] excelBytes = outputStream.toByteArray();
-            
-            // Set headers for file download
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "danh-gia-" + System.currentTimeMillis() + ".xlsx");
-            headers.setContentLength(excelBytes.length);
-            
-            log.info("Excel file exported successfully with {} reviews", reviews.size());
-            return ResponseEntity.ok()
-                .headers(headers)
-                .body(excelBytes);
-            
-        } catch (Exception e) {
-            log.error("Error exporting reviews to Excel: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().build();
-        }
+        log.info("Admin {} exporting reviews to Excel with filters: rating={}, search={}, sentiment={}, status={}, sort={}", 
+                authentication.getName(), rating, search, sentiment, status, sort);
+        
+        // Rows are read through a cursor and written to the response as they come
+        StreamingResponseBody body = out -> excelExportService.exportReviews(out,
+                action -> reviewService.forEachReviewForExport(rating, search, sentiment, status, sort, action));
+        
+        // Set headers for file download
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDispositionFormData("attachment", "danh-gia-" + System.currentTimeMillis() + ".xlsx");
+        return ResponseEntity.ok()
+            .headers(headers)
+            .body(body);
     }
 
     /**
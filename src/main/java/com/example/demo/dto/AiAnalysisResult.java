@@ -1,6 +1,7 @@
 package com.example.demo.dto;
 
 import com.example.demo.entity.enums.IntentType;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
@@ -38,6 +39,10 @@ public class AiAnalysisResult {
     @JsonProperty("product_suggestions")
     private List<ProductSuggestion> productSuggestions = new ArrayList<>();
 
+    // Key under which the final reply may be cached (see AiResponseCache); set by RoutingService
+    @JsonIgnore
+    private String responseCacheKey;
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -0,0 +1,17 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One message of a conversation as the AI sees it (see ConversationHistoryCache)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationTurnDTO {
+    private Long messageId;
+    private String senderName;
+    private String content;
+}
@@ -22,10 +22,11 @@ public class CustomerDTO {
     private Boolean isActive;
     private LocalDateTime lastLogin;
     private LocalDateTime createdAt;
+    private String segment;
     
     // Statistics
     private Long totalOrders;
-    private BigDecimal totalSpent;
+    private BigDecimal totalSpent; // completed and received orders only
     private LocalDateTime lastOrderDate;
     private Long totalReviews;
     
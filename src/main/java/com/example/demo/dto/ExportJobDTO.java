@@ -0,0 +1,30 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Snapshot of an asynchronous Excel export (see ExportJobService)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportJobDTO {
+    private String id;
+    private String type;            // orders, products, customers, employees, reviews
+    private String status;          // QUEUED, RUNNING, COMPLETED, FAILED
+    private long rowsWritten;
+    private String fileName;
+    private Long fileSize;          // bytes, once completed
+    private String downloadUrl;     // once completed
+    private String error;
+    private String requestedBy;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
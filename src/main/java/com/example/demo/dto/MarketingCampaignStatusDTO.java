@@ -0,0 +1,30 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a queued marketing campaign (see MarketingCampaignService)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MarketingCampaignStatusDTO {
+    private Long id;
+    private String name;
+    private String segment;
+    private String voucherCode;
+    private String status;          // SENDING, COMPLETED
+    private int totalCount;
+    private int sentCount;
+    private int failedCount;
+    private int pendingCount;       // queued or waiting for a retry
+    private String createdBy;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+}
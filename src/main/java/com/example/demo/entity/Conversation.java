@@ -42,6 +42,17 @@ public class Conversation extends BaseEntity {
     @Column(columnDefinition = "TEXT")
     private String notes;
 
+    // Rolling AI summary, written only by ConversationRepository.updateHistorySummary
+    // (read-only here so saving a stale Conversation cannot roll it back)
+    @Column(name = "history_summary", columnDefinition = "TEXT", insertable = false, updatable = false)
+    private String historySummary;
+
+    @Column(name = "summary_message_id", insertable = false, updatable = false)
+    private Long summaryMessageId;
+
+    @Column(name = "summary_updated_at", insertable = false, updatable = false)
+    private LocalDateTime summaryUpdatedAt;
+
     // Constructors
     public Conversation() {
     }
@@ -143,5 +154,17 @@ public class Conversation extends BaseEntity {
     public void setNotes(String notes) {
         this.notes = notes;
     }
+
+    public String getHistorySummary() {
+        return historySummary;
+    }
+
+    public Long getSummaryMessageId() {
+        return summaryMessageId;
+    }
+
+    public LocalDateTime getSummaryUpdatedAt() {
+        return summaryUpdatedAt;
+    }
 }
 
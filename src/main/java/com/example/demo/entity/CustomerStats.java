@@ -0,0 +1,48 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Per-customer order/review aggregates (customer_stats)
+ * Maintained by database triggers on Orders and Reviews (docker/init/14_customer_stats.sql),
+ * never written by the application. Customers without orders or reviews have no row.
+ */
+@Entity
+@Table(name = "customer_stats")
+@Immutable
+@Getter
+@NoArgsConstructor
+public class CustomerStats {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "orders_count", nullable = false)
+    private Integer ordersCount = 0;
+
+    @Column(name = "completed_orders_count", nullable = false)
+    private Integer completedOrdersCount = 0;
+
+    // Sum over COMPLETED and RECEIVED orders (RECEIVED follows COMPLETED)
+    @Column(name = "total_spent", nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalSpent = BigDecimal.ZERO;
+
+    @Column(name = "first_order_at")
+    private LocalDateTime firstOrderAt;
+
+    @Column(name = "last_order_at")
+    private LocalDateTime lastOrderAt;
+
+    @Column(name = "reviews_count", nullable = false)
+    private Integer reviewsCount = 0;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -2,11 +2,13 @@ package com.example.demo.entity;
 
 import com.example.demo.entity.enums.MessageType;
 import com.example.demo.entity.enums.MessageTypeConverter;
+import com.example.demo.service.ConversationHistoryCache;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "Messages")
+@EntityListeners(ConversationHistoryCache.MessageListener.class)
 public class Message extends BaseEntity {
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -7,8 +7,11 @@ import java.math.BigDecimal;
 @Table(name = "OrderItems")
 public class OrderItem {
 
+    // Pooled-lo sequence (see docker/init/13_order_item_id_pool.sql): ids are known before the
+    // INSERT, so Hibernate can batch the items of an order instead of one round trip per item
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_item_id_seq")
+    @SequenceGenerator(name = "order_item_id_seq", sequenceName = "orderitems_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -47,6 +47,16 @@ public class Product extends BaseEntity {
     @JoinColumn(name = "catalog_id")
     private Catalog catalog;
 
+    // Denormalized rating summary - maintained only by ProductRepository.adjustRatingSummary
+    // (never written by entity saves, so concurrent stock updates cannot overwrite it)
+    @Column(name = "rating_count", insertable = false, updatable = false,
+            columnDefinition = "INTEGER NOT NULL DEFAULT 0")
+    private Integer ratingCount = 0;
+
+    @Column(name = "rating_sum", insertable = false, updatable = false,
+            columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long ratingSum = 0L;
+
     // Relationships
 
     @JsonIgnore
@@ -92,6 +102,16 @@ public class Product extends BaseEntity {
                 .orElse(0.0);
     }
 
+    /**
+     * Average rating from the denormalized summary (no review loading)
+     */
+    public Double getRatingAverage() {
+        if (ratingCount == null || ratingCount == 0 || ratingSum == null) {
+            return 0.0;
+        }
+        return (double) ratingSum / ratingCount;
+    }
+
     public boolean isInStock() {
         return stockQuantity != null && stockQuantity > 0;
     }
@@ -153,6 +173,14 @@ public class Product extends BaseEntity {
         this.catalog = catalog;
     }
 
+    public Integer getRatingCount() {
+        return ratingCount;
+    }
+
+    public Long getRatingSum() {
+        return ratingSum;
+    }
+
     public List<OrderItem> getOrderItems() {
         return orderItems;
     }
@@ -50,6 +50,9 @@ public class RoutingDecision extends BaseEntity {
     @Column(name = "processing_time_ms")
     private Integer processingTimeMs;
 
+    @Column(name = "decided_by", nullable = false, length = 20)
+    private String decidedBy = "GEMINI"; // GEMINI, LOCAL (IntentPreClassifier) or CACHE (AiResponseCache)
+
     // Constructors
     public RoutingDecision() {
     }
@@ -140,5 +143,13 @@ public class RoutingDecision extends BaseEntity {
     public void setProcessingTimeMs(Integer processingTimeMs) {
         this.processingTimeMs = processingTimeMs;
     }
+
+    public String getDecidedBy() {
+        return decidedBy;
+    }
+
+    public void setDecidedBy(String decidedBy) {
+        this.decidedBy = decidedBy;
+    }
 }
 
@@ -5,10 +5,12 @@ import com.example.demo.entity.enums.ConversationStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -124,5 +126,20 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
     List<Conversation> findIdleConversations(
         @Param("status") ConversationStatus status,
         @Param("before") LocalDateTime before);
+    
+    /**
+     * Store a new rolling summary covering messages up to upToMessageId.
+     * Ignored if the stored summary already reaches that far, so an older run cannot overwrite a newer one.
+     * @return 1 if stored
+     */
+    @RestResource(exported = false)
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE Conversations SET history_summary = :summary, summary_message_id = :upToMessageId, " +
+           "summary_updated_at = CURRENT_TIMESTAMP " +
+           "WHERE id = :conversationId AND (summary_message_id IS NULL OR summary_message_id < :upToMessageId)",
+           nativeQuery = true)
+    int updateHistorySummary(@Param("conversationId") Long conversationId,
+                             @Param("summary") String summary,
+                             @Param("upToMessageId") Long upToMessageId);
 }
-
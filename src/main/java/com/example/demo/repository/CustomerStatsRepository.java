@@ -0,0 +1,110 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.CustomerStats;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Customer list queries on the customer_stats projection
+ * Every filter is optional (null = not applied); CustomerService turns the admin filters
+ * into these bounds. Pages sort by User properties or by the stats aliases totalOrders,
+ * totalSpent, lastOrderDate and totalReviews.
+ */
+@Repository
+@RepositoryRestResource(exported = false)
+public interface CustomerStatsRepository extends JpaRepository<CustomerStats, Long> {
+
+    String CUSTOMER_FILTER =
+        "FROM User u LEFT JOIN CustomerStats s ON s.userId = u.id " +
+        "WHERE u.role = 'CUSTOMER' " +
+        "AND (:active IS NULL OR u.isActive = :active) " +
+        "AND (:keyword IS NULL OR u.firstname LIKE CONCAT('%', :keyword, '%') " +
+        "     OR u.lastname LIKE CONCAT('%', :keyword, '%') OR u.email LIKE CONCAT('%', :keyword, '%')) " +
+        "AND (:createdFrom IS NULL OR u.createdAt >= :createdFrom) " +
+        "AND (:createdBefore IS NULL OR u.createdAt < :createdBefore) " +
+        "AND (:minSpent IS NULL OR (s.totalSpent > :minSpent AND s.completedOrdersCount >= :minCompletedOrders)) " +
+        "AND (:moreOrdersThan IS NULL OR s.ordersCount > :moreOrdersThan) " +
+        "AND (:recentSince IS NULL OR u.createdAt > :recentSince OR s.firstOrderAt > :recentSince) " +
+        "AND (:lastOrderBefore IS NULL OR s.lastOrderAt < :lastOrderBefore) " +
+        "AND (:idleSince IS NULL OR s.lastOrderAt IS NULL OR s.lastOrderAt < :idleSince)";
+
+    /**
+     * One page of customers with their stats
+     * @return Rows of [User, totalOrders, totalSpent, lastOrderDate, totalReviews]
+     */
+    @Query(value = "SELECT u, COALESCE(s.ordersCount, 0) AS totalOrders, COALESCE(s.totalSpent, 0) AS totalSpent, " +
+                   "s.lastOrderAt AS lastOrderDate, COALESCE(s.reviewsCount, 0) AS totalReviews " + CUSTOMER_FILTER,
+           countQuery = "SELECT COUNT(u) " + CUSTOMER_FILTER)
+    Page<Object[]> findCustomers(@Param("active") Boolean active,
+                                 @Param("keyword") String keyword,
+                                 @Param("createdFrom") LocalDateTime createdFrom,
+                                 @Param("createdBefore") LocalDateTime createdBefore,
+                                 @Param("minSpent") BigDecimal minSpent,
+                                 @Param("minCompletedOrders") Integer minCompletedOrders,
+                                 @Param("moreOrdersThan") Integer moreOrdersThan,
+                                 @Param("recentSince") LocalDateTime recentSince,
+                                 @Param("lastOrderBefore") LocalDateTime lastOrderBefore,
+                                 @Param("idleSince") LocalDateTime idleSince,
+                                 Pageable pageable);
+
+    /**
+     * Same rows as findCustomers, read through a cursor for the Excel export (see ExportCursor)
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT u, COALESCE(s.ordersCount, 0) AS totalOrders, COALESCE(s.totalSpent, 0) AS totalSpent, " +
+           "s.lastOrderAt AS lastOrderDate, COALESCE(s.reviewsCount, 0) AS totalReviews " + CUSTOMER_FILTER)
+    Stream<Object[]> streamCustomers(@Param("active") Boolean active,
+                                     @Param("keyword") String keyword,
+                                     @Param("createdFrom") LocalDateTime createdFrom,
+                                     @Param("createdBefore") LocalDateTime createdBefore,
+                                     @Param("minSpent") BigDecimal minSpent,
+                                     @Param("minCompletedOrders") Integer minCompletedOrders,
+                                     @Param("moreOrdersThan") Integer moreOrdersThan,
+                                     @Param("recentSince") LocalDateTime recentSince,
+                                     @Param("lastOrderBefore") LocalDateTime lastOrderBefore,
+                                     @Param("idleSince") LocalDateTime idleSince,
+                                     Sort sort);
+
+    /**
+     * Admin dashboard counters in one pass
+     * @return [total, loyal (more than loyalOrders orders), total spent, new since monthStart]
+     */
+    @Query("SELECT COUNT(u), " +
+           "SUM(CASE WHEN s.ordersCount > :loyalOrders THEN 1 ELSE 0 END), " +
+           "COALESCE(SUM(s.totalSpent), 0), " +
+           "SUM(CASE WHEN u.createdAt > :monthStart THEN 1 ELSE 0 END) " +
+           "FROM User u LEFT JOIN CustomerStats s ON s.userId = u.id WHERE u.role = 'CUSTOMER'")
+    List<Object[]> getCustomerTotals(@Param("loyalOrders") int loyalOrders,
+                                     @Param("monthStart") LocalDateTime monthStart);
+
+    /**
+     * Segment counters in one pass (same rules as the segment filter of findCustomers)
+     * @return [vip, new, atRisk]
+     */
+    @Query("SELECT " +
+           "SUM(CASE WHEN s.totalSpent > :vipSpent AND s.completedOrdersCount >= :vipOrders THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN u.createdAt > :recentSince OR s.firstOrderAt > :recentSince THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN s.lastOrderAt < :lastOrderBefore THEN 1 ELSE 0 END) " +
+           "FROM User u LEFT JOIN CustomerStats s ON s.userId = u.id WHERE u.role = 'CUSTOMER'")
+    List<Object[]> getSegmentCounts(@Param("vipSpent") BigDecimal vipSpent,
+                                    @Param("vipOrders") int vipOrders,
+                                    @Param("recentSince") LocalDateTime recentSince,
+                                    @Param("lastOrderBefore") LocalDateTime lastOrderBefore);
+}
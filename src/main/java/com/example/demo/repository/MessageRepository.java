@@ -1,5 +1,6 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.ConversationTurnDTO;
 import com.example.demo.entity.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -7,6 +8,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -44,6 +46,27 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId ORDER BY m.sentAt DESC, m.id DESC")
     List<Message> findLastMessageByConversationId(@Param("conversationId") Long conversationId, Pageable pageable);
     
+    /**
+     * Last messages of a conversation, newest first, with only what the AI prompt needs.
+     * Reads the page straight off idx_messages_conversation_recent; no Message or User entity is loaded.
+     */
+    @RestResource(exported = false)
+    @Query("SELECT new com.example.demo.dto.ConversationTurnDTO(m.id, CONCAT(s.firstname, ' ', s.lastname), m.content) " +
+           "FROM Message m JOIN m.sender s WHERE m.conversationId = :conversationId ORDER BY m.sentAt DESC, m.id DESC")
+    List<ConversationTurnDTO> findRecentTurns(@Param("conversationId") Long conversationId, Pageable pageable);
+    
+    /**
+     * Messages with afterId < id < beforeId, oldest first, for the rolling summary (see ConversationSummaryService)
+     */
+    @RestResource(exported = false)
+    @Query("SELECT new com.example.demo.dto.ConversationTurnDTO(m.id, CONCAT(s.firstname, ' ', s.lastname), m.content) " +
+           "FROM Message m JOIN m.sender s WHERE m.conversationId = :conversationId " +
+           "AND m.id > :afterId AND m.id < :beforeId ORDER BY m.sentAt ASC, m.id ASC")
+    List<ConversationTurnDTO> findTurnsBetween(@Param("conversationId") Long conversationId,
+                                               @Param("afterId") Long afterId,
+                                               @Param("beforeId") Long beforeId,
+                                               Pageable pageable);
+    
     @Modifying
     @Query("UPDATE Message m SET m.isRead = true WHERE m.conversationId = :conversationId AND m.receiver.id = :receiverId")
     void markConversationMessagesAsRead(@Param("conversationId") Long conversationId, @Param("receiverId") Long receiverId);
@@ -2,10 +2,15 @@ package com.example.demo.repository;
 
 import com.example.demo.entity.Order;
 import com.example.demo.entity.enums.OrderStatus;
+import com.example.demo.entity.enums.PaymentMethod;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
@@ -13,6 +18,7 @@ import org.springframework.stereotype.Repository;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, String> {
@@ -152,4 +158,54 @@ public interface OrderRepository extends JpaRepository<Order, String> {
     
     @Query("SELECT MIN(o.orderDate) FROM Order o WHERE o.user.id = :userId")
     LocalDateTime getFirstOrderDateByUser(@Param("userId") Long userId);
+
+    // Stock reservation
+    /**
+     * Change status only if the order is still in the expected one
+     * @return 1 if this call made the transition, 0 if another caller got there first
+     */
+    @RestResource(exported = false)
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :newStatus, o.updatedAt = LOCAL DATETIME " +
+           "WHERE o.id = :orderId AND o.status = :expectedStatus")
+    int transitionStatus(@Param("orderId") String orderId,
+                         @Param("expectedStatus") OrderStatus expectedStatus,
+                         @Param("newStatus") OrderStatus newStatus);
+
+    /**
+     * Orders still waiting for payment that were placed before the given time
+     */
+    @RestResource(exported = false)
+    @Query("SELECT o.id FROM Order o WHERE o.status = :status AND o.paymentMethod = :paymentMethod " +
+           "AND o.orderDate < :before")
+    List<String> findIdsByStatusAndPaymentMethodBefore(@Param("status") OrderStatus status,
+                                                       @Param("paymentMethod") PaymentMethod paymentMethod,
+                                                       @Param("before") LocalDateTime before);
+
+    // Excel export
+    /**
+     * Orders for the Excel export, read through a cursor (see ExportCursor)
+     * Each filter is optional; user, address and voucher are fetched with the order.
+     */
+    @RestResource(exported = false)
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT o FROM Order o " +
+           "LEFT JOIN FETCH o.user u " +
+           "LEFT JOIN FETCH o.address " +
+           "LEFT JOIN FETCH o.voucher " +
+           "WHERE (:status IS NULL OR o.status = :status) " +
+           "AND (:startDate IS NULL OR o.orderDate >= :startDate) " +
+           "AND (:endDate IS NULL OR o.orderDate <= :endDate) " +
+           "AND (:searchTerm IS NULL OR " +
+           "     CAST(o.id AS string) LIKE CONCAT('%', :searchTerm, '%') OR " +
+           "     LOWER(CONCAT(u.firstname, ' ', u.lastname)) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
+           "     LOWER(u.email) LIKE LOWER(CONCAT('%', :searchTerm, '%'))) " +
+           "ORDER BY o.orderDate DESC")
+    Stream<Order> streamForExport(@Param("status") OrderStatus status,
+                                  @Param("startDate") LocalDateTime startDate,
+                                  @Param("endDate") LocalDateTime endDate,
+                                  @Param("searchTerm") String searchTerm);
 }
@@ -3,10 +3,14 @@ package com.example.demo.repository;
 import com.example.demo.entity.Product;
 import com.example.demo.entity.enums.ProductStatus;
 import com.example.demo.dto.ProductDetailDTO;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
@@ -14,6 +18,7 @@ import org.springframework.stereotype.Repository;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
@@ -38,6 +43,32 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
            "LOWER(c.value) LIKE LOWER(CONCAT('%', :keyword, '%'))")
     Page<Product> searchProductsForAi(@Param("keyword") String keyword, Pageable pageable);
 
+    /**
+     * Text fields for the in-memory search index: id, name, description, catalog id, catalog value
+     */
+    @Query("SELECT p.id, p.name, p.description, c.id, c.value FROM Product p LEFT JOIN p.catalog c")
+    List<Object[]> findSearchDocuments();
+
+    Page<Product> findByIdIn(java.util.Collection<Long> ids, Pageable pageable);
+
+    /**
+     * Atomically take stock: only succeeds while enough is left
+     * @return 1 if the stock was decremented, 0 if not enough stock (or unknown product)
+     */
+    @RestResource(exported = false)
+    @Modifying
+    @Query("UPDATE Product p SET p.stockQuantity = p.stockQuantity - :quantity " +
+           "WHERE p.id = :productId AND p.stockQuantity >= :quantity")
+    int decrementStock(@Param("productId") Long productId, @Param("quantity") int quantity);
+
+    /**
+     * Atomically give stock back (cancelled or expired orders)
+     */
+    @RestResource(exported = false)
+    @Modifying
+    @Query("UPDATE Product p SET p.stockQuantity = p.stockQuantity + :quantity WHERE p.id = :productId")
+    int incrementStock(@Param("productId") Long productId, @Param("quantity") int quantity);
+
     // Combined filter: Catalog ID AND Search keyword
        @Query("SELECT p FROM Product p WHERE " +
                      "(:catalogId IS NULL OR p.catalog.id = :catalogId) AND " +
@@ -72,6 +103,32 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     
     // Admin methods
     Page<Product> findByStatus(ProductStatus status, Pageable pageable);
+
+    /**
+     * Products for the Excel export, read through a cursor (see ExportCursor)
+     * Both filters are optional; keyword is the SQL LIKE search used while the search index builds.
+     */
+    @RestResource(exported = false)
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.catalog c " +
+           "WHERE (:status IS NULL OR p.status = :status) " +
+           "AND (:keyword IS NULL OR " +
+           "     LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+           "     LOWER(p.description) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+           "     LOWER(c.value) LIKE LOWER(CONCAT('%', :keyword, '%'))) " +
+           "ORDER BY p.id")
+    Stream<Product> streamForExport(@Param("status") ProductStatus status, @Param("keyword") String keyword);
+
+    /**
+     * Products with their catalog, for exporting search results chunk by chunk
+     */
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.catalog WHERE p.id IN :ids")
+    List<Product> findWithCatalogByIdIn(@Param("ids") java.util.Collection<Long> ids);
     
     @Query("SELECT COUNT(p) FROM Product p WHERE p.status = :status")
     long countByStatus(@Param("status") ProductStatus status);
@@ -97,6 +154,28 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     @Query("SELECT COUNT(r) FROM Review r WHERE r.product.id = :productId")
     Long getReviewCountByProductId(@Param("productId") Long productId);
     
+    /**
+     * Atomically apply a delta to the denormalized rating summary of a product
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.ratingCount = p.ratingCount + :countDelta, " +
+           "p.ratingSum = p.ratingSum + :sumDelta WHERE p.id = :productId")
+    int adjustRatingSummary(@Param("productId") Long productId,
+                            @Param("countDelta") int countDelta,
+                            @Param("sumDelta") long sumDelta);
+    
+    /**
+     * Recompute rating summaries from Reviews in one set-based statement,
+     * touching only rows that drifted
+     */
+    @Modifying
+    @Query(value = "UPDATE products p SET rating_count = s.cnt, rating_sum = s.total " +
+           "FROM (SELECT p2.id AS product_id, COUNT(r.id) AS cnt, COALESCE(SUM(r.rating), 0) AS total " +
+           "      FROM products p2 LEFT JOIN reviews r ON r.product_id = p2.id GROUP BY p2.id) s " +
+           "WHERE p.id = s.product_id AND (p.rating_count <> s.cnt OR p.rating_sum <> s.total)",
+           nativeQuery = true)
+    int reconcileRatingSummaries();
+    
     // AI Insights queries
     @Query("SELECT p FROM Product p WHERE p.stockQuantity < :threshold ORDER BY p.stockQuantity ASC")
     List<Product> findLowStockProducts(@Param("threshold") Integer threshold);
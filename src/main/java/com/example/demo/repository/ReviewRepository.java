@@ -1,15 +1,21 @@
 package com.example.demo.repository;
 
 import com.example.demo.entity.Review;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ReviewRepository extends JpaRepository<Review, Long> {
@@ -140,6 +146,32 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
                                      @Param("status") String status,
                                      Pageable pageable);
 
+    /**
+     * Same filters as findAllWithFilters, read through a cursor for the Excel export (see ExportCursor)
+     */
+    @RestResource(exported = false)
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT r FROM Review r " +
+           "LEFT JOIN FETCH r.user u " +
+           "LEFT JOIN FETCH r.product p " +
+           "WHERE (:rating IS NULL OR r.rating = :rating) " +
+           "AND (:search IS NULL OR :search = '' OR " +
+           "     LOWER(p.name) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
+           "     LOWER(u.firstname) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
+           "     LOWER(u.lastname) LIKE LOWER(CONCAT('%', :search, '%'))) " +
+           "AND (:sentiment IS NULL OR :sentiment = '' OR r.sentiment = :sentiment) " +
+           "AND (:status IS NULL OR :status = '' OR " +
+           "     (:status = 'verified' AND r.orderItem IS NOT NULL) OR " +
+           "     (:status = 'unverified' AND r.orderItem IS NULL))")
+    Stream<Review> streamForExport(@Param("rating") Integer rating,
+                                   @Param("search") String search,
+                                   @Param("sentiment") String sentiment,
+                                   @Param("status") String status,
+                                   Sort sort);
+
     /**
      * Find reviews by order ID through order items
      */
@@ -74,6 +74,17 @@ public interface RoutingDecisionRepository extends JpaRepository<RoutingDecision
     @Query("SELECT rd.handoffReason, COUNT(rd) FROM RoutingDecision rd WHERE rd.needHandoff = true AND rd.createdAt BETWEEN :startDate AND :endDate GROUP BY rd.handoffReason ORDER BY COUNT(rd) DESC")
     List<Object[]> getHandoffReasonDistribution(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
 
+    /**
+     * Count messages of a conversation that can give a later message another meaning: everything
+     * not written by the AI, minus customer messages answered locally or from the reply cache
+     * (decided_by LOCAL or CACHE without handoff), whose replies are the same in any conversation
+     */
+    @Query(value = "SELECT (SELECT COUNT(*) FROM Messages m WHERE m.conversation_id = :conversationId " +
+           "AND m.is_ai_generated IS NOT TRUE) - " +
+           "(SELECT COUNT(*) FROM routing_decisions rd WHERE rd.conversation_id = :conversationId " +
+           "AND rd.decided_by IN ('LOCAL', 'CACHE') AND rd.need_handoff = FALSE)", nativeQuery = true)
+    long countContextMessages(@Param("conversationId") Long conversationId);
+
     /**
      * Get recent routing decisions
      */
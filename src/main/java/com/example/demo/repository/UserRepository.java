@@ -3,17 +3,42 @@ package com.example.demo.repository;
 import com.example.demo.entity.User;
 import com.example.demo.entity.enums.UserRole;
 import com.example.demo.dto.UserProfileDTO;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     
+    /**
+     * Set-based segmentation from customer_stats (rules of CustomerSegmentationService),
+     * writing only customers whose segment changed; callers append the customers to evaluate
+     */
+    String SEGMENT_UPDATE =
+        "UPDATE users u SET customer_segment = c.segment, customer_segment_updated_at = :now " +
+        "FROM (SELECT u2.id, CASE " +
+        "        WHEN s.total_spent > :vipSpent AND s.orders_count >= :vipOrders THEN 'VIP' " +
+        "        WHEN s.last_order_at <= :atRiskBefore THEN 'AT_RISK' " +
+        "        WHEN u2.created_at > :newSince OR s.first_order_at > :newSince THEN 'NEW' " +
+        "      END AS segment " +
+        "      FROM users u2 LEFT JOIN customer_stats s ON s.user_id = u2.id " +
+        "      WHERE u2.role = 'CUSTOMER' ";
+    String SEGMENT_UPDATE_END = ") c WHERE u.id = c.id AND u.customer_segment IS DISTINCT FROM c.segment";
+    
     Optional<User> findByEmail(String email);
     
     Optional<User> findByPhone(String phone);
@@ -27,6 +52,23 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @Query("SELECT u FROM User u WHERE u.firstname LIKE %:keyword% OR u.lastname LIKE %:keyword% OR u.email LIKE %:keyword%")
     List<User> searchUsers(@Param("keyword") String keyword);
     
+    /**
+     * Employees for the Excel export, read through a cursor (see ExportCursor); filters are optional
+     */
+    @RestResource(exported = false)
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT u FROM User u WHERE u.role IN :roles " +
+           "AND (:active IS NULL OR u.isActive = :active) " +
+           "AND (:keyword IS NULL OR u.firstname LIKE CONCAT('%', :keyword, '%') " +
+           "     OR u.lastname LIKE CONCAT('%', :keyword, '%') OR u.email LIKE CONCAT('%', :keyword, '%')) " +
+           "ORDER BY u.id")
+    Stream<User> streamEmployeesForExport(@Param("roles") java.util.Collection<UserRole> roles,
+                                          @Param("active") Boolean active,
+                                          @Param("keyword") String keyword);
+    
     @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.addresses WHERE u.firstname LIKE %:keyword% OR u.lastname LIKE %:keyword% OR u.email LIKE %:keyword%")
     List<User> searchUsersWithAddresses(@Param("keyword") String keyword);
     
@@ -59,4 +101,54 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.orders WHERE u.role = :role")
     List<User> findByRoleWithOrders(@Param("role") UserRole role);
+    
+    @Query(value = "SELECT MAX(id) FROM users WHERE role = 'CUSTOMER'", nativeQuery = true)
+    Long findMaxCustomerId();
+    
+    long countByRole(UserRole role);
+    
+    /**
+     * Segment customers with fromId < id <= toId (one chunk of a full run, own transaction)
+     */
+    @RestResource(exported = false)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query(value = SEGMENT_UPDATE + "AND u2.id > :fromId AND u2.id <= :toId" + SEGMENT_UPDATE_END, nativeQuery = true)
+    int refreshSegmentsInRange(@Param("fromId") long fromId, @Param("toId") long toId,
+                               @Param("vipSpent") BigDecimal vipSpent, @Param("vipOrders") int vipOrders,
+                               @Param("atRiskBefore") LocalDateTime atRiskBefore,
+                               @Param("newSince") LocalDateTime newSince,
+                               @Param("now") LocalDateTime now);
+    
+    /**
+     * Segment one customer after an order event (own transaction, runs after the order commits)
+     */
+    @RestResource(exported = false)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query(value = SEGMENT_UPDATE + "AND u2.id = :userId" + SEGMENT_UPDATE_END, nativeQuery = true)
+    int refreshSegmentForUser(@Param("userId") Long userId,
+                              @Param("vipSpent") BigDecimal vipSpent, @Param("vipOrders") int vipOrders,
+                              @Param("atRiskBefore") LocalDateTime atRiskBefore,
+                              @Param("newSince") LocalDateTime newSince,
+                              @Param("now") LocalDateTime now);
+    
+    /**
+     * Segment only customers whose segment can change with time alone:
+     * NEW ones that may have aged out, recent sign-ups without a segment,
+     * and customers whose last order crossed the AT_RISK age since the previous run
+     */
+    @RestResource(exported = false)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query(value = SEGMENT_UPDATE + "AND u2.id IN (" +
+           "  SELECT id FROM users WHERE customer_segment = 'NEW' " +
+           "  UNION SELECT id FROM users WHERE role = 'CUSTOMER' AND created_at > :newSince AND customer_segment IS NULL " +
+           "  UNION SELECT user_id FROM customer_stats WHERE last_order_at > :atRiskSince AND last_order_at <= :atRiskBefore)" +
+           SEGMENT_UPDATE_END, nativeQuery = true)
+    int refreshTimeBasedSegments(@Param("vipSpent") BigDecimal vipSpent, @Param("vipOrders") int vipOrders,
+                                 @Param("atRiskSince") LocalDateTime atRiskSince,
+                                 @Param("atRiskBefore") LocalDateTime atRiskBefore,
+                                 @Param("newSince") LocalDateTime newSince,
+                                 @Param("now") LocalDateTime now);
 }
@@ -0,0 +1,62 @@
+package com.example.demo.scheduler;
+
+import com.example.demo.entity.enums.OrderStatus;
+import com.example.demo.entity.enums.PaymentMethod;
+import com.example.demo.repository.OrderRepository;
+import com.example.demo.service.OrderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Scheduled task to expire stock reservations of unpaid MoMo orders
+ * A MoMo order keeps its stock while it waits for payment; if neither the return URL nor
+ * the IPN arrives within the TTL, the order is cancelled as a failed payment and its stock
+ * is released. Keep the TTL longer than the MoMo payment window so late payments still
+ * find their order pending.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PendingPaymentExpiryScheduler {
+
+    private final OrderRepository orderRepository;
+    private final OrderService orderService;
+
+    @Value("${app.stock.reservation-ttl-minutes:120}")
+    private long reservationTtlMinutes;
+
+    /**
+     * Runs every minute
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void expireUnpaidReservations() {
+        try {
+            LocalDateTime threshold = LocalDateTime.now().minusMinutes(reservationTtlMinutes);
+            List<String> expiredOrderIds = orderRepository.findIdsByStatusAndPaymentMethodBefore(
+                    OrderStatus.PENDING, PaymentMethod.MOMO, threshold);
+
+            if (expiredOrderIds.isEmpty()) {
+                return;
+            }
+
+            log.info("⏰ Expiring {} unpaid MoMo orders older than {} minutes", expiredOrderIds.size(), reservationTtlMinutes);
+            // One transaction per order; an order paid in the meantime is skipped by the service
+            for (String orderId : expiredOrderIds) {
+                try {
+                    orderService.cancelOrderByPaymentFailure(orderId);
+                } catch (Exception e) {
+                    log.error("❌ Error expiring unpaid order {}: {}", orderId, e.getMessage());
+                }
+            }
+
+        } catch (Exception e) {
+            log.error("❌ Error expiring unpaid MoMo orders", e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.demo.security;
+
+import com.example.demo.entity.User;
+import com.example.demo.entity.enums.UserRole;
+
+/**
+ * Minimal, immutable view of a user needed to authenticate a request
+ * Cached by AuthPrincipalCache instead of loading the full User entity per request
+ */
+public record AuthPrincipal(Long userId, String email, UserRole role, boolean active) {
+
+    public static AuthPrincipal from(User user) {
+        return new AuthPrincipal(user.getId(), user.getEmail(), user.getRole(),
+                Boolean.TRUE.equals(user.getIsActive()));
+    }
+}
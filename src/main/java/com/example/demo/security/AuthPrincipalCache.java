@@ -0,0 +1,68 @@
+package com.example.demo.security;
+
+import com.example.demo.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Short-TTL cache of authenticated principals keyed by user ID
+ * Lets JwtAuthenticationFilter check role and active status without a DB round-trip per request.
+ * Any code that changes a user's role, email or active flag must call evict(userId).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AuthPrincipalCache {
+
+    public static final String CACHE_NAME = "authPrincipals";
+
+    private final UserRepository userRepository;
+    private final CacheManager cacheManager;
+
+    /**
+     * Get principal for user ID, loading from database on cache miss
+     * @return principal, or null if the user no longer exists
+     */
+    @Cacheable(value = CACHE_NAME, key = "#userId", unless = "#result == null")
+    public AuthPrincipal get(Long userId) {
+        log.debug("Loading auth principal for user {}", userId);
+        return userRepository.findById(userId)
+                .map(AuthPrincipal::from)
+                .orElse(null);
+    }
+
+    /**
+     * Evict a user's cached principal.
+     * Inside a transaction the eviction runs after commit, so a concurrent request
+     * cannot re-cache the old state between the eviction and the commit.
+     */
+    public void evict(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(userId);
+                }
+            });
+        } else {
+            evictNow(userId);
+        }
+    }
+
+    private void evictNow(Long userId) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache != null) {
+            cache.evict(userId);
+            log.debug("Evicted auth principal for user {}", userId);
+        }
+    }
+}
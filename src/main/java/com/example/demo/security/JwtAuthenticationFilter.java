@@ -1,6 +1,5 @@
 package com.example.demo.security;
 
-import com.example.demo.entity.User;
 import com.example.demo.entity.enums.UserRole;
 import com.example.demo.repository.UserRepository;
 import com.example.demo.service.JwtService;
@@ -8,8 +7,10 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -19,13 +20,21 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Optional;
 import jakarta.servlet.http.Cookie;
 import org.springframework.lang.NonNull;
 
 /**
  * JWT Authentication Filter extending OncePerRequestFilter
  * Following rules.mdc specifications for JWT security
+ *
+ * The token is parsed once per request (JwtService.parseToken) and the user's
+ * current role/active status comes from AuthPrincipalCache, so authenticated
+ * requests normally do not hit the database.
+ *
+ * With app.security.stateless-jwt=true (default) JWT-authenticated requests never
+ * create or write the HTTP session: userId/userRole are exposed as request attributes
+ * only (read by BaseController model advice). Sessions are still honoured when they
+ * already exist, e.g. after form/OAuth2 login before the cookie is sent back.
  */
 @Component
 @RequiredArgsConstructor
@@ -34,16 +43,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserRepository userRepository;
+    private final AuthPrincipalCache authPrincipalCache;
+
+    @Value("${app.security.stateless-jwt:true}")
+    private boolean statelessJwt;
 
     @Override
-    protected void doFilterInternal(@NonNull HttpServletRequest request, 
-                                  @NonNull HttpServletResponse response, 
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                  @NonNull HttpServletResponse response,
                                   @NonNull FilterChain filterChain) throws ServletException, IOException {
-        
+
         final String authHeader = request.getHeader("Authorization");
         String jwt = null;
-        final String userEmail;
-        
+
         // Try to get JWT from Authorization header first
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             jwt = authHeader.substring(7);
@@ -51,224 +63,169 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             // Try to get JWT from cookie
             jwt = getJwtFromCookie(request);
         }
-        
+
         // Skip filter if no JWT token found
         if (jwt == null) {
-            
-            // Check if there's a session-based authentication
-            String sessionToken = (String) request.getSession().getAttribute("authToken");
-            String sessionEmail = (String) request.getSession().getAttribute("userEmail");
-            
+
+            // Check if there's a session-based authentication (never create a session just to look)
+            HttpSession session = request.getSession(false);
+            String sessionToken = session != null ? (String) session.getAttribute("authToken") : null;
+            String sessionEmail = session != null ? (String) session.getAttribute("userEmail") : null;
+
             if (sessionToken != null && sessionEmail != null) {
                 try {
-                    if (jwtService.validateToken(sessionToken)) {
-                        var tokenRole = jwtService.extractRole(sessionToken);
-                        var userId = jwtService.extractUserId(sessionToken);
-                        
-                        // Check current role and active status in database
-                        Optional<User> userOptional = userRepository.findByEmail(sessionEmail);
-                        if (userOptional.isPresent()) {
-                            User user = userOptional.get();
-                            UserRole dbRole = user.getRole();
-                            
-                            // Check if user account is still active
-                            if (user.getIsActive() == null || !user.getIsActive()) {
-                                log.warn("User account is disabled for session email: {}", sessionEmail);
-                                SecurityContextHolder.clearContext();
-                                
-                                // Clear session and cookies
-                                if (request.getSession(false) != null) {
-                                    request.getSession().invalidate();
-                                }
-                                
-                                // Clear auth cookie
-                                Cookie clearCookie = new Cookie("authToken", "");
-                                clearCookie.setHttpOnly(true);
-                                clearCookie.setSecure(false);
-                                clearCookie.setPath("/");
-                                clearCookie.setMaxAge(0);
-                                response.addCookie(clearCookie);
-                                
-                                filterChain.doFilter(request, response);
-                                return;
-                            }
-                            
-                            // If role in DB is different from token, refresh the token
-                            if (!dbRole.equals(tokenRole)) {
-                                log.info("Session role mismatch detected for user {}: token role={}, DB role={}. Refreshing token.", 
-                                    sessionEmail, tokenRole, dbRole);
-                                
-                                // Generate new token with updated role
-                                String newToken = jwtService.generateToken(user.getEmail(), user.getRole(), user.getId());
-                                
-                                // Update cookie with new token
-                                Cookie authCookie = new Cookie("authToken", newToken);
-                                authCookie.setHttpOnly(true);
-                                authCookie.setSecure(false); // Set to false for localhost development
-                                authCookie.setPath("/");
-                                authCookie.setMaxAge(4 * 60 * 60); // 4 hours
-                                response.addCookie(authCookie);
-                                
-                                // Update session with new token
-                                request.getSession().setAttribute("authToken", newToken);
-                                request.getSession().setAttribute("userRole", dbRole.name());
-                                
-                                // Use the updated role from DB
-                                tokenRole = dbRole;
-                                log.info("Session token refreshed for user {} with new role: {}", sessionEmail, dbRole);
-                            }
-                        } else {
-                            log.warn("User not found in database for session email: {}", sessionEmail);
-                            filterChain.doFilter(request, response);
-                            return;
-                        }
-                        
-                        List<SimpleGrantedAuthority> authorities = List.of(
-                            new SimpleGrantedAuthority("ROLE_" + tokenRole.name().toUpperCase())
-                        );
-                        
-                        UsernamePasswordAuthenticationToken authToken = 
-                            new UsernamePasswordAuthenticationToken(sessionEmail, null, authorities);
-                        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                        
-                        request.setAttribute("userId", userId);
-                        request.setAttribute("userRole", tokenRole);
-                        
-                    // Also set session attributes for Thymeleaf access
-                    request.getSession().setAttribute("userId", userId);
-                    request.getSession().setAttribute("userRole", tokenRole.name());
-                    log.info("Set session attributes - userId: {}, userRole: {}", userId, tokenRole.name());
-                    
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                    log.info("Session-based JWT authentication successful for user: {} with role: {}", sessionEmail, tokenRole);
-                    }
+                    authenticate(sessionToken, true, request, response);
                 } catch (Exception e) {
                     log.warn("Session token validation failed: {}", e.getMessage());
                 }
             }
-            
+
             filterChain.doFilter(request, response);
             return;
         }
-        
+
         try {
-            // Extract email from JWT token
-            userEmail = jwtService.extractEmail(jwt);
-            
-            // If token is valid and user is not already authenticated
-            if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                
-                // Validate token
-                if (jwtService.validateToken(jwt)) {
-                    
-                    // Extract user role from token
-                    var tokenRole = jwtService.extractRole(jwt);
-                    var userId = jwtService.extractUserId(jwt);
-                    
-                    // Check current role and active status in database
-                    Optional<User> userOptional = userRepository.findByEmail(userEmail);
-                    if (userOptional.isPresent()) {
-                        User user = userOptional.get();
-                        UserRole dbRole = user.getRole();
-                        
-                        // Check if user account is still active
-                        if (user.getIsActive() == null || !user.getIsActive()) {
-                            log.warn("User account is disabled for email: {}", userEmail);
-                            SecurityContextHolder.clearContext();
-                            
-                            // Clear session and cookies
-                            if (request.getSession(false) != null) {
-                                request.getSession().invalidate();
-                            }
-                            
-                            // Clear auth cookie
-                            Cookie clearCookie = new Cookie("authToken", "");
-                            clearCookie.setHttpOnly(true);
-                            clearCookie.setSecure(false);
-                            clearCookie.setPath("/");
-                            clearCookie.setMaxAge(0);
-                            response.addCookie(clearCookie);
-                            
-                            filterChain.doFilter(request, response);
-                            return;
-                        }
-                        
-                        // If role in DB is different from token, refresh the token
-                        if (!dbRole.equals(tokenRole)) {
-                            log.info("Role mismatch detected for user {}: token role={}, DB role={}. Refreshing token.", 
-                                userEmail, tokenRole, dbRole);
-                            
-                            // Generate new token with updated role
-                            String newToken = jwtService.generateToken(user.getEmail(), user.getRole(), user.getId());
-                            
-                            // Update cookie with new token
-                            Cookie authCookie = new Cookie("authToken", newToken);
-                            authCookie.setHttpOnly(true);
-                            authCookie.setSecure(false); // Set to false for localhost development
-                            authCookie.setPath("/");
-                            authCookie.setMaxAge(4 * 60 * 60); // 4 hours
-                            response.addCookie(authCookie);
-                            
-                            // Update session with new token
-                            request.getSession().setAttribute("authToken", newToken);
-                            request.getSession().setAttribute("userRole", dbRole.name());
-                            
-                            // Use the updated role from DB
-                            tokenRole = dbRole;
-                            log.info("Token refreshed for user {} with new role: {}", userEmail, dbRole);
-                        }
-                    } else {
-                        log.warn("User not found in database for email: {}", userEmail);
-                        SecurityContextHolder.clearContext();
-                        filterChain.doFilter(request, response);
-                        return;
-                    }
-                    
-                    // Create authority based on user role (now updated from DB)
-                    List<SimpleGrantedAuthority> authorities = List.of(
-                        new SimpleGrantedAuthority("ROLE_" + tokenRole.name().toUpperCase())
-                    );
-                    
-                    // Create authentication token
-                    UsernamePasswordAuthenticationToken authToken = 
-                        new UsernamePasswordAuthenticationToken(userEmail, null, authorities);
-                    
-                    // Set additional details
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    
-                    // Add user ID to authentication details for easy access
-                    request.setAttribute("userId", userId);
-                    request.setAttribute("userRole", tokenRole);
-                    
-                    // Also set session attributes for Thymeleaf access
-                    request.getSession().setAttribute("userId", userId);
-                    request.getSession().setAttribute("userRole", tokenRole.name());
-                    log.info("Set session attributes from JWT - userId: {}, userRole: {}", userId, tokenRole.name());
-                    
-                    // Set authentication in security context
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                    
-                    log.info("JWT authentication successful for user: {} with role: {} and authorities: {}", 
-                        userEmail, tokenRole, authorities);
-                    
-                } else {
-                    log.warn("Invalid JWT token for user: {}", userEmail);
-                    // Clear any existing authentication
-                    SecurityContextHolder.clearContext();
-                }
-            } else if (userEmail == null) {
-                log.warn("Could not extract email from JWT token");
+            // Only authenticate if user is not already authenticated
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                authenticate(jwt, false, request, response);
             }
-            
         } catch (Exception e) {
             log.error("JWT authentication error: {}", e.getMessage());
             // Clear security context on error
             SecurityContextHolder.clearContext();
         }
-        
+
         filterChain.doFilter(request, response);
     }
-    
+
+    /**
+     * Authenticate the request from a JWT token (header, cookie or session copy)
+     */
+    private void authenticate(String token, boolean fromSession,
+                              HttpServletRequest request, HttpServletResponse response) {
+        JwtService.TokenClaims claims = jwtService.parseToken(token);
+        if (claims == null) {
+            if (!fromSession) {
+                // Clear any existing authentication
+                SecurityContextHolder.clearContext();
+            }
+            return;
+        }
+
+        String userEmail = claims.email();
+        if (userEmail == null) {
+            log.warn("Could not extract email from JWT token");
+            return;
+        }
+
+        // Check current role and active status (cached, see AuthPrincipalCache)
+        AuthPrincipal principal = resolvePrincipal(claims);
+        if (principal == null) {
+            log.warn("User not found in database for email: {}", userEmail);
+            SecurityContextHolder.clearContext();
+            return;
+        }
+
+        // Check if user account is still active
+        if (!principal.active()) {
+            log.warn("User account is disabled for email: {}", userEmail);
+            SecurityContextHolder.clearContext();
+
+            // Clear session and cookies
+            if (request.getSession(false) != null) {
+                request.getSession().invalidate();
+            }
+
+            // Clear auth cookie
+            Cookie clearCookie = new Cookie("authToken", "");
+            clearCookie.setHttpOnly(true);
+            clearCookie.setSecure(false);
+            clearCookie.setPath("/");
+            clearCookie.setMaxAge(0);
+            response.addCookie(clearCookie);
+            return;
+        }
+
+        UserRole tokenRole = claims.role();
+        Long userId = claims.userId() != null ? claims.userId() : principal.userId();
+
+        // If role in DB is different from token, refresh the token
+        if (principal.role() != tokenRole) {
+            log.info("Role mismatch detected for user {}: token role={}, DB role={}. Refreshing token.",
+                userEmail, tokenRole, principal.role());
+
+            // Generate new token with updated role
+            String newToken = jwtService.generateToken(principal.email(), principal.role(), principal.userId());
+
+            // Update cookie with new token
+            Cookie authCookie = new Cookie("authToken", newToken);
+            authCookie.setHttpOnly(true);
+            authCookie.setSecure(false); // Set to false for localhost development
+            authCookie.setPath("/");
+            authCookie.setMaxAge(4 * 60 * 60); // 4 hours
+            response.addCookie(authCookie);
+
+            // Update session with new token (only if the client already has one)
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                session.setAttribute("authToken", newToken);
+                session.setAttribute("userRole", principal.role().name());
+            }
+
+            // Use the updated role from DB
+            tokenRole = principal.role();
+            log.info("Token refreshed for user {} with new role: {}", userEmail, tokenRole);
+        }
+
+        // Create authority based on user role (now updated from DB)
+        List<SimpleGrantedAuthority> authorities = List.of(
+            new SimpleGrantedAuthority("ROLE_" + tokenRole.name().toUpperCase())
+        );
+
+        // Create authentication token
+        UsernamePasswordAuthenticationToken authToken =
+            new UsernamePasswordAuthenticationToken(userEmail, null, authorities);
+
+        // Set additional details
+        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+        // Add user ID to authentication details for easy access
+        request.setAttribute("userId", userId);
+        request.setAttribute("userRole", tokenRole);
+
+        // Legacy mode: also mirror into the session for Thymeleaf access
+        if (!statelessJwt) {
+            request.getSession().setAttribute("userId", userId);
+            request.getSession().setAttribute("userRole", tokenRole.name());
+        }
+
+        // Set authentication in security context
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+
+        log.debug("{} authentication successful for user: {} with role: {}",
+            fromSession ? "Session-based JWT" : "JWT", userEmail, tokenRole);
+    }
+
+    /**
+     * Resolve the current state of the token's user.
+     * Tokens carry the user ID, so the lookup goes through the principal cache;
+     * legacy tokens without a user ID fall back to an email lookup.
+     */
+    private AuthPrincipal resolvePrincipal(JwtService.TokenClaims claims) {
+        if (claims.userId() == null) {
+            return userRepository.findByEmail(claims.email())
+                .map(AuthPrincipal::from)
+                .orElse(null);
+        }
+
+        AuthPrincipal principal = authPrincipalCache.get(claims.userId());
+        // Email changed since the token was issued: the token no longer identifies this user
+        if (principal != null && !principal.email().equals(claims.email())) {
+            return null;
+        }
+        return principal;
+    }
+
     /**
      * Extract JWT token from authToken cookie
      */
@@ -286,7 +243,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Override
     protected boolean shouldNotFilter(@NonNull HttpServletRequest request) throws ServletException {
         String path = request.getRequestURI();
-        
+
         // Skip JWT filter only for truly public endpoints and static resources
         return path.equals("/health") ||
                path.equals("/info") ||
@@ -304,6 +261,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                path.startsWith("/oauth2/") ||
                path.startsWith("/h2-console") ||
                path.startsWith("/ws") ||
-               path.startsWith("/actuator/");
+               path.equals("/actuator/health");
     }
 }
@@ -0,0 +1,80 @@
+package com.example.demo.security;
+
+import com.example.demo.dto.ResponseWrapper;
+import com.example.demo.service.RateLimiterService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Applies rate limit rules to the request paths it is registered for (see RateLimitConfig)
+ * Rejected requests get 429 Too Many Requests with a Retry-After header and a ResponseWrapper body.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimiterService rateLimiterService;
+    private final ObjectMapper objectMapper;
+    private final List<RateLimitRule> rules;
+
+    public RateLimitInterceptor(RateLimiterService rateLimiterService, ObjectMapper objectMapper,
+                                RateLimitRule... rules) {
+        this.rateLimiterService = rateLimiterService;
+        this.objectMapper = objectMapper;
+        this.rules = List.of(rules);
+    }
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request,
+                             @NonNull HttpServletResponse response,
+                             @NonNull Object handler) throws IOException {
+        // CORS preflight carries no payload and must never be throttled
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return true;
+        }
+
+        for (RateLimitRule rule : rules) {
+            RateLimiterService.Decision decision = rateLimiterService.tryConsume(rule, resolveKey(rule, request));
+            if (!decision.allowed()) {
+                writeTooManyRequests(response, decision.retryAfterSeconds());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bucket key for a rule: user ID set by JwtAuthenticationFilter, falling back to client IP
+     * for anonymous requests. The remote address is used as-is; behind a proxy configure
+     * server.forward-headers-strategy so it reflects the real client.
+     */
+    private String resolveKey(RateLimitRule rule, HttpServletRequest request) {
+        if (rule.getKeyType() == RateLimitRule.KeyType.USER) {
+            Object userId = request.getAttribute("userId");
+            if (userId != null) {
+                return "user:" + userId;
+            }
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    /**
+     * Write a 429 response in the API's JSON format
+     */
+    private void writeTooManyRequests(HttpServletResponse response, long retryAfterSeconds) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getWriter(), ResponseWrapper.error(
+                "Bạn thao tác quá nhanh, vui lòng thử lại sau " + retryAfterSeconds + " giây"));
+    }
+}
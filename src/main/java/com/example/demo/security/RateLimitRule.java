@@ -0,0 +1,61 @@
+package com.example.demo.security;
+
+import com.example.demo.config.RateLimitConfig;
+
+import java.time.Duration;
+
+/**
+ * Token-bucket rules enforced by RateLimiterService
+ * A bucket holds up to {@code capacity} tokens and refills completely over {@code period}.
+ */
+public enum RateLimitRule {
+
+    // AI chat: every message may cost a Gemini call
+    CHAT_PER_IP(RateLimitConfig.MAX_MESSAGES_PER_5_MIN, Duration.ofMinutes(5), KeyType.IP),
+    CHAT_PER_USER(RateLimitConfig.MAX_MESSAGES_PER_HOUR, Duration.ofHours(1), KeyType.USER),
+    CHAT_PER_CONVERSATION(RateLimitConfig.MAX_MESSAGES_PER_MINUTE_PER_CONVERSATION, Duration.ofMinutes(1), KeyType.CONVERSATION),
+
+    // Authentication: password guessing and OTP brute force / email flooding
+    LOGIN_PER_IP(RateLimitConfig.MAX_LOGIN_ATTEMPTS_PER_MINUTE, Duration.ofMinutes(1), KeyType.IP),
+    OTP_PER_IP(RateLimitConfig.MAX_OTP_REQUESTS_PER_10_MIN, Duration.ofMinutes(10), KeyType.IP),
+
+    // MoMo: payment creation per user, browser returns per IP. IPNs come from MoMo's servers and
+    // are checked by signature, so they are not limited.
+    PAYMENT_PER_USER(RateLimitConfig.MAX_PAYMENT_REQUESTS_PER_MINUTE, Duration.ofMinutes(1), KeyType.USER),
+    MOMO_RETURN_PER_IP(RateLimitConfig.MAX_MOMO_RETURNS_PER_MINUTE, Duration.ofMinutes(1), KeyType.IP);
+
+    /**
+     * What a bucket of this rule is keyed by (CONVERSATION: conversation and sender, see conversationKey)
+     */
+    public enum KeyType { IP, USER, CONVERSATION }
+
+    private final int capacity;
+    private final Duration period;
+    private final KeyType keyType;
+
+    RateLimitRule(int capacity, Duration period, KeyType keyType) {
+        this.capacity = capacity;
+        this.period = period;
+        this.keyType = keyType;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Duration getPeriod() {
+        return period;
+    }
+
+    public KeyType getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * Key of a CHAT_PER_CONVERSATION bucket: one per sender in each conversation, so messages
+     * to a conversation the sender is not part of cannot use up its members' limit
+     */
+    public static String conversationKey(Long conversationId, Long senderId) {
+        return conversationId != null ? conversationId + ":user:" + senderId : null;
+    }
+}
@@ -9,7 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service for AI-powered product description generation
@@ -30,10 +30,9 @@ public class AdminProductAiService {
      * @param productName Name of the product
      * @param catalogId Catalog ID (optional)
      * @param keywords Keywords for AI (optional)
-     * @return Generated description
-     * @throws Exception if generation fails
+     * @return Future of the generated description (a template fallback if Gemini fails)
      */
-    public String generateProductDescription(String productName, Long catalogId, String keywords) throws Exception {
+    public CompletableFuture<String> generateProductDescription(String productName, Long catalogId, String keywords) {
         log.info("Generating AI description for product: {}", productName);
         
         // Get catalog name if catalogId provided
@@ -53,13 +52,21 @@ public class AdminProductAiService {
         String prompt = buildPrompt(productName, catalogName, keywords);
         log.debug("Built prompt for AI (length: {} chars)", prompt.length());
         
-        // Call Gemini API with retry mechanism
-        String description = callGeminiWithRetry(prompt, productName, catalogName, keywords);
-        
-        // Trust AI to follow the 300-word limit, no character truncation needed
-        
-        log.info("Successfully generated description ({} chars)", description.length());
-        return description;
+        // Call Gemini API with retry mechanism; the request thread is released while it runs
+        String finalCatalogName = catalogName;
+        return geminiClient.generateContentWithRetryAsync(prompt, 3)
+            .thenApply(response -> {
+                String description = extractDescription(response);
+                if (description == null) {
+                    log.warn("All Gemini API attempts failed, returning fallback description");
+                    return generateDetailedFallback(productName, finalCatalogName, keywords);
+                }
+                
+                // Trust AI to follow the 300-word limit, no character truncation needed
+                
+                log.info("Successfully generated description ({} chars)", description.length());
+                return description;
+            });
     }
     
     /**
@@ -93,52 +100,18 @@ public class AdminProductAiService {
     }
     
     /**
-     * Call Gemini API with exponential backoff retry
+     * Extract and clean the description text from a Gemini response
+     * @return cleaned description, or null if the response has no usable text
      */
-    private String callGeminiWithRetry(String prompt, String productName, String catalogName, String keywords) throws Exception {
-        int maxRetries = 3;
-        long[] delays = {100, 400, 900}; // milliseconds
-        
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            try {
-                log.debug("Gemini API attempt {} of {}", attempt + 1, maxRetries);
-                
-                GeminiResponse response = geminiClient.generateContent(prompt);
-                
-                if (response != null && response.isSuccessful()) {
-                    String textResponse = response.getTextResponse();
-                    if (textResponse != null && !textResponse.trim().isEmpty()) {
-                        // Clean up response - remove JSON formatting if present
-                        String cleanedResponse = cleanAiResponse(textResponse.trim());
-                        return cleanedResponse;
-                    }
-                }
-                
-                log.warn("Gemini API returned empty response on attempt {}", attempt + 1);
-                
-            } catch (Exception e) {
-                log.warn("Gemini API attempt {} failed: {}", attempt + 1, e.getMessage());
-                
-                // If this is the last attempt, throw the exception
-                if (attempt == maxRetries - 1) {
-                    throw e;
-                }
-            }
-            
-            // Wait before retry (except on last attempt)
-            if (attempt < maxRetries - 1) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(delays[attempt]);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new Exception("Request interrupted", ie);
-                }
+    private String extractDescription(GeminiResponse response) {
+        if (response != null && response.isSuccessful()) {
+            String textResponse = response.getTextResponse();
+            if (textResponse != null && !textResponse.trim().isEmpty()) {
+                // Clean up response - remove JSON formatting if present
+                return cleanAiResponse(textResponse.trim());
             }
         }
-        
-        // Return fallback description if all attempts fail
-        log.warn("All Gemini API attempts failed, returning fallback description");
-        return generateDetailedFallback(productName, catalogName, keywords);
+        return null;
     }
     
     /**
@@ -2,13 +2,12 @@ package com.example.demo.service;
 
 import com.example.demo.client.GeminiClient;
 import com.example.demo.dto.AiAnalysisResult;
+import com.example.demo.dto.ConversationTurnDTO;
 import com.example.demo.entity.Conversation;
-import com.example.demo.entity.Message;
 import com.example.demo.entity.RoutingDecision;
 import com.example.demo.entity.enums.HandoffReason;
 import com.example.demo.entity.enums.IntentType;
 import com.example.demo.repository.ConversationRepository;
-import com.example.demo.repository.MessageRepository;
 import com.example.demo.repository.RoutingDecisionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,6 +17,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Service for AI chat functionality
@@ -28,6 +28,9 @@ import java.util.Map;
 @Slf4j
 public class AiChatService {
 
+    // Bound on messages read between the summary and the recent window
+    private static final int MAX_UNSUMMARIZED_TURNS = 50;
+
     private final GeminiClient geminiClient;
     private final AiPromptService promptService;
     private final AiGenerationProfileService profileService;
@@ -35,7 +38,9 @@ public class AiChatService {
     private final PiiDetectionService piiDetectionService;
     private final RoutingDecisionRepository routingDecisionRepository;
     private final ConversationRepository conversationRepository;
-    private final MessageRepository messageRepository;
+    private final ConversationHistoryCache conversationHistoryCache;
+    private final ConversationSummaryService conversationSummaryService;
+    private final AiResponseCache aiResponseCache;
     private final WebSocketService webSocketService;
     private final HandoffService handoffService;
 
@@ -111,6 +116,7 @@ public class AiChatService {
             
             // Save routing decision
             saveRoutingDecision(conversationId, result, processingTime);
+            conversationSummaryService.recordTurn(conversationId);
             
             log.info("AI analysis completed - Intent: {}, Confidence: {}, Handoff: {}", 
                 result.getIntent(), result.getConfidence(), result.getNeedHandoff());
@@ -141,6 +147,12 @@ public class AiChatService {
     public String generateFinalResponse(Long conversationId, String customerMessage, 
                                        String toolResults, AiAnalysisResult initialAnalysis,
                                        GeminiClient.StreamingCallback streamCallback) {
+        // Without tools the analysis reply is already the final answer: no second Gemini call
+        if (!initialAnalysis.hasToolRequests() && initialAnalysis.getReply() != null
+                && !initialAnalysis.getReply().isBlank()) {
+            return initialAnalysis.getReply();
+        }
+        
         long startTime = System.currentTimeMillis();
         
         try {
@@ -222,6 +234,8 @@ public class AiChatService {
                         streamCallback.onChunk(finalResponse);
                         streamCallback.onComplete();
                     }
+                } else {
+                    aiResponseCache.put(initialAnalysis, finalResponse.trim());
                 }
                 
                 // Log profile usage for monitoring
@@ -526,27 +540,67 @@ public class AiChatService {
         }
     }
 
+    /**
+     * Whether earlier turns can give the customer's current message another meaning
+     * Greetings and FAQs answered locally and replies from AiResponseCache cannot: they are the
+     * same in every conversation. Any other earlier message, or a summary, can.
+     * Uses the same window as getConversationHistory, so the analysis that follows reads a warm ring.
+     */
+    public boolean hasContextTurns(Long conversationId, String customerMessage) {
+        if (conversationSummaryService.getSummary(conversationId) != null) {
+            return true;
+        }
+        int maxMessages = storeConfigService.getConfigAsInt("ai.max_conversation_history", 10);
+        List<ConversationTurnDTO> turns = conversationHistoryCache.recentTurns(conversationId, maxMessages);
+        // The current message is normally persisted already and is then the last turn
+        boolean lastIsCurrent = !turns.isEmpty()
+            && Objects.equals(turns.get(turns.size() - 1).getContent(), customerMessage);
+        int current = lastIsCurrent ? 1 : 0;
+        if (turns.size() <= current) {
+            return false;
+        }
+        return routingDecisionRepository.countContextMessages(conversationId) > current;
+    }
+
     /**
      * Get conversation history for context
      */
     private String getConversationHistory(Long conversationId) {
         try {
-            List<Message> messages = messageRepository.findByConversationIdOrderBySentAtAsc(conversationId);
+            // With a summary, only the messages after it are sent verbatim
+            ConversationSummaryService.Summary summary = conversationSummaryService.getSummary(conversationId);
+            int maxMessages = summary != null
+                ? conversationSummaryService.getContextTurns()
+                : storeConfigService.getConfigAsInt("ai.max_conversation_history", 10);
+            List<ConversationTurnDTO> recentMessages = conversationHistoryCache.recentTurns(conversationId, maxMessages);
             
-            if (messages.isEmpty()) {
-                return "";
+            List<String> history = new ArrayList<>();
+            if (summary != null) {
+                history.add("(Tóm tắt phần trước: " + summary.text() + ")");
+                // A full window may start after the summary ends (a run failed, was skipped or is
+                // still in flight): the messages in between are in neither, so read them as well
+                if (recentMessages.size() >= maxMessages
+                        && recentMessages.get(0).getMessageId() > summary.upToMessageId()) {
+                    List<ConversationTurnDTO> unsummarized = conversationHistoryCache.turnsBetween(conversationId,
+                        summary.upToMessageId(), recentMessages.get(0).getMessageId(), MAX_UNSUMMARIZED_TURNS);
+                    if (unsummarized.size() == MAX_UNSUMMARIZED_TURNS) {
+                        log.warn("Conversation {} has more than {} messages outside its summary and recent window",
+                            conversationId, MAX_UNSUMMARIZED_TURNS);
+                    }
+                    for (ConversationTurnDTO turn : unsummarized) {
+                        history.add(turn.getSenderName() + ": " + turn.getContent());
+                    }
+                }
+            }
+            for (ConversationTurnDTO turn : recentMessages) {
+                if (summary != null && turn.getMessageId() <= summary.upToMessageId()) {
+                    continue;
+                }
+                history.add(turn.getSenderName() + ": " + turn.getContent());
             }
-
-            // Get last N messages
-            int maxMessages = storeConfigService.getConfigAsInt("ai.max_conversation_history", 10);
-            int start = Math.max(0, messages.size() - maxMessages);
-            List<Message> recentMessages = messages.subList(start, messages.size());
             
-            List<String> history = new ArrayList<>();
-            for (Message msg : recentMessages) {
-                String sender = msg.getSender().getFullName();
-                String content = msg.getContent();
-                history.add(sender + ": " + content);
+            if (history.isEmpty()) {
+                return "";
             }
             
             return String.join("\n", history);
@@ -562,6 +616,31 @@ public class AiChatService {
      */
     @Transactional
     public void saveRoutingDecision(Long conversationId, AiAnalysisResult result, long processingTimeMs) {
+        saveRoutingDecision(conversationId, result, processingTimeMs, "GEMINI",
+            result.requiresHandoff() ? determineHandoffReason(result) : null);
+    }
+
+    /**
+     * Record a decision made by IntentPreClassifier (no Gemini call)
+     */
+    @Transactional
+    public void recordLocalDecision(Long conversationId, AiAnalysisResult result, long processingTimeMs) {
+        saveRoutingDecision(conversationId, result, processingTimeMs, IntentPreClassifier.DECIDED_BY,
+            result.requiresHandoff() ? HandoffReason.EXPLICIT_REQUEST : null);
+        conversationSummaryService.recordTurn(conversationId);
+    }
+
+    /**
+     * Record a decision answered from AiResponseCache (no Gemini call)
+     */
+    @Transactional
+    public void recordCachedDecision(Long conversationId, AiAnalysisResult result, long processingTimeMs) {
+        saveRoutingDecision(conversationId, result, processingTimeMs, "CACHE", null);
+        conversationSummaryService.recordTurn(conversationId);
+    }
+
+    private void saveRoutingDecision(Long conversationId, AiAnalysisResult result, long processingTimeMs,
+                                     String decidedBy, HandoffReason handoffReason) {
         try {
             Conversation conversation = conversationRepository.findById(conversationId)
                 .orElseThrow(() -> new RuntimeException("Conversation not found"));
@@ -574,11 +653,8 @@ public class AiChatService {
             decision.setSuggestHandoff(result.suggestsHandoff());
             decision.setAiResponse(result.getReply());
             decision.setProcessingTimeMs((int) processingTimeMs);
-            
-            // Set handoff reason if needed
-            if (result.requiresHandoff()) {
-                decision.setHandoffReason(determineHandoffReason(result));
-            }
+            decision.setDecidedBy(decidedBy);
+            decision.setHandoffReason(handoffReason);
             
             // Set tools used
             if (result.hasToolRequests()) {
@@ -83,8 +83,16 @@ public class AiGenerationProfileService {
      * Get profile for analysis phase (always consistent)
      */
     public GenerationProfile getAnalysisProfile() {
-        // Analysis phase should be fast and consistent
-        return new GenerationProfile(0.1, 0.7, 512, 10, false);
+        // Analysis phase should be fast and consistent; room for a full reply when no tool is needed
+        return new GenerationProfile(0.1, 0.7, 1024, 15, false);
+    }
+
+    /**
+     * Get profile for the background conversation summary (see ConversationSummaryService)
+     */
+    public GenerationProfile getSummaryProfile() {
+        // Not on the reply path: factual, short, and allowed more time
+        return new GenerationProfile(0.2, 0.8, 384, 30, false);
     }
 
     /**
@@ -8,6 +8,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -15,6 +16,9 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Service for monitoring AI chat performance and safety
  * Tracks metrics, errors, and performance indicators
+ *
+ * Histories are bounded ArrayBlockingQueues (lock-based, not synchronized) so recording
+ * from virtual threads never pins a carrier thread.
  */
 @Service
 @RequiredArgsConstructor
@@ -24,15 +28,18 @@ public class AiMonitoringService {
     // Performance metrics
     private final Map<String, AtomicLong> performanceMetrics = new ConcurrentHashMap<>();
     private final Map<String, AtomicInteger> counterMetrics = new ConcurrentHashMap<>();
-    private final Map<String, List<Long>> latencyHistory = new ConcurrentHashMap<>();
+    private final Map<String, Queue<Long>> latencyHistory = new ConcurrentHashMap<>();
     
     // Error tracking
     private final Map<String, AtomicInteger> errorCounts = new ConcurrentHashMap<>();
-    private final List<ErrorEvent> recentErrors = Collections.synchronizedList(new ArrayList<>());
+    private final Queue<ErrorEvent> recentErrors = new ArrayBlockingQueue<>(100);
     
     // Safety monitoring
     private final Map<String, AtomicInteger> safetyEvents = new ConcurrentHashMap<>();
-    private final List<SafetyAlert> safetyAlerts = Collections.synchronizedList(new ArrayList<>());
+    private final Queue<SafetyAlert> safetyAlerts = new ArrayBlockingQueue<>(50);
+    
+    // Keep only last 1000 latencies per metric
+    private static final int LATENCY_HISTORY_SIZE = 1000;
     
     // Cache metrics
     private final Map<String, CacheMetrics> cacheMetrics = new ConcurrentHashMap<>();
@@ -45,13 +52,7 @@ public class AiMonitoringService {
         performanceMetrics.computeIfAbsent(key, k -> new AtomicLong(0)).addAndGet(latencyMs);
         
         // Keep latency history for percentile calculations
-        latencyHistory.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(latencyMs);
-        
-        // Keep only last 1000 entries
-        List<Long> history = latencyHistory.get(key);
-        if (history.size() > 1000) {
-            history.remove(0);
-        }
+        recordLatency(key, latencyMs);
         
         // Increment request count
         counterMetrics.computeIfAbsent("requests_" + intent.name().toLowerCase(), k -> new AtomicInteger(0)).incrementAndGet();
@@ -66,7 +67,7 @@ public class AiMonitoringService {
         String key = "tool_latency_" + toolName + (isParallel ? "_parallel" : "_sequential");
         performanceMetrics.computeIfAbsent(key, k -> new AtomicLong(0)).addAndGet(latencyMs);
         
-        latencyHistory.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(latencyMs);
+        recordLatency(key, latencyMs);
         
         counterMetrics.computeIfAbsent("tool_calls_" + toolName, k -> new AtomicInteger(0)).incrementAndGet();
         
@@ -123,12 +124,8 @@ public class AiMonitoringService {
         errorEvent.errorMessage = errorMessage;
         errorEvent.exceptionClass = exception != null ? exception.getClass().getSimpleName() : null;
         
-        recentErrors.add(errorEvent);
-        
         // Keep only last 100 errors
-        if (recentErrors.size() > 100) {
-            recentErrors.remove(0);
-        }
+        addBounded(recentErrors, errorEvent);
         
         log.error("❌ Error recorded: {} - {} - {}", operation, errorType, errorMessage, exception);
     }
@@ -146,16 +143,28 @@ public class AiMonitoringService {
         alert.details = details;
         alert.conversationId = conversationId;
         
-        safetyAlerts.add(alert);
-        
         // Keep only last 50 safety alerts
-        if (safetyAlerts.size() > 50) {
-            safetyAlerts.remove(0);
-        }
+        addBounded(safetyAlerts, alert);
         
         log.warn("🛡️ Safety event: {} - {} - Conversation: {}", eventType, details, conversationId);
     }
 
+    /**
+     * Append to a per-metric latency history, dropping the oldest entry when full
+     */
+    private void recordLatency(String key, long latencyMs) {
+        addBounded(latencyHistory.computeIfAbsent(key, k -> new ArrayBlockingQueue<>(LATENCY_HISTORY_SIZE)), latencyMs);
+    }
+
+    /**
+     * Offer to a bounded queue, evicting the oldest element until it fits
+     */
+    private static <T> void addBounded(Queue<T> queue, T element) {
+        while (!queue.offer(element)) {
+            queue.poll();
+        }
+    }
+
     /**
      * Record token usage
      */
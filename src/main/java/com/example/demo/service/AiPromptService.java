@@ -32,7 +32,7 @@ public class AiPromptService {
         prompt.append("1. 🗣️ GIAO TIẾP: Gọi khách \"bạn\", tự xưng \"mình\". Luôn thân thiện, nhiệt tình.\n");
         prompt.append("2. 🔍 SỬ DỤNG TOOL ĐÚNG MỤC ĐÍCH:\n");
         prompt.append("   - Hỏi về SẢN PHẨM/HOA → gọi product_search\n");
-        prompt.append("   - Hỏi về THÔNG TIN CỬA HÀNG (địa chỉ, hotline, giờ mở) → gọi store_info\n");
+        prompt.append("   - Hỏi về THÔNG TIN CỬA HÀNG, CHÍNH SÁCH (địa chỉ, hotline, giờ mở, đổi trả) → trả lời luôn từ thông tin ở trên, KHÔNG gọi tool\n");
         prompt.append("   - Hỏi về PHÍ GIAO HÀNG → gọi shipping_fee\n");
         prompt.append("   - Hỏi về KHUYẾN MÃI → gọi promotion_lookup\n");
         prompt.append("   - KHÔNG gọi nhiều tool cùng lúc nếu không cần thiết\n");
@@ -56,7 +56,7 @@ public class AiPromptService {
         prompt.append("- product_search(query, price_max): Tìm kiếm sản phẩm theo từ khóa và giá\n");
         prompt.append("- shipping_fee(location): Tính phí giao hàng toàn quốc qua GHN API (VD: \"Hà Nội\", \"Đà Nẵng\", \"Cần Thơ\")\n");
         prompt.append("- promotion_lookup(): Xem khuyến mãi hiện tại\n");
-        prompt.append("- store_info(): Thông tin cửa hàng (địa chỉ, giờ mở cửa)\n\n");
+        prompt.append("- store_info(): Thông tin cửa hàng (chỉ khi thông tin ở trên chưa đủ)\n\n");
         
         prompt.append("📦 THÔNG TIN GIAO HÀNG QUAN TRỌNG:\n");
         prompt.append("- StarShop HỖ TRỢ GIAO HÀNG TOÀN QUỐC qua GHN\n");
@@ -70,15 +70,20 @@ public class AiPromptService {
         prompt.append("{\n");
         prompt.append("  \"intent\": \"SALES|SHIPPING|PROMOTION|ORDER_SUPPORT|PAYMENT|STORE_INFO|CHITCHAT|OTHER\",\n");
         prompt.append("  \"confidence\": 0.0-1.0,\n");
-        prompt.append("  \"reply\": \"Lời chào ngắn gọn, thể hiện hiểu khách hàng (20-50 từ)\",\n");
+        prompt.append("  \"reply\": \"Câu trả lời cho khách (xem quy tắc REPLY bên dưới)\",\n");
         prompt.append("  \"suggest_handoff\": false,\n");
         prompt.append("  \"need_handoff\": false,\n");
         prompt.append("  \"tool_requests\": [{\"name\": \"product_search\", \"args\": {\"query\": \"hoa sinh nhật\", \"price_max\": 500000}}]\n");
         prompt.append("}\n\n");
         
+        prompt.append("💬 QUY TẮC REPLY:\n");
+        prompt.append("- CÓ tool_requests: reply chỉ là lời chào/xác nhận hiểu khách (20-50 từ), nội dung chi tiết được tạo SAU KHI tools chạy xong\n");
+        prompt.append("- KHÔNG có tool_requests (tool_requests: []): reply LÀ câu trả lời cuối cùng gửi thẳng cho khách, không có bước nào sau đó\n");
+        prompt.append("  + Trả lời đầy đủ, chính xác, thân thiện (40-150 từ), văn bản thường + markdown, tối đa 3 emoji\n");
+        prompt.append("  + Thông tin cửa hàng/chính sách: giữ nguyên địa chỉ, giờ mở cửa, hotline như ở trên\n");
+        prompt.append("  + Kết thúc bằng câu hỏi mở: 'Bạn có cần mình hỗ trợ gì thêm không ạ?'\n\n");
+        
         prompt.append("🎯 CRITICAL REQUIREMENTS:\n");
-        prompt.append("- Reply PHẢI ngắn gọn (chỉ là lời chào/xác nhận hiểu khách)\n");
-        prompt.append("- Nội dung chi tiết sẽ được tạo SAU KHI tools chạy xong\n");
         prompt.append("- LUÔN đánh giá confidence chính xác\n");
         prompt.append("- LUÔN gọi tool khi cần thông tin sản phẩm\n");
         
@@ -183,6 +188,36 @@ public class AiPromptService {
         return message.toString();
     }
 
+    /**
+     * System prompt for the rolling conversation summary
+     */
+    public String generateSummarySystemPrompt() {
+        return "Bạn tóm tắt cuộc trò chuyện giữa khách hàng và cửa hàng hoa StarShop để AI tư vấn dùng làm ngữ cảnh.\n" +
+            "- Viết tiếng Việt, văn bản thường, tối đa 120 từ, không dùng JSON hay markdown\n" +
+            "- Giữ lại: nhu cầu của khách, sản phẩm và giá đã nhắc tới, mã đơn hàng, ngân sách, dịp tặng, " +
+            "thời gian và địa chỉ giao hàng, các cam kết của cửa hàng, vấn đề còn chưa giải quyết\n" +
+            "- Bỏ lời chào, cảm ơn và các câu không mang thông tin\n" +
+            "- Không bịa thêm thông tin không có trong hội thoại";
+    }
+
+    /**
+     * Previous summary plus the messages to fold into it
+     */
+    public String generateSummaryUserMessage(String previousSummary, String newMessages) {
+        StringBuilder message = new StringBuilder();
+        
+        if (previousSummary != null && !previousSummary.isEmpty()) {
+            message.append("TÓM TẮT HIỆN TẠI:\n");
+            message.append(previousSummary).append("\n\n");
+        }
+        
+        message.append("TIN NHẮN TIẾP THEO:\n");
+        message.append(newMessages).append("\n\n");
+        message.append("Viết lại bản tóm tắt, bao gồm cả thông tin cũ còn giá trị và các tin nhắn trên.");
+        
+        return message.toString();
+    }
+
     /**
      * Format conversation history for context
      */
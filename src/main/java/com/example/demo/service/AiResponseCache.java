@@ -0,0 +1,212 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.AiAnalysisResult;
+import com.example.demo.entity.enums.IntentType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Cache câu trả lời AI cho các câu hỏi lặp lại (see RoutingService)
+ *
+ * The key is the customer message without diacritics and filler words, so "Ship về Hà Nội
+ * bao nhiêu ạ?" and "ship ha noi bao nhieu" share an entry. It is prefixed with the store
+ * config and promotions versions, which StoreConfigService and VoucherService bump after
+ * each committed change, so a change is never answered from an older entry.
+ *
+ * Only confident STORE_INFO, SHIPPING and PROMOTION replies without a handoff are stored.
+ * Product advice depends on stock and on the conversation, so it is not stored. Neither are
+ * messages that read as a follow-up ("còn Đà Nẵng thì sao"), since their meaning depends on
+ * the conversation. RoutingService only stores and serves replies while no earlier turn can
+ * have shaped the message: the conversation's first message, or one that only follows
+ * greetings, FAQs and cached replies (AiChatService.hasContextTurns).
+ *
+ * Replies built from shipping_fee results are keyed on the locations the fees were computed
+ * for instead of the wording (replyKeyFor): "phí ship bao nhiêu" is answered for whatever
+ * location the AI resolved, so the text alone does not say which fee the reply quotes.
+ * Size and TTL come from the "aiResponses" cache spec; hits and misses are reported to
+ * AiMonitoringService.
+ */
+@Component
+@Slf4j
+public class AiResponseCache {
+
+    public static final String CACHE_NAME = "aiResponses";
+
+    private static final Set<IntentType> CACHEABLE_INTENTS =
+        EnumSet.of(IntentType.STORE_INFO, IntentType.SHIPPING, IntentType.PROMOTION);
+    private static final double MIN_CONFIDENCE = 0.8;
+    private static final int MIN_KEY_WORDS = 2;
+    private static final int MAX_KEY_WORDS = 20;
+
+    // Politeness, pronouns and direction words (về/đi/đến) that do not change the question.
+    // Without diacritics some particles equal content words, so e.g. "hong" (hồng), "ha" (Hà),
+    // "toi" (tối) and "muon" (muộn) are kept.
+    private static final Set<String> STOPWORDS = Set.of(
+        "a", "ah", "ak", "oi", "vay", "v", "nhe", "nha", "nhi", "ne", "khong", "ko", "k",
+        "co", "cho", "minh", "em", "ban", "shop", "ad", "admin", "la", "thi", "voi",
+        "duoc", "giup", "hoi", "xin", "vui", "long", "biet", "can", "ve", "di", "den");
+    private static final String SHIPPING_FEE_TOOL = "shipping_fee";
+    private static final Pattern FOLLOW_UP = Pattern.compile(
+        "^(con|vay|the|roi|va)\\b|\\b(thi sao|cai do|cai nay|cai kia|nhu tren|o tren|luc nay|vua roi)\\b");
+
+    private final Cache cache;
+    private final AiMonitoringService monitoringService;
+    private final AtomicLong storeConfigVersion = new AtomicLong();
+    private final AtomicLong promotionsVersion = new AtomicLong();
+
+    public AiResponseCache(CacheManager cacheManager, AiMonitoringService monitoringService) {
+        this.cache = cacheManager.getCache(CACHE_NAME);
+        this.monitoringService = monitoringService;
+    }
+
+    /**
+     * Cache key for a customer message, or null if its reply must not be cached
+     */
+    public String keyFor(String message) {
+        if (message == null) {
+            return null;
+        }
+        String text = IntentPreClassifier.normalize(message);
+        if (text.isEmpty() || FOLLOW_UP.matcher(text).find()) {
+            return null;
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : text.split(" ")) {
+            if (!STOPWORDS.contains(word)) {
+                words.add(word);
+            }
+        }
+        if (words.size() < MIN_KEY_WORDS || words.size() > MAX_KEY_WORDS) {
+            return null;
+        }
+        return versions() + ":" + String.join(" ", words);
+    }
+
+    /**
+     * Cache key for the reply to an analysis, or null if it must not be cached
+     * Shipping fee replies are keyed on the tool's locations; other replies keep the message key.
+     * @param messageKey keyFor(message), null when the message itself is not cacheable
+     */
+    public String replyKeyFor(AiAnalysisResult analysis, String messageKey) {
+        if (!isCacheable(analysis)) {
+            return null;
+        }
+        if (!analysis.hasToolRequests()) {
+            return messageKey;
+        }
+        List<String> locations = new ArrayList<>();
+        boolean otherTools = false;
+        for (AiAnalysisResult.ToolRequest tool : analysis.getToolRequests()) {
+            if (!SHIPPING_FEE_TOOL.equalsIgnoreCase(tool.getName())) {
+                otherTools = true;
+                continue;
+            }
+            Object location = tool.getArgs() != null ? tool.getArgs().get("to_location") : null;
+            String normalized = location != null ? IntentPreClassifier.normalize(location.toString()) : "";
+            if (normalized.isEmpty()) {
+                return null;
+            }
+            locations.add(normalized);
+        }
+        if (locations.isEmpty()) {
+            return messageKey;
+        }
+        // Next to other tools the reply also depends on what else was asked
+        if (otherTools) {
+            return null;
+        }
+        Collections.sort(locations);
+        return versions() + ":" + SHIPPING_FEE_TOOL + ":" + String.join("|", locations);
+    }
+
+    /**
+     * Cached reply as an analysis without tool requests
+     */
+    public Optional<AiAnalysisResult> get(String key) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        CachedReply cached = cache.get(key, CachedReply.class);
+        monitoringService.recordCacheEvent(CACHE_NAME, cached != null);
+        if (cached == null) {
+            return Optional.empty();
+        }
+        AiAnalysisResult result = new AiAnalysisResult();
+        result.setIntent(cached.intent());
+        result.setConfidence(cached.confidence());
+        result.setReply(cached.reply());
+        result.setNeedHandoff(false);
+        result.setSuggestHandoff(false);
+        result.setToolRequests(new ArrayList<>());
+        result.setProductSuggestions(new ArrayList<>());
+        return Optional.of(result);
+    }
+
+    public boolean isCacheable(AiAnalysisResult analysis) {
+        return analysis != null
+            && CACHEABLE_INTENTS.contains(analysis.getIntentType())
+            && analysis.isConfidentEnough(MIN_CONFIDENCE)
+            && !analysis.requiresHandoff()
+            && !analysis.suggestsHandoff();
+    }
+
+    /**
+     * Remember the final reply to a message; no-op unless RoutingService gave the analysis a cache key
+     */
+    public void put(AiAnalysisResult analysis, String reply) {
+        if (analysis == null || analysis.getResponseCacheKey() == null || !isCacheable(analysis)
+                || reply == null || reply.isBlank()) {
+            return;
+        }
+        cache.put(analysis.getResponseCacheKey(), new CachedReply(analysis.getIntent(), analysis.getConfidence(), reply));
+        log.debug("Cached AI reply for [{}]", analysis.getResponseCacheKey());
+    }
+
+    /**
+     * Store info, policies or AI settings changed; takes effect after commit
+     */
+    public void storeConfigChanged() {
+        afterCommit(storeConfigVersion::incrementAndGet);
+    }
+
+    /**
+     * Vouchers changed; takes effect after commit
+     */
+    public void promotionsChanged() {
+        afterCommit(promotionsVersion::incrementAndGet);
+    }
+
+    private String versions() {
+        return storeConfigVersion.get() + ":" + promotionsVersion.get();
+    }
+
+    // After commit, so a reply built from the old data cannot be cached under the new version
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private record CachedReply(String intent, Double confidence, String reply) {
+    }
+}
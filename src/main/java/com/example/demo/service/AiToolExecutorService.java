@@ -11,9 +11,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -32,128 +34,110 @@ public class AiToolExecutorService {
     private final AiShippingService aiShippingService;
     private final ProductRecommendationCache productCache;
     private final ShippingFeeCache shippingCache;
+    private final AiToolExecutors toolExecutors;
+    private final AiMonitoringService aiMonitoringService;
     
     // Timeboxing configuration (700-900ms per tool)
     private static final int TOOL_TIMEOUT_MS = 800;
     private static final int PARALLEL_TIMEOUT_MS = 900;
 
     /**
-     * Execute all tool requests from AI analysis - ENHANCED with parallel execution
+     * Execute all tool requests from AI analysis
+     * A single tool runs inline; several tools are fanned out on AiToolExecutors and
+     * share one PARALLEL_TIMEOUT_MS deadline. Results keep the order of the requests.
      */
     public String executeTools(AiAnalysisResult analysis) {
         if (!analysis.hasToolRequests()) {
             return "";
         }
 
-        long startTime = System.currentTimeMillis();
-        
-        // Check if we can run product_search and shipping_fee in parallel
         List<AiAnalysisResult.ToolRequest> toolRequests = analysis.getToolRequests();
-        boolean hasProductSearch = toolRequests.stream().anyMatch(t -> "product_search".equals(t.getName()));
-        boolean hasShippingFee = toolRequests.stream().anyMatch(t -> "shipping_fee".equals(t.getName()));
-        
-        if (hasProductSearch && hasShippingFee) {
-            log.debug("🚀 PARALLEL execution: product_search + shipping_fee");
-            return executeToolsInParallel(analysis);
-        } else {
-            log.debug("📋 SEQUENTIAL execution: {} tools", toolRequests.size());
+        if (toolRequests.size() == 1) {
+            log.debug("📋 INLINE execution: {}", toolRequests.get(0).getName());
             return executeToolsSequentially(analysis);
         }
+
+        log.debug("🚀 PARALLEL execution: {} tools", toolRequests.size());
+        return executeToolsInParallel(analysis);
     }
 
     /**
-     * Execute tools in parallel with timeboxing (product_search + shipping_fee)
+     * Fan out all tool requests with timeboxing
+     * Tools still running at the deadline are cancelled (interrupting their worker)
+     * and replaced by a fallback text.
      */
     private String executeToolsInParallel(AiAnalysisResult analysis) {
         long startTime = System.currentTimeMillis();
-        StringBuilder results = new StringBuilder();
-        
-        // Find product_search and shipping_fee requests
-        AiAnalysisResult.ToolRequest productSearchRequest = null;
-        AiAnalysisResult.ToolRequest shippingFeeRequest = null;
-        
-        for (AiAnalysisResult.ToolRequest request : analysis.getToolRequests()) {
-            if ("product_search".equals(request.getName())) {
-                productSearchRequest = request;
-            } else if ("shipping_fee".equals(request.getName())) {
-                shippingFeeRequest = request;
-            }
-        }
-        
-        // Launch parallel executions
-        CompletableFuture<String> productFuture = null;
-        CompletableFuture<String> shippingFuture = null;
-        
-        if (productSearchRequest != null) {
-            final AiAnalysisResult.ToolRequest finalProductRequest = productSearchRequest;
-            productFuture = CompletableFuture.supplyAsync(() -> {
-                return executeProductSearchWithCache(finalProductRequest.getArgs());
-            });
-        }
-        
-        if (shippingFeeRequest != null) {
-            final AiAnalysisResult.ToolRequest finalShippingRequest = shippingFeeRequest;
-            shippingFuture = CompletableFuture.supplyAsync(() -> {
-                return executeShippingFeeWithCache(finalShippingRequest.getArgs());
-            });
-        }
-        
-        // Wait for completion with timeout
-        try {
-            // Product search result
-            if (productFuture != null) {
+        List<AiAnalysisResult.ToolRequest> toolRequests = analysis.getToolRequests();
+
+        List<Future<String>> futures = new ArrayList<>(toolRequests.size());
+        for (AiAnalysisResult.ToolRequest request : toolRequests) {
+            String toolName = request.getName();
+            Map<String, Object> args = request.getArgs();
+            futures.add(toolExecutors.submit(AiToolExecutors.poolFor(toolName), () -> {
+                long toolStart = System.currentTimeMillis();
                 try {
-                    String productResult = productFuture.get(PARALLEL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                    if (productResult != null && !productResult.isEmpty()) {
-                        results.append(productResult).append("\n\n");
-                    }
-                } catch (TimeoutException e) {
-                    log.warn("⏰ Product search timed out after {}ms", PARALLEL_TIMEOUT_MS);
-                    productFuture.cancel(true);
-                    results.append("TOOL_RESULT: Tìm kiếm sản phẩm đang xử lý, mình sẽ gửi thông tin sớm nhất.\n\n");
+                    return executeToolWithCache(toolName, args);
+                } finally {
+                    aiMonitoringService.recordToolLatency(toolName, System.currentTimeMillis() - toolStart, true);
                 }
-            }
-            
-            // Shipping fee result
-            if (shippingFuture != null) {
+            }));
+        }
+
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PARALLEL_TIMEOUT_MS);
+        StringBuilder results = new StringBuilder();
+
+        for (int i = 0; i < toolRequests.size(); i++) {
+            String toolName = toolRequests.get(i).getName();
+            Future<String> future = futures.get(i);
+            String result;
+
+            if (future == null) {
+                result = timeoutFallback(toolName);
+            } else {
                 try {
-                    String shippingResult = shippingFuture.get(PARALLEL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                    if (shippingResult != null && !shippingResult.isEmpty()) {
-                        results.append(shippingResult).append("\n\n");
-                    }
+                    result = future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
                 } catch (TimeoutException e) {
-                    log.warn("⏰ Shipping fee calculation timed out after {}ms", PARALLEL_TIMEOUT_MS);
-                    shippingFuture.cancel(true);
-                    results.append("Phí ship dự kiến 25.000-50.000₫ (xác nhận lại ngay khi có số cụ thể).\n\n");
+                    log.warn("⏰ Tool {} timed out after {}ms", toolName, PARALLEL_TIMEOUT_MS);
+                    future.cancel(true);
+                    result = timeoutFallback(toolName);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    futures.forEach(f -> { if (f != null) f.cancel(true); });
+                    break;
+                } catch (ExecutionException e) {
+                    log.error("Error executing tool: {}", toolName, e.getCause());
+                    result = null;
                 }
             }
-            
-        } catch (Exception e) {
-            log.error("Error in parallel tool execution", e);
-        }
-        
-        // Execute remaining tools sequentially
-        for (AiAnalysisResult.ToolRequest request : analysis.getToolRequests()) {
-            if (!"product_search".equals(request.getName()) && !"shipping_fee".equals(request.getName())) {
-                try {
-                    String result = executeTool(request.getName(), request.getArgs());
-                    if (result != null && !result.isEmpty()) {
-                        results.append(result).append("\n\n");
-                    }
-                } catch (Exception e) {
-                    log.error("Error executing tool: {}", request.getName(), e);
-                }
+
+            if (result != null && !result.isEmpty()) {
+                results.append(result).append("\n\n");
             }
         }
-        
+
         long totalTime = System.currentTimeMillis() - startTime;
-        log.info("🎯 PARALLEL execution completed in {}ms", totalTime);
-        
+        log.info("🎯 PARALLEL execution of {} tools completed in {}ms", toolRequests.size(), totalTime);
+
         return results.toString();
     }
 
     /**
-     * Execute tools sequentially (fallback)
+     * Placeholder text for a tool that timed out or could not be scheduled
+     */
+    private String timeoutFallback(String toolName) {
+        switch (toolName.toLowerCase()) {
+            case "product_search":
+                return "TOOL_RESULT: Tìm kiếm sản phẩm đang xử lý, mình sẽ gửi thông tin sớm nhất.";
+            case "shipping_fee":
+                return "Phí ship dự kiến 25.000-50.000₫ (xác nhận lại ngay khi có số cụ thể).";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Execute tools sequentially on the calling thread
      */
     private String executeToolsSequentially(AiAnalysisResult analysis) {
         StringBuilder results = new StringBuilder();
@@ -164,6 +148,7 @@ public class AiToolExecutorService {
             
             log.debug("Executing tool: {} with args: {}", toolName, args);
             
+            long toolStart = System.currentTimeMillis();
             try {
                 String result = executeTool(toolName, args);
                 if (result != null && !result.isEmpty()) {
@@ -171,12 +156,28 @@ public class AiToolExecutorService {
                 }
             } catch (Exception e) {
                 log.error("Error executing tool: {}", toolName, e);
+            } finally {
+                aiMonitoringService.recordToolLatency(toolName, System.currentTimeMillis() - toolStart, false);
             }
         }
         
         return results.toString();
     }
 
+    /**
+     * Execute single tool, using the result caches where a tool has one
+     */
+    private String executeToolWithCache(String toolName, Map<String, Object> args) {
+        switch (toolName.toLowerCase()) {
+            case "product_search":
+                return executeProductSearchWithCache(args);
+            case "shipping_fee":
+                return executeShippingFeeWithCache(args);
+            default:
+                return executeTool(toolName, args);
+        }
+    }
+
     /**
      * Execute single tool
      */
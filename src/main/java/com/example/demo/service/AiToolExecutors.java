@@ -0,0 +1,113 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pools for AI tool calls (see AiToolExecutorService)
+ *
+ * Tools are split by what they block on, so a slow GHN API cannot starve product search:
+ * - DB: product_search, promotion_lookup, store_info ("ai-tool-db-" threads)
+ * - HTTP: shipping_fee, which calls GHN ("ai-tool-http-" threads)
+ *
+ * Tasks are plain FutureTasks, so Future.cancel(true) interrupts the worker thread.
+ * A full pool rejects instead of queueing without bound; callers treat that like a timeout.
+ *
+ * Metrics: executor.* {name=ai.tool.db|ai.tool.http} (queued, active, completed...)
+ * and ai.tool.rejected{pool}
+ */
+@Component
+@Slf4j
+public class AiToolExecutors {
+
+    /**
+     * Pool a tool runs on
+     */
+    public enum Pool { DB, HTTP }
+
+    private final ThreadPoolExecutor dbExecutor;
+    private final ThreadPoolExecutor httpExecutor;
+    private final Counter dbRejected;
+    private final Counter httpRejected;
+
+    public AiToolExecutors(MeterRegistry meterRegistry,
+                           @Value("${app.ai.tools.db-pool-size:8}") int dbPoolSize,
+                           @Value("${app.ai.tools.http-pool-size:8}") int httpPoolSize,
+                           @Value("${app.ai.tools.queue-capacity:64}") int queueCapacity) {
+        this.dbExecutor = boundedPool("ai-tool-db-", dbPoolSize, queueCapacity);
+        this.httpExecutor = boundedPool("ai-tool-http-", httpPoolSize, queueCapacity);
+
+        new ExecutorServiceMetrics(dbExecutor, "ai.tool.db", Tags.empty()).bindTo(meterRegistry);
+        new ExecutorServiceMetrics(httpExecutor, "ai.tool.http", Tags.empty()).bindTo(meterRegistry);
+        this.dbRejected = rejectedCounter(meterRegistry, Pool.DB);
+        this.httpRejected = rejectedCounter(meterRegistry, Pool.HTTP);
+    }
+
+    /**
+     * Pool for a tool name; unknown tools run on the DB pool
+     */
+    public static Pool poolFor(String toolName) {
+        return "shipping_fee".equalsIgnoreCase(toolName) ? Pool.HTTP : Pool.DB;
+    }
+
+    /**
+     * Submit a tool call
+     * @return Future whose cancel(true) interrupts the call, or null if the pool is saturated
+     */
+    public <T> Future<T> submit(Pool pool, Callable<T> task) {
+        ThreadPoolExecutor executor = pool == Pool.HTTP ? httpExecutor : dbExecutor;
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            (pool == Pool.HTTP ? httpRejected : dbRejected).increment();
+            log.warn("AI tool pool {} saturated (queue={}), rejecting task", pool, executor.getQueue().size());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dbExecutor.shutdownNow();
+        httpExecutor.shutdownNow();
+    }
+
+    private static ThreadPoolExecutor boundedPool(String prefix, int size, int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            size, size, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueCapacity),
+            namedThreadFactory(prefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, Pool pool) {
+        return Counter.builder("ai.tool.rejected")
+            .description("AI tool calls rejected because the pool was saturated")
+            .tag("pool", pool.name().toLowerCase())
+            .register(meterRegistry);
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
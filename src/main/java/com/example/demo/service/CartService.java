@@ -1,6 +1,7 @@
 package com.example.demo.service;
 
 import com.example.demo.dto.CartDTO;
+import com.example.demo.dto.CartItemDTO;
 import com.example.demo.dto.CartResponse;
 import com.example.demo.entity.Cart;
 import com.example.demo.entity.CartItem;
@@ -16,7 +17,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Service class for managing user shopping cart
@@ -60,6 +68,14 @@ public class CartService {
         return cartRepository.save(cart);
     }
     
+    /**
+     * Get user's cart for checkout: cart, items and their products in one query
+     */
+    public Cart getCartForCheckout(Long userId) {
+        return cartRepository.findByUserIdWithItems(userId)
+            .orElseGet(() -> getOrCreateCart(userId));
+    }
+    
     /**
      * Add product to cart
      */
@@ -211,7 +227,7 @@ public class CartService {
                 emptyCartDTO.setUserId(userId);
                 emptyCartDTO.setTotalAmount(java.math.BigDecimal.ZERO);
                 emptyCartDTO.setTotalQuantity(0);
-                emptyCartDTO.setItems(new java.util.ArrayList<>());
+                emptyCartDTO.setItems(new ArrayList<>());
                 return CartResponse.success("Giỏ hàng trống", emptyCartDTO, 0L);
             }
             
@@ -268,41 +284,56 @@ public class CartService {
     /**
      * Remove specific products from cart by product IDs
      */
-    public CartResponse removeProductsFromCart(Long userId, java.util.List<Long> productIds) {
+    public CartResponse removeProductsFromCart(Long userId, List<Long> productIds) {
         try {
             logger.info("Removing {} products from cart for user {}", productIds.size(), userId);
             
-            Optional<Cart> cartOpt = cartRepository.findByUserId(userId);
+            Optional<Cart> cartOpt = cartRepository.findByUserIdWithItems(userId);
             if (cartOpt.isEmpty()) {
                 return CartResponse.error("Giỏ hàng không tồn tại");
             }
             
             Cart cart = cartOpt.get();
+            List<CartItem> remaining = removeOrderedProducts(cart, productIds);
             
-            // Remove each product from cart
-            for (Long productId : productIds) {
-                Optional<CartItem> cartItemOpt = cartItemRepository.findByCartIdAndProductId(cart.getId(), productId);
-                if (cartItemOpt.isPresent()) {
-                    CartItem cartItem = cartItemOpt.get();
-                    cart.removeItem(cartItem);
-                    cartItemRepository.delete(cartItem);
-                    logger.info("Removed product {} from cart for user {}", productId, userId);
-                }
-            }
-            
-            // Recalculate cart totals
-            cart.calculateTotalAmount();
-            cartRepository.save(cart);
-            
-            // Get updated cart count
-            Long totalItems = cartRepository.countItemsByUserId(userId);
+            CartDTO cartDTO = new CartDTO(cart.getId(), userId, cart.getTotalAmount(), cart.getTotalQuantity(),
+                remaining.stream().map(CartItemDTO::fromCartItem).collect(Collectors.toList()),
+                cart.getCreatedAt(), cart.getUpdatedAt());
             
             logger.info("Successfully removed {} products from cart for user {}", productIds.size(), userId);
-            return CartResponse.success("Đã xóa sản phẩm đã đặt hàng khỏi giỏ hàng", CartDTO.fromCart(cart), totalItems);
+            return CartResponse.success("Đã xóa sản phẩm đã đặt hàng khỏi giỏ hàng", cartDTO, 
+                Long.valueOf(cart.getTotalQuantity()));
             
         } catch (Exception e) {
             logger.error("Error removing products from cart for user {}: {}", userId, e.getMessage());
             return CartResponse.error("Có lỗi xảy ra khi xóa sản phẩm khỏi giỏ hàng");
         }
     }
+    
+    /**
+     * Remove ordered products from an already loaded cart (checkout)
+     * The lines are deleted with one statement and only the cart totals are written back.
+     * cart.getCartItems() is left as loaded: removing the deleted lines from it would make
+     * orphan removal delete them a second time. Read the returned list instead.
+     * @return Cart items that are still in the cart
+     */
+    public List<CartItem> removeOrderedProducts(Cart cart, Collection<Long> productIds) {
+        Set<Long> ids = new HashSet<>(productIds);
+        List<CartItem> remaining = cart.getCartItems().stream()
+            .filter(item -> !ids.contains(item.getProduct().getId()))
+            .collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return remaining;
+        }
+        
+        int removed = cartItemRepository.deleteByCartIdAndProductIds(cart.getId(), ids);
+        
+        cart.setTotalAmount(remaining.stream()
+            .map(item -> item.getProduct().getPrice().multiply(new BigDecimal(item.getQuantity())))
+            .reduce(BigDecimal.ZERO, BigDecimal::add));
+        cart.setTotalQuantity(remaining.stream().mapToInt(CartItem::getQuantity).sum());
+        
+        logger.info("Removed {} cart lines from cart {}", removed, cart.getId());
+        return remaining;
+    }
 }
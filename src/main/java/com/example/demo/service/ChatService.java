@@ -377,7 +377,7 @@ public class ChatService {
                                 );
                             }
                         } else {
-                            // No tools needed, use initial reply
+                            // No tools needed: the analysis reply is the final answer (one Gemini call)
                             aiReply = analysis.getReply();
                         }
                         
@@ -570,7 +570,7 @@ public class ChatService {
                         analysis
                     );
                 } else {
-                    // No tools needed, use initial reply
+                    // No tools needed: the analysis reply is the final answer (one Gemini call)
                     aiReply = analysis.getReply();
                 }
                 
@@ -990,8 +990,10 @@ public class ChatService {
         SseEmitter emitter = streamingEmitters.get(conversationId);
         if (emitter != null) {
             try {
+                // Real stream chunks are raw model text: escape backslashes first, then quotes/newlines
                 String jsonData = String.format("{\"type\":\"chunk\",\"content\":\"%s\"}", 
-                    content.replace("\"", "\\\"").replace("\n", "\\n"));
+                    content.replace("\\", "\\\\").replace("\"", "\\\"")
+                        .replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t"));
                 emitter.send(SseEmitter.event()
                     .name("message")
                     .data(jsonData));
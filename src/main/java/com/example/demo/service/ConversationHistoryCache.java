@@ -0,0 +1,223 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ConversationTurnDTO;
+import com.example.demo.entity.Message;
+import com.example.demo.entity.User;
+import com.example.demo.repository.MessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import jakarta.persistence.PostPersist;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Recent turns of each conversation, used as AI context (see AiChatService)
+ *
+ * Each conversation has a ring buffer of its last N messages in the "conversationHistory" cache,
+ * so building a prompt needs no query while the ring is warm and one bounded query
+ * (MessageRepository.findRecentTurns) when it is cold.
+ *
+ * New messages are appended by MessageListener as soon as they are persisted, so the AI turn
+ * sees the customer's message in the same transaction. When that transaction completes the
+ * ring is dropped if it rolled back, or if it no longer holds the message (a concurrent load
+ * read the table before the commit); the next read reloads it.
+ * Every change to a ring goes through the cache map's compute methods, which run one at a
+ * time per conversation. The load query runs outside them (a compute holds a lock shared with
+ * other keys), so a loaded ring is only installed if no message of its conversation was added
+ * or committed while the query ran; otherwise it is used once and the next read reloads.
+ */
+@Component
+@Slf4j
+public class ConversationHistoryCache {
+
+    public static final String CACHE_NAME = "conversationHistory";
+
+    private final MessageRepository messageRepository;
+    private final AiMonitoringService monitoringService;
+    private final ConcurrentMap<Object, Object> rings;
+    // Bumped whenever a message is added to or committed in a conversation of the stripe
+    private final AtomicLongArray changes = new AtomicLongArray(64);
+
+    @SuppressWarnings("unchecked")
+    public ConversationHistoryCache(MessageRepository messageRepository,
+                                    AiMonitoringService monitoringService,
+                                    CacheManager cacheManager) {
+        this.messageRepository = messageRepository;
+        this.monitoringService = monitoringService;
+        CaffeineCache cache = (CaffeineCache) cacheManager.getCache(CACHE_NAME);
+        this.rings = ((Cache<Object, Object>) cache.getNativeCache()).asMap();
+    }
+
+    /**
+     * Last messages of a conversation, oldest first
+     */
+    public List<ConversationTurnDTO> recentTurns(Long conversationId, int limit) {
+        if (conversationId == null || limit <= 0) {
+            return List.of();
+        }
+        Object cached = rings.get(conversationId);
+        List<ConversationTurnDTO> turns = cached != null ? ((Ring) cached).last(limit) : null;
+        monitoringService.recordCacheEvent(CACHE_NAME, turns != null);
+        if (turns != null) {
+            return turns;
+        }
+
+        int stripe = stripe(conversationId);
+        long seen = changes.get(stripe);
+        Ring loaded = load(conversationId, limit);
+        rings.compute(conversationId, (key, current) -> {
+            // Keep a ring another thread installed meanwhile
+            if (current != null && ((Ring) current).last(limit) != null) {
+                return current;
+            }
+            return changes.get(stripe) == seen ? loaded : current;
+        });
+        return loaded.last(limit);
+    }
+
+    /**
+     * Messages with afterId < id < beforeId, oldest first, at most limit; not cached
+     */
+    public List<ConversationTurnDTO> turnsBetween(Long conversationId, Long afterId, Long beforeId, int limit) {
+        return messageRepository.findTurnsBetween(conversationId, afterId, beforeId, PageRequest.of(0, limit));
+    }
+
+    public void evict(Long conversationId) {
+        if (conversationId != null) {
+            rings.remove(conversationId);
+        }
+    }
+
+    private int stripe(Long conversationId) {
+        return Long.hashCode(conversationId) & (changes.length() - 1);
+    }
+
+    private Ring load(Long conversationId, int limit) {
+        List<ConversationTurnDTO> newestFirst = messageRepository.findRecentTurns(conversationId, PageRequest.of(0, limit));
+        Ring ring = new Ring(limit);
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            ring.add(newestFirst.get(i));
+        }
+        // Fewer rows than asked for: this is the whole conversation
+        ring.complete = newestFirst.size() < limit;
+        log.debug("Loaded {} recent messages of conversation {}", newestFirst.size(), conversationId);
+        return ring;
+    }
+
+    /**
+     * Add a just-persisted message to its conversation's ring, if that ring is cached
+     */
+    void append(Message message) {
+        Long conversationId = message.getConversationId();
+        if (conversationId == null) {
+            return;
+        }
+        Long messageId = message.getId();
+        changes.incrementAndGet(stripe(conversationId));
+        User sender = message.getSender();
+        if (sender != null && Hibernate.isInitialized(sender)) {
+            ConversationTurnDTO turn = new ConversationTurnDTO(messageId, sender.getFullName(), message.getContent());
+            rings.computeIfPresent(conversationId, (key, ring) -> {
+                ((Ring) ring).add(turn);
+                return ring;
+            });
+        } else {
+            // Loading the sender from a JPA callback is not allowed; let the next read reload
+            evict(conversationId);
+        }
+
+        // Also covers a ring loaded by another thread before this transaction commits
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    changes.incrementAndGet(stripe(conversationId));
+                    rings.computeIfPresent(conversationId, (key, ring) ->
+                        status == STATUS_COMMITTED && ((Ring) ring).contains(messageId) ? ring : null);
+                }
+            });
+        }
+    }
+
+    /**
+     * Fixed-size buffer of the latest turns; the oldest is overwritten when full
+     */
+    private static final class Ring {
+
+        private final ConversationTurnDTO[] turns;
+        private int start;
+        private int size;
+        // true while the ring holds every message of the conversation
+        private boolean complete;
+
+        Ring(int capacity) {
+            this.turns = new ConversationTurnDTO[capacity];
+        }
+
+        synchronized void add(ConversationTurnDTO turn) {
+            if (size < turns.length) {
+                turns[(start + size++) % turns.length] = turn;
+            } else {
+                turns[start] = turn;
+                start = (start + 1) % turns.length;
+                complete = false;
+            }
+        }
+
+        synchronized boolean contains(Long messageId) {
+            for (int i = 0; i < size; i++) {
+                if (messageId.equals(turns[(start + i) % turns.length].getMessageId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the last n turns, or null if the ring cannot tell (n is more than it holds)
+         */
+        synchronized List<ConversationTurnDTO> last(int n) {
+            if (n > size && !complete) {
+                return null;
+            }
+            int count = Math.min(n, size);
+            List<ConversationTurnDTO> result = new ArrayList<>(count);
+            for (int i = size - count; i < size; i++) {
+                result.add(turns[(start + i) % turns.length]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * JPA listener on Message. Hibernate gets it from Spring; the cache is looked up lazily
+     * because listeners are created while the EntityManagerFactory, which the cache needs, starts.
+     */
+    public static class MessageListener {
+
+        private final ObjectProvider<ConversationHistoryCache> cache;
+
+        public MessageListener(ObjectProvider<ConversationHistoryCache> cache) {
+            this.cache = cache;
+        }
+
+        @PostPersist
+        public void onPersist(Message message) {
+            ConversationHistoryCache historyCache = cache.getIfAvailable();
+            if (historyCache != null) {
+                historyCache.append(message);
+            }
+        }
+    }
+}
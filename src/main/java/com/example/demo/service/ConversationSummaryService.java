@@ -0,0 +1,247 @@
+package com.example.demo.service;
+
+import com.example.demo.client.GeminiClient;
+import com.example.demo.dto.ConversationTurnDTO;
+import com.example.demo.dto.gemini.GeminiResponse;
+import com.example.demo.repository.ConversationRepository;
+import com.example.demo.repository.MessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Tóm tắt cuốn chiếu cuộc hội thoại cho prompt AI
+ *
+ * Once a conversation has a summary, prompts carry it plus only the messages after it
+ * (see AiChatService.getConversationHistory), so prompt size stays flat however long the
+ * conversation gets. Every app.ai.summary.every-turns AI turns a background worker folds the
+ * messages older than the last app.ai.summary.recent-turns into the summary with one Gemini
+ * call and stores it on the conversation; summary_message_id is the last message folded in.
+ * Between successful runs about recent-turns + 2 * every-turns messages pile up after the
+ * summary, which is the window the prompt reads verbatim. When more piled up (a failed or
+ * skipped run, staff messages, several customer messages per turn) the prompt also reads
+ * the messages between the summary and the window.
+ *
+ * The stored summary and the turn counter are cached per conversation ("conversationSummaries").
+ */
+@Service
+@Slf4j
+public class ConversationSummaryService {
+
+    public static final String CACHE_NAME = "conversationSummaries";
+
+    // Messages folded per Gemini call; a long backlog is caught up in several calls
+    private static final int MAX_FOLD = 100;
+
+    /**
+     * Stored summary; text is null before the first run
+     */
+    public record Summary(String text, Long upToMessageId) {
+    }
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final GeminiClient geminiClient;
+    private final AiPromptService promptService;
+    private final AiGenerationProfileService profileService;
+    private final ConcurrentMap<Object, Object> states;
+    private final ThreadPoolExecutor executor;
+    private final int everyTurns;
+    private final int recentTurns;
+    // Conversations with a run queued or in progress
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    @SuppressWarnings("unchecked")
+    public ConversationSummaryService(ConversationRepository conversationRepository,
+                                      MessageRepository messageRepository,
+                                      GeminiClient geminiClient,
+                                      AiPromptService promptService,
+                                      AiGenerationProfileService profileService,
+                                      CacheManager cacheManager,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${app.ai.summary.every-turns:3}") int everyTurns,
+                                      @Value("${app.ai.summary.recent-turns:4}") int recentTurns,
+                                      @Value("${app.ai.summary.workers:2}") int workers,
+                                      @Value("${app.ai.summary.queue-capacity:200}") int queueCapacity) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.geminiClient = geminiClient;
+        this.promptService = promptService;
+        this.profileService = profileService;
+        this.everyTurns = everyTurns;
+        this.recentTurns = recentTurns;
+
+        CaffeineCache cache = (CaffeineCache) cacheManager.getCache(CACHE_NAME);
+        this.states = ((Cache<Object, Object>) cache.getNativeCache()).asMap();
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "conversation-summary-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+        new ExecutorServiceMetrics(executor, "ai.summary", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    /**
+     * Stored summary of a conversation, or null if it has none yet
+     */
+    public Summary getSummary(Long conversationId) {
+        Summary summary = state(conversationId).summary;
+        return summary.text() != null ? summary : null;
+    }
+
+    /**
+     * How many of the latest messages a prompt should read next to the summary
+     */
+    public int getContextTurns() {
+        return recentTurns + 2 * everyTurns;
+    }
+
+    /**
+     * Count one AI turn; every every-turns turns a summary run is queued after commit
+     */
+    public void recordTurn(Long conversationId) {
+        if (conversationId == null || everyTurns <= 0) {
+            return;
+        }
+        AtomicInteger turns = state(conversationId).turns;
+        if (turns.incrementAndGet() < everyTurns) {
+            return;
+        }
+        turns.set(0);
+
+        // The worker must see this turn's messages
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(conversationId);
+                }
+            });
+        } else {
+            submit(conversationId);
+        }
+    }
+
+    private void submit(Long conversationId) {
+        if (!running.add(conversationId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    summarize(conversationId);
+                } catch (Exception e) {
+                    log.warn("Failed to update summary of conversation {}", conversationId, e);
+                } finally {
+                    running.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.remove(conversationId);
+            log.warn("Summary queue full, skipping conversation {}", conversationId);
+        }
+    }
+
+    /**
+     * Fold every message older than the verbatim window into the summary
+     */
+    void summarize(Long conversationId) {
+        while (true) {
+            // From the database: another instance may have moved it on
+            Summary current = loadSummary(conversationId);
+            List<ConversationTurnDTO> window = messageRepository.findRecentTurns(conversationId, PageRequest.of(0, recentTurns));
+            if (window.size() < recentTurns) {
+                return;
+            }
+            long windowStart = window.stream().mapToLong(ConversationTurnDTO::getMessageId).min().getAsLong();
+            long after = current.upToMessageId() != null ? current.upToMessageId() : 0L;
+            List<ConversationTurnDTO> fold = messageRepository.findTurnsBetween(
+                conversationId, after, windowStart, PageRequest.of(0, MAX_FOLD));
+            if (fold.isEmpty()) {
+                return;
+            }
+
+            String newMessages = fold.stream()
+                .map(turn -> turn.getSenderName() + ": " + turn.getContent())
+                .collect(Collectors.joining("\n"));
+            GeminiResponse response = geminiClient.generateContentWithProfileAndRetry(
+                promptService.generateSummarySystemPrompt(),
+                promptService.generateSummaryUserMessage(current.text(), newMessages),
+                profileService.getSummaryProfile(),
+                2);
+            String text = response != null ? response.getTextResponse() : null;
+            if (text == null || text.isBlank()) {
+                log.warn("Gemini returned no summary for conversation {}", conversationId);
+                return;
+            }
+
+            Summary updated = new Summary(text.trim(),
+                fold.stream().mapToLong(ConversationTurnDTO::getMessageId).max().getAsLong());
+            if (conversationRepository.updateHistorySummary(conversationId, updated.text(), updated.upToMessageId()) == 0) {
+                // Someone else stored a newer one
+                states.remove(conversationId);
+                return;
+            }
+            states.computeIfPresent(conversationId, (key, state) -> {
+                ((State) state).summary = updated;
+                return state;
+            });
+            log.debug("Folded {} messages into the summary of conversation {}", fold.size(), conversationId);
+
+            if (fold.size() < MAX_FOLD) {
+                return;
+            }
+        }
+    }
+
+    private State state(Long conversationId) {
+        return (State) states.computeIfAbsent(conversationId, key -> new State(loadSummary(conversationId)));
+    }
+
+    private Summary loadSummary(Long conversationId) {
+        return conversationRepository.findById(conversationId)
+            .map(conversation -> new Summary(conversation.getHistorySummary(), conversation.getSummaryMessageId()))
+            .orElse(new Summary(null, null));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static final class State {
+
+        private volatile Summary summary;
+        private final AtomicInteger turns = new AtomicInteger();
+
+        State(Summary summary) {
+            this.summary = summary;
+        }
+    }
+}
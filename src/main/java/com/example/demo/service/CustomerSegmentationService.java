@@ -1,127 +1,150 @@
 package com.example.demo.service;
 
-import com.example.demo.entity.User;
-import com.example.demo.repository.OrderRepository;
+import com.example.demo.entity.enums.UserRole;
 import com.example.demo.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.List;
 
+/**
+ * Phân khúc khách hàng:
+ * - VIP: total_spent > 5,000,000 VND VÀ orders_count ≥ 3
+ * - AT_RISK: Không mua ≥ 90 ngày, đã từng mua ≥ 1 lần
+ * - NEW: Đăng ký trong 30 ngày hoặc đơn đầu tiên trong 30 ngày
+ *
+ * Segments are computed in SQL from customer_stats (UserRepository.SEGMENT_UPDATE), which
+ * the Orders/Reviews triggers keep current:
+ * - Order events (created, status changed, cancelled) re-segment that one customer after commit.
+ * - An hourly sweep re-segments only customers whose segment can change with time alone.
+ * - A full run (startup, admin trigger) walks customers in ID chunks, one transaction each.
+ * Only customers whose segment changes are written.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CustomerSegmentationService {
-    
+
+    private static final BigDecimal VIP_MIN_SPENT = new BigDecimal("5000000");
+    private static final int VIP_MIN_ORDERS = 3;
+    // ChronoUnit.DAYS.between(date, now) <= 30 <=> date > now - 31 days
+    private static final int NEW_CUSTOMER_DAYS = 31;
+    private static final int AT_RISK_DAYS = 90;
+    private static final int CHUNK_SIZE = 1000;
+
     private final UserRepository userRepository;
-    private final OrderRepository orderRepository;
-    
+
+    // Last order age covered by the previous sweep; null until the first full run
+    private volatile LocalDateTime lastSweepAt;
+
+    /**
+     * Phân khúc toàn bộ khách hàng khi khởi động (bù các sự kiện bị lỡ khi app dừng)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void segmentOnStartup() {
+        try {
+            segmentCustomers();
+        } catch (Exception e) {
+            log.error("❌ Lỗi khi phân khúc khách hàng lúc khởi động", e);
+        }
+    }
+
     /**
-     * Scheduled task chạy hàng đêm lúc 00:00 (Asia/Ho_Chi_Minh)
-     * Phân khúc tất cả khách hàng dựa trên logic:
-     * - VIP: total_spent > 5,000,000 VND VÀ orders_count ≥ 3
-     * - NEW: Đăng ký trong 30 ngày hoặc đơn đầu tiên trong 30 ngày
-     * - AT_RISK: Không mua ≥ 90 ngày, đã từng mua ≥ 1 lần
+     * Phân khúc tất cả khách hàng, từng khối CHUNK_SIZE ID trong transaction riêng
+     * @return Number of customers whose segment changed
      */
-    @Scheduled(cron = "0 0 0 * * ?", zone = "Asia/Ho_Chi_Minh")
-    @Transactional
-    public void segmentCustomers() {
-        log.info("🔄 Bắt đầu phân khúc khách hàng tự động...");
-        
+    public int segmentCustomers() {
+        log.info("🔄 Bắt đầu phân khúc khách hàng...");
+
         long startTime = System.currentTimeMillis();
-        
+        LocalDateTime now = LocalDateTime.now();
+        Long maxId = userRepository.findMaxCustomerId();
+        int changed = 0;
+
+        if (maxId != null) {
+            for (long fromId = 0; fromId < maxId; fromId += CHUNK_SIZE) {
+                changed += userRepository.refreshSegmentsInRange(fromId, fromId + CHUNK_SIZE,
+                    VIP_MIN_SPENT, VIP_MIN_ORDERS, now.minusDays(AT_RISK_DAYS), now.minusDays(NEW_CUSTOMER_DAYS), now);
+            }
+        }
+        lastSweepAt = now;
+
+        long duration = System.currentTimeMillis() - startTime;
+        log.info("✅ Hoàn thành phân khúc khách hàng trong {}ms ({} thay đổi)", duration, changed);
+        return changed;
+    }
+
+    /**
+     * Sweep every hour: NEW customers aging out, new sign-ups, and last orders that just turned 90 days old
+     */
+    @Scheduled(cron = "0 5 * * * ?", zone = "Asia/Ho_Chi_Minh")
+    public void refreshTimeBasedSegments() {
+        LocalDateTime previous = lastSweepAt;
+        if (previous == null) {
+            return; // Startup full run not done yet
+        }
         try {
-            List<User> customers = userRepository.findAllCustomers();
             LocalDateTime now = LocalDateTime.now();
-            
-            for (User customer : customers) {
-                String segment = determineSegment(customer, now);
-                customer.setCustomerSegment(segment);
-                customer.setCustomerSegmentUpdatedAt(now);
+            int changed = userRepository.refreshTimeBasedSegments(VIP_MIN_SPENT, VIP_MIN_ORDERS,
+                previous.minusDays(AT_RISK_DAYS), now.minusDays(AT_RISK_DAYS), now.minusDays(NEW_CUSTOMER_DAYS), now);
+            lastSweepAt = now;
+            if (changed > 0) {
+                log.info("🔄 Cập nhật phân khúc theo thời gian cho {} khách hàng", changed);
             }
-            
-            userRepository.saveAll(customers);
-            
-            long duration = System.currentTimeMillis() - startTime;
-            log.info("✅ Hoàn thành phân khúc {} khách hàng trong {}ms", customers.size(), duration);
-            
         } catch (Exception e) {
-            log.error("❌ Lỗi khi phân khúc khách hàng", e);
-            throw e;
+            // lastSweepAt stays, the next run covers this window too
+            log.error("❌ Lỗi khi cập nhật phân khúc theo thời gian", e);
         }
     }
-    
+
     /**
-     * Xác định phân khúc cho một khách hàng
+     * Re-segment a customer after an order event, once the current transaction commits
+     * (customer_stats is updated by trigger in that transaction). Never fails the caller.
      */
-    private String determineSegment(User customer, LocalDateTime now) {
-        Long ordersCount = orderRepository.countOrdersByUser(customer.getId());
-        BigDecimal totalSpent = orderRepository.getTotalSpentByUser(customer.getId());
-        
-        // Logic phân khúc theo thứ tự ưu tiên
-        // 1. VIP: Chi >5tr VÀ ≥3 đơn
-        if (totalSpent != null && totalSpent.compareTo(new BigDecimal("5000000")) > 0 
-            && ordersCount >= 3) {
-            return "VIP";
+    public void refreshCustomerAfterCommit(Long userId) {
+        if (userId == null) {
+            return;
         }
-        
-        // 2. AT_RISK: Không mua ≥90 ngày, đã từng mua
-        LocalDateTime lastOrderDate = orderRepository.getLastOrderDateByUser(customer.getId());
-        if (lastOrderDate != null && ordersCount > 0) {
-            long daysSinceLastOrder = ChronoUnit.DAYS.between(lastOrderDate, now);
-            if (daysSinceLastOrder >= 90) {
-                return "AT_RISK";
-            }
-        }
-        
-        // 3. NEW: Đăng ký ≤30 ngày hoặc đơn đầu ≤30 ngày
-        LocalDateTime firstOrderDate = orderRepository.getFirstOrderDateByUser(customer.getId());
-        LocalDateTime registrationDate = customer.getCreatedAt();
-        
-        if (registrationDate != null && ChronoUnit.DAYS.between(registrationDate, now) <= 30) {
-            return "NEW";
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            refreshCustomer(userId);
+            return;
         }
-        
-        if (firstOrderDate != null && ChronoUnit.DAYS.between(firstOrderDate, now) <= 30) {
-            return "NEW";
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                refreshCustomer(userId);
+            }
+        });
+    }
+
+    private void refreshCustomer(Long userId) {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            userRepository.refreshSegmentForUser(userId, VIP_MIN_SPENT, VIP_MIN_ORDERS,
+                now.minusDays(AT_RISK_DAYS), now.minusDays(NEW_CUSTOMER_DAYS), now);
+        } catch (Exception e) {
+            // The next full run corrects it
+            log.warn("Could not refresh segment of customer {}: {}", userId, e.getMessage());
         }
-        
-        // Khách thường - không gán nhãn
-        return null;
     }
-    
+
     /**
      * Manual trigger để admin có thể chạy phân khúc ngay
+     * @return Number of customers evaluated
      */
-    @Transactional
     public int manualSegment() {
         log.info("🔄 Phân khúc thủ công được kích hoạt");
-        
-        long startTime = System.currentTimeMillis();
-        
+
         try {
-            List<User> customers = userRepository.findAllCustomers();
-            LocalDateTime now = LocalDateTime.now();
-            
-            for (User customer : customers) {
-                String segment = determineSegment(customer, now);
-                customer.setCustomerSegment(segment);
-                customer.setCustomerSegmentUpdatedAt(now);
-            }
-            
-            userRepository.saveAll(customers);
-            
-            long duration = System.currentTimeMillis() - startTime;
-            log.info("✅ Phân khúc thủ công hoàn thành {} khách hàng trong {}ms", customers.size(), duration);
-            
-            return customers.size();
-            
+            segmentCustomers();
+            return (int) userRepository.countByRole(UserRole.CUSTOMER);
         } catch (Exception e) {
             log.error("❌ Lỗi khi phân khúc thủ công", e);
             throw e;
@@ -3,24 +3,33 @@ package com.example.demo.service;
 import com.example.demo.dto.CreateCustomerRequest;
 import com.example.demo.dto.CustomerDTO;
 import com.example.demo.dto.UpdateCustomerRequest;
+import com.example.demo.entity.CustomerStats;
 import com.example.demo.entity.User;
 import com.example.demo.entity.enums.UserRole;
+import com.example.demo.repository.CustomerStatsRepository;
 import com.example.demo.repository.FollowRepository;
 import com.example.demo.repository.UserRepository;
+import com.example.demo.security.AuthPrincipalCache;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,16 +43,28 @@ public class CustomerService {
     private final FollowRepository followRepository;
     private final SessionManagementService sessionManagementService;
     private final com.example.demo.repository.OrderRepository orderRepository;
+    private final AuthPrincipalCache authPrincipalCache;
+    private final CustomerStatsRepository customerStatsRepository;
+    private final ExportCursor exportCursor;
+    
+    // Segment rules (match CustomerSegmentationService)
+    private static final BigDecimal VIP_MIN_SPENT = new BigDecimal("5000000"); // 5 million VND
+    private static final int VIP_MIN_ORDERS = 3;
+    private static final int NEW_CUSTOMER_DAYS = 30;
+    private static final int AT_RISK_DAYS = 90;
+    private static final int LOYAL_MIN_ORDERS = 10;
+    
+    private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "createdAt");
+    private static final Set<String> SORTABLE_PROPERTIES = Set.of(
+        "id", "firstname", "lastname", "email", "phone", "isActive", "lastLogin", "createdAt",
+        "totalOrders", "totalSpent", "lastOrderDate", "totalReviews");
     
     /**
      * Get all customers (CUSTOMER role only)
      */
     @Transactional(readOnly = true)
     public List<CustomerDTO> getAllCustomers() {
-        List<User> customers = userRepository.findByRole(UserRole.CUSTOMER);
-        return customers.stream()
-            .map(this::convertToDTO)
-            .collect(Collectors.toList());
+        return findCustomers(new CustomerFilter(), Pageable.unpaged(DEFAULT_SORT)).getContent();
     }
     
     /**
@@ -51,21 +72,7 @@ public class CustomerService {
      */
     @Transactional(readOnly = true)
     public Page<CustomerDTO> getCustomers(Pageable pageable) {
-        // Get all users and filter for customers only
-        List<User> allUsers = userRepository.findAll();
-        List<User> customers = allUsers.stream()
-            .filter(user -> user.getRole() == UserRole.CUSTOMER)
-            .collect(Collectors.toList());
-        
-        // Apply pagination manually
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), customers.size());
-        
-        List<CustomerDTO> customerDTOs = customers.subList(start, end).stream()
-            .map(this::convertToDTO)
-            .collect(Collectors.toList());
-        
-        return new PageImpl<>(customerDTOs, pageable, customers.size());
+        return findCustomers(new CustomerFilter(), pageable);
     }
     
     /**
@@ -88,11 +95,9 @@ public class CustomerService {
      */
     @Transactional(readOnly = true)
     public List<CustomerDTO> searchCustomers(String keyword) {
-        List<User> users = userRepository.searchUsers(keyword);
-        return users.stream()
-            .filter(user -> user.getRole() == UserRole.CUSTOMER)
-            .map(this::convertToDTO)
-            .collect(Collectors.toList());
+        CustomerFilter filter = new CustomerFilter();
+        filter.keyword = keyword;
+        return findCustomers(filter, Pageable.unpaged(DEFAULT_SORT)).getContent();
     }
     
     /**
@@ -100,24 +105,14 @@ public class CustomerService {
      */
     @Transactional(readOnly = true)
     public Page<CustomerDTO> searchCustomers(String keyword, Pageable pageable) {
-        List<User> users = userRepository.searchUsers(keyword);
-        List<User> customers = users.stream()
-            .filter(user -> user.getRole() == UserRole.CUSTOMER)
-            .collect(Collectors.toList());
-        
-        // Apply pagination manually
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), customers.size());
-        
-        List<CustomerDTO> customerDTOs = customers.subList(start, end).stream()
-            .map(this::convertToDTO)
-            .collect(Collectors.toList());
-        
-        return new PageImpl<>(customerDTOs, pageable, customers.size());
+        CustomerFilter filter = new CustomerFilter();
+        filter.keyword = keyword;
+        return findCustomers(filter, pageable);
     }
     
     /**
      * Get customers with filters
+     * Filters, sorting and paging all run in SQL on customer_stats (see CustomerStatsRepository).
      */
     @Transactional(readOnly = true)
     public Page<CustomerDTO> getCustomersWithFilters(
@@ -127,153 +122,77 @@ public class CustomerService {
             String segment,
             String fromDate, 
             String toDate) {
+        return findCustomers(buildFilter(status, type, segment, fromDate, toDate), pageable);
+    }
+    
+    /**
+     * Feed customers to an export through a database cursor (constant memory)
+     * A search keyword replaces the other filters, as in the admin list.
+     * @return Number of exported customers
+     */
+    @Transactional(readOnly = true)
+    public long forEachCustomerForExport(String search, String status, String type, String segment,
+                                         String fromDate, String toDate,
+                                         java.util.function.Consumer<? super CustomerDTO> action) {
+        CustomerFilter filter;
+        if (search != null && !search.isBlank()) {
+            filter = new CustomerFilter();
+            filter.keyword = search.trim();
+        } else {
+            filter = buildFilter(status, type, segment, fromDate, toDate);
+        }
         
-        // Get all customers
-        List<User> allUsers = userRepository.findAll();
-        List<User> customers = allUsers.stream()
-            .filter(user -> user.getRole() == UserRole.CUSTOMER)
-            .collect(Collectors.toList());
-        
-        // Apply status filter
-        if (status != null && !status.isEmpty()) {
-            if ("active".equals(status)) {
-                customers = customers.stream()
-                    .filter(User::getIsActive)
-                    .collect(Collectors.toList());
-            } else if ("inactive".equals(status)) {
-                customers = customers.stream()
-                    .filter(user -> !user.getIsActive())
-                    .collect(Collectors.toList());
-            }
+        return exportCursor.forEach(customerStatsRepository.streamCustomers(
+            filter.active, filter.keyword, filter.createdFrom, filter.createdBefore,
+            filter.minSpent, filter.minCompletedOrders, filter.moreOrdersThan,
+            filter.recentSince, filter.lastOrderBefore, filter.idleSince,
+            withSortableProperties(Pageable.unpaged(DEFAULT_SORT)).getSort())
+            .map(this::convertRowToDTO), action);
+    }
+    
+    /**
+     * Resolve the admin list filters to SQL bounds
+     */
+    private CustomerFilter buildFilter(String status, String type, String segment, String fromDate, String toDate) {
+        LocalDateTime now = LocalDateTime.now();
+        CustomerFilter filter = new CustomerFilter();
+        
+        // Status filter
+        if ("active".equals(status)) {
+            filter.active = true;
+        } else if ("inactive".equals(status)) {
+            filter.active = false;
         }
         
-        // Apply segment filter (VIP, NEW, AT_RISK) - uses CustomerSegmentationService logic
-        if (segment != null && !segment.isEmpty()) {
-            java.time.LocalDateTime now = java.time.LocalDateTime.now();
-            java.time.LocalDateTime thirtyDaysAgo = now.minusDays(30);
-            java.time.LocalDateTime ninetyDaysAgo = now.minusDays(90);
-            java.math.BigDecimal vipThreshold = new java.math.BigDecimal("5000000"); // 5 million VND
-            
-            if ("VIP".equals(segment)) {
-                // VIP: total_spent > 5M VND AND orders_count >= 3
-                customers = customers.stream()
-                    .filter(user -> {
-                        try {
-                            if (user.getOrders() == null) return false;
-                            
-                            long ordersCount = user.getOrders().stream()
-                                .filter(order -> order.getStatus() == com.example.demo.entity.enums.OrderStatus.COMPLETED)
-                                .count();
-                            
-                            java.math.BigDecimal totalSpent = user.getOrders().stream()
-                                .filter(order -> order.getStatus() == com.example.demo.entity.enums.OrderStatus.COMPLETED)
-                                .map(order -> order.getTotalAmount())
-                                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-                            
-                            return totalSpent.compareTo(vipThreshold) > 0 && ordersCount >= 3;
-                        } catch (Exception e) {
-                            log.warn("Error filtering VIP customer {}: {}", user.getId(), e.getMessage());
-                            return false;
-                        }
-                    })
-                    .collect(Collectors.toList());
-            } else if ("NEW".equals(segment)) {
-                // NEW: Registered within 30 days OR first order within 30 days
-                customers = customers.stream()
-                    .filter(user -> {
-                        try {
-                            // Check registration date
-                            if (user.getCreatedAt() != null && user.getCreatedAt().isAfter(thirtyDaysAgo)) {
-                                return true;
-                            }
-                            
-                            // Check first order date
-                            if (user.getOrders() != null && !user.getOrders().isEmpty()) {
-                                java.time.LocalDateTime firstOrderDate = user.getOrders().stream()
-                                    .map(order -> order.getOrderDate())
-                                    .min(java.time.LocalDateTime::compareTo)
-                                    .orElse(null);
-                                
-                                return firstOrderDate != null && firstOrderDate.isAfter(thirtyDaysAgo);
-                            }
-                            
-                            return false;
-                        } catch (Exception e) {
-                            log.warn("Error filtering NEW customer {}: {}", user.getId(), e.getMessage());
-                            return false;
-                        }
-                    })
-                    .collect(Collectors.toList());
-            } else if ("AT_RISK".equals(segment)) {
-                // AT_RISK: Has orders but no orders in last 90 days
-                customers = customers.stream()
-                    .filter(user -> {
-                        try {
-                            if (user.getOrders() == null || user.getOrders().isEmpty()) {
-                                return false; // Never ordered, not at risk
-                            }
-                            
-                            java.time.LocalDateTime lastOrderDate = user.getOrders().stream()
-                                .map(order -> order.getOrderDate())
-                                .max(java.time.LocalDateTime::compareTo)
-                                .orElse(null);
-                            
-                            return lastOrderDate != null && lastOrderDate.isBefore(ninetyDaysAgo);
-                        } catch (Exception e) {
-                            log.warn("Error filtering AT_RISK customer {}: {}", user.getId(), e.getMessage());
-                            return false;
-                        }
-                    })
-                    .collect(Collectors.toList());
-            }
+        // Segment filter (VIP, NEW, AT_RISK) - same rules as CustomerSegmentationService
+        if ("VIP".equals(segment)) {
+            // VIP: total_spent > 5M VND AND orders_count >= 3 (completed orders)
+            filter.minSpent = VIP_MIN_SPENT;
+            filter.minCompletedOrders = VIP_MIN_ORDERS;
+        } else if ("NEW".equals(segment)) {
+            // NEW: Registered within 30 days OR first order within 30 days
+            filter.recentSince = now.minusDays(NEW_CUSTOMER_DAYS);
+        } else if ("AT_RISK".equals(segment)) {
+            // AT_RISK: Has orders but no orders in last 90 days
+            filter.lastOrderBefore = now.minusDays(AT_RISK_DAYS);
         }
         
-        // Apply type filter (legacy support)
-        if (type != null && !type.isEmpty()) {
-            if ("loyal".equals(type)) {
-                customers = customers.stream()
-                    .filter(user -> {
-                        try {
-                            return user.getOrders() != null && user.getOrders().size() > 10;
-                        } catch (Exception e) {
-                            return false;
-                        }
-                    })
-                    .collect(Collectors.toList());
-            } else if ("new".equals(type)) {
-                java.time.LocalDateTime oneMonthAgo = java.time.LocalDateTime.now().minusMonths(1);
-                customers = customers.stream()
-                    .filter(user -> user.getCreatedAt() != null && user.getCreatedAt().isAfter(oneMonthAgo))
-                    .collect(Collectors.toList());
-            } else if ("inactive".equals(type)) {
-                java.time.LocalDateTime threeMonthsAgo = java.time.LocalDateTime.now().minusMonths(3);
-                customers = customers.stream()
-                    .filter(user -> {
-                        try {
-                            if (user.getOrders() == null || user.getOrders().isEmpty()) {
-                                return true;
-                            }
-                            java.time.LocalDateTime lastOrder = user.getOrders().stream()
-                                .map(order -> order.getOrderDate())
-                                .max(java.time.LocalDateTime::compareTo)
-                                .orElse(null);
-                            return lastOrder != null && lastOrder.isBefore(threeMonthsAgo);
-                        } catch (Exception e) {
-                            return false;
-                        }
-                    })
-                    .collect(Collectors.toList());
-            }
+        // Type filter (legacy support)
+        if ("loyal".equals(type)) {
+            filter.moreOrdersThan = LOYAL_MIN_ORDERS;
+        } else if ("new".equals(type)) {
+            filter.createdFrom = now.minusMonths(1);
+        } else if ("inactive".equals(type)) {
+            filter.idleSince = now.minusMonths(3);
         }
         
-        // Apply date range filter
+        // Date range filter on registration date
         if (fromDate != null && !fromDate.isEmpty()) {
             try {
-                java.time.LocalDate from = java.time.LocalDate.parse(fromDate);
-                customers = customers.stream()
-                    .filter(user -> user.getCreatedAt() != null && 
-                           !user.getCreatedAt().toLocalDate().isBefore(from))
-                    .collect(Collectors.toList());
+                LocalDateTime from = LocalDate.parse(fromDate).atStartOfDay();
+                if (filter.createdFrom == null || from.isAfter(filter.createdFrom)) {
+                    filter.createdFrom = from;
+                }
             } catch (Exception e) {
                 log.warn("Invalid fromDate format: {}", fromDate);
             }
@@ -281,25 +200,38 @@ public class CustomerService {
         
         if (toDate != null && !toDate.isEmpty()) {
             try {
-                java.time.LocalDate to = java.time.LocalDate.parse(toDate);
-                customers = customers.stream()
-                    .filter(user -> user.getCreatedAt() != null && 
-                           !user.getCreatedAt().toLocalDate().isAfter(to))
-                    .collect(Collectors.toList());
+                filter.createdBefore = LocalDate.parse(toDate).plusDays(1).atStartOfDay();
             } catch (Exception e) {
                 log.warn("Invalid toDate format: {}", toDate);
             }
         }
         
-        // Apply pagination manually
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), customers.size());
-        
-        List<CustomerDTO> customerDTOs = customers.subList(start, end).stream()
-            .map(this::convertToDTO)
+        return filter;
+    }
+    
+    private Page<CustomerDTO> findCustomers(CustomerFilter filter, Pageable pageable) {
+        Page<Object[]> rows = customerStatsRepository.findCustomers(
+            filter.active, filter.keyword, filter.createdFrom, filter.createdBefore,
+            filter.minSpent, filter.minCompletedOrders, filter.moreOrdersThan,
+            filter.recentSince, filter.lastOrderBefore, filter.idleSince,
+            withSortableProperties(pageable));
+        return rows.map(this::convertRowToDTO);
+    }
+    
+    /**
+     * Keep only sort properties the customer query knows (unknown ones would fail the query),
+     * with the ID as tie-breaker so pages are stable
+     */
+    private Pageable withSortableProperties(Pageable pageable) {
+        List<Sort.Order> orders = pageable.getSort().stream()
+            .filter(order -> SORTABLE_PROPERTIES.contains(order.getProperty()))
             .collect(Collectors.toList());
+        Sort sort = orders.isEmpty() ? DEFAULT_SORT : Sort.by(orders);
+        sort = sort.and(Sort.by(Sort.Direction.ASC, "id"));
         
-        return new PageImpl<>(customerDTOs, pageable, customers.size());
+        return pageable.isPaged()
+            ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort)
+            : Pageable.unpaged(sort);
     }
     
     /**
@@ -375,6 +307,7 @@ public class CustomerService {
         }
         
         User updatedCustomer = userRepository.save(customer);
+        authPrincipalCache.evict(id);
         log.info("Customer updated successfully with ID: {}", id);
         
         return convertToDTO(updatedCustomer);
@@ -430,6 +363,7 @@ public class CustomerService {
         
         // Safe to delete - no critical related data exists
         userRepository.delete(customer);
+        authPrincipalCache.evict(id);
         log.info("Customer deleted successfully with ID: {}", id);
     }
     
@@ -449,6 +383,7 @@ public class CustomerService {
         boolean wasActive = customer.getIsActive();
         customer.setIsActive(!customer.getIsActive());
         User updatedCustomer = userRepository.save(customer);
+        authPrincipalCache.evict(id);
         
         // If user was disabled (active -> inactive), invalidate all their sessions
         if (wasActive && !updatedCustomer.getIsActive()) {
@@ -466,49 +401,26 @@ public class CustomerService {
      */
     @Transactional(readOnly = true)
     public Map<String, Object> getCustomerStats() {
-        List<User> allCustomers = userRepository.findByRole(UserRole.CUSTOMER);
+        LocalDateTime startOfMonth = LocalDate.now().withDayOfMonth(1).atStartOfDay();
         
-        long total = allCustomers.size();
+        long total = 0;
         long loyal = 0;
-        java.math.BigDecimal totalSpent = java.math.BigDecimal.ZERO;
+        BigDecimal totalSpent = BigDecimal.ZERO;
+        long newThisMonth = 0;
         
         try {
-            loyal = allCustomers.stream()
-                .filter(c -> {
-                    try {
-                        return c.getOrders() != null && c.getOrders().size() > 10;
-                    } catch (Exception e) {
-                        return false;
-                    }
-                })
-                .count();
-            
-            totalSpent = allCustomers.stream()
-                .flatMap(c -> {
-                    try {
-                        return c.getOrders() != null ? c.getOrders().stream() : java.util.stream.Stream.empty();
-                    } catch (Exception e) {
-                        return java.util.stream.Stream.empty();
-                    }
-                })
-                .map(order -> order.getTotalAmount())
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
+            List<Object[]> rows = customerStatsRepository.getCustomerTotals(LOYAL_MIN_ORDERS, startOfMonth);
+            if (!rows.isEmpty()) {
+                Object[] row = rows.get(0);
+                total = toLong(row[0]);
+                loyal = toLong(row[1]);
+                totalSpent = row[2] != null ? (BigDecimal) row[2] : BigDecimal.ZERO;
+                newThisMonth = toLong(row[3]);
+            }
         } catch (Exception e) {
             log.warn("Could not calculate customer statistics: {}", e.getMessage());
         }
         
-        // Count new customers this month
-        java.time.LocalDateTime startOfMonth = java.time.LocalDateTime.now()
-            .withDayOfMonth(1)
-            .withHour(0)
-            .withMinute(0)
-            .withSecond(0)
-            .withNano(0);
-        
-        long newThisMonth = allCustomers.stream()
-            .filter(c -> c.getCreatedAt() != null && c.getCreatedAt().isAfter(startOfMonth))
-            .count();
-        
         Map<String, Object> stats = new HashMap<>();
         stats.put("total", total);
         stats.put("loyal", loyal);
@@ -526,85 +438,21 @@ public class CustomerService {
      */
     @Transactional(readOnly = true)
     public Map<String, Object> getSegmentStats() {
-        List<User> allCustomers = userRepository.findByRole(UserRole.CUSTOMER);
-        
-        java.time.LocalDateTime thirtyDaysAgo = java.time.LocalDateTime.now().minusDays(30);
-        java.time.LocalDateTime ninetyDaysAgo = java.time.LocalDateTime.now().minusDays(90);
-        java.math.BigDecimal vipThreshold = new java.math.BigDecimal("5000000"); // 5 million VND (matches CustomerSegmentationService)
+        LocalDateTime now = LocalDateTime.now();
         
         long vipCount = 0;
         long newCount = 0;
         long atRiskCount = 0;
         
         try {
-            // VIP: total_spent > 5M VND AND orders_count >= 3 (matches CustomerSegmentationService)
-            vipCount = allCustomers.stream()
-                .filter(c -> {
-                    try {
-                        if (c.getOrders() == null) return false;
-                        
-                        long ordersCount = c.getOrders().stream()
-                            .filter(order -> order.getStatus() == com.example.demo.entity.enums.OrderStatus.COMPLETED)
-                            .count();
-                        
-                        java.math.BigDecimal totalSpent = c.getOrders().stream()
-                            .filter(order -> order.getStatus() == com.example.demo.entity.enums.OrderStatus.COMPLETED)
-                            .map(order -> order.getTotalAmount())
-                            .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-                        
-                        return totalSpent.compareTo(vipThreshold) > 0 && ordersCount >= 3;
-                    } catch (Exception e) {
-                        return false;
-                    }
-                })
-                .count();
-            
-            // NEW: Registered within 30 days OR first order within 30 days
-            newCount = allCustomers.stream()
-                .filter(c -> {
-                    try {
-                        // Check registration date
-                        if (c.getCreatedAt() != null && c.getCreatedAt().isAfter(thirtyDaysAgo)) {
-                            return true;
-                        }
-                        
-                        // Check first order date
-                        if (c.getOrders() != null && !c.getOrders().isEmpty()) {
-                            java.time.LocalDateTime firstOrderDate = c.getOrders().stream()
-                                .map(order -> order.getOrderDate())
-                                .min(java.time.LocalDateTime::compareTo)
-                                .orElse(null);
-                            
-                            return firstOrderDate != null && firstOrderDate.isAfter(thirtyDaysAgo);
-                        }
-                        
-                        return false;
-                    } catch (Exception e) {
-                        return false;
-                    }
-                })
-                .count();
-            
-            // AT_RISK: Customers with no recent orders
-            atRiskCount = allCustomers.stream()
-                .filter(c -> {
-                    try {
-                        if (c.getOrders() == null || c.getOrders().isEmpty()) {
-                            return false; // Never ordered, not at risk
-                        }
-                        
-                        java.time.LocalDateTime lastOrderDate = c.getOrders().stream()
-                            .map(order -> order.getOrderDate())
-                            .max(java.time.LocalDateTime::compareTo)
-                            .orElse(null);
-                        
-                        return lastOrderDate != null && lastOrderDate.isBefore(ninetyDaysAgo);
-                    } catch (Exception e) {
-                        return false;
-                    }
-                })
-                .count();
-                
+            List<Object[]> rows = customerStatsRepository.getSegmentCounts(
+                VIP_MIN_SPENT, VIP_MIN_ORDERS, now.minusDays(NEW_CUSTOMER_DAYS), now.minusDays(AT_RISK_DAYS));
+            if (!rows.isEmpty()) {
+                Object[] row = rows.get(0);
+                vipCount = toLong(row[0]);
+                newCount = toLong(row[1]);
+                atRiskCount = toLong(row[2]);
+            }
         } catch (Exception e) {
             log.warn("Could not calculate segment statistics: {}", e.getMessage());
         }
@@ -617,40 +465,34 @@ public class CustomerService {
         return segmentStats;
     }
     
+    private static long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+    
+    /**
+     * Convert a customer query row [User, totalOrders, totalSpent, lastOrderDate, totalReviews]
+     */
+    private CustomerDTO convertRowToDTO(Object[] row) {
+        return convertToDTO((User) row[0], toLong(row[1]), (BigDecimal) row[2],
+            (LocalDateTime) row[3], toLong(row[4]));
+    }
+    
     /**
-     * Convert User entity to CustomerDTO
+     * Convert User entity to CustomerDTO, reading its stats from customer_stats
      */
     private CustomerDTO convertToDTO(User user) {
-        // Calculate total spent - safe null handling
-        java.math.BigDecimal totalSpent = java.math.BigDecimal.ZERO;
-        java.time.LocalDateTime lastOrderDate = null;
-        long totalOrders = 0;
-        long totalReviews = 0;
-        
-        try {
-            if (user.getOrders() != null) {
-                totalOrders = user.getOrders().size();
-                totalSpent = user.getOrders().stream()
-                    .map(order -> order.getTotalAmount())
-                    .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-                
-                lastOrderDate = user.getOrders().stream()
-                    .map(order -> order.getOrderDate())
-                    .max(java.time.LocalDateTime::compareTo)
-                    .orElse(null);
-            }
-        } catch (Exception e) {
-            log.warn("Could not load order data for customer {}: {}", user.getId(), e.getMessage());
-        }
-        
-        try {
-            if (user.getReviews() != null) {
-                totalReviews = user.getReviews().size();
-            }
-        } catch (Exception e) {
-            log.warn("Could not load review data for customer {}: {}", user.getId(), e.getMessage());
-        }
-        
+        Optional<CustomerStats> stats = user.getId() != null
+            ? customerStatsRepository.findById(user.getId())
+            : Optional.empty();
+        return convertToDTO(user,
+            stats.map(CustomerStats::getOrdersCount).orElse(0).longValue(),
+            stats.map(CustomerStats::getTotalSpent).orElse(BigDecimal.ZERO),
+            stats.map(CustomerStats::getLastOrderAt).orElse(null),
+            stats.map(CustomerStats::getReviewsCount).orElse(0).longValue());
+    }
+    
+    private CustomerDTO convertToDTO(User user, long totalOrders, BigDecimal totalSpent,
+                                     LocalDateTime lastOrderDate, long totalReviews) {
         return CustomerDTO.builder()
             .id(user.getId())
             .firstname(user.getFirstname())
@@ -661,11 +503,27 @@ public class CustomerService {
             .isActive(user.getIsActive())
             .lastLogin(user.getLastLogin())
             .createdAt(user.getCreatedAt())
+            .segment(user.getCustomerSegment())
             .totalOrders(totalOrders)
-            .totalSpent(totalSpent)
+            .totalSpent(totalSpent != null ? totalSpent : BigDecimal.ZERO)
             .lastOrderDate(lastOrderDate)
             .totalReviews(totalReviews)
             .build();
     }
+    
+    /**
+     * Admin list filters resolved to SQL bounds (null = not applied)
+     */
+    private static final class CustomerFilter {
+        private Boolean active;
+        private String keyword;
+        private LocalDateTime createdFrom;
+        private LocalDateTime createdBefore;
+        private BigDecimal minSpent;
+        private Integer minCompletedOrders;
+        private Integer moreOrdersThan;
+        private LocalDateTime recentSince;
+        private LocalDateTime lastOrderBefore;
+        private LocalDateTime idleSince;
+    }
 }
-
@@ -8,7 +8,9 @@ import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import java.io.UnsupportedEncodingException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -123,11 +125,8 @@ public class EmailService {
         }
     }
     
-    private String buildOtpEmailTemplate(String otp, String firstName) {
-        String currentDateTime = LocalDateTime.now()
-                .format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
-        
-        return String.format("""
+    // Patterns stay visible to the package: EmailTemplateTest checks them against String.format
+    static final String OTP_EMAIL_PATTERN = """
             <!DOCTYPE html>
             <html>
             <head>
@@ -415,11 +414,17 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, firstName != null ? firstName : "bạn", otp, currentDateTime);
+            """;
+    private static final EmailTemplate OTP_EMAIL_TEMPLATE = EmailTemplate.compile(OTP_EMAIL_PATTERN);
+
+    private String buildOtpEmailTemplate(String otp, String firstName) {
+        String currentDateTime = LocalDateTime.now()
+                .format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
+        
+        return OTP_EMAIL_TEMPLATE.render(firstName != null ? firstName : "bạn", otp, currentDateTime);
     }
     
-    private String buildWelcomeEmailTemplate(String firstName) {
-        return String.format("""
+    static final String WELCOME_EMAIL_PATTERN = """
             <!DOCTYPE html>
             <html>
             <head>
@@ -594,12 +599,15 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, firstName != null ? firstName : "bạn");
+            """;
+    private static final EmailTemplate WELCOME_EMAIL_TEMPLATE = EmailTemplate.compile(WELCOME_EMAIL_PATTERN);
+
+    private String buildWelcomeEmailTemplate(String firstName) {
+        return WELCOME_EMAIL_TEMPLATE.render(firstName != null ? firstName : "bạn");
     }
     
     // Remove old CSS-based template
-    private String buildWelcomeEmailTemplateOld(String firstName) {
-        return String.format("""
+    static final String WELCOME_EMAIL_OLD_PATTERN = """
             <!-- Old template removed, using new inline CSS version above -->
             <!DOCTYPE html>
             <html>
@@ -935,14 +943,14 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, firstName != null ? firstName : "bạn");
+            """;
+    private static final EmailTemplate WELCOME_EMAIL_TEMPLATE_OLD = EmailTemplate.compile(WELCOME_EMAIL_OLD_PATTERN);
+
+    private String buildWelcomeEmailTemplateOld(String firstName) {
+        return WELCOME_EMAIL_TEMPLATE_OLD.render(firstName != null ? firstName : "bạn");
     }
     
-    private String buildPasswordResetConfirmationTemplate(String firstName) {
-        String currentDateTime = LocalDateTime.now()
-                .format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
-                
-        return String.format("""
+    static final String PASSWORD_RESET_CONFIRMATION_PATTERN = """
             <!DOCTYPE html>
             <html>
             <head>
@@ -1247,7 +1255,14 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, firstName != null ? firstName : "bạn", currentDateTime, currentDateTime);
+            """;
+    private static final EmailTemplate PASSWORD_RESET_CONFIRMATION_TEMPLATE = EmailTemplate.compile(PASSWORD_RESET_CONFIRMATION_PATTERN);
+
+    private String buildPasswordResetConfirmationTemplate(String firstName) {
+        String currentDateTime = LocalDateTime.now()
+                .format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
+                
+        return PASSWORD_RESET_CONFIRMATION_TEMPLATE.render(firstName != null ? firstName : "bạn", currentDateTime, currentDateTime);
     }
     
     /**
@@ -1262,14 +1277,7 @@ public class EmailService {
             logger.info("=== SENDING MARKETING EMAIL ===");
             logger.info("To: {}, Subject: {}", toEmail, subject);
             
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setFrom(fromEmail, "StarShop 🌸");
-            helper.setTo(toEmail);
-            helper.setSubject(subject);
-            helper.setText(htmlBody, true);
-            
+            MimeMessage message = createMarketingMessage(toEmail, subject, htmlBody);
             mailSender.send(message);
             logger.info("✅ Marketing email sent to: {}", toEmail);
             
@@ -1279,6 +1287,22 @@ public class EmailService {
         }
     }
     
+    /**
+     * Build a marketing email without sending it
+     * Bulk campaigns send these over pooled SMTP connections (MarketingEmailDispatcher)
+     */
+    public MimeMessage createMarketingMessage(String toEmail, String subject, String htmlBody)
+            throws MessagingException, UnsupportedEncodingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        
+        helper.setFrom(fromEmail, "StarShop 🌸");
+        helper.setTo(toEmail);
+        helper.setSubject(subject);
+        helper.setText(htmlBody, true);
+        return message;
+    }
+    
     /**
      * Build marketing email template based on segment
      */
@@ -1299,4 +1323,18 @@ public class EmailService {
             default -> marketingTemplates.buildGenericTemplate(customerName, voucherCode, expiryDate, campaignName, discountValue, discountType);
         };
     }
+    
+    /**
+     * Compile the marketing template of one campaign (bulk sends)
+     * Only the customer name is filled per recipient: template.render(customerName)
+     */
+    public EmailTemplate compileMarketingEmailTemplate(
+            String segment,
+            String voucherCode,
+            String expiryDate,
+            String campaignName,
+            int discountValue,
+            String discountType) {
+        return marketingTemplates.compileCampaignTemplate(segment, voucherCode, expiryDate, campaignName, discountValue, discountType);
+    }
 }
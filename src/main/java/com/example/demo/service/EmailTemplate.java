@@ -0,0 +1,96 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTML email body compiled once from a String.format-style pattern
+ *
+ * Only %s (a slot) and %% (a literal %) are supported, which is all the email templates use.
+ * The pattern is split into literal pieces around the slots when compiled, so rendering is a
+ * single pass of appends into a buffer sized exactly for the result, with no format parsing
+ * per email. Output is identical to String.format with the same arguments (null renders "null").
+ *
+ * Slots can be bound ahead of time (bind): a campaign binds voucher, discount and expiry once
+ * and only the customer name is filled per recipient.
+ */
+public final class EmailTemplate {
+
+    // literals.length == slots + 1; slot i sits between literals[i] and literals[i + 1]
+    private final String[] literals;
+    private final int literalLength;
+
+    private EmailTemplate(String[] literals) {
+        this.literals = literals;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @throws IllegalArgumentException on a format specifier other than %s and %%
+     */
+    public static EmailTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                current.append(c);
+                continue;
+            }
+            char next = i + 1 < pattern.length() ? pattern.charAt(i + 1) : 0;
+            if (next == '%') {
+                current.append('%');
+            } else if (next == 's') {
+                literals.add(current.toString());
+                current.setLength(0);
+            } else {
+                throw new IllegalArgumentException("Unsupported format specifier at " + i + ": %" + next);
+            }
+            i++;
+        }
+        literals.add(current.toString());
+        return new EmailTemplate(literals.toArray(new String[0]));
+    }
+
+    public int slots() {
+        return literals.length - 1;
+    }
+
+    /**
+     * Fill the slots in order
+     */
+    public String render(String... values) {
+        if (values.length != slots()) {
+            throw new IllegalArgumentException("Template has " + slots() + " slots, got " + values.length + " values");
+        }
+        int length = literalLength;
+        for (String value : values) {
+            length += String.valueOf(value).length();
+        }
+
+        StringBuilder out = new StringBuilder(length);
+        out.append(literals[0]);
+        for (int i = 0; i < values.length; i++) {
+            out.append(values[i]).append(literals[i + 1]);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Template with one slot filled in; later slots move down by one
+     */
+    public EmailTemplate bind(int slot, String value) {
+        if (slot < 0 || slot >= slots()) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + slots());
+        }
+        String[] bound = new String[literals.length - 1];
+        System.arraycopy(literals, 0, bound, 0, slot);
+        bound[slot] = literals[slot] + value + literals[slot + 1];
+        System.arraycopy(literals, slot + 2, bound, slot + 1, literals.length - slot - 2);
+        return new EmailTemplate(bound);
+    }
+}
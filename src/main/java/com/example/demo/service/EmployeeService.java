@@ -4,6 +4,7 @@ import com.example.demo.dto.*;
 import com.example.demo.entity.User;
 import com.example.demo.entity.enums.UserRole;
 import com.example.demo.repository.UserRepository;
+import com.example.demo.security.AuthPrincipalCache;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -32,6 +33,8 @@ public class EmployeeService {
     private final com.example.demo.repository.OrderRepository orderRepository;
     private final com.example.demo.repository.TimeSheetRepository timeSheetRepository;
     private final com.example.demo.repository.SalaryRepository salaryRepository;
+    private final AuthPrincipalCache authPrincipalCache;
+    private final ExportCursor exportCursor;
     
     /**
      * Get all employees (STAFF and ADMIN roles only)
@@ -212,6 +215,7 @@ public class EmployeeService {
         }
         
         User updatedEmployee = userRepository.save(employee);
+        authPrincipalCache.evict(id);
         log.info("Employee updated successfully with ID: {}", id);
         
         return convertToDTO(updatedEmployee);
@@ -239,6 +243,7 @@ public class EmployeeService {
         
         // Safe to delete - no related data exists
         userRepository.delete(employee);
+        authPrincipalCache.evict(id);
         log.info("Employee deleted successfully with ID: {}", id);
     }
     
@@ -258,6 +263,7 @@ public class EmployeeService {
         boolean wasActive = employee.getIsActive();
         employee.setIsActive(!employee.getIsActive());
         User updatedEmployee = userRepository.save(employee);
+        authPrincipalCache.evict(id);
         
         // If user was disabled (active -> inactive), invalidate all their sessions
         if (wasActive && !updatedEmployee.getIsActive()) {
@@ -413,6 +419,30 @@ public class EmployeeService {
         return null;
     }
     
+    /**
+     * Feed employees (STAFF and ADMIN) to an export through a database cursor
+     * A search keyword replaces the role and status filters, as in the admin list.
+     * @return Number of exported employees
+     */
+    @Transactional(readOnly = true)
+    public long forEachEmployeeForExport(String search, String roleStr, Boolean isActive,
+                                         java.util.function.Consumer<? super User> action) {
+        List<UserRole> roles = List.of(UserRole.STAFF, UserRole.ADMIN);
+        Boolean active = isActive;
+        String keyword = null;
+        if (search != null && !search.isBlank()) {
+            keyword = search.trim();
+            active = null;
+        } else if (roleStr != null && !roleStr.trim().isEmpty()) {
+            UserRole role = UserRole.valueOf(roleStr.toUpperCase());
+            roles = roles.contains(role) ? List.of(role) : List.of();
+        }
+        if (roles.isEmpty()) {
+            return 0;
+        }
+        return exportCursor.forEach(userRepository.streamEmployeesForExport(roles, active, keyword), action);
+    }
+    
     /**
      * Convert User entity to EmployeeDTO
      */
@@ -1,65 +1,83 @@
 package com.example.demo.service;
 
 import com.example.demo.dto.CustomerDTO;
-import com.example.demo.dto.EmployeeDTO;
-import com.example.demo.dto.OrderDTO;
 import com.example.demo.dto.VoucherDTO;
+import com.example.demo.entity.Order;
 import com.example.demo.entity.Product;
+import com.example.demo.entity.Review;
+import com.example.demo.entity.User;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.hibernate.LazyInitializationException;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.List;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
 
+/**
+ * Excel exports, written row by row straight to the caller's stream
+ *
+ * Workbooks are SXSSF: only the last ROW_WINDOW rows stay in memory, older rows are flushed
+ * to a (compressed) temp file, so heap use does not grow with the export. Rows come from a
+ * RowSource, typically a service method walking a database cursor (see ExportCursor).
+ * Column widths are sized from the first rows; a sheet that reaches the Excel row limit
+ * continues on a new sheet.
+ */
 @Service
 public class ExcelExportService {
 
-    public byte[] exportOrders(List<OrderDTO> orders) {
-        try (Workbook wb = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = wb.createSheet("Orders");
-            int rowIdx = 0;
-            Row header = sheet.createRow(rowIdx++);
-            String[] cols = {"Mã đơn","Khách hàng","Email","SĐT","Địa chỉ","Trạng thái","Tạm tính","Phí ship","Voucher","Giảm giá","Tổng","Ngày đặt"};
-            for (int i = 0; i < cols.length; i++) header.createCell(i).setCellValue(cols[i]);
-            for (OrderDTO o : orders) {
-                Row r = sheet.createRow(rowIdx++);
+    private static final int ROW_WINDOW = 100;
+    private static final int MAX_COLUMN_WIDTH = 15000;
+    private static final DateTimeFormatter REVIEW_DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    /**
+     * Pushes the rows of an export one at a time
+     */
+    @FunctionalInterface
+    public interface RowSource<T> {
+        void forEach(Consumer<? super T> action);
+    }
+
+    public void exportOrders(OutputStream out, RowSource<Order> orders) throws IOException {
+        String[] cols = {"Mã đơn","Khách hàng","Email","SĐT","Địa chỉ","Trạng thái","Tạm tính","Phí ship","Voucher","Giảm giá","Tổng","Ngày đặt"};
+        try (StreamingSheet sheet = new StreamingSheet("Orders", cols)) {
+            orders.forEach(o -> {
+                Row r = sheet.nextRow();
+                User user = o.getUser();
+                String fullName = user != null ? user.getFullName() : null;
                 set(r,0,o.getId());
-                set(r,1,o.getUserFullName());
-                set(r,2,o.getUserEmail());
-                set(r,3,o.getUserPhone());
-                set(r,4,o.getAddressDetails());
+                set(r,1,fullName == null || fullName.isBlank() ? (user != null ? user.getEmail() : null) : fullName);
+                set(r,2,user != null ? user.getEmail() : null);
+                set(r,3,user != null ? user.getPhone() : null);
+                set(r,4,o.getAddress() != null ? o.getAddress().getFullAddress() : null);
                 set(r,5,o.getStatus() != null ? o.getStatus().getDisplayName() : "");
-                // subtotal not in DTO -> approximate: total - ship + discount
-                BigDecimal ship = o.getDeliveryFee() != null ? o.getDeliveryFee() : BigDecimal.ZERO;
-                BigDecimal discount = o.getDiscountAmount() != null ? o.getDiscountAmount() : BigDecimal.ZERO;
+                // subtotal not stored -> approximate: total - ship + discount
                 BigDecimal total = o.getTotalAmount() != null ? o.getTotalAmount() : BigDecimal.ZERO;
+                BigDecimal ship = o.getShippingFee() != null ? o.getShippingFee() : BigDecimal.ZERO;
+                BigDecimal discount = o.getVoucher() != null ? o.getVoucher().calculateDiscount(o.getTotalAmount()) : BigDecimal.ZERO;
                 set(r,6,total.subtract(ship).add(discount));
                 set(r,7,ship);
-                set(r,8,o.getVoucherCode());
+                set(r,8,o.getVoucher() != null ? o.getVoucher().getCode() : null);
                 set(r,9,discount);
                 set(r,10,total);
                 set(r,11,o.getOrderDate());
-            }
-            autosize(sheet, cols.length);
-            wb.write(out);
-            return out.toByteArray();
-        } catch (IOException e) { return new byte[0]; }
+            });
+            sheet.writeTo(out);
+        }
     }
 
-    public byte[] exportProducts(List<Product> products) {
-        try (Workbook wb = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = wb.createSheet("Products");
-            int rowIdx = 0;
-            String[] cols = {"ID","Tên","Danh mục","Giá","Tồn kho","Trạng thái","Ngày tạo"};
-            Row header = sheet.createRow(rowIdx++);
-            for (int i=0;i<cols.length;i++) header.createCell(i).setCellValue(cols[i]);
-            for (Product p : products) {
-                Row r = sheet.createRow(rowIdx++);
+    public void exportProducts(OutputStream out, RowSource<Product> products) throws IOException {
+        String[] cols = {"ID","Tên","Danh mục","Giá","Tồn kho","Trạng thái","Ngày tạo"};
+        try (StreamingSheet sheet = new StreamingSheet("Products", cols)) {
+            products.forEach(p -> {
+                Row r = sheet.nextRow();
                 set(r,0,p.getId());
                 set(r,1,p.getName());
                 set(r,2,safeCatalogValue(p));
@@ -67,11 +85,9 @@ public class ExcelExportService {
                 set(r,4,p.getStockQuantity());
                 set(r,5,p.getStatus()!=null? p.getStatus().getDisplayName():"");
                 set(r,6,p.getCreatedAt());
-            }
-            autosize(sheet, cols.length);
-            wb.write(out);
-            return out.toByteArray();
-        } catch (IOException e) { return new byte[0]; }
+            });
+            sheet.writeTo(out);
+        }
     }
 
     private String safeCatalogValue(Product p) {
@@ -84,15 +100,11 @@ public class ExcelExportService {
         }
     }
 
-    public byte[] exportUsers(List<CustomerDTO> users) {
-        try (Workbook wb = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = wb.createSheet("Users");
-            int rowIdx = 0;
-            String[] cols = {"ID","Họ tên","Email","SĐT","Tổng đơn","Tổng chi tiêu","Ngày tham gia"};
-            Row header = sheet.createRow(rowIdx++);
-            for (int i=0;i<cols.length;i++) header.createCell(i).setCellValue(cols[i]);
-            for (CustomerDTO u : users) {
-                Row r = sheet.createRow(rowIdx++);
+    public void exportUsers(OutputStream out, RowSource<CustomerDTO> users) throws IOException {
+        String[] cols = {"ID","Họ tên","Email","SĐT","Tổng đơn","Tổng chi tiêu","Ngày tham gia"};
+        try (StreamingSheet sheet = new StreamingSheet("Users", cols)) {
+            users.forEach(u -> {
+                Row r = sheet.nextRow();
                 set(r,0,u.getId());
                 set(r,1,(u.getFirstname()!=null?u.getFirstname():"") + " " + (u.getLastname()!=null?u.getLastname():""));
                 set(r,2,u.getEmail());
@@ -100,22 +112,16 @@ public class ExcelExportService {
                 set(r,4,u.getTotalOrders());
                 set(r,5,u.getTotalSpent());
                 set(r,6,u.getCreatedAt());
-            }
-            autosize(sheet, cols.length);
-            wb.write(out);
-            return out.toByteArray();
-        } catch (IOException e) { return new byte[0]; }
+            });
+            sheet.writeTo(out);
+        }
     }
 
-    public byte[] exportEmployees(List<EmployeeDTO> employees) {
-        try (Workbook wb = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = wb.createSheet("Employees");
-            int rowIdx = 0;
-            String[] cols = {"ID","Mã NV","Họ tên","Email","SĐT","Vai trò","Phòng ban","Vị trí","Ngày vào","Trạng thái"};
-            Row header = sheet.createRow(rowIdx++);
-            for (int i=0;i<cols.length;i++) header.createCell(i).setCellValue(cols[i]);
-            for (EmployeeDTO e : employees) {
-                Row r = sheet.createRow(rowIdx++);
+    public void exportEmployees(OutputStream out, RowSource<User> employees) throws IOException {
+        String[] cols = {"ID","Mã NV","Họ tên","Email","SĐT","Vai trò","Phòng ban","Vị trí","Ngày vào","Trạng thái"};
+        try (StreamingSheet sheet = new StreamingSheet("Employees", cols)) {
+            employees.forEach(e -> {
+                Row r = sheet.nextRow();
                 set(r,0,e.getId());
                 set(r,1,e.getEmployeeCode());
                 set(r,2,(e.getFirstname()!=null?e.getFirstname():"") + " " + (e.getLastname()!=null?e.getLastname():""));
@@ -126,22 +132,16 @@ public class ExcelExportService {
                 set(r,7,e.getPosition());
                 set(r,8,e.getHireDate());
                 set(r,9,Boolean.TRUE.equals(e.getIsActive())?"Đang hoạt động":"Ngừng");
-            }
-            autosize(sheet, cols.length);
-            wb.write(out);
-            return out.toByteArray();
-        } catch (IOException ex) { return new byte[0]; }
+            });
+            sheet.writeTo(out);
+        }
     }
 
-    public byte[] exportVouchers(List<VoucherDTO> vouchers) {
-        try (Workbook wb = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = wb.createSheet("Vouchers");
-            int rowIdx = 0;
-            String[] cols = {"ID","Mã","Tên","Loại","Giá trị","Giảm tối đa","ĐH tối thiểu","Hết hạn","Kích hoạt","Đã dùng"};
-            Row header = sheet.createRow(rowIdx++);
-            for (int i=0;i<cols.length;i++) header.createCell(i).setCellValue(cols[i]);
-            for (VoucherDTO v : vouchers) {
-                Row r = sheet.createRow(rowIdx++);
+    public void exportVouchers(OutputStream out, RowSource<VoucherDTO> vouchers) throws IOException {
+        String[] cols = {"ID","Mã","Tên","Loại","Giá trị","Giảm tối đa","ĐH tối thiểu","Hết hạn","Kích hoạt","Đã dùng"};
+        try (StreamingSheet sheet = new StreamingSheet("Vouchers", cols)) {
+            vouchers.forEach(v -> {
+                Row r = sheet.nextRow();
                 set(r,0,v.getId());
                 set(r,1,v.getCode());
                 set(r,2,v.getName());
@@ -152,11 +152,55 @@ public class ExcelExportService {
                 set(r,7,v.getExpiryDate());
                 set(r,8,Boolean.TRUE.equals(v.getIsActive())?"Active":"Inactive");
                 set(r,9,v.getUses()!=null? v.getUses(): 0);
-            }
-            autosize(sheet, cols.length);
-            wb.write(out);
-            return out.toByteArray();
-        } catch (IOException ex) { return new byte[0]; }
+            });
+            sheet.writeTo(out);
+        }
+    }
+
+    /**
+     * Reviews export (admin and staff review pages), with bordered cells and a grey header
+     */
+    public void exportReviews(OutputStream out, RowSource<Review> reviews) throws IOException {
+        String[] cols = {"ID", "Sản phẩm", "Khách hàng", "Đánh giá", "Bình luận", "Sentiment", "Phản hồi Admin", "Ngày tạo"};
+        try (StreamingSheet sheet = new StreamingSheet("Đánh giá", cols)) {
+            Workbook wb = sheet.workbook;
+
+            CellStyle headerStyle = wb.createCellStyle();
+            Font headerFont = wb.createFont();
+            headerFont.setBold(true);
+            headerFont.setFontHeightInPoints((short) 12);
+            headerStyle.setFont(headerFont);
+            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            setBorders(headerStyle);
+            sheet.headerStyle = headerStyle;
+
+            CellStyle dataStyle = wb.createCellStyle();
+            setBorders(dataStyle);
+            dataStyle.setWrapText(true);
+
+            reviews.forEach(review -> {
+                Row r = sheet.nextRow();
+                set(r,0,review.getId());
+                set(r,1,review.getProduct() != null ? review.getProduct().getName() : "N/A");
+                set(r,2,review.getUser() != null ?
+                    review.getUser().getFirstname() + " " + review.getUser().getLastname() : "N/A");
+                set(r,3,review.getRating() + " ⭐");
+                set(r,4,review.getComment());
+                set(r,5,review.getSentiment());
+                set(r,6,review.getAdminResponse());
+                set(r,7,review.getCreatedAt() != null ? review.getCreatedAt().format(REVIEW_DATE_FORMAT) : "");
+                for (int i = 0; i < cols.length; i++) r.getCell(i).setCellStyle(dataStyle);
+            });
+            sheet.writeTo(out);
+        }
+    }
+
+    private void setBorders(CellStyle style) {
+        style.setBorderBottom(BorderStyle.THIN);
+        style.setBorderTop(BorderStyle.THIN);
+        style.setBorderLeft(BorderStyle.THIN);
+        style.setBorderRight(BorderStyle.THIN);
     }
 
     private void set(Row r, int c, Object v) {
@@ -167,9 +211,86 @@ public class ExcelExportService {
         cell.setCellValue(String.valueOf(v));
     }
 
-    private void autosize(Sheet sheet, int count) {
-        for (int i=0;i<count;i++) sheet.autoSizeColumn(i);
-    }
-}
+    /**
+     * One export sheet over a SXSSF workbook
+     * The header row is written before the first data row; widths are auto-sized once the
+     * first ROW_WINDOW rows exist and reused for overflow sheets ("Orders (2)", ...).
+     */
+    private static final class StreamingSheet implements Closeable {
 
+        private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
 
+        private final SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        private final String name;
+        private final String[] columns;
+        private CellStyle headerStyle;
+        private SXSSFSheet sheet;
+        private int sheetCount;
+        private int rowIdx;
+        private int[] widths;
+
+        private StreamingSheet(String name, String[] columns) {
+            this.name = name;
+            this.columns = columns;
+            workbook.setCompressTempFiles(true);
+        }
+
+        private Row nextRow() {
+            if (sheet == null || rowIdx == MAX_ROWS) {
+                startSheet();
+            }
+            if (widths == null && rowIdx > ROW_WINDOW) {
+                sizeColumns();
+            }
+            return sheet.createRow(rowIdx++);
+        }
+
+        private void startSheet() {
+            if (sheet != null && widths == null) {
+                sizeColumns();
+            }
+            sheetCount++;
+            sheet = workbook.createSheet(sheetCount == 1 ? name : name + " (" + sheetCount + ")");
+            if (widths == null) {
+                sheet.trackAllColumnsForAutoSizing();
+            } else {
+                for (int i = 0; i < widths.length; i++) sheet.setColumnWidth(i, widths[i]);
+            }
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < columns.length; i++) {
+                Cell cell = header.createCell(i);
+                cell.setCellValue(columns[i]);
+                if (headerStyle != null) cell.setCellStyle(headerStyle);
+            }
+            rowIdx = 1;
+        }
+
+        private void sizeColumns() {
+            widths = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                sheet.autoSizeColumn(i);
+                widths[i] = Math.min(sheet.getColumnWidth(i), MAX_COLUMN_WIDTH);
+                sheet.setColumnWidth(i, widths[i]);
+            }
+            sheet.untrackAllColumnsForAutoSizing();
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            if (sheet == null) {
+                startSheet();
+            }
+            if (widths == null) {
+                sizeColumns();
+            }
+            workbook.write(out);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Delete the temp files backing the flushed rows
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+}
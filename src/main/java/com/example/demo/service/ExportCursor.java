@@ -0,0 +1,45 @@
+package com.example.demo.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Walks the result of a repository export query in fixed-size chunks
+ *
+ * The export queries return a Stream with a JDBC fetch size hint, so PostgreSQL hands the rows
+ * over through a cursor CHUNK_SIZE at a time instead of materialising the whole result. After
+ * every chunk the persistence context is cleared, so rows already written can be collected.
+ * Callers must run in a (read-only) transaction: the cursor lives as long as the transaction.
+ */
+@Component
+public class ExportCursor {
+
+    /** Rows per persistence-context clear; the export queries fetch the same number per round trip */
+    public static final int CHUNK_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Feed every row to the action, detaching loaded entities after each chunk
+     * @return Number of rows
+     */
+    public <T> long forEach(Stream<T> rows, Consumer<? super T> action) {
+        long count = 0;
+        try (rows) {
+            Iterator<T> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+                if (++count % CHUNK_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ExportJobDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronous Excel exports (admin)
+ *
+ * An export is submitted as a job and runs on a small bounded pool (app.export.workers):
+ * each running export holds one database connection for its cursor and one SXSSF row window,
+ * so the pool size caps both Hikari and heap use; keep it well below the Hikari pool size.
+ * Up to app.export.queue-capacity jobs wait for a worker, a full queue rejects the submission.
+ *
+ * Files are written to app.export.dir (as ".part" until complete) and kept for
+ * app.export.retention-hours. Rows written so far can be polled by job ID and are pushed to
+ * /topic/staff/notifications at most once per PROGRESS_INTERVAL. Jobs live in memory only:
+ * after a restart they are gone and the cleanup removes their files.
+ *
+ * Metrics: executor.* {name=export.jobs} and export.jobs.rejected
+ */
+@Service
+@Slf4j
+public class ExportJobService {
+
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(2);
+    private static final String DOWNLOAD_URL = "/admin/api/exports/%s/download";
+
+    /**
+     * Lifecycle of a job
+     */
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    /**
+     * Writes one export; rows fed through progress.counting(...) are reported as progress
+     */
+    @FunctionalInterface
+    public interface ExportTask {
+        void write(OutputStream out, Progress progress) throws IOException;
+    }
+
+    private final WebSocketService webSocketService;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejectedCounter;
+    private final Path exportDir;
+    private final Duration retention;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public ExportJobService(WebSocketService webSocketService, MeterRegistry meterRegistry,
+                            @Value("${app.export.dir:exports}") String exportDir,
+                            @Value("${app.export.workers:2}") int workers,
+                            @Value("${app.export.queue-capacity:20}") int queueCapacity,
+                            @Value("${app.export.retention-hours:24}") long retentionHours) {
+        this.webSocketService = webSocketService;
+        this.exportDir = Paths.get(exportDir).toAbsolutePath().normalize();
+        this.retention = Duration.ofHours(retentionHours);
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "export-job-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        new ExecutorServiceMetrics(executor, "export.jobs", Tags.empty()).bindTo(meterRegistry);
+        this.rejectedCounter = Counter.builder("export.jobs.rejected")
+            .description("Export jobs rejected because the queue was full")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Queue an export
+     * @param type Export kind (orders, products, ...), shown to the user
+     * @param fileName Name of the downloaded file
+     * @param requestedBy Username of the admin
+     * @throws IllegalStateException if the queue is full
+     */
+    public ExportJobDTO submit(String type, String fileName, String requestedBy, ExportTask task) {
+        Job job = new Job(UUID.randomUUID().toString(), type, fileName, requestedBy);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            rejectedCounter.increment();
+            log.warn("Export queue full ({} waiting), rejecting {} export of {}", executor.getQueue().size(), type, requestedBy);
+            throw new IllegalStateException("Hàng đợi xuất file đang đầy, vui lòng thử lại sau");
+        }
+        log.info("📊 Export job {} ({}) queued by {}", job.id, type, requestedBy);
+        return job.toDTO();
+    }
+
+    public Optional<ExportJobDTO> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toDTO);
+    }
+
+    /**
+     * Jobs of one admin, newest first
+     */
+    public List<ExportJobDTO> getJobs(String requestedBy) {
+        return jobs.values().stream()
+            .filter(job -> job.requestedBy.equals(requestedBy))
+            .sorted(Comparator.comparing((Job job) -> job.createdAt).reversed())
+            .map(Job::toDTO)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * File of a completed job
+     */
+    public Optional<Path> getFile(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null || job.status != Status.COMPLETED || !Files.exists(job.file)) {
+            return Optional.empty();
+        }
+        return Optional.of(job.file);
+    }
+
+    private void run(Job job, ExportTask task) {
+        job.status = Status.RUNNING;
+        job.startedAt = LocalDateTime.now();
+        publish(job);
+
+        Path part = exportDir.resolve(job.id + ".xlsx.part");
+        try {
+            Files.createDirectories(exportDir);
+            try (OutputStream out = Files.newOutputStream(part)) {
+                task.write(out, new Progress(job));
+            }
+            Files.move(part, job.file, StandardCopyOption.REPLACE_EXISTING);
+            job.status = Status.COMPLETED;
+            log.info("✅ Export job {} ({}) completed: {} rows", job.id, job.type, job.rows.get());
+        } catch (Exception e) {
+            job.status = Status.FAILED;
+            job.error = e.getMessage();
+            log.error("❌ Export job {} ({}) failed: {}", job.id, job.type, e.getMessage(), e);
+            deleteQuietly(part);
+        }
+        job.finishedAt = LocalDateTime.now();
+        publish(job);
+    }
+
+    private void publish(Job job) {
+        job.lastPublished = System.nanoTime();
+        webSocketService.sendExportJobUpdate(job.toDTO());
+    }
+
+    /**
+     * Forget finished jobs past the retention and delete their files (also files left by a restart)
+     */
+    @Scheduled(fixedDelay = 3_600_000)
+    public void cleanup() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            boolean expired = job.finishedAt != null && job.finishedAt.isBefore(cutoff);
+            if (expired) {
+                deleteQuietly(job.file);
+            }
+            return expired;
+        });
+
+        if (!Files.isDirectory(exportDir)) {
+            return;
+        }
+        long cutoffMillis = System.currentTimeMillis() - retention.toMillis();
+        try (Stream<Path> files = Files.list(exportDir)) {
+            files.filter(file -> !jobs.containsKey(file.getFileName().toString().split("\\.")[0]))
+                .filter(file -> file.toFile().lastModified() < cutoffMillis)
+                .forEach(this::deleteQuietly);
+        } catch (IOException e) {
+            log.warn("Could not clean export directory {}: {}", exportDir, e.getMessage());
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete export file {}: {}", file, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Row counter handed to a running export
+     */
+    public final class Progress {
+
+        private final Job job;
+
+        private Progress(Job job) {
+            this.job = job;
+        }
+
+        /**
+         * Count the rows of a source; progress is pushed at most once per PROGRESS_INTERVAL
+         */
+        public <T> ExcelExportService.RowSource<T> counting(ExcelExportService.RowSource<T> source) {
+            return action -> source.forEach(row -> {
+                action.accept(row);
+                job.rows.incrementAndGet();
+                if (System.nanoTime() - job.lastPublished >= PROGRESS_INTERVAL.toNanos()) {
+                    publish(job);
+                }
+            });
+        }
+    }
+
+    /**
+     * State of one export; written by its worker, read by pollers
+     */
+    private final class Job {
+        private final String id;
+        private final String type;
+        private final String fileName;
+        private final String requestedBy;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final Path file;
+        private final AtomicLong rows = new AtomicLong();
+        private volatile Status status = Status.QUEUED;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+        // Only touched by the worker thread
+        private long lastPublished;
+
+        private Job(String id, String type, String fileName, String requestedBy) {
+            this.id = id;
+            this.type = type;
+            this.fileName = fileName;
+            this.requestedBy = requestedBy;
+            this.file = exportDir.resolve(id + ".xlsx");
+        }
+
+        private ExportJobDTO toDTO() {
+            boolean completed = status == Status.COMPLETED;
+            Long size = null;
+            if (completed) {
+                try {
+                    size = Files.size(file);
+                } catch (IOException e) {
+                    // Deleted in the meantime
+                }
+            }
+            return ExportJobDTO.builder()
+                .id(id)
+                .type(type)
+                .status(status.name())
+                .rowsWritten(rows.get())
+                .fileName(fileName)
+                .fileSize(size)
+                .downloadUrl(completed ? String.format(DOWNLOAD_URL, id) : null)
+                .error(error)
+                .requestedBy(requestedBy)
+                .createdAt(createdAt)
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .build();
+        }
+    }
+}
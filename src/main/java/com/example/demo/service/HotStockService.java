@@ -0,0 +1,386 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hot-product stock mode for flash sales (used by StockReservationService)
+ *
+ * Products listed in app.stock.hot-products are promoted to hot mode while they sell at
+ * least app.stock.hot-min-per-minute units a minute, and fall back to the DB path when they cool:
+ * - Available stock lives in striped in-memory counters, so concurrent buyers CAS different
+ *   stripes instead of queueing on the single Products row.
+ * - Every committed reservation or release appends a row to stock_reservation_log in the
+ *   order's transaction (the crash-safe record); a write-behind flusher folds the log into
+ *   Products.stock_quantity every app.stock.flush-interval-ms.
+ * - After each flush the counters absorb stock changes made elsewhere (admin edits).
+ * - Products.stock_quantity cannot go below zero (CHECK constraint). If the stock was lowered
+ *   elsewhere below what hot mode has already sold, the flush stops at zero and reports the
+ *   difference as oversold (warning and stock.hot.oversold) instead of dropping it silently.
+ *
+ * A reservation holds its product's read lock only while it takes stock and logs it; until its
+ * transaction completes it is counted as in flight. Demotion takes the write lock and only
+ * switches once nothing is in flight, flushing before the DB path takes over; otherwise it
+ * tries again on the next run. The scheduler never waits longer than LOCK_WAIT_MS for a lock.
+ * Only one instance may run hot mode: the counters are per JVM.
+ */
+@Service
+@Slf4j
+public class HotStockService {
+
+    // The rows are locked first so the oversold amount is computed from the stock being replaced
+    private static final String FLUSH_SQL =
+        "WITH moved AS (DELETE FROM stock_reservation_log RETURNING product_id, quantity), " +
+        "totals AS (SELECT product_id, SUM(quantity) AS qty FROM moved GROUP BY product_id), " +
+        "locked AS (SELECT p.id, p.stock_quantity FROM Products p JOIN totals t ON t.product_id = p.id FOR UPDATE OF p) " +
+        "UPDATE Products p SET stock_quantity = GREATEST(l.stock_quantity - t.qty, 0) " +
+        "FROM totals t JOIN locked l ON l.id = t.product_id WHERE p.id = t.product_id " +
+        "RETURNING p.id, t.qty, GREATEST(t.qty - l.stock_quantity, 0)";
+    // Longest the scheduler waits for a product's write lock before retrying on its next run
+    private static final long LOCK_WAIT_MS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, HotProduct> products = new ConcurrentHashMap<>();
+    private final Lock flushLock = new ReentrantLock();
+    private final int stripes;
+    private final int minPerMinute;
+    private final Counter reservedCounter;
+    private final Counter rejectedCounter;
+    private final Counter oversoldCounter;
+
+    public HotStockService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                           @Value("${app.stock.hot-products:}") List<Long> hotProductIds,
+                           @Value("${app.stock.hot-stripes:16}") int stripes,
+                           @Value("${app.stock.hot-min-per-minute:30}") int minPerMinute) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stripes = stripes;
+        this.minPerMinute = minPerMinute;
+        hotProductIds.forEach(id -> products.put(id, new HotProduct(id)));
+
+        this.reservedCounter = Counter.builder("stock.hot.reservations")
+            .description("Hot-mode stock reservations")
+            .tag("outcome", "reserved")
+            .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("stock.hot.reservations")
+            .description("Hot-mode stock reservations")
+            .tag("outcome", "out_of_stock")
+            .register(meterRegistry);
+        this.oversoldCounter = Counter.builder("stock.hot.oversold")
+            .description("Units sold in hot mode beyond the stored stock")
+            .baseUnit("units")
+            .register(meterRegistry);
+        Gauge.builder("stock.hot.products", products, map -> map.values().stream().filter(p -> p.active).count())
+            .description("Products currently in hot stock mode")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Outcome of a hot-mode attempt
+     */
+    public enum Result { RESERVED, OUT_OF_STOCK, NOT_HOT }
+
+    /**
+     * Take stock from the in-memory counter of a hot product
+     * Must run in a transaction: the log row commits with the order, and the stock is given
+     * back to the counter if the transaction rolls back.
+     */
+    public Result tryReserve(Long productId, int quantity) {
+        HotProduct product = products.get(productId);
+        if (product == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return Result.NOT_HOT;
+        }
+        product.recentUnits.addAndGet(quantity);
+
+        Lock readLock = product.lock.readLock();
+        readLock.lock();
+        try {
+            if (!product.active) {
+                return Result.NOT_HOT;
+            }
+            StripedStock stock = product.stock;
+            if (!stock.tryTake(quantity)) {
+                rejectedCounter.increment();
+                return Result.OUT_OF_STOCK;
+            }
+            product.inFlight.incrementAndGet();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        stock.giveBack(quantity);
+                    }
+                    product.inFlight.decrementAndGet();
+                }
+            });
+            appendLog(productId, quantity);
+            reservedCounter.increment();
+            return Result.RESERVED;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Give stock of a hot product back (cancelled order, or undoing a reservation of the
+     * same transaction); the counter is credited on commit
+     * @return false if the product is not in hot mode and the DB path must be used
+     */
+    public boolean release(Long productId, int quantity) {
+        HotProduct product = products.get(productId);
+        if (product == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+
+        Lock readLock = product.lock.readLock();
+        readLock.lock();
+        try {
+            if (!product.active) {
+                return false;
+            }
+            StripedStock stock = product.stock;
+            product.inFlight.incrementAndGet();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        stock.giveBack(quantity);
+                    }
+                    product.inFlight.decrementAndGet();
+                }
+            });
+            appendLog(productId, -quantity);
+            return true;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void appendLog(Long productId, int quantity) {
+        jdbcTemplate.update("INSERT INTO stock_reservation_log (product_id, quantity) VALUES (?, ?)",
+            productId, quantity);
+    }
+
+    /**
+     * Write-behind: fold committed log rows into Products, then pick up external stock changes
+     * Rows of in-flight transactions are not visible yet and are folded on a later run.
+     */
+    @Scheduled(fixedDelayString = "${app.stock.flush-interval-ms:500}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Long, Long> applied = new HashMap<>();
+            Map<Long, Long> oversoldBy = new HashMap<>();
+            jdbcTemplate.query(FLUSH_SQL, rs -> {
+                long productId = rs.getLong(1);
+                applied.put(productId, rs.getLong(2));
+                long oversold = rs.getLong(3);
+                if (oversold > 0) {
+                    oversoldBy.put(productId, oversold);
+                    log.warn("Hot product {} oversold by {} units: its stock was lowered below what was already sold",
+                        productId, oversold);
+                    oversoldCounter.increment(oversold);
+                }
+            });
+
+            for (HotProduct product : products.values()) {
+                if (!product.active) {
+                    continue;
+                }
+                long expected = product.expectedDbStock - applied.getOrDefault(product.productId, 0L);
+                Integer actual = jdbcTemplate.queryForObject(
+                    "SELECT stock_quantity FROM Products WHERE id = ?", Integer.class, product.productId);
+                // Stopping at zero left the stock higher than expected by the oversold units
+                long drift = (actual != null ? actual : 0) - expected;
+                if (drift != 0) {
+                    log.info("Hot product {} stock changed outside checkout by {}, adjusting counter",
+                        product.productId, drift - oversoldBy.getOrDefault(product.productId, 0L));
+                    product.stock.adjust(drift);
+                }
+                product.expectedDbStock = expected + drift;
+            }
+        } catch (Exception e) {
+            // Log rows stay in place and are applied on the next run
+            log.error("Error flushing hot stock log: {}", e.getMessage(), e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Promote listed products that sell fast, demote hot ones that cooled down
+     * A switch that cannot happen now (lock busy, orders in flight) is retried on the next run.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void adjustHotProducts() {
+        for (HotProduct product : products.values()) {
+            int unitsLastMinute = product.recentUnits.getAndSet(0);
+            try {
+                if (!product.active && unitsLastMinute >= minPerMinute) {
+                    promote(product);
+                } else if (product.active && unitsLastMinute < minPerMinute) {
+                    demote(product);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error switching stock mode of product {}: {}", product.productId, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void promote(HotProduct product) throws InterruptedException {
+        if (!product.lock.writeLock().tryLock(LOCK_WAIT_MS, TimeUnit.MILLISECONDS)) {
+            log.info("Product {} is busy, promoting it on the next run", product.productId);
+            return;
+        }
+        try {
+            flush();
+            Integer stock = jdbcTemplate.queryForObject(
+                "SELECT stock_quantity FROM Products WHERE id = ?", Integer.class, product.productId);
+            long available = stock != null ? stock : 0;
+            product.stock = new StripedStock(stripes, available);
+            product.expectedDbStock = available;
+            product.active = true;
+            log.info("🔥 Product {} switched to hot stock mode ({} in stock)", product.productId, available);
+        } finally {
+            product.lock.writeLock().unlock();
+        }
+    }
+
+    private void demote(HotProduct product) throws InterruptedException {
+        if (!product.lock.writeLock().tryLock(LOCK_WAIT_MS, TimeUnit.MILLISECONDS)) {
+            log.info("Product {} is busy, demoting it on the next run", product.productId);
+            return;
+        }
+        try {
+            // No new reservations while we hold the lock; committed ones are in the log by now
+            int inFlight = product.inFlight.get();
+            if (inFlight > 0) {
+                log.info("Product {} has {} reservation(s) in flight, demoting it on the next run",
+                    product.productId, inFlight);
+                return;
+            }
+            product.active = false;
+            flush();
+            log.info("Product {} cooled down, back to database stock ({} left in counter)",
+                product.productId, product.stock.available());
+        } finally {
+            product.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hot-mode state of one listed product
+     */
+    private static final class HotProduct {
+        private final Long productId;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final AtomicInteger recentUnits = new AtomicInteger();
+        // Reservations and releases whose transaction has not completed yet
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean active;
+        private volatile StripedStock stock = new StripedStock(1, 0);
+        // Products.stock_quantity as last flushed by us; only touched under flushLock
+        private long expectedDbStock;
+
+        private HotProduct(Long productId) {
+            this.productId = productId;
+        }
+    }
+
+    /**
+     * Stock counter split over several stripes to spread CAS contention
+     * Takes try a random stripe first and only lock to pool the stripes when none has enough.
+     */
+    static final class StripedStock {
+
+        private final AtomicLongArray stripes;
+        private final Lock rebalanceLock = new ReentrantLock();
+
+        StripedStock(int stripeCount, long initial) {
+            this.stripes = new AtomicLongArray(Math.max(1, stripeCount));
+            spread(initial);
+        }
+
+        boolean tryTake(int quantity) {
+            int n = stripes.length();
+            int start = ThreadLocalRandom.current().nextInt(n);
+            for (int i = 0; i < n; i++) {
+                int index = (start + i) % n;
+                long current;
+                while ((current = stripes.get(index)) >= quantity) {
+                    if (stripes.compareAndSet(index, current, current - quantity)) {
+                        return true;
+                    }
+                }
+            }
+            return rebalanceAndTake(quantity);
+        }
+
+        void giveBack(long quantity) {
+            stripes.addAndGet(ThreadLocalRandom.current().nextInt(stripes.length()), quantity);
+        }
+
+        /**
+         * Apply an external change; a negative total simply blocks takes until restocked
+         */
+        void adjust(long delta) {
+            stripes.addAndGet(0, delta);
+        }
+
+        long available() {
+            long total = 0;
+            for (int i = 0; i < stripes.length(); i++) {
+                total += stripes.get(i);
+            }
+            return total;
+        }
+
+        private boolean rebalanceAndTake(int quantity) {
+            rebalanceLock.lock();
+            try {
+                long total = 0;
+                for (int i = 0; i < stripes.length(); i++) {
+                    total += stripes.getAndSet(i, 0);
+                }
+                boolean taken = total >= quantity;
+                spread(taken ? total - quantity : total);
+                return taken;
+            } finally {
+                rebalanceLock.unlock();
+            }
+        }
+
+        private void spread(long total) {
+            int n = stripes.length();
+            if (total <= 0) {
+                stripes.addAndGet(0, total);
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                stripes.addAndGet(i, total / n + (i < total % n ? 1 : 0));
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.AiAnalysisResult;
+import com.example.demo.entity.enums.IntentType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Phân loại ý định tại chỗ, trước khi gọi Gemini (see RoutingService)
+ *
+ * Short messages that are a greeting, a store FAQ (hours, address, hotline, shipping or
+ * return policy) or an explicit request for a staff member are recognised by keyword rules
+ * over the message without diacritics. FAQs are answered from StoreConfigService and
+ * handoff requests go to staff at once, so none of them costs a Gemini call.
+ *
+ * A naive Bayes model over word unigrams and bigrams, trained from Gemini's stored routing
+ * decisions (each paired with the customer message it was made for), acts as a second
+ * opinion: once it has enough data, an FAQ rule only answers if the model also gives the
+ * rule's intent at least app.ai.fast-path.min-agreement. Handoff requests are never vetoed.
+ */
+@Component
+@Slf4j
+public class IntentPreClassifier {
+
+    public static final String DECIDED_BY = "LOCAL";
+
+    // Gemini decisions with the last customer message sent before each of them
+    private static final String TRAINING_SQL =
+        "SELECT rd.intent, m.content FROM routing_decisions rd " +
+        "JOIN Conversations c ON c.id = rd.conversation_id " +
+        "JOIN LATERAL (SELECT content FROM Messages m WHERE m.conversation_id = rd.conversation_id " +
+        "AND m.sender_id = c.customer_id AND m.sent_at <= rd.created_at " +
+        "ORDER BY m.sent_at DESC, m.id DESC LIMIT 1) m ON TRUE " +
+        "WHERE rd.decided_by = 'GEMINI' AND rd.need_handoff = FALSE AND rd.confidence >= ? " +
+        "ORDER BY rd.id DESC LIMIT ?";
+
+    // Longer messages usually carry more than one question: leave them to Gemini
+    private static final int MAX_TOKENS = 12;
+    // Features seen fewer times are dropped from the model
+    private static final int MIN_FEATURE_COUNT = 2;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9]+");
+
+    private static final Pattern NEGATION = Pattern.compile("\\bkhong (can|muon)\\b");
+    private static final Pattern HANDOFF = Pattern.compile(
+        "\\b(gap|noi chuyen voi|chat voi|ket noi|chuyen|can|muon|goi) (cho )?(minh |em |toi )?(voi |gap )?" +
+        "(nhan vien|nguoi that|tu van vien|chu shop|quan ly)\\b|\\bnguoi that\\b|\\bnhan vien (oi|dau)\\b");
+    // Order numbers, prices, quantities: needs a tool or staff
+    private static final Pattern SPECIFIC = Pattern.compile("\\d|\\b(don hang|ma don|phi|bao nhieu|gia|hoan tien)\\b");
+
+    private static final String GREETING_REPLY =
+        "Chào bạn! 🌸 Mình là Hoa AI của StarShop. Bạn đang tìm hoa cho dịp nào để mình tư vấn nhé?";
+    private static final String HANDOFF_REPLY =
+        "Dạ, mình chuyển bạn tới nhân viên cửa hàng ngay nhé, bạn chờ một chút! 💬";
+    private static final String FAQ_CLOSING = "\n\nBạn có cần mình hỗ trợ gì thêm không ạ?";
+
+    /**
+     * Questions answered locally; the answer is the lines of getStoreInfoText (or getPoliciesText
+     * when policy is set) starting with one of the prefixes
+     */
+    private enum Faq {
+        GREETING(IntentType.CHITCHAT, false,
+            "^((xin )?(chao|hello|hi|helo|alo|hey)|shop oi|ad oi|admin oi)( (shop|ban|ad|admin|a|nha|nhe|oi|buoi sang|buoi toi))*$"),
+        STORE_HOURS(IntentType.STORE_INFO, false,
+            "\\b(gio mo cua|gio dong cua|gio lam viec|may gio (mo|dong) cua|(mo|dong) cua (luc |den )?may gio|lam viec den may gio)\\b",
+            "- Giờ mở cửa:"),
+        STORE_ADDRESS(IntentType.STORE_INFO, false,
+            "\\b(dia chi (shop|cua hang)|(shop|cua hang) (nam )?o dau|(shop|cua hang) o duong nao)\\b",
+            "- Địa chỉ:"),
+        STORE_CONTACT(IntentType.STORE_INFO, false,
+            "\\b(hotline|so dien thoai (cua )?(shop|cua hang)|sdt (cua )?(shop|cua hang)|email (cua )?(shop|cua hang))\\b",
+            "- Hotline:", "- Email:"),
+        SHIPPING_POLICY(IntentType.SHIPPING, true,
+            "\\b(co giao hang|co ship|giao hang tan noi|giao (hang )?toan quoc|ship toan quoc|" +
+            "chinh sach (giao hang|van chuyen)|giao hang (nhu the nao|ra sao|the nao))\\b",
+            "- Vận chuyển:"),
+        RETURN_POLICY(IntentType.STORE_INFO, true,
+            "\\b(chinh sach doi tra|doi tra (nhu the nao|ra sao|the nao)|co (duoc )?doi tra|co (duoc )?doi hoa)\\b",
+            "- Đổi trả:");
+
+        private final IntentType intent;
+        private final boolean policy;
+        private final Pattern pattern;
+        private final String[] linePrefixes;
+
+        Faq(IntentType intent, boolean policy, String regex, String... linePrefixes) {
+            this.intent = intent;
+            this.policy = policy;
+            this.pattern = Pattern.compile(regex);
+            this.linePrefixes = linePrefixes;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StoreConfigService storeConfigService;
+    private final boolean enabled;
+    private final double minAgreement;
+    private final double minTrainingConfidence;
+    private final int maxSamples;
+    private final int minSamples;
+    private final Counter answeredCounter;
+    private final Counter handoffCounter;
+    private final Counter vetoedCounter;
+
+    private volatile Model model;
+
+    public IntentPreClassifier(JdbcTemplate jdbcTemplate, StoreConfigService storeConfigService,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.ai.fast-path.enabled:true}") boolean enabled,
+                               @Value("${app.ai.fast-path.min-agreement:0.5}") double minAgreement,
+                               @Value("${app.ai.fast-path.min-training-confidence:0.8}") double minTrainingConfidence,
+                               @Value("${app.ai.fast-path.max-samples:20000}") int maxSamples,
+                               @Value("${app.ai.fast-path.min-samples:200}") int minSamples) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.storeConfigService = storeConfigService;
+        this.enabled = enabled;
+        this.minAgreement = minAgreement;
+        this.minTrainingConfidence = minTrainingConfidence;
+        this.maxSamples = maxSamples;
+        this.minSamples = minSamples;
+        this.answeredCounter = outcomeCounter(meterRegistry, "answered");
+        this.handoffCounter = outcomeCounter(meterRegistry, "handoff");
+        this.vetoedCounter = outcomeCounter(meterRegistry, "vetoed");
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("ai.fast_path")
+            .description("Customer messages routed without Gemini")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Local decision for a customer message
+     * @return analysis with the final reply (no tool requests), or a handoff; empty if Gemini should decide
+     */
+    public Optional<AiAnalysisResult> classify(String message) {
+        if (!enabled || message == null) {
+            return Optional.empty();
+        }
+        String text = normalize(message);
+        String[] tokens = text.isEmpty() ? new String[0] : text.split(" ");
+        if (tokens.length == 0 || tokens.length > MAX_TOKENS) {
+            return Optional.empty();
+        }
+
+        if (HANDOFF.matcher(text).find() && !NEGATION.matcher(text).find()) {
+            handoffCounter.increment();
+            AiAnalysisResult result = result(IntentType.OTHER, 1.0, HANDOFF_REPLY);
+            result.setNeedHandoff(true);
+            return Optional.of(result);
+        }
+        if (SPECIFIC.matcher(text).find()) {
+            return Optional.empty();
+        }
+
+        for (Faq faq : Faq.values()) {
+            if (!faq.pattern.matcher(text).find()) {
+                continue;
+            }
+            Model current = model;
+            double confidence = current != null ? current.probability(features(tokens), faq.intent) : 0.9;
+            if (confidence < minAgreement) {
+                log.debug("Fast path {} vetoed by the model ({})", faq, confidence);
+                vetoedCounter.increment();
+                return Optional.empty();
+            }
+            answeredCounter.increment();
+            return Optional.of(result(faq.intent, confidence, answer(faq)));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Rebuild the model from the latest Gemini decisions
+     */
+    @Scheduled(initialDelayString = "${app.ai.fast-path.initial-delay-ms:30000}",
+               fixedDelayString = "${app.ai.fast-path.retrain-interval-ms:21600000}")
+    public void retrain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<Sample> samples = jdbcTemplate.query(TRAINING_SQL,
+                (rs, rowNum) -> new Sample(IntentType.fromString(rs.getString("intent")), rs.getString("content")),
+                minTrainingConfidence, maxSamples);
+            if (samples.size() < minSamples) {
+                log.info("Intent pre-classifier: {} training samples (< {}), using keyword rules only", samples.size(), minSamples);
+                model = null;
+                return;
+            }
+            model = Model.train(samples);
+            log.info("Intent pre-classifier trained on {} routing decisions ({} features)", samples.size(), model.vocabularySize());
+        } catch (Exception e) {
+            // Keep the previous model
+            log.warn("Failed to train intent pre-classifier", e);
+        }
+    }
+
+    private String answer(Faq faq) {
+        if (faq == Faq.GREETING) {
+            return GREETING_REPLY;
+        }
+        String source = faq.policy ? storeConfigService.getPoliciesText() : storeConfigService.getStoreInfoText();
+        List<String> lines = new ArrayList<>();
+        for (String line : source.split("\n")) {
+            for (String prefix : faq.linePrefixes) {
+                if (line.startsWith(prefix)) {
+                    lines.add(line);
+                }
+            }
+        }
+        if (lines.isEmpty()) {
+            // Unexpected layout: give the whole block without its heading
+            lines.addAll(List.of(source.substring(source.indexOf('\n') + 1).trim().split("\n")));
+        }
+        return "Dạ, thông tin cho bạn đây ạ 🌸\n" + String.join("\n", lines) + FAQ_CLOSING;
+    }
+
+    private static AiAnalysisResult result(IntentType intent, double confidence, String reply) {
+        AiAnalysisResult result = new AiAnalysisResult();
+        result.setIntent(intent.name());
+        result.setConfidence(confidence);
+        result.setReply(reply);
+        result.setNeedHandoff(false);
+        result.setSuggestHandoff(false);
+        result.setToolRequests(new ArrayList<>());
+        result.setProductSuggestions(new ArrayList<>());
+        return result;
+    }
+
+    /**
+     * Lower case, no Vietnamese diacritics, words separated by single spaces
+     */
+    static String normalize(String text) {
+        String lower = text.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        String stripped = DIACRITICS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return NON_WORD.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    private static List<String> features(String[] tokens) {
+        List<String> features = new ArrayList<>(tokens.length * 2);
+        for (int i = 0; i < tokens.length; i++) {
+            features.add(tokens[i]);
+            if (i > 0) {
+                features.add(tokens[i - 1] + "_" + tokens[i]);
+            }
+        }
+        return features;
+    }
+
+    private record Sample(IntentType intent, String content) {
+    }
+
+    /**
+     * Multinomial naive Bayes with add-one smoothing
+     */
+    private static final class Model {
+
+        private final IntentType[] intents = IntentType.values();
+        private final double[] logPrior;
+        // log P(feature | intent) per intent, indexed by ordinal
+        private final Map<String, double[]> logLikelihood;
+
+        private Model(double[] logPrior, Map<String, double[]> logLikelihood) {
+            this.logPrior = logPrior;
+            this.logLikelihood = logLikelihood;
+        }
+
+        static Model train(List<Sample> samples) {
+            int classes = IntentType.values().length;
+            int[] documents = new int[classes];
+            Map<String, int[]> counts = new HashMap<>();
+            for (Sample sample : samples) {
+                if (sample.content() == null) {
+                    continue;
+                }
+                int c = sample.intent().ordinal();
+                documents[c]++;
+                String text = normalize(sample.content());
+                if (text.isEmpty()) {
+                    continue;
+                }
+                for (String feature : features(text.split(" "))) {
+                    counts.computeIfAbsent(feature, key -> new int[classes])[c]++;
+                }
+            }
+            counts.values().removeIf(perClass -> sum(perClass) < MIN_FEATURE_COUNT);
+
+            long[] totals = new long[classes];
+            for (int[] perClass : counts.values()) {
+                for (int c = 0; c < classes; c++) {
+                    totals[c] += perClass[c];
+                }
+            }
+            int vocabulary = counts.size();
+            double documentCount = sum(documents);
+
+            double[] logPrior = new double[classes];
+            double[] logUnseen = new double[classes];
+            for (int c = 0; c < classes; c++) {
+                logPrior[c] = Math.log((documents[c] + 1) / (documentCount + classes));
+                logUnseen[c] = -Math.log(totals[c] + vocabulary + 1.0);
+            }
+            Map<String, double[]> logLikelihood = new HashMap<>(counts.size() * 2);
+            counts.forEach((feature, perClass) -> {
+                double[] values = new double[classes];
+                for (int c = 0; c < classes; c++) {
+                    values[c] = Math.log(perClass[c] + 1.0) + logUnseen[c];
+                }
+                logLikelihood.put(feature, values);
+            });
+            return new Model(logPrior, logLikelihood);
+        }
+
+        /**
+         * Posterior probability of one intent for the given features
+         */
+        double probability(List<String> features, IntentType intent) {
+            Map<IntentType, Double> scores = new EnumMap<>(IntentType.class);
+            double max = Double.NEGATIVE_INFINITY;
+            for (IntentType candidate : intents) {
+                int c = candidate.ordinal();
+                double score = logPrior[c];
+                for (String feature : features) {
+                    // Features outside the vocabulary carry no evidence
+                    double[] values = logLikelihood.get(feature);
+                    if (values != null) {
+                        score += values[c];
+                    }
+                }
+                scores.put(candidate, score);
+                max = Math.max(max, score);
+            }
+            double total = 0;
+            for (double score : scores.values()) {
+                total += Math.exp(score - max);
+            }
+            return Math.exp(scores.get(intent) - max) / total;
+        }
+
+        int vocabularySize() {
+            return logLikelihood.size();
+        }
+
+        private static int sum(int[] values) {
+            int total = 0;
+            for (int value : values) {
+                total += value;
+            }
+            return total;
+        }
+    }
+}
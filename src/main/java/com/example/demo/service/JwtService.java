@@ -29,8 +29,20 @@ public class JwtService {
     @Value("${jwt.expiration}")
     private Long jwtExpiration;
 
+    private volatile SecretKey signingKey;
+
+    /**
+     * Claims read from a single parse of a valid, non-expired token
+     */
+    public record TokenClaims(String email, UserRole role, Long userId, Date expiration) {}
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+        SecretKey key = signingKey;
+        if (key == null) {
+            key = Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+            signingKey = key;
+        }
+        return key;
     }
 
     /**
@@ -81,6 +93,31 @@ public class JwtService {
                 .compact();
     }
 
+    /**
+     * Parse and verify a JWT token once, returning all claims needed for authentication
+     * @param token JWT token
+     * @return Parsed claims, or null if the token is invalid or expired
+     */
+    public TokenClaims parseToken(String token) {
+        try {
+            Claims claims = Jwts.parser()
+                    .verifyWith(getSigningKey())
+                    .build()
+                    .parseSignedClaims(token)
+                    .getPayload();
+            // The parser already rejects expired tokens (ExpiredJwtException)
+            String roleStr = claims.get("role", String.class);
+            return new TokenClaims(
+                    claims.getSubject(),
+                    roleStr != null ? UserRole.valueOf(roleStr) : null,
+                    claims.get("userId", Long.class),
+                    claims.getExpiration());
+        } catch (Exception e) {
+            log.warn("JWT token rejected: {}", e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Extract email from JWT token
      * @param token JWT token
@@ -35,10 +35,17 @@ public class LocationService {
     }
     
     /**
-     * Get all provinces (cached for 1 hour)
+     * Get all provinces (cached, refreshed in background - see CacheConfig)
      */
     @Cacheable(value = "provinces", unless = "#result.isEmpty()")
     public List<ProvinceDto> getProvinces() {
+        return loadProvinces();
+    }
+    
+    /**
+     * Load provinces from GHN, bypassing the cache (used by cache refresh-ahead)
+     */
+    public List<ProvinceDto> loadProvinces() {
         try {
             if (!ghnClient.isConfigurationValid()) {
                 logger.warn("GHN configuration is invalid, returning empty provinces list");
@@ -60,10 +67,17 @@ public class LocationService {
     }
     
     /**
-     * Get districts by province ID (cached for 1 hour)
+     * Get districts by province ID (cached, refreshed in background - see CacheConfig)
      */
     @Cacheable(value = "districts", key = "#provinceId", unless = "#result.isEmpty()")
     public List<DistrictDto> getDistricts(int provinceId) {
+        return loadDistricts(provinceId);
+    }
+    
+    /**
+     * Load districts from GHN, bypassing the cache (used by cache refresh-ahead)
+     */
+    public List<DistrictDto> loadDistricts(int provinceId) {
         try {
             if (!ghnClient.isConfigurationValid()) {
                 logger.warn("GHN configuration is invalid, returning empty districts list for province {}", provinceId);
@@ -85,10 +99,17 @@ public class LocationService {
     }
     
     /**
-     * Get wards by district ID (cached for 1 hour)
+     * Get wards by district ID (cached, refreshed in background - see CacheConfig)
      */
     @Cacheable(value = "wards", key = "#districtId", unless = "#result.isEmpty()")
     public List<WardDto> getWards(int districtId) {
+        return loadWards(districtId);
+    }
+    
+    /**
+     * Load wards from GHN, bypassing the cache (used by cache refresh-ahead)
+     */
+    public List<WardDto> loadWards(int districtId) {
         try {
             if (!ghnClient.isConfigurationValid()) {
                 logger.warn("GHN configuration is invalid, returning empty wards list for district {}", districtId);
@@ -115,6 +136,13 @@ public class LocationService {
      */
     @Cacheable(value = "wardsByProvince", key = "#provinceId", unless = "#result.isEmpty()")
     public List<WardDto> getWardsByProvince(int provinceId) {
+        return loadWardsByProvince(provinceId);
+    }
+    
+    /**
+     * Load all wards of a province from GHN, bypassing the cache (used by cache refresh-ahead)
+     */
+    public List<WardDto> loadWardsByProvince(int provinceId) {
         try {
             if (!ghnClient.isConfigurationValid()) {
                 logger.warn("GHN configuration is invalid, returning empty wards list for province {}", provinceId);
@@ -122,7 +150,7 @@ public class LocationService {
             }
             
             // First get all districts in the province
-            List<DistrictDto> districts = getDistricts(provinceId);
+            List<DistrictDto> districts = loadDistricts(provinceId);
             if (districts.isEmpty()) {
                 logger.warn("No districts found for province {}", provinceId);
                 return Collections.emptyList();
@@ -130,7 +158,7 @@ public class LocationService {
             
             // Then get all wards from all districts
             List<WardDto> allWards = districts.stream()
-                    .flatMap(district -> getWards(district.id()).stream())
+                    .flatMap(district -> loadWards(district.id()).stream())
                     .collect(Collectors.toList());
             
             logger.info("Retrieved {} wards for province {} from GHN", allWards.size(), provinceId);
@@ -0,0 +1,141 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CreateVoucherRequest;
+import com.example.demo.dto.MarketingCampaignRequest;
+import com.example.demo.dto.MarketingCampaignStatusDTO;
+import com.example.demo.dto.VoucherDTO;
+import com.example.demo.entity.enums.DiscountType;
+import com.example.demo.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Chiến dịch email marketing
+ *
+ * Creating a campaign only queues it: the voucher, the campaign row and one
+ * marketing_email_queue row per customer of the segment are written in one transaction
+ * (the recipients with a single INSERT ... SELECT on the stored customer_segment, which
+ * CustomerSegmentationService keeps current). MarketingEmailDispatcher sends the queue
+ * in the background and updates the campaign counters.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MarketingCampaignService {
+
+    private static final Set<String> SEGMENTS = Set.of("VIP", "NEW", "AT_RISK");
+    private static final int VOUCHER_VALID_DAYS = 30;
+
+    private static final String ENQUEUE_SQL =
+        "INSERT INTO marketing_email_queue (campaign_id, user_id, email, first_name, domain) " +
+        "SELECT ?, u.id, u.email, u.firstname, LOWER(SPLIT_PART(u.email, '@', 2)) " +
+        "FROM users u WHERE u.role = 'CUSTOMER' AND u.customer_segment = ? AND u.email LIKE '%_@_%' " +
+        "ON CONFLICT (campaign_id, email) DO NOTHING";
+
+    private static final String SELECT_CAMPAIGN =
+        "SELECT id, name, segment, voucher_code, status, total_count, sent_count, failed_count, " +
+        "created_by, created_at, finished_at FROM marketing_campaigns";
+
+    private static final RowMapper<MarketingCampaignStatusDTO> CAMPAIGN_MAPPER = (rs, rowNum) -> {
+        Timestamp finishedAt = rs.getTimestamp("finished_at");
+        int total = rs.getInt("total_count");
+        int sent = rs.getInt("sent_count");
+        int failed = rs.getInt("failed_count");
+        return MarketingCampaignStatusDTO.builder()
+            .id(rs.getLong("id"))
+            .name(rs.getString("name"))
+            .segment(rs.getString("segment"))
+            .voucherCode(rs.getString("voucher_code"))
+            .status(rs.getString("status"))
+            .totalCount(total)
+            .sentCount(sent)
+            .failedCount(failed)
+            .pendingCount(Math.max(total - sent - failed, 0))
+            .createdBy(rs.getString("created_by"))
+            .createdAt(rs.getTimestamp("created_at").toLocalDateTime())
+            .finishedAt(finishedAt != null ? finishedAt.toLocalDateTime() : null)
+            .build();
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final VoucherService voucherService;
+
+    /**
+     * Tạo voucher và xếp hàng email cho toàn bộ khách trong phân khúc
+     * @throws IllegalArgumentException if the segment has no customers
+     */
+    @Transactional
+    public MarketingCampaignStatusDTO createCampaign(MarketingCampaignRequest request, String createdBy) {
+        String segment = request.getSegment();
+        Long customers = SEGMENTS.contains(segment) ? userRepository.countByCustomerSegment(segment) : null;
+        if (customers == null || customers == 0) {
+            throw new IllegalArgumentException("Không có khách hàng nào trong phân khúc này");
+        }
+
+        // Voucher chung cho campaign
+        CreateVoucherRequest voucherReq = new CreateVoucherRequest();
+        voucherReq.setCode(request.getVoucherCode());
+        voucherReq.setName("Chiến dịch " + request.getCampaignName());
+        voucherReq.setDiscountType(DiscountType.valueOf(request.getDiscountType()));
+        voucherReq.setDiscountValue(request.getDiscountValue());
+        voucherReq.setExpiryDate(LocalDate.now().plusDays(VOUCHER_VALID_DAYS));
+        voucherReq.setIsActive(true);
+        VoucherDTO voucher = voucherService.createVoucher(voucherReq);
+        log.info("✅ Voucher created: {}", voucher.getCode());
+
+        Long campaignId = jdbcTemplate.queryForObject(
+            "INSERT INTO marketing_campaigns (name, segment, subject, voucher_code, voucher_expiry, " +
+            "discount_value, discount_type, created_by) VALUES (?, ?, ?, ?, ?, ?, ?, ?) RETURNING id",
+            Long.class,
+            request.getCampaignName(), segment, subjectFor(segment, request.getCampaignName()),
+            voucher.getCode(), Date.valueOf(voucher.getExpiryDate()),
+            request.getDiscountValue().intValue(), request.getDiscountType(), createdBy);
+
+        int queued = jdbcTemplate.update(ENQUEUE_SQL, campaignId, segment);
+        if (queued > 0) {
+            jdbcTemplate.update("UPDATE marketing_campaigns SET total_count = ? WHERE id = ?", queued, campaignId);
+        } else {
+            // No deliverable address: nothing for the dispatcher to finish
+            jdbcTemplate.update("UPDATE marketing_campaigns SET status = 'COMPLETED', finished_at = CURRENT_TIMESTAMP " +
+                "WHERE id = ?", campaignId);
+        }
+        log.info("📧 Campaign {} ({}) queued {} emails for segment {}", campaignId, request.getCampaignName(), queued, segment);
+
+        return getCampaign(campaignId).orElseThrow();
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<MarketingCampaignStatusDTO> getCampaign(Long campaignId) {
+        return jdbcTemplate.query(SELECT_CAMPAIGN + " WHERE id = ?", CAMPAIGN_MAPPER, campaignId)
+            .stream().findFirst();
+    }
+
+    /**
+     * Most recent campaigns first
+     */
+    @Transactional(readOnly = true)
+    public List<MarketingCampaignStatusDTO> getRecentCampaigns(int limit) {
+        return jdbcTemplate.query(SELECT_CAMPAIGN + " ORDER BY id DESC LIMIT ?", CAMPAIGN_MAPPER, limit);
+    }
+
+    private String subjectFor(String segment, String campaignName) {
+        return switch (segment) {
+            case "VIP" -> "👑 Tri ân Khách hàng VIP - Ưu đãi độc quyền dành cho bạn!";
+            case "NEW" -> "🎉 Chào mừng bạn đến với StarShop - Quà tặng đặc biệt!";
+            case "AT_RISK" -> "💐 Chúng tôi nhớ bạn! Quay lại và nhận ưu đãi hấp dẫn";
+            default -> "🌸 " + campaignName + " - Ưu đãi đặc biệt từ StarShop";
+        };
+    }
+}
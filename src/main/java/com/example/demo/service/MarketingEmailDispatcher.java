@@ -0,0 +1,423 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background sender of the marketing_email_queue (see MarketingCampaignService)
+ *
+ * - Up to app.marketing.smtp-connections workers drain the queue in parallel. Each worker
+ *   keeps one SMTP connection open and sends up to app.marketing.messages-per-connection
+ *   messages over it before reconnecting, instead of a connect/auth/quit per email.
+ * - Rows are claimed in batches of app.marketing.batch-size with FOR UPDATE SKIP LOCKED and
+ *   leased for LEASE; results are written back per batch.
+ * - Each recipient domain is paced to app.marketing.domain-rate-per-second across workers.
+ *   Every message reserves the domain's next slot; one that would wait longer than
+ *   MAX_THROTTLE_WAIT is put back until its slot and keeps it (heldSlots), so a large domain
+ *   is spread over its real backlog instead of being reclaimed every few seconds. A worker
+ *   whose whole batch was put back stops until the next poll.
+ * - Failed sends are retried with exponential backoff (app.marketing.retry-base-seconds,
+ *   doubled per attempt, capped at MAX_BACKOFF) up to app.marketing.max-attempts; rejected
+ *   addresses fail at once.
+ *
+ * Metrics: marketing.emails{outcome=sent|retry|failed|deferred}
+ */
+@Service
+@Slf4j
+public class MarketingEmailDispatcher {
+
+    private static final Duration LEASE = Duration.ofMinutes(10);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(2);
+    private static final long MAX_THROTTLE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private static final String CLAIM_SQL =
+        "UPDATE marketing_email_queue q SET status = 'SENDING', locked_until = ? " +
+        "WHERE q.id IN (SELECT id FROM marketing_email_queue " +
+        "  WHERE (status = 'PENDING' AND next_attempt_at <= ?) OR (status = 'SENDING' AND locked_until < ?) " +
+        "  ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+        "RETURNING q.id, q.campaign_id, q.email, q.first_name, q.domain, q.attempts";
+
+    private static final String HAS_DUE_SQL =
+        "SELECT EXISTS (SELECT 1 FROM marketing_email_queue " +
+        "WHERE (status = 'PENDING' AND next_attempt_at <= ?) OR (status = 'SENDING' AND locked_until < ?))";
+
+    private static final String COMPLETE_CAMPAIGN_SQL =
+        "UPDATE marketing_campaigns c SET status = 'COMPLETED', finished_at = ? " +
+        "WHERE c.id = ? AND c.status = 'SENDING' AND NOT EXISTS (SELECT 1 FROM marketing_email_queue q " +
+        "WHERE q.campaign_id = c.id AND q.status IN ('PENDING', 'SENDING'))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JavaMailSenderImpl mailSender;
+    private final EmailService emailService;
+    private final ExecutorService executor;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final Map<Long, Campaign> campaigns = new ConcurrentHashMap<>();
+    private final Map<String, DomainThrottle> throttles = new ConcurrentHashMap<>();
+    // Queue row ID -> System.nanoTime() of the throttle slot reserved for it when it was put back
+    private final Map<Long, Long> heldSlots = new ConcurrentHashMap<>();
+    private final int connections;
+    private final int batchSize;
+    private final int messagesPerConnection;
+    private final long domainIntervalNanos;
+    private final int maxAttempts;
+    private final Duration retryBase;
+    private final Counter sentCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+    private final Counter deferredCounter;
+    private volatile boolean shuttingDown;
+
+    public MarketingEmailDispatcher(JdbcTemplate jdbcTemplate, JavaMailSenderImpl mailSender,
+                                    EmailService emailService, MeterRegistry meterRegistry,
+                                    @Value("${app.marketing.smtp-connections:8}") int connections,
+                                    @Value("${app.marketing.batch-size:100}") int batchSize,
+                                    @Value("${app.marketing.messages-per-connection:100}") int messagesPerConnection,
+                                    @Value("${app.marketing.domain-rate-per-second:50}") int domainRatePerSecond,
+                                    @Value("${app.marketing.max-attempts:5}") int maxAttempts,
+                                    @Value("${app.marketing.retry-base-seconds:60}") long retryBaseSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mailSender = mailSender;
+        this.emailService = emailService;
+        this.connections = connections;
+        this.batchSize = batchSize;
+        this.messagesPerConnection = messagesPerConnection;
+        this.domainIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(domainRatePerSecond, 1);
+        this.maxAttempts = maxAttempts;
+        this.retryBase = Duration.ofSeconds(retryBaseSeconds);
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(connections, runnable -> {
+            Thread thread = new Thread(runnable, "marketing-mail-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.sentCounter = outcomeCounter(meterRegistry, "sent");
+        this.retryCounter = outcomeCounter(meterRegistry, "retry");
+        this.failedCounter = outcomeCounter(meterRegistry, "failed");
+        this.deferredCounter = outcomeCounter(meterRegistry, "deferred");
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("marketing.emails")
+            .description("Marketing emails processed by the dispatcher")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Start workers while there is due mail; each worker runs until the queue has nothing due
+     */
+    @Scheduled(fixedDelayString = "${app.marketing.poll-interval-ms:2000}")
+    public void dispatch() {
+        if (shuttingDown || activeWorkers.get() >= connections) {
+            return;
+        }
+        // Rows that never came back (campaign cancelled, row reclaimed by a lease) release their slot
+        long nowNanos = System.nanoTime();
+        heldSlots.values().removeIf(slot -> nowNanos - slot > LEASE.toNanos());
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(HAS_DUE_SQL, Boolean.class, now, now))) {
+            return;
+        }
+        while (activeWorkers.get() < connections) {
+            activeWorkers.incrementAndGet();
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try (SmtpConnection connection = new SmtpConnection()) {
+            List<QueuedEmail> batch;
+            while (!shuttingDown && !Thread.currentThread().isInterrupted() && !(batch = claim()).isEmpty()) {
+                if (!send(connection, batch)) {
+                    // Only throttled domains are due: the next poll starts workers again
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            // Claimed rows are picked up again when their lease runs out
+            log.error("Marketing mail worker stopped: {}", e.getMessage(), e);
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    private List<QueuedEmail> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+        return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new QueuedEmail(
+                rs.getLong("id"), rs.getLong("campaign_id"), rs.getString("email"),
+                rs.getString("first_name"), rs.getString("domain"), rs.getInt("attempts")),
+            Timestamp.valueOf(now.plus(LEASE)), nowTs, nowTs, batchSize);
+    }
+
+    /**
+     * @return false if every message of the batch was put back by the domain throttle
+     */
+    private boolean send(SmtpConnection connection, List<QueuedEmail> batch) {
+        BatchResult result = new BatchResult();
+        for (int i = 0; i < batch.size(); i++) {
+            QueuedEmail email = batch.get(i);
+            long now = System.nanoTime();
+            Long held = heldSlots.remove(email.id());
+            long wait = held != null
+                ? Math.max(0, held - now)
+                : throttles.computeIfAbsent(email.domain(), d -> new DomainThrottle()).reserve(now);
+            if (wait > MAX_THROTTLE_WAIT_NANOS) {
+                heldSlots.put(email.id(), now + wait);
+                result.deferred.add(new Object[] { Timestamp.valueOf(LocalDateTime.now().plusNanos(wait)), email.id() });
+                continue;
+            }
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    // Unsent rows of the batch are reclaimed after their lease
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            try {
+                connection.send(buildMessage(email));
+                result.sent.add(new Object[] { Timestamp.valueOf(LocalDateTime.now()), email.id() });
+                result.count(email.campaignId(), true);
+            } catch (MessagingException e) {
+                connection.close();
+                if (isRejectedAddress(e)) {
+                    // The server refused the recipient: retrying will not help
+                    result.failed(email, e);
+                } else if (connection.connectFailed) {
+                    // SMTP server unreachable: back off the rest of the batch instead of reconnecting per message
+                    log.warn("SMTP connection failed, retrying {} marketing emails later: {}", batch.size() - i, e.getMessage());
+                    batch.subList(i, batch.size()).forEach(rest -> result.retry(rest, e));
+                    break;
+                } else {
+                    result.retry(email, e);
+                }
+            } catch (RuntimeException e) {
+                // Template or address could not be built
+                result.failed(email, e);
+            }
+        }
+        write(result);
+        return result.deferred.size() < batch.size();
+    }
+
+    private static boolean isRejectedAddress(MessagingException e) {
+        return e instanceof SendFailedException sendFailed
+            && sendFailed.getInvalidAddresses() != null && sendFailed.getInvalidAddresses().length > 0;
+    }
+
+    private MimeMessage buildMessage(QueuedEmail email) throws MessagingException {
+        Campaign campaign = campaigns.computeIfAbsent(email.campaignId(), this::loadCampaign);
+        // Campaign values are compiled into the template once, only the name is filled here
+        String html = campaign.body().render(email.firstName());
+        try {
+            return emailService.createMarketingMessage(email.email(), campaign.subject(), html);
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Campaign loadCampaign(Long campaignId) {
+        return jdbcTemplate.queryForObject(
+            "SELECT name, segment, subject, voucher_code, voucher_expiry, discount_value, discount_type " +
+            "FROM marketing_campaigns WHERE id = ?",
+            (rs, rowNum) -> new Campaign(rs.getString("subject"), emailService.compileMarketingEmailTemplate(
+                rs.getString("segment"), rs.getString("voucher_code"), rs.getDate("voucher_expiry").toString(),
+                rs.getString("name"), rs.getInt("discount_value"), rs.getString("discount_type"))),
+            campaignId);
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = retryBase.multipliedBy(1L << Math.min(attempts, 16));
+        if (delay.compareTo(MAX_BACKOFF) > 0) {
+            delay = MAX_BACKOFF;
+        }
+        // Jitter so retries of one outage do not come back at the same instant
+        return delay.plusMillis(ThreadLocalRandom.current().nextLong(1000));
+    }
+
+    private void write(BatchResult result) {
+        if (!result.sent.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE marketing_email_queue SET status = 'SENT', sent_at = ?, " +
+                "attempts = attempts + 1, locked_until = NULL, last_error = NULL WHERE id = ?", result.sent);
+            sentCounter.increment(result.sent.size());
+        }
+        if (!result.retry.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE marketing_email_queue SET status = 'PENDING', next_attempt_at = ?, " +
+                "last_error = ?, attempts = attempts + 1, locked_until = NULL WHERE id = ?", result.retry);
+            retryCounter.increment(result.retry.size());
+        }
+        if (!result.failed.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE marketing_email_queue SET status = 'FAILED', last_error = ?, " +
+                "attempts = attempts + 1, locked_until = NULL WHERE id = ?", result.failed);
+            failedCounter.increment(result.failed.size());
+        }
+        if (!result.deferred.isEmpty()) {
+            // Throttled, not attempted: the attempt count is left alone
+            jdbcTemplate.batchUpdate("UPDATE marketing_email_queue SET status = 'PENDING', next_attempt_at = ?, " +
+                "locked_until = NULL WHERE id = ?", result.deferred);
+            deferredCounter.increment(result.deferred.size());
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        result.progress.forEach((campaignId, counts) -> {
+            jdbcTemplate.update("UPDATE marketing_campaigns SET sent_count = sent_count + ?, " +
+                "failed_count = failed_count + ? WHERE id = ?", counts[0], counts[1], campaignId);
+            if (jdbcTemplate.update(COMPLETE_CAMPAIGN_SQL, now, campaignId) > 0) {
+                campaigns.remove(campaignId);
+                log.info("✅ Marketing campaign {} completed", campaignId);
+            }
+        });
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > 500 ? error.substring(0, 500) : error;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        executor.shutdown();
+    }
+
+    private record QueuedEmail(long id, long campaignId, String email, String firstName, String domain, int attempts) {}
+
+    private record Campaign(String subject, EmailTemplate body) {}
+
+    /**
+     * Row updates and per-campaign counts of one batch
+     */
+    private final class BatchResult {
+        private final List<Object[]> sent = new ArrayList<>();
+        private final List<Object[]> retry = new ArrayList<>();
+        private final List<Object[]> failed = new ArrayList<>();
+        private final List<Object[]> deferred = new ArrayList<>();
+        // campaign ID -> {sent, failed}
+        private final Map<Long, int[]> progress = new HashMap<>();
+
+        private void retry(QueuedEmail email, Exception e) {
+            if (email.attempts() + 1 >= maxAttempts) {
+                failed(email, e);
+                return;
+            }
+            retry.add(new Object[] { Timestamp.valueOf(LocalDateTime.now().plus(backoff(email.attempts()))),
+                truncate(e.getMessage()), email.id() });
+        }
+
+        private void failed(QueuedEmail email, Exception e) {
+            log.warn("Marketing email {} to {} failed: {}", email.id(), email.email(), e.getMessage());
+            failed.add(new Object[] { truncate(e.getMessage()), email.id() });
+            count(email.campaignId(), false);
+        }
+
+        private void count(long campaignId, boolean sent) {
+            progress.computeIfAbsent(campaignId, id -> new int[2])[sent ? 0 : 1]++;
+        }
+    }
+
+    /**
+     * Paces one recipient domain: each message takes the next free slot, slots are
+     * domainIntervalNanos apart and shared by all workers
+     */
+    private final class DomainThrottle {
+        private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+        /**
+         * @return nanos to wait for the reserved slot, i.e. the domain's backlog
+         */
+        private long reserve(long now) {
+            while (true) {
+                long next = nextSlot.get();
+                long slot = Math.max(next, now);
+                if (nextSlot.compareAndSet(next, slot + domainIntervalNanos)) {
+                    return slot - now;
+                }
+            }
+        }
+    }
+
+    /**
+     * One SMTP connection of a worker, reused for many messages
+     */
+    private final class SmtpConnection implements AutoCloseable {
+        private Transport transport;
+        private int sentOnConnection;
+        private boolean connectFailed;
+
+        private void send(MimeMessage message) throws MessagingException {
+            if (transport == null || !transport.isConnected() || sentOnConnection >= messagesPerConnection) {
+                close();
+                connectFailed = true;
+                connect();
+                connectFailed = false;
+            }
+            if (message.getSentDate() == null) {
+                message.setSentDate(new Date());
+            }
+            message.saveChanges();
+            sentOnConnection++;
+            transport.sendMessage(message, message.getAllRecipients());
+        }
+
+        private void connect() throws MessagingException {
+            // Same settings as JavaMailSenderImpl, which would otherwise connect once per send
+            String username = mailSender.getUsername();
+            String password = mailSender.getPassword();
+            if ("".equals(username)) {
+                username = null;
+                password = null;
+            }
+            transport = mailSender.getSession().getTransport(mailSender.getProtocol());
+            transport.connect(mailSender.getHost(), mailSender.getPort(), username, password);
+            sentOnConnection = 0;
+        }
+
+        @Override
+        public void close() {
+            if (transport == null) {
+                return;
+            }
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.debug("Error closing SMTP connection: {}", e.getMessage());
+            }
+            transport = null;
+        }
+    }
+}
@@ -9,13 +9,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class MarketingEmailTemplates {
     
-    /**
-     * VIP Campaign - Tri ân khách hàng VIP
-     */
-    public String buildVipTemplate(String customerName, String voucherCode, String expiryDate, int discountValue, String discountType) {
-        String discountDisplay = discountType.equals("PERCENTAGE") ? discountValue + "%" : discountValue + "₫";
-        
-        return String.format("""
+    // Patterns stay visible to the package: EmailTemplateTest checks them against String.format
+    static final String VIP_PATTERN = """
             <!DOCTYPE html>
             <html>
             <head>
@@ -100,16 +95,19 @@ public class MarketingEmailTemplates {
                 </div>
             </body>
             </html>
-            """, customerName, voucherCode, discountDisplay, expiryDate);
-    }
-    
+            """;
+    private static final EmailTemplate VIP_TEMPLATE = EmailTemplate.compile(VIP_PATTERN);
+
     /**
-     * NEW Customer Campaign - Chào mừng khách hàng mới
+     * VIP Campaign - Tri ân khách hàng VIP
      */
-    public String buildNewCustomerTemplate(String customerName, String voucherCode, String expiryDate, int discountValue, String discountType) {
+    public String buildVipTemplate(String customerName, String voucherCode, String expiryDate, int discountValue, String discountType) {
         String discountDisplay = discountType.equals("PERCENTAGE") ? discountValue + "%" : discountValue + "₫";
         
-        return String.format("""
+        return VIP_TEMPLATE.render(customerName, voucherCode, discountDisplay, expiryDate);
+    }
+    
+    static final String NEW_CUSTOMER_PATTERN = """
             <!DOCTYPE html>
             <html>
             <head>
@@ -195,16 +193,19 @@ public class MarketingEmailTemplates {
                 </div>
             </body>
             </html>
-            """, customerName, voucherCode, discountDisplay, expiryDate);
-    }
-    
+            """;
+    private static final EmailTemplate NEW_CUSTOMER_TEMPLATE = EmailTemplate.compile(NEW_CUSTOMER_PATTERN);
+
     /**
-     * Win-back Campaign - Nhớ khách hàng cũ
+     * NEW Customer Campaign - Chào mừng khách hàng mới
      */
-    public String buildWinBackTemplate(String customerName, String voucherCode, String expiryDate, int discountValue, String discountType) {
+    public String buildNewCustomerTemplate(String customerName, String voucherCode, String expiryDate, int discountValue, String discountType) {
         String discountDisplay = discountType.equals("PERCENTAGE") ? discountValue + "%" : discountValue + "₫";
         
-        return String.format("""
+        return NEW_CUSTOMER_TEMPLATE.render(customerName, voucherCode, discountDisplay, expiryDate);
+    }
+    
+    static final String WIN_BACK_PATTERN = """
             <!DOCTYPE html>
             <html>
             <head>
@@ -286,17 +287,19 @@ public class MarketingEmailTemplates {
                 </div>
             </body>
             </html>
-            """, customerName, voucherCode, discountDisplay, expiryDate);
-    }
-    
+            """;
+    private static final EmailTemplate WIN_BACK_TEMPLATE = EmailTemplate.compile(WIN_BACK_PATTERN);
+
     /**
-     * Generic campaign template
+     * Win-back Campaign - Nhớ khách hàng cũ
      */
-    public String buildGenericTemplate(String customerName, String voucherCode, String expiryDate, 
-                                      String campaignName, int discountValue, String discountType) {
+    public String buildWinBackTemplate(String customerName, String voucherCode, String expiryDate, int discountValue, String discountType) {
         String discountDisplay = discountType.equals("PERCENTAGE") ? discountValue + "%" : discountValue + "₫";
         
-        return String.format("""
+        return WIN_BACK_TEMPLATE.render(customerName, voucherCode, discountDisplay, expiryDate);
+    }
+    
+    static final String GENERIC_PATTERN = """
             <!DOCTYPE html>
             <html>
             <head>
@@ -325,6 +328,39 @@ public class MarketingEmailTemplates {
                 </div>
             </body>
             </html>
-            """, campaignName, campaignName, customerName, voucherCode, discountDisplay, expiryDate);
+            """;
+    private static final EmailTemplate GENERIC_TEMPLATE = EmailTemplate.compile(GENERIC_PATTERN);
+
+    /**
+     * Generic campaign template
+     */
+    public String buildGenericTemplate(String customerName, String voucherCode, String expiryDate, 
+                                      String campaignName, int discountValue, String discountType) {
+        String discountDisplay = discountType.equals("PERCENTAGE") ? discountValue + "%" : discountValue + "₫";
+        
+        return GENERIC_TEMPLATE.render(campaignName, campaignName, customerName, voucherCode, discountDisplay, expiryDate);
+    }
+    
+    /**
+     * Template of one campaign with voucher, discount and expiry filled in once
+     * Only the customer name is left: render(customerName) per recipient
+     */
+    public EmailTemplate compileCampaignTemplate(String segment, String voucherCode, String expiryDate,
+                                                 String campaignName, int discountValue, String discountType) {
+        String discountDisplay = discountType.equals("PERCENTAGE") ? discountValue + "%" : discountValue + "₫";
+        
+        return switch (segment) {
+            case "VIP" -> bindOffer(VIP_TEMPLATE, voucherCode, discountDisplay, expiryDate);
+            case "NEW" -> bindOffer(NEW_CUSTOMER_TEMPLATE, voucherCode, discountDisplay, expiryDate);
+            case "AT_RISK" -> bindOffer(WIN_BACK_TEMPLATE, voucherCode, discountDisplay, expiryDate);
+            // Slots: campaignName, campaignName, customerName, voucher, discount, expiry
+            default -> bindOffer(GENERIC_TEMPLATE.bind(0, campaignName).bind(0, campaignName),
+                    voucherCode, discountDisplay, expiryDate);
+        };
+    }
+    
+    // Slots: customerName, voucher, discount, expiry -> customerName
+    private static EmailTemplate bindOffer(EmailTemplate template, String voucherCode, String discountDisplay, String expiryDate) {
+        return template.bind(1, voucherCode).bind(1, discountDisplay).bind(1, expiryDate);
     }
 }
@@ -3,41 +3,105 @@ package com.example.demo.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Order ID allocator (hi-lo)
+ *
+ * Numbers come from the daily_order_counter sequence in blocks: the sequence is created with
+ * INCREMENT BY the block size (docker/init/12_order_id_blocks.sql), so one nextval reserves a
+ * whole block that is then handed out from memory without a database round trip. Every
+ * instance gets its own blocks, and a restart skips at most the rest of one block.
+ * The block size is read from the sequence itself, so an unmigrated sequence simply
+ * yields blocks of one.
+ */
 @Service
 public class OrderIdGeneratorService {
 
+    private static final DateTimeFormatter PREFIX_FORMAT = DateTimeFormatter.ofPattern("ddMMyy");
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private volatile Block block = new Block(0, 0);
+    private volatile DatePrefix datePrefix = new DatePrefix(LocalDate.MIN, "");
+    private volatile long blockSize;
+
     /**
      * Generate Order ID in format DDMMYYXXX
-     * Where XXX is the order number for that day (starting from 1)
-     * Example: 1510251 (first order on 15/10/2025)
+     * Where XXX is the next order number (no padding)
+     * Example: 1510251 (order number 1 on 15/10/2025)
      */
-    @Transactional
     public String generateOrderId() {
-        LocalDate today = LocalDate.now();
-        String dateStr = today.format(DateTimeFormatter.ofPattern("ddMMyy"));
-        
-        // Get next sequence number for today
-        String sql = "SELECT nextval('daily_order_counter')";
-        Long sequenceNumber = jdbcTemplate.queryForObject(sql, Long.class);
-        
-        // Format: DDMMYY + sequence number (no padding)
-        return dateStr + sequenceNumber;
+        return currentPrefix() + nextNumber();
     }
 
     /**
-     * Get the next order number for today (for testing purposes)
+     * Get the next order number (for testing purposes)
      */
-    @Transactional(readOnly = true)
     public Long getNextOrderNumber() {
-        String sql = "SELECT nextval('daily_order_counter')";
-        return jdbcTemplate.queryForObject(sql, Long.class);
+        return nextNumber();
+    }
+
+    private long nextNumber() {
+        while (true) {
+            Block current = block;
+            long number = current.next.getAndIncrement();
+            if (number < current.end) {
+                return number;
+            }
+            refill(current);
+        }
+    }
+
+    /**
+     * Reserve the next block, unless another thread already replaced the exhausted one
+     */
+    private void refill(Block exhausted) {
+        refillLock.lock();
+        try {
+            if (block != exhausted) {
+                return;
+            }
+            if (blockSize == 0) {
+                Long increment = jdbcTemplate.queryForObject(
+                    "SELECT increment_by FROM pg_sequences WHERE sequencename = 'daily_order_counter'", Long.class);
+                blockSize = increment != null && increment > 0 ? increment : 1;
+            }
+            Long start = jdbcTemplate.queryForObject("SELECT nextval('daily_order_counter')", Long.class);
+            block = new Block(start, start + blockSize);
+        } finally {
+            refillLock.unlock();
+        }
     }
+
+    private String currentPrefix() {
+        LocalDate today = LocalDate.now();
+        DatePrefix prefix = datePrefix;
+        if (!prefix.date.equals(today)) {
+            prefix = new DatePrefix(today, today.format(PREFIX_FORMAT));
+            datePrefix = prefix;
+        }
+        return prefix.value;
+    }
+
+    /**
+     * Numbers [next, end) reserved from the sequence
+     */
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    private record DatePrefix(LocalDate date, String value) {}
 }
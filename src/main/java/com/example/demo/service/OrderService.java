@@ -19,10 +19,13 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Service class for managing orders
@@ -71,6 +74,15 @@ public class OrderService {
     @Autowired
     private ReviewService reviewService;
     
+    @Autowired
+    private StockReservationService stockReservationService;
+    
+    @Autowired
+    private CustomerSegmentationService customerSegmentationService;
+    
+    @Autowired
+    private ExportCursor exportCursor;
+    
     /**
      * Create order from user's cart
      */
@@ -86,8 +98,8 @@ public class OrderService {
             
             User user = userOpt.get();
             
-            // Get user's cart
-            Cart cart = cartService.getOrCreateCart(userId);
+            // Get user's cart with items and products (one query, validated in memory below)
+            Cart cart = cartService.getCartForCheckout(userId);
             if (cart.getCartItems().isEmpty()) {
                 return OrderResponse.error("Giỏ hàng trống");
             }
@@ -140,7 +152,7 @@ public class OrderService {
             if (request.getSelectedProductIds() != null && !request.getSelectedProductIds().isEmpty()) {
                 itemsToOrder = cart.getCartItems().stream()
                     .filter(item -> request.getSelectedProductIds().contains(item.getProduct().getId()))
-                    .collect(java.util.stream.Collectors.toList());
+                    .collect(Collectors.toList());
                 logger.info("Processing {} selected items out of {} total cart items", 
                     itemsToOrder.size(), cart.getCartItems().size());
             }
@@ -150,7 +162,7 @@ public class OrderService {
             }
             
             // Track ordered product IDs for cart cleanup
-            List<Long> orderedProductIds = new java.util.ArrayList<>();
+            List<Long> orderedProductIds = new ArrayList<>();
             
             for (CartItem cartItem : itemsToOrder) {
                 Product product = cartItem.getProduct();
@@ -166,14 +178,16 @@ public class OrderService {
                 orderItem.setPrice(product.getPrice());
                 order.addOrderItem(orderItem);
                 
-                // Update product stock
-                product.setStockQuantity(product.getStockQuantity() - cartItem.getQuantity());
-                productRepository.save(product);
-                
                 // Track this product for removal from cart
                 orderedProductIds.add(product.getId());
             }
             
+            // Reserve stock atomically in one batch (the check above may be stale under concurrent checkouts)
+            String outOfStockProduct = reserveStock(order);
+            if (outOfStockProduct != null) {
+                return OrderResponse.error("Sản phẩm '" + outOfStockProduct + "' không đủ hàng trong kho");
+            }
+            
             // Calculate shipping fee if address is GHN-compatible
             BigDecimal shippingFee = BigDecimal.ZERO;
             if (address.isGhnCompatible() && shippingService.isShippingServiceAvailable()) {
@@ -206,6 +220,7 @@ public class OrderService {
             // Save order
             logger.info("Saving order with delivery unit: {}", order.getDeliveryUnit() != null ? order.getDeliveryUnit().getName() + " (ID: " + order.getDeliveryUnit().getId() + ")" : "NULL");
             order = orderRepository.save(order);
+            customerSegmentationService.refreshCustomerAfterCommit(userId);
             orderRepository.flush(); // Force flush to database
             logger.info("Order saved successfully with ID: {}, delivery unit: {}", order.getId(), order.getDeliveryUnit() != null ? order.getDeliveryUnit().getName() : "NULL");
             
@@ -219,7 +234,7 @@ public class OrderService {
             
             // Remove only ordered items from cart (not the entire cart)
             if (!orderedProductIds.isEmpty()) {
-                cartService.removeProductsFromCart(userId, orderedProductIds);
+                cartService.removeOrderedProducts(cart, orderedProductIds);
                 logger.info("Removed {} ordered products from cart", orderedProductIds.size());
             }
             
@@ -317,9 +332,12 @@ public class OrderService {
                 orderItem.setPrice(product.getPrice());
                 order.addOrderItem(orderItem);
                 
-                // Update product stock
-                product.setStockQuantity(product.getStockQuantity() - itemRequest.getQuantity());
-                productRepository.save(product);
+            }
+            
+            // Reserve stock atomically in one batch (the check above may be stale under concurrent checkouts)
+            String outOfStockProduct = reserveStock(order);
+            if (outOfStockProduct != null) {
+                return OrderResponse.error("Sản phẩm '" + outOfStockProduct + "' không đủ hàng trong kho");
             }
             
             // Calculate total amount
@@ -327,6 +345,7 @@ public class OrderService {
             
             // Save order
             order = orderRepository.save(order);
+            customerSegmentationService.refreshCustomerAfterCommit(userId);
             
             // Update voucher usage count if voucher was used
             if (order.getVoucher() != null) {
@@ -451,8 +470,8 @@ public class OrderService {
             
             User user = userOpt.get();
             
-            // Get user's cart
-            Cart cart = cartService.getOrCreateCart(userId);
+            // Get user's cart with items and products (one query, validated in memory below)
+            Cart cart = cartService.getCartForCheckout(userId);
             if (cart.getCartItems().isEmpty()) {
                 throw new RuntimeException("Giỏ hàng trống");
             }
@@ -521,7 +540,7 @@ public class OrderService {
             if (request.getSelectedProductIds() != null && !request.getSelectedProductIds().isEmpty()) {
                 itemsToOrder = cart.getCartItems().stream()
                     .filter(item -> request.getSelectedProductIds().contains(item.getProduct().getId()))
-                    .collect(java.util.stream.Collectors.toList());
+                    .collect(Collectors.toList());
                 logger.info("Processing {} selected items out of {} total cart items", 
                     itemsToOrder.size(), cart.getCartItems().size());
             }
@@ -531,7 +550,7 @@ public class OrderService {
             }
             
             // Track ordered product IDs for cart cleanup
-            List<Long> orderedProductIds = new java.util.ArrayList<>();
+            List<Long> orderedProductIds = new ArrayList<>();
             
             for (CartItem cartItem : itemsToOrder) {
                 Product product = cartItem.getProduct();
@@ -548,14 +567,16 @@ public class OrderService {
                 orderItem.setPrice(product.getPrice());
                 order.addOrderItem(orderItem);
                 
-                // Update product stock
-                product.setStockQuantity(product.getStockQuantity() - cartItem.getQuantity());
-                productRepository.save(product);
-                
                 // Track this product for removal from cart
                 orderedProductIds.add(product.getId());
             }
             
+            // Reserve stock atomically in one batch (the check above may be stale under concurrent checkouts)
+            String outOfStockProduct = reserveStock(order);
+            if (outOfStockProduct != null) {
+                throw new RuntimeException("Sản phẩm '" + outOfStockProduct + "' không đủ hàng trong kho");
+            }
+            
             // Calculate shipping fee if address is GHN-compatible
             BigDecimal shippingFee = BigDecimal.ZERO;
             if (address.isGhnCompatible() && shippingService.isShippingServiceAvailable()) {
@@ -587,6 +608,7 @@ public class OrderService {
             
             // Save order
             Order savedOrder = orderRepository.save(order);
+            customerSegmentationService.refreshCustomerAfterCommit(userId);
             
             // Update voucher usage count if voucher was used
             if (savedOrder.getVoucher() != null) {
@@ -598,7 +620,7 @@ public class OrderService {
             
             // Remove only ordered items from cart (not the entire cart)
             if (!orderedProductIds.isEmpty()) {
-                cartService.removeProductsFromCart(userId, orderedProductIds);
+                cartService.removeOrderedProducts(cart, orderedProductIds);
                 logger.info("Removed {} ordered products from cart", orderedProductIds.size());
             }
             
@@ -666,6 +688,7 @@ public class OrderService {
             order.setReceivedAt(LocalDateTime.now());
             
             orderRepository.save(order);
+            customerSegmentationService.refreshCustomerAfterCommit(userId);
             
             logger.info("User {} confirmed received order {}", userId, orderId);
             return OrderResponse.success("Xác nhận đã nhận hàng thành công. Bạn có thể đánh giá đơn hàng này.", OrderDTO.fromOrder(order));
@@ -702,6 +725,11 @@ public class OrderService {
             boolean needsRefund = order.getStatus() == OrderStatus.PROCESSING && 
                                 order.getPaymentMethod() == PaymentMethod.MOMO;
             
+            // Claim the cancellation first: a concurrent cancel must not refund or release stock twice
+            if (orderRepository.transitionStatus(orderId, order.getStatus(), OrderStatus.CANCELLED) == 0) {
+                return OrderResponse.error("Đơn hàng vừa được cập nhật, vui lòng tải lại trang");
+            }
+            
             String cancelReason = "Khách hàng hủy đơn hàng";
             
             // Process refund if needed
@@ -721,13 +749,10 @@ public class OrderService {
             order.setStatus(OrderStatus.CANCELLED);
             
             // Restore product stock
-            for (OrderItem orderItem : order.getOrderItems()) {
-                Product product = orderItem.getProduct();
-                product.setStockQuantity(product.getStockQuantity() + orderItem.getQuantity());
-                productRepository.save(product);
-            }
+            stockReservationService.releaseOrder(order);
             
             orderRepository.save(order);
+            customerSegmentationService.refreshCustomerAfterCommit(userId);
             
             String successMessage = needsRefund ? 
                 "Hủy đơn hàng thành công. Hoàn tiền đang được xử lý." : 
@@ -757,25 +782,18 @@ public class OrderService {
             
             Order order = orderOpt.get();
             
-            // Only cancel if order is in PENDING status (waiting for payment)
-            if (order.getStatus() != OrderStatus.PENDING) {
+            // Only cancel if order is still PENDING (waiting for payment). The conditional update makes
+            // this safe against the MoMo return URL, the IPN and the expiry job arriving together.
+            if (orderRepository.transitionStatus(orderId, OrderStatus.PENDING, OrderStatus.CANCELLED) == 0) {
                 logger.warn("Order {} is not in PENDING status, current status: {}", orderId, order.getStatus());
                 return;
             }
-            
-            // Update order status to CANCELLED
             order.setStatus(OrderStatus.CANCELLED);
             
-            // Restore product stock
-            for (OrderItem orderItem : order.getOrderItems()) {
-                Product product = orderItem.getProduct();
-                product.setStockQuantity(product.getStockQuantity() + orderItem.getQuantity());
-                productRepository.save(product);
-                logger.info("Restored {} units of product {} (ID: {}) due to payment failure", 
-                    orderItem.getQuantity(), product.getName(), product.getId());
-            }
+            // Release the stock reservation
+            stockReservationService.releaseOrder(order);
+            customerSegmentationService.refreshCustomerAfterCommit(order.getUser().getId());
             
-            orderRepository.save(order);
             logger.info("Successfully cancelled order {} due to payment failure and restored stock", orderId);
             
         } catch (Exception e) {
@@ -783,6 +801,23 @@ public class OrderService {
         }
     }
     
+    /**
+     * Reserve stock for all items of a new order (all or nothing)
+     * @return Name of the first product without enough stock, or null if everything was reserved
+     */
+    private String reserveStock(Order order) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        Map<Long, String> productNames = new HashMap<>();
+        for (OrderItem orderItem : order.getOrderItems()) {
+            Product product = orderItem.getProduct();
+            quantities.merge(product.getId(), orderItem.getQuantity(), Integer::sum);
+            productNames.put(product.getId(), product.getName());
+        }
+        
+        Long outOfStockProductId = stockReservationService.reserveAll(quantities);
+        return outOfStockProductId != null ? productNames.get(outOfStockProductId) : null;
+    }
+    
     /**
      * Generate order number (legacy method - now orderId is already in correct format)
      */
@@ -925,6 +960,18 @@ public class OrderService {
         }
     }
 
+    /**
+     * Feed orders to an export, newest first, through a database cursor (constant memory)
+     * Filters are optional (null = not applied); user, address and voucher are loaded, items are not.
+     * @return Number of exported orders
+     */
+    @Transactional(readOnly = true)
+    public long forEachOrderForExport(OrderStatus status, LocalDateTime start, LocalDateTime end,
+                                      String searchTerm, Consumer<? super Order> action) {
+        logger.debug("Exporting orders: status={}, from={}, to={}, search={}", status, start, end, searchTerm);
+        return exportCursor.forEach(orderRepository.streamForExport(status, start, end, searchTerm), action);
+    }
+
     /**
      * Update order status (Admin function)
      */
@@ -944,6 +991,7 @@ public class OrderService {
             order.setUpdatedAt(LocalDateTime.now());
             
             Order savedOrder = orderRepository.save(order);
+            customerSegmentationService.refreshCustomerAfterCommit(savedOrder.getUser().getId());
             logger.info("Order {} status updated to {}", orderId, newStatus);
             
             return OrderDTO.fromOrder(savedOrder);
@@ -1011,6 +1059,11 @@ public class OrderService {
             boolean needsRefund = (order.getStatus() == OrderStatus.PROCESSING || order.getStatus() == OrderStatus.SHIPPED) && 
                                 order.getPaymentMethod() == PaymentMethod.MOMO;
             
+            // Claim the cancellation first: a concurrent cancel must not refund or release stock twice
+            if (orderRepository.transitionStatus(orderId, order.getStatus(), OrderStatus.CANCELLED) == 0) {
+                throw new RuntimeException("Order " + orderId + " was modified concurrently, please reload");
+            }
+            
             String adminReason = "Admin hủy đơn hàng: " + reason;
             
             // Process refund if needed
@@ -1034,6 +1087,7 @@ public class OrderService {
             restoreProductStock(order);
             
             Order savedOrder = orderRepository.save(order);
+            customerSegmentationService.refreshCustomerAfterCommit(savedOrder.getUser().getId());
             logger.info("Order {} cancelled by admin with reason: {}", orderId, reason);
             
             return OrderDTO.fromOrder(savedOrder);
@@ -1072,13 +1126,7 @@ public class OrderService {
      */
     private void restoreProductStock(Order order) {
         try {
-            for (OrderItem item : order.getOrderItems()) {
-                Product product = item.getProduct();
-                product.setStockQuantity(product.getStockQuantity() + item.getQuantity());
-                productRepository.save(product);
-                logger.debug("Restored {} units of product {} (ID: {})", 
-                           item.getQuantity(), product.getName(), product.getId());
-            }
+            stockReservationService.releaseOrder(order);
         } catch (Exception e) {
             logger.error("Error restoring product stock for order {}: {}", order.getId(), e.getMessage(), e);
             // Don't throw exception here as it's a side effect
@@ -1171,9 +1219,12 @@ public class OrderService {
                 orderItem.setPrice(product.getPrice());
                 order.addOrderItem(orderItem);
                 
-                // Update product stock
-                product.setStockQuantity(product.getStockQuantity() - itemRequest.getQuantity());
-                productRepository.save(product);
+            }
+            
+            // Reserve stock atomically in one batch (the check above may be stale under concurrent checkouts)
+            String outOfStockProduct = reserveStock(order);
+            if (outOfStockProduct != null) {
+                throw new RuntimeException("Sản phẩm '" + outOfStockProduct + "' không đủ hàng trong kho");
             }
             
             // Calculate total amount (no shipping fee calculation for admin direct orders)
@@ -1181,6 +1232,7 @@ public class OrderService {
             
             // Save order
             Order savedOrder = orderRepository.save(order);
+            customerSegmentationService.refreshCustomerAfterCommit(savedOrder.getUser().getId());
             
             // Update voucher usage count if voucher was used
             if (savedOrder.getVoucher() != null) {
@@ -7,10 +7,14 @@ import com.example.demo.dto.ProductDetailDTO;
 import com.example.demo.repository.CatalogRepository;
 import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.ReviewRepository;
+import com.example.demo.service.search.ProductSearchIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -41,6 +45,8 @@ public class ProductService {
     private final ProductRepository productRepository;
     private final ReviewRepository reviewRepository;
     private final CatalogRepository catalogRepository;
+    private final ProductSearchIndex productSearchIndex;
+    private final ExportCursor exportCursor;
     
     @Value("${app.upload.dir:uploads}")
     private String uploadDir;
@@ -94,7 +100,47 @@ public class ProductService {
         log.info("Searching products with keyword: '{}', page: {}, size: {}", 
                 cleanKeyword, pageable.getPageNumber(), pageable.getPageSize());
         
-        return productRepository.searchProducts(cleanKeyword, pageable);
+        if (!productSearchIndex.isReady()) {
+            // Index still building at startup: fall back to SQL LIKE search
+            return productRepository.searchProducts(cleanKeyword, pageable);
+        }
+        return loadSearchPage(productSearchIndex.search(cleanKeyword, null), pageable);
+    }
+
+    /**
+     * Load one page of search results
+     * Unsorted pages keep relevance order; an explicit sort (admin tables) is applied by the database.
+     * @param rankedIds Matching product IDs, best match first
+     * @param pageable Pagination information
+     * @return Page of products
+     */
+    private Page<Product> loadSearchPage(List<Long> rankedIds, Pageable pageable) {
+        if (rankedIds.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        if (pageable.getSort().isSorted()) {
+            return productRepository.findByIdIn(rankedIds, pageable);
+        }
+        
+        List<Long> pageIds = rankedIds;
+        if (pageable.isPaged()) {
+            int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+            int to = (int) Math.min((long) from + pageable.getPageSize(), rankedIds.size());
+            pageIds = rankedIds.subList(from, to);
+        }
+        
+        Map<Long, Product> productsById = new HashMap<>();
+        for (Product product : productRepository.findAllById(pageIds)) {
+            productsById.put(product.getId(), product);
+        }
+        List<Product> content = new ArrayList<>(pageIds.size());
+        for (Long id : pageIds) {
+            Product product = productsById.get(id);
+            if (product != null) {
+                content.add(product);
+            }
+        }
+        return new PageImpl<>(content, pageable, rankedIds.size());
     }
 
     /**
@@ -254,22 +300,46 @@ public class ProductService {
      */
     public Map<Long, ProductWithRating> getProductsWithRatings(String sortBy, String direction, Pageable pageable) {
         Page<Product> productsPage = getProductsSorted(sortBy, direction, pageable);
+        return getRatingsForProducts(productsPage.getContent());
+    }
+
+    /**
+     * Get rating information for already loaded products
+     * Reads the denormalized rating summary on Product, so no extra query is issued
+     * @param products Products on the current page
+     * @return Map of product ID to rating info
+     */
+    public Map<Long, ProductWithRating> getRatingsForProducts(Collection<Product> products) {
         Map<Long, ProductWithRating> productsWithRatings = new HashMap<>();
         
-        for (Product product : productsPage.getContent()) {
-            Double averageRating = reviewRepository.getAverageRatingByProductId(product.getId());
-            Long reviewCount = reviewRepository.countReviewsByProductId(product.getId());
-            
+        for (Product product : products) {
             productsWithRatings.put(product.getId(), new ProductWithRating(
                 product, 
-                averageRating != null ? averageRating : 0.0, 
-                reviewCount != null ? reviewCount : 0L
+                product.getRatingAverage(), 
+                product.getRatingCount() != null ? product.getRatingCount().longValue() : 0L
             ));
         }
         
         return productsWithRatings;
     }
 
+    /**
+     * Repair rating summaries that drifted from Reviews (e.g. rows written before the
+     * summary columns existed, or reviews changed directly in the database)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void reconcileRatingSummaries() {
+        try {
+            int updated = productRepository.reconcileRatingSummaries();
+            if (updated > 0) {
+                log.info("Reconciled rating summary for {} products", updated);
+            }
+        } catch (Exception e) {
+            log.warn("Could not reconcile product rating summaries: {}", e.getMessage());
+        }
+    }
+
     // ==================== ADMIN METHODS ====================
 
     /**
@@ -319,6 +389,35 @@ public class ProductService {
         return productRepository.findByStatus(status, pageable);
     }
 
+    /**
+     * Feed products to an export through a database cursor (constant memory)
+     * A keyword exports the search results in relevance order, otherwise products by ID,
+     * optionally of one status.
+     * @return Number of exported products
+     */
+    public long forEachProductForExport(ProductStatus status, String keyword,
+                                        java.util.function.Consumer<? super Product> action) {
+        if (keyword == null || keyword.trim().isEmpty() || !productSearchIndex.isReady()) {
+            String like = keyword == null || keyword.trim().isEmpty() ? null : keyword.trim();
+            return exportCursor.forEach(productRepository.streamForExport(like == null ? status : null, like), action);
+        }
+        
+        // Ranked IDs are small; load the products one chunk at a time, in rank order
+        List<Long> rankedIds = productSearchIndex.search(keyword.trim(), null);
+        int chunks = (rankedIds.size() + ExportCursor.CHUNK_SIZE - 1) / ExportCursor.CHUNK_SIZE;
+        java.util.stream.Stream<Product> products = java.util.stream.IntStream.range(0, chunks)
+            .mapToObj(chunk -> rankedIds.subList(chunk * ExportCursor.CHUNK_SIZE,
+                Math.min((chunk + 1) * ExportCursor.CHUNK_SIZE, rankedIds.size())))
+            .flatMap(chunkIds -> {
+                Map<Long, Product> productsById = new HashMap<>();
+                for (Product product : productRepository.findWithCatalogByIdIn(chunkIds)) {
+                    productsById.put(product.getId(), product);
+                }
+                return chunkIds.stream().map(productsById::get).filter(Objects::nonNull);
+            });
+        return exportCursor.forEach(products, action);
+    }
+
     /**
      * Get product statistics for admin dashboard
      */
@@ -409,6 +508,7 @@ public class ProductService {
         }
         
         Product savedProduct = productRepository.save(product);
+        productSearchIndex.index(savedProduct);
         log.info("Admin: Successfully created product with ID: {}", savedProduct.getId());
         
         return savedProduct;
@@ -482,6 +582,7 @@ public class ProductService {
         }
         
         Product updatedProduct = productRepository.save(product);
+        productSearchIndex.index(updatedProduct);
         log.info("Admin: Successfully updated product ID: {}", productId);
         
         return updatedProduct;
@@ -545,6 +646,7 @@ public class ProductService {
             .orElseThrow(() -> new RuntimeException("Không tìm thấy sản phẩm với ID: " + productId));
         
         productRepository.delete(product);
+        productSearchIndex.remove(productId);
         log.info("Admin: Successfully deleted product ID: {}", productId);
     }
 
@@ -574,6 +676,9 @@ public class ProductService {
         // Ensure we pass NULL if categoryId is 0 or null
         Long finalCatalogId = (catalogId != null && catalogId > 0) ? catalogId : null;
         
+        if (keyword != null && productSearchIndex.isReady()) {
+            return loadSearchPage(productSearchIndex.search(keyword, finalCatalogId), pageable);
+        }
         return productRepository.findByCatalogIdAndNameContainingIgnoreCase(finalCatalogId, keyword, pageable);
     }
 
@@ -630,8 +735,16 @@ public class ProductService {
                 String normalizedQuery = normalizeSearchQuery(query.trim());
                 log.info("Normalized search query: '{}' -> '{}'", query, normalizedQuery);
                 
-                // Use enhanced search that includes name, description, and catalog
-                products = productRepository.searchProductsForAi(normalizedQuery, pageable);
+                if (normalizedQuery.isEmpty()) {
+                    products = productRepository.findAll(pageable);
+                } else if (productSearchIndex.isReady()) {
+                    // Ranked index search (name, catalog, description), most relevant first
+                    products = loadSearchPage(productSearchIndex.search(normalizedQuery, null),
+                            PageRequest.of(0, pageable.getPageSize()));
+                } else {
+                    // Use enhanced search that includes name, description, and catalog
+                    products = productRepository.searchProductsForAi(normalizedQuery, pageable);
+                }
             }
             
             List<com.example.demo.dto.ProductSuggestionDTO> suggestions = new ArrayList<>();
@@ -0,0 +1,150 @@
+package com.example.demo.service;
+
+import com.example.demo.security.RateLimitRule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process token-bucket rate limiter
+ *
+ * Buckets are keyed by rule + IP/user/conversation and updated lock-free (CAS on an
+ * immutable state). They live in a Caffeine cache: a bucket idle for a full refill period
+ * is equivalent to a fresh one and expires, and the cache never holds more than
+ * app.rate-limit.max-buckets. Caffeine evicts in amortized O(1), so a flood of new keys
+ * never makes a request scan the buckets.
+ *
+ * Metrics: ratelimit.requests{rule,outcome=allowed|rejected} and ratelimit.buckets
+ */
+@Service
+@Slf4j
+public class RateLimiterService {
+
+    private final Cache<String, Bucket> buckets;
+    private final Map<RateLimitRule, Counter> allowedCounters = new EnumMap<>(RateLimitRule.class);
+    private final Map<RateLimitRule, Counter> rejectedCounters = new EnumMap<>(RateLimitRule.class);
+
+    @Value("${app.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    public RateLimiterService(MeterRegistry meterRegistry,
+                              @Value("${app.rate-limit.max-buckets:100000}") int maxBuckets) {
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxBuckets)
+                .expireAfter(new IdleExpiry())
+                .build();
+        for (RateLimitRule rule : RateLimitRule.values()) {
+            allowedCounters.put(rule, Counter.builder("ratelimit.requests")
+                    .description("Requests checked against a rate limit rule")
+                    .tag("rule", rule.name())
+                    .tag("outcome", "allowed")
+                    .register(meterRegistry));
+            rejectedCounters.put(rule, Counter.builder("ratelimit.requests")
+                    .description("Requests checked against a rate limit rule")
+                    .tag("rule", rule.name())
+                    .tag("outcome", "rejected")
+                    .register(meterRegistry));
+        }
+        Gauge.builder("ratelimit.buckets", buckets, Cache::estimatedSize)
+                .description("Active rate limit buckets")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Result of a rate limit check
+     * @param allowed whether the request may proceed
+     * @param retryAfterSeconds when rejected, seconds until a token is available
+     */
+    public record Decision(boolean allowed, long retryAfterSeconds) {
+        private static final Decision ALLOWED = new Decision(true, 0);
+    }
+
+    /**
+     * Take one token from the bucket of (rule, key)
+     * @param rule Rate limit rule
+     * @param key IP address, user ID or conversation ID
+     * @return Decision; always allowed when rate limiting is disabled or key is null
+     */
+    public Decision tryConsume(RateLimitRule rule, String key) {
+        if (!enabled || key == null) {
+            return Decision.ALLOWED;
+        }
+
+        Bucket bucket = buckets.get(rule.name() + ":" + key, k -> new Bucket(rule));
+
+        Decision decision = bucket.tryConsume(System.nanoTime());
+        if (decision.allowed()) {
+            allowedCounters.get(rule).increment();
+        } else {
+            rejectedCounters.get(rule).increment();
+            // Counted above; a warning per rejection would flood the log during the floods this stops
+            log.debug("Rate limit {} exceeded for key {}, retry after {}s", rule, key, decision.retryAfterSeconds());
+        }
+        return decision;
+    }
+
+    /**
+     * Expire a bucket once it has been idle long enough to be full again
+     */
+    private static final class IdleExpiry implements Expiry<String, Bucket> {
+
+        @Override
+        public long expireAfterCreate(String key, Bucket bucket, long currentTime) {
+            return bucket.rule.getPeriod().toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Bucket bucket, long currentTime, long currentDuration) {
+            return bucket.rule.getPeriod().toNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, Bucket bucket, long currentTime, long currentDuration) {
+            return bucket.rule.getPeriod().toNanos();
+        }
+    }
+
+    /**
+     * Lock-free token bucket with continuous refill
+     */
+    private static final class Bucket {
+
+        private record State(double tokens, long updatedAtNanos) {}
+
+        private final RateLimitRule rule;
+        private final double tokensPerNano;
+        private final AtomicReference<State> state;
+
+        private Bucket(RateLimitRule rule) {
+            this.rule = rule;
+            this.tokensPerNano = rule.getCapacity() / (double) rule.getPeriod().toNanos();
+            this.state = new AtomicReference<>(new State(rule.getCapacity(), System.nanoTime()));
+        }
+
+        private Decision tryConsume(long now) {
+            while (true) {
+                State current = state.get();
+                double tokens = Math.min(rule.getCapacity(),
+                        current.tokens() + Math.max(0, now - current.updatedAtNanos()) * tokensPerNano);
+                if (tokens < 1) {
+                    long waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+                    return new Decision(false, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+                }
+                if (state.compareAndSet(current, new State(tokens - 1, now))) {
+                    return Decision.ALLOWED;
+                }
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.example.demo.entity.Review;
 import com.example.demo.entity.User;
 import com.example.demo.entity.enums.OrderStatus;
 import com.example.demo.repository.OrderItemRepository;
+import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.ReviewRepository;
 import com.example.demo.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
@@ -39,6 +40,8 @@ public class ReviewService {
     private final ReviewRepository reviewRepository;
     private final OrderItemRepository orderItemRepository;
     private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+    private final ExportCursor exportCursor;
 
     /**
      * Check if user can review a product (must have completed order with that product)
@@ -152,6 +155,7 @@ public class ReviewService {
         review.setOrderItem(orderItem);
 
         Review savedReview = reviewRepository.save(review);
+        productRepository.adjustRatingSummary(product.getId(), 1, rating);
         
         // Force initialize the saved review's lazy-loaded fields
         savedReview.getProduct().getName();
@@ -206,6 +210,7 @@ public class ReviewService {
         }
 
         Review savedReview = reviewRepository.save(review);
+        productRepository.adjustRatingSummary(product.getId(), 1, rating);
         
         // Force initialize the saved review's lazy-loaded fields
         savedReview.getProduct().getName();
@@ -299,10 +304,14 @@ public class ReviewService {
         }
 
         // Update review
+        int previousRating = review.getRating();
         review.setRating(rating);
         review.setComment(comment != null ? comment.trim() : null);
 
         Review savedReview = reviewRepository.save(review);
+        if (previousRating != rating) {
+            productRepository.adjustRatingSummary(review.getProduct().getId(), 0, rating - previousRating);
+        }
         log.info("Review {} updated successfully", reviewId);
         
         return savedReview;
@@ -329,6 +338,7 @@ public class ReviewService {
         }
 
         reviewRepository.delete(review);
+        productRepository.adjustRatingSummary(review.getProduct().getId(), -1, -review.getRating());
         log.info("Review {} deleted successfully", reviewId);
     }
 
@@ -428,23 +438,7 @@ public class ReviewService {
                   pageable, rating, search, sentiment, status, sort);
         
         // Apply sorting to pageable
-        org.springframework.data.domain.Sort sortObj;
-        switch (sort != null ? sort : "newest") {
-            case "oldest":
-                sortObj = org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.ASC, "createdAt");
-                break;
-            case "rating-high":
-                sortObj = org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.DESC, "rating");
-                break;
-            case "rating-low":
-                sortObj = org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.ASC, "rating");
-                break;
-            case "newest":
-            default:
-                sortObj = org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.DESC, "createdAt");
-                break;
-        }
-        
+        org.springframework.data.domain.Sort sortObj = reviewSort(sort);
         pageable = org.springframework.data.domain.PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sortObj);
         
         // If no filters, use the simple query
@@ -457,6 +451,33 @@ public class ReviewService {
         return reviewRepository.findAllWithFilters(rating, search, sentiment, status, pageable);
     }
     
+    /**
+     * Feed reviews to an export through a database cursor (constant memory), same filters
+     * and sort as getAllReviews; user and product are loaded with each review
+     * @return Number of exported reviews
+     */
+    public long forEachReviewForExport(Integer rating, String search, String sentiment, String status, String sort,
+                                       java.util.function.Consumer<? super Review> action) {
+        log.debug("Exporting reviews: rating: {}, search: {}, sentiment: {}, status: {}, sort: {}",
+                  rating, search, sentiment, status, sort);
+        return exportCursor.forEach(
+            reviewRepository.streamForExport(rating, search, sentiment, status, reviewSort(sort)), action);
+    }
+    
+    private org.springframework.data.domain.Sort reviewSort(String sort) {
+        switch (sort != null ? sort : "newest") {
+            case "oldest":
+                return org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.ASC, "createdAt");
+            case "rating-high":
+                return org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.DESC, "rating");
+            case "rating-low":
+                return org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.ASC, "rating");
+            case "newest":
+            default:
+                return org.springframework.data.domain.Sort.by(org.springframework.data.domain.Sort.Direction.DESC, "createdAt");
+        }
+    }
+    
     /**
      * Get review statistics (Admin)
      */
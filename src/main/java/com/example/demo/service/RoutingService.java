@@ -7,6 +7,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+
 /**
  * Service for routing messages between AI and staff
  * Determines whether AI can handle message or needs staff intervention
@@ -19,6 +21,8 @@ public class RoutingService {
     private final AiChatService aiChatService;
     private final PiiDetectionService piiDetectionService;
     private final StoreConfigService storeConfigService;
+    private final IntentPreClassifier intentPreClassifier;
+    private final AiResponseCache aiResponseCache;
 
     /**
      * Route message - decide if AI handles or handoff to staff
@@ -41,6 +45,34 @@ public class RoutingService {
                 "AI tạm thời không khả dụng");
         }
 
+        // Greetings, store FAQs and explicit requests for staff are decided locally, without Gemini
+        long startTime = System.currentTimeMillis();
+        Optional<AiAnalysisResult> local = intentPreClassifier.classify(messageContent);
+        if (local.isPresent()) {
+            AiAnalysisResult localAnalysis = local.get();
+            aiChatService.recordLocalDecision(conversationId, localAnalysis, System.currentTimeMillis() - startTime);
+            if (localAnalysis.requiresHandoff()) {
+                log.info("Explicit request for staff, routing without AI analysis");
+                return RoutingDecision.handoffToStaff(HandoffReason.EXPLICIT_REQUEST, localAnalysis.getReply());
+            }
+            log.info("Answered locally - Intent: {}", localAnalysis.getIntent());
+            return RoutingDecision.handleByAi(localAnalysis);
+        }
+
+        // Repeated store/shipping/promotion questions reuse an earlier reply. The wording only
+        // identifies the question when no earlier turn can give it another meaning; a greeting or
+        // FAQ answered before does not.
+        String messageKey = aiResponseCache.keyFor(messageContent);
+        boolean contextFree = messageKey != null && !aiChatService.hasContextTurns(conversationId, messageContent);
+        String cacheKey = contextFree ? messageKey : null;
+        Optional<AiAnalysisResult> cached = aiResponseCache.get(cacheKey);
+        if (cached.isPresent()) {
+            AiAnalysisResult cachedAnalysis = cached.get();
+            aiChatService.recordCachedDecision(conversationId, cachedAnalysis, System.currentTimeMillis() - startTime);
+            log.info("Answered from response cache - Intent: {}", cachedAnalysis.getIntent());
+            return RoutingDecision.handleByAi(cachedAnalysis);
+        }
+
         // Analyze with AI
         AiAnalysisResult analysis = aiChatService.analyzeMessage(conversationId, messageContent);
         
@@ -63,6 +95,22 @@ public class RoutingService {
         if (aiChatService.shouldAiHandle(analysis)) {
             log.info("AI will handle - Intent: {}, Confidence: {}", 
                 analysis.getIntent(), analysis.getConfidence());
+            String replyKey = aiResponseCache.replyKeyFor(analysis, cacheKey);
+            if (replyKey != null && !replyKey.equals(cacheKey)) {
+                // Shipping fee to an already answered location: no tool call, no second Gemini call
+                Optional<AiAnalysisResult> cachedReply = aiResponseCache.get(replyKey);
+                if (cachedReply.isPresent()) {
+                    log.info("Answered from response cache after analysis - Intent: {}", analysis.getIntent());
+                    return RoutingDecision.handleByAi(cachedReply.get());
+                }
+            }
+            if (replyKey != null && contextFree) {
+                analysis.setResponseCacheKey(replyKey);
+                // Without tools the analysis reply is final; otherwise generateFinalResponse caches it
+                if (!analysis.hasToolRequests()) {
+                    aiResponseCache.put(analysis, analysis.getReply());
+                }
+            }
             return RoutingDecision.handleByAi(analysis);
         }
 
@@ -0,0 +1,131 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Order;
+import com.example.demo.entity.OrderItem;
+import com.example.demo.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stock reservation for checkout
+ *
+ * - Stock is taken with a conditional UPDATE (stock_quantity >= quantity), so concurrent
+ *   buyers of the same product can never oversell and the row is locked only for that
+ *   single statement instead of a read-check-write round trip.
+ * - Products are always updated in ID order, so two checkouts sharing products cannot deadlock.
+ * - All database-path products of an order go out as one JDBC batch (one round trip per
+ *   checkout instead of one per cart line); each statement still reports its own row count.
+ * - Reservations join the caller's transaction: a rollback returns the stock as well.
+ *
+ * Unpaid MoMo orders hold their reservation until paid, cancelled by the payment callback,
+ * or expired by PendingPaymentExpiryScheduler (app.stock.reservation-ttl-minutes).
+ *
+ * Flash-sale products in hot mode are reserved from in-memory counters instead
+ * (see HotStockService); everything else takes the database path.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class StockReservationService {
+
+    private static final String DECREMENT_SQL =
+        "UPDATE Products SET stock_quantity = stock_quantity - ? WHERE id = ? AND stock_quantity >= ?";
+    private static final String INCREMENT_SQL =
+        "UPDATE Products SET stock_quantity = stock_quantity + ? WHERE id = ?";
+
+    private final ProductRepository productRepository;
+    private final HotStockService hotStockService;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Reserve stock for all products of an order, or for none of them
+     * @param quantities Product ID -> quantity
+     * @return ID of the first product without enough stock, or null when everything was reserved
+     */
+    public Long reserveAll(Map<Long, Integer> quantities) {
+        List<Map.Entry<Long, Integer>> hotReserved = new ArrayList<>();
+        List<Map.Entry<Long, Integer>> dbLines = new ArrayList<>();
+
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(quantities).entrySet()) {
+            HotStockService.Result hot = hotStockService.tryReserve(entry.getKey(), entry.getValue());
+            if (hot == HotStockService.Result.NOT_HOT) {
+                dbLines.add(entry);
+            } else if (hot == HotStockService.Result.RESERVED) {
+                hotReserved.add(entry);
+            } else {
+                return undo(hotReserved, entry);
+            }
+        }
+
+        Map.Entry<Long, Integer> failed = decrementAll(dbLines);
+        return failed != null ? undo(hotReserved, failed) : null;
+    }
+
+    /**
+     * Conditional decrement of every line in one batch, in ID order
+     * A short product does not stop the batch, so the lines that were taken are given back.
+     * @return The first line without enough stock, or null when all were taken
+     */
+    private Map.Entry<Long, Integer> decrementAll(List<Map.Entry<Long, Integer>> lines) {
+        if (lines.isEmpty()) {
+            return null;
+        }
+        if (lines.size() == 1) {
+            Map.Entry<Long, Integer> line = lines.get(0);
+            return productRepository.decrementStock(line.getKey(), line.getValue()) == 1 ? null : line;
+        }
+
+        List<Object[]> args = new ArrayList<>(lines.size());
+        lines.forEach(line -> args.add(new Object[]{line.getValue(), line.getKey(), line.getValue()}));
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_SQL, args);
+
+        Map.Entry<Long, Integer> failed = null;
+        List<Object[]> taken = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (updated[i] == 1) {
+                taken.add(new Object[]{lines.get(i).getValue(), lines.get(i).getKey()});
+            } else if (failed == null) {
+                failed = lines.get(i);
+            }
+        }
+        if (failed != null && !taken.isEmpty()) {
+            jdbcTemplate.batchUpdate(INCREMENT_SQL, taken);
+        }
+        return failed;
+    }
+
+    private Long undo(List<Map.Entry<Long, Integer>> hotReserved, Map.Entry<Long, Integer> failed) {
+        log.info("Not enough stock for product {} (requested {})", failed.getKey(), failed.getValue());
+        // Give back what was taken, callers may still commit (e.g. to return an error)
+        hotReserved.forEach(taken -> release(taken.getKey(), taken.getValue()));
+        return failed.getKey();
+    }
+
+    private void release(Long productId, int quantity) {
+        if (!hotStockService.release(productId, quantity)) {
+            productRepository.incrementStock(productId, quantity);
+        }
+    }
+
+    /**
+     * Give back the stock held by an order's items
+     * Callers must make sure this runs once per order (see OrderRepository.transitionStatus).
+     */
+    public void releaseOrder(Order order) {
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+        quantities.forEach(this::release);
+        log.info("Released stock of order {} ({} products)", order.getId(), quantities.size());
+    }
+}
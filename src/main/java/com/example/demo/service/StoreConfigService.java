@@ -22,6 +22,7 @@ import java.util.Optional;
 public class StoreConfigService {
 
     private final AiChatConfigRepository configRepository;
+    private final AiResponseCache aiResponseCache;
 
     /**
      * Get configuration value by key
@@ -162,6 +163,7 @@ public class StoreConfigService {
             AiChatConfig config = configOpt.get();
             config.setConfigValue(value);
             configRepository.save(config);
+            aiResponseCache.storeConfigChanged();
             log.info("Updated config: {} = {}", key, value);
         } else {
             log.warn("Config key not found: {}", key);
@@ -183,6 +185,7 @@ public class StoreConfigService {
             config.setDescription(description);
             configRepository.save(config);
         }
+        aiResponseCache.storeConfigChanged();
         log.info("Set config: {} = {}", key, value);
     }
 }
@@ -26,6 +26,7 @@ import java.util.stream.Collectors;
 public class VoucherService {
     
     private final VoucherRepository voucherRepository;
+    private final AiResponseCache aiResponseCache;
     
     /**
      * Get all vouchers
@@ -194,6 +195,7 @@ public class VoucherService {
         voucher.setIsActive(request.getIsActive() != null ? request.getIsActive() : true);
         
         Voucher savedVoucher = voucherRepository.save(voucher);
+        aiResponseCache.promotionsChanged();
         log.info("Voucher created successfully with ID: {}", savedVoucher.getId());
         
         return convertToDTO(savedVoucher);
@@ -238,6 +240,7 @@ public class VoucherService {
         }
         
         Voucher updatedVoucher = voucherRepository.save(voucher);
+        aiResponseCache.promotionsChanged();
         log.info("Voucher updated successfully with ID: {}", id);
         
         return convertToDTO(updatedVoucher);
@@ -253,6 +256,7 @@ public class VoucherService {
             .orElseThrow(() -> new EntityNotFoundException("Không tìm thấy voucher với ID: " + id));
         
         voucherRepository.delete(voucher);
+        aiResponseCache.promotionsChanged();
         log.info("Voucher deleted successfully with ID: {}", id);
     }
     
@@ -268,6 +272,7 @@ public class VoucherService {
         voucher.setIsActive(!voucher.getIsActive());
         
         Voucher updatedVoucher = voucherRepository.save(voucher);
+        aiResponseCache.promotionsChanged();
         log.info("Voucher status toggled successfully with ID: {}", id);
         
         return convertToDTO(updatedVoucher);
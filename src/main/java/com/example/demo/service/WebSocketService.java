@@ -2,6 +2,7 @@
 package com.example.demo.service;
 
 import com.example.demo.dto.ChatMessageDTO;
+import com.example.demo.dto.ExportJobDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -426,6 +427,43 @@ public class WebSocketService {
         }
     }
 
+    /**
+     * Send export job progress to staff notifications (see ExportJobService)
+     * @param job Job snapshot
+     */
+    public void sendExportJobUpdate(ExportJobDTO job) {
+        if (job == null) {
+            return;
+        }
+        
+        try {
+            String type;
+            String message;
+            if ("COMPLETED".equals(job.getStatus())) {
+                type = "export_completed";
+                message = String.format("📊 File xuất %s đã sẵn sàng (%d dòng)", job.getFileName(), job.getRowsWritten());
+            } else if ("FAILED".equals(job.getStatus())) {
+                type = "export_failed";
+                message = String.format("❌ Xuất %s thất bại: %s", job.getFileName(), job.getError());
+            } else {
+                type = "export_progress";
+                message = String.format("⏳ Đang xuất %s: %d dòng", job.getFileName(), job.getRowsWritten());
+            }
+            
+            ExportJobPayload payload = new ExportJobPayload(
+                type,
+                message,
+                job,
+                LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+            );
+            
+            messagingTemplate.convertAndSend("/topic/staff/notifications", payload);
+            
+        } catch (Exception e) {
+            log.error("Error sending export job update {}: {}", job.getId(), e.getMessage(), e);
+        }
+    }
+
     /**
      * Send typing indicator
      * @param conversationId Conversation ID
@@ -539,4 +577,18 @@ public class WebSocketService {
             this.timestamp = timestamp;
         }
     }
+    
+    public static class ExportJobPayload {
+        public final String type;
+        public final String message;
+        public final ExportJobDTO data;
+        public final String timestamp;
+        
+        public ExportJobPayload(String type, String message, ExportJobDTO data, String timestamp) {
+            this.type = type;
+            this.message = message;
+            this.data = data;
+            this.timestamp = timestamp;
+        }
+    }
 }
@@ -0,0 +1,335 @@
+package com.example.demo.service.search;
+
+import com.example.demo.entity.Product;
+import com.example.demo.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index for product search
+ *
+ * - Tokens are folded to lowercase ASCII ("Hoa Hồng Đỏ" -> "hoa", "hong", "do"),
+ *   so accented and unaccented Vietnamese queries match the same products.
+ * - Every query token may match a whole term or a term prefix ("hon" -> "hong").
+ * - Ranking: name > catalog > description, exact term > prefix, all tokens matched > some,
+ *   with bonuses for the whole phrase in the name and for matching accents exactly.
+ *
+ * Searches run against an immutable snapshot and never touch the database.
+ * ProductService keeps the index in sync after commit; a periodic rebuild picks up
+ * anything changed outside it (catalog renames, SQL scripts, other instances).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSearchIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private static final double NAME_WEIGHT = 3.0;
+    private static final double CATALOG_WEIGHT = 2.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    private static final double PREFIX_FACTOR = 0.5;
+    private static final double EXACT_ACCENT_BONUS = 0.5;
+    private static final double NAME_PHRASE_BONUS = 4.0;
+    private static final double NAME_STARTS_WITH_BONUS = 2.0;
+    /** Shorter query tokens only match whole terms, otherwise "h" would match half the catalog */
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    private final ProductRepository productRepository;
+
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot;
+    // Serializes writers; a lock rather than synchronized so waiting virtual threads don't pin
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guarded by writeLock: bumped by every index/remove, and the value at each product's last one,
+    // so a rebuild does not overwrite changes applied while it was reading the database
+    private long generation;
+    private final Map<Long, Long> changedAt = new HashMap<>();
+
+    /**
+     * Indexed form of one product
+     */
+    private record Document(Long productId, Long catalogId, String foldedName,
+                            Set<String> nameTerms, Set<String> catalogTerms, Set<String> descriptionTerms,
+                            Set<String> rawNameTerms) {}
+
+    /**
+     * Immutable view used by searches: folded term -> (product ID -> field weight)
+     */
+    private record Snapshot(NavigableMap<String, Map<Long, Double>> postings, Map<Long, Document> documents) {}
+
+    private static final class Hit {
+        private double score;
+        private int matchedTokens;
+    }
+
+    /**
+     * Whether the index has been built and can serve searches
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Search products by free text
+     * @param query Search text, with or without Vietnamese accents
+     * @param catalogId Restrict to this catalog (null for all)
+     * @return Matching product IDs, best match first
+     */
+    public List<Long> search(String query, Long catalogId) {
+        Snapshot current = snapshot;
+        List<String> tokens = tokenize(query);
+        if (current == null || tokens.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> rawTokens = new HashSet<>(rawTokenize(query));
+        Map<Long, Hit> hits = new HashMap<>();
+        for (String token : new LinkedHashSet<>(tokens)) {
+            Map<Long, Double> tokenScores = new HashMap<>();
+            collect(current.postings().get(token), 1.0, tokenScores);
+            if (token.length() >= MIN_PREFIX_LENGTH) {
+                // Terms sharing the prefix; the exact term itself was counted above
+                current.postings().subMap(token, false, token + Character.MAX_VALUE, false)
+                        .values()
+                        .forEach(posting -> collect(posting, PREFIX_FACTOR, tokenScores));
+            }
+            tokenScores.forEach((productId, score) -> {
+                Hit hit = hits.computeIfAbsent(productId, id -> new Hit());
+                hit.score += score;
+                hit.matchedTokens++;
+            });
+        }
+
+        String phrase = String.join(" ", tokens);
+        int tokenCount = new HashSet<>(tokens).size();
+        List<Map.Entry<Long, Hit>> ranked = new ArrayList<>();
+        for (Map.Entry<Long, Hit> entry : hits.entrySet()) {
+            Document doc = current.documents().get(entry.getKey());
+            if (doc == null || (catalogId != null && !catalogId.equals(doc.catalogId()))) {
+                continue;
+            }
+            Hit hit = entry.getValue();
+            if (doc.foldedName().contains(phrase)) {
+                hit.score += doc.foldedName().startsWith(phrase) ? NAME_PHRASE_BONUS + NAME_STARTS_WITH_BONUS : NAME_PHRASE_BONUS;
+            }
+            for (String raw : rawTokens) {
+                if (doc.rawNameTerms().contains(raw)) {
+                    hit.score += EXACT_ACCENT_BONUS;
+                }
+            }
+            ranked.add(entry);
+        }
+
+        // Products matching every token come first; among those, highest score wins
+        boolean anyFullMatch = ranked.stream().anyMatch(e -> e.getValue().matchedTokens == tokenCount);
+        if (anyFullMatch) {
+            ranked.removeIf(e -> e.getValue().matchedTokens < tokenCount);
+        }
+        ranked.sort(Comparator
+                .comparingInt((Map.Entry<Long, Hit> e) -> e.getValue().matchedTokens).reversed()
+                .thenComparing(e -> e.getValue().score, Comparator.reverseOrder())
+                .thenComparing(Map.Entry::getKey, Comparator.reverseOrder()));
+
+        List<Long> result = new ArrayList<>(ranked.size());
+        for (Map.Entry<Long, Hit> entry : ranked) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    private static void collect(Map<Long, Double> posting, double factor, Map<Long, Double> tokenScores) {
+        if (posting == null) {
+            return;
+        }
+        // Keep the best match per product for this token (exact beats prefix)
+        posting.forEach((productId, weight) -> tokenScores.merge(productId, weight * factor, Math::max));
+    }
+
+    /**
+     * (Re)index a product after the current transaction commits
+     * Field values are captured now, while the catalog association is still loadable.
+     */
+    public void index(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        Document doc = toDocument(product.getId(), product.getName(), product.getDescription(),
+                product.getCatalog() != null ? product.getCatalog().getId() : null,
+                product.getCatalog() != null ? product.getCatalog().getValue() : null);
+        afterCommit(() -> {
+            writeLock.lock();
+            try {
+                documents.put(doc.productId(), doc);
+                changedAt.put(doc.productId(), ++generation);
+                publish();
+            } finally {
+                writeLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Remove a product from the index after the current transaction commits
+     */
+    public void remove(Long productId) {
+        if (productId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            writeLock.lock();
+            try {
+                changedAt.put(productId, ++generation);
+                if (documents.remove(productId) != null) {
+                    publish();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Rebuild the whole index from the database
+     * Products indexed or removed while the query runs keep their newer in-memory state.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.search.rebuild-interval-ms:600000}",
+               initialDelayString = "${app.search.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            long startGeneration;
+            writeLock.lock();
+            try {
+                startGeneration = generation;
+            } finally {
+                writeLock.unlock();
+            }
+            Map<Long, Document> fresh = new HashMap<>();
+            for (Object[] row : productRepository.findSearchDocuments()) {
+                Long productId = (Long) row[0];
+                fresh.put(productId, toDocument(productId, (String) row[1], (String) row[2],
+                        (Long) row[3], (String) row[4]));
+            }
+            writeLock.lock();
+            try {
+                Set<Long> changed = new HashSet<>();
+                changedAt.forEach((productId, changeGeneration) -> {
+                    if (changeGeneration > startGeneration) {
+                        changed.add(productId);
+                    }
+                });
+                documents.keySet().removeIf(productId -> !fresh.containsKey(productId) && !changed.contains(productId));
+                fresh.forEach((productId, doc) -> {
+                    if (!changed.contains(productId)) {
+                        documents.put(productId, doc);
+                    }
+                });
+                // Older changes are in the rows just read
+                changedAt.values().removeIf(changeGeneration -> changeGeneration <= startGeneration);
+                publish();
+            } finally {
+                writeLock.unlock();
+            }
+            log.info("Product search index rebuilt: {} products, {} terms in {}ms",
+                    fresh.size(), snapshot.postings().size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // Keep serving the previous snapshot; callers fall back to SQL if there is none
+            log.error("Failed to rebuild product search index: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Build a new snapshot from the current documents and swap it in (caller holds writeLock)
+     */
+    private void publish() {
+        NavigableMap<String, Map<Long, Double>> postings = new TreeMap<>();
+        Map<Long, Document> docs = new HashMap<>(documents);
+        for (Document doc : docs.values()) {
+            addPostings(postings, doc.descriptionTerms(), doc.productId(), DESCRIPTION_WEIGHT);
+            addPostings(postings, doc.catalogTerms(), doc.productId(), CATALOG_WEIGHT);
+            addPostings(postings, doc.nameTerms(), doc.productId(), NAME_WEIGHT);
+        }
+        snapshot = new Snapshot(postings, docs);
+    }
+
+    private static void addPostings(NavigableMap<String, Map<Long, Double>> postings,
+                                    Set<String> terms, Long productId, double weight) {
+        for (String term : terms) {
+            // A term in several fields counts with its strongest field
+            postings.computeIfAbsent(term, t -> new HashMap<>()).merge(productId, weight, Math::max);
+        }
+    }
+
+    private static Document toDocument(Long productId, String name, String description,
+                                       Long catalogId, String catalogValue) {
+        return new Document(productId, catalogId,
+                String.join(" ", tokenize(name)),
+                new HashSet<>(tokenize(name)),
+                new HashSet<>(tokenize(catalogValue)),
+                new HashSet<>(tokenize(description)),
+                new HashSet<>(rawTokenize(name)));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Fold Vietnamese text to lowercase ASCII: strip tone/vowel marks and map đ to d
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").replace('đ', 'd');
+    }
+
+    /**
+     * Split folded text into search terms
+     */
+    public static List<String> tokenize(String text) {
+        return split(fold(text));
+    }
+
+    private static List<String> rawTokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        return split(Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFC));
+    }
+
+    private static List<String> split(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR.split(text)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -61,6 +61,10 @@ function staffNotificationComponent() {
                 // Subscribe to broadcast notifications (like PII alerts)
                 this.stompSubscription = window.stompClient.subscribe('/topic/staff/notifications', function(message) {
                     const notification = JSON.parse(message.body);
+                    // Export progress ticks are for polling UIs; only finished exports are listed
+                    if (notification.type === 'export_progress') {
+                        return;
+                    }
                     // Received staff notification
                     self.addNotification(notification);
                 });
@@ -0,0 +1,97 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * EmailTemplate must render exactly what String.format did with the same pattern and arguments
+ */
+class EmailTemplateTest {
+
+    private static final Map<String, String> EMAIL_PATTERNS = Map.of(
+            "OTP", EmailService.OTP_EMAIL_PATTERN,
+            "WELCOME", EmailService.WELCOME_EMAIL_PATTERN,
+            "WELCOME_OLD", EmailService.WELCOME_EMAIL_OLD_PATTERN,
+            "PASSWORD_RESET_CONFIRMATION", EmailService.PASSWORD_RESET_CONFIRMATION_PATTERN,
+            "VIP", MarketingEmailTemplates.VIP_PATTERN,
+            "NEW", MarketingEmailTemplates.NEW_CUSTOMER_PATTERN,
+            "AT_RISK", MarketingEmailTemplates.WIN_BACK_PATTERN,
+            "GENERIC", MarketingEmailTemplates.GENERIC_PATTERN);
+
+    /** Values that String.format would treat specially if they were part of a pattern */
+    private static final String[] TRICKY_VALUES = {"Nguyễn Văn A", "50%", "%s", "%%", "$1 \\n", ""};
+
+    @Test
+    @DisplayName("every email pattern renders like String.format")
+    void emailPatternsRenderLikeStringFormat() {
+        EMAIL_PATTERNS.forEach((name, pattern) -> {
+            EmailTemplate template = EmailTemplate.compile(pattern);
+            assertThat(template.slots()).as(name).isPositive();
+
+            for (String value : TRICKY_VALUES) {
+                assertSameBytes(name, pattern, template, filled(template.slots(), value));
+            }
+            assertSameBytes(name, pattern, template, filled(template.slots(), null));
+        });
+    }
+
+    @Test
+    @DisplayName("%% becomes a literal % and null renders as \"null\"")
+    void escapedPercentAndNull() {
+        String pattern = "<td style=\"width: 100%%\">Giảm %s%%</td><td>%s</td>%%";
+        EmailTemplate template = EmailTemplate.compile(pattern);
+
+        assertThat(template.slots()).isEqualTo(2);
+        assertSameBytes("inline", pattern, template, "20", null);
+        assertThat(template.render("20", null)).isEqualTo("<td style=\"width: 100%\">Giảm 20%</td><td>null</td>%");
+        assertSameBytes("no slots", "100%%", EmailTemplate.compile("100%%"));
+    }
+
+    @Test
+    @DisplayName("a campaign template with the offer bound renders like String.format with every value")
+    void boundCampaignRendersLikeStringFormat() {
+        MarketingEmailTemplates templates = new MarketingEmailTemplates();
+
+        for (String segment : new String[]{"VIP", "NEW", "AT_RISK", "GENERIC"}) {
+            EmailTemplate campaign = templates.compileCampaignTemplate(segment, "SALE%%50", "31/12/2026",
+                    "Tri ân 100%", 50, "PERCENTAGE");
+            for (String customerName : new String[]{"Lan", null}) {
+                String expected = segment.equals("GENERIC")
+                        ? String.format(MarketingEmailTemplates.GENERIC_PATTERN,
+                                "Tri ân 100%", "Tri ân 100%", customerName, "SALE%%50", "50%", "31/12/2026")
+                        : String.format(EMAIL_PATTERNS.get(segment), customerName, "SALE%%50", "50%", "31/12/2026");
+                assertThat(campaign.render(customerName)).as(segment).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("other format specifiers and a wrong number of values are rejected")
+    void rejectsWhatItCannotRender() {
+        assertThatThrownBy(() -> EmailTemplate.compile("Tổng: %d"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EmailTemplate.compile("50%"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EmailTemplate.compile("%s và %s").render("một"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void assertSameBytes(String name, String pattern, EmailTemplate template, String... values) {
+        byte[] expected = String.format(pattern, (Object[]) values).getBytes(StandardCharsets.UTF_8);
+        byte[] actual = template.render(values).getBytes(StandardCharsets.UTF_8);
+        assertThat(actual).as(name + " with " + Arrays.toString(values)).isEqualTo(expected);
+    }
+
+    private static String[] filled(int slots, String value) {
+        String[] values = new String[slots];
+        Arrays.fill(values, value);
+        return values;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.demo.service;
+
+import com.example.demo.service.HotStockService.Result;
+import com.example.demo.support.PostgresIntegrationTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hot stock mode against PostgreSQL: promotion, write-behind flush, external changes, demotion
+ */
+@ContextConfiguration(classes = PostgresIntegrationTest.JpaConfig.class)
+class HotStockServiceTest extends PostgresIntegrationTest {
+
+    private static final int MIN_PER_MINUTE = 5;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("a listed product is promoted, sells from memory, is flushed to Products and demoted")
+    void promoteFlushDemote() {
+        Long productId = productId(0);
+        setStock(productId, 50);
+        HotStockService hotStock = hotStockService(productId);
+
+        // Not hot yet, but the units count towards promotion
+        assertThat(reserve(hotStock, productId, MIN_PER_MINUTE)).isEqualTo(Result.NOT_HOT);
+        hotStock.adjustHotProducts();
+
+        assertThat(reserve(hotStock, productId, 4)).isEqualTo(Result.RESERVED);
+        assertThat(reserve(hotStock, productId, 4)).isEqualTo(Result.RESERVED);
+        assertThat(reserveAndRollBack(hotStock, productId, 4)).isEqualTo(Result.RESERVED);
+        // Write-behind: only the committed reservations are logged, Products is untouched
+        assertThat(stock(productId)).isEqualTo(50);
+        assertThat(logRows(productId)).isEqualTo(2);
+
+        hotStock.flush();
+        assertThat(stock(productId)).isEqualTo(42);
+        assertThat(logRows(productId)).isZero();
+
+        // Restocked by an admin while hot: the counter picks it up on the next flush
+        setStock(productId, 52);
+        hotStock.flush();
+        assertThat(reserve(hotStock, productId, 53)).isEqualTo(Result.OUT_OF_STOCK);
+        assertThat(reserve(hotStock, productId, 52)).isEqualTo(Result.RESERVED);
+
+        // Still selling fast, then a quiet minute: back to the database, pending reservations flushed
+        hotStock.adjustHotProducts();
+        assertThat(reserve(hotStock, productId, 1)).isEqualTo(Result.OUT_OF_STOCK);
+        hotStock.adjustHotProducts();
+        assertThat(stock(productId)).isZero();
+        assertThat(logRows(productId)).isZero();
+        assertThat(reserve(hotStock, productId, 1)).isEqualTo(Result.NOT_HOT);
+        assertThat(meterRegistry.counter("stock.hot.oversold").count()).isZero();
+    }
+
+    @Test
+    @DisplayName("units sold beyond a lowered stock are reported as oversold")
+    void oversoldUnitsAreReported() {
+        Long productId = productId(1);
+        setStock(productId, 10);
+        HotStockService hotStock = hotStockService(productId);
+        reserve(hotStock, productId, MIN_PER_MINUTE);
+        hotStock.adjustHotProducts();
+
+        assertThat(reserve(hotStock, productId, 8)).isEqualTo(Result.RESERVED);
+        // An admin lowers the stock below what hot mode has already sold
+        setStock(productId, 2);
+        hotStock.flush();
+
+        assertThat(stock(productId)).isZero();
+        assertThat(meterRegistry.counter("stock.hot.oversold").count()).isEqualTo(6.0);
+        assertThat(reserve(hotStock, productId, 1)).isEqualTo(Result.OUT_OF_STOCK);
+    }
+
+    @Test
+    @DisplayName("demotion waits for reservations in flight without blocking checkouts or the scheduler")
+    void demotionWaitsForInFlightReservations() throws Exception {
+        Long productId = productId(2);
+        setStock(productId, 20);
+        HotStockService hotStock = hotStockService(productId);
+        reserve(hotStock, productId, MIN_PER_MINUTE);
+        hotStock.adjustHotProducts();
+
+        CountDownLatch reserved = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService checkout = Executors.newSingleThreadExecutor();
+        try {
+            // An order still in its transaction, e.g. waiting for the shipping fee
+            Future<Result> slowOrder = checkout.submit(() -> transactionTemplate.execute(status -> {
+                Result result = hotStock.tryReserve(productId, 2);
+                reserved.countDown();
+                awaitUninterruptibly(commit);
+                return result;
+            }));
+            assertThat(reserved.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // A quiet minute: the product stays hot while the order is open, and nobody waits
+            hotStock.adjustHotProducts();
+            assertThat(reserve(hotStock, productId, 1)).isEqualTo(Result.RESERVED);
+
+            commit.countDown();
+            assertThat(slowOrder.get(10, TimeUnit.SECONDS)).isEqualTo(Result.RESERVED);
+            hotStock.adjustHotProducts();
+            assertThat(reserve(hotStock, productId, 1)).isEqualTo(Result.NOT_HOT);
+            assertThat(stock(productId)).isEqualTo(17);
+            assertThat(logRows(productId)).isZero();
+        } finally {
+            commit.countDown();
+            checkout.shutdownNow();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HotStockService hotStockService(Long productId) {
+        return new HotStockService(jdbcTemplate, meterRegistry, List.of(productId), 4, MIN_PER_MINUTE);
+    }
+
+    private Result reserve(HotStockService hotStock, Long productId, int quantity) {
+        return transactionTemplate.execute(status -> hotStock.tryReserve(productId, quantity));
+    }
+
+    private Result reserveAndRollBack(HotStockService hotStock, Long productId, int quantity) {
+        return transactionTemplate.execute(status -> {
+            Result result = hotStock.tryReserve(productId, quantity);
+            status.setRollbackOnly();
+            return result;
+        });
+    }
+
+    private Long productId(int index) {
+        return jdbcTemplate.queryForObject("SELECT id FROM Products ORDER BY id OFFSET ? LIMIT 1", Long.class, index);
+    }
+
+    private void setStock(Long productId, int quantity) {
+        jdbcTemplate.update("UPDATE Products SET stock_quantity = ? WHERE id = ?", quantity, productId);
+    }
+
+    private int stock(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT stock_quantity FROM Products WHERE id = ?", Integer.class, productId);
+    }
+
+    private int logRows(Long productId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM stock_reservation_log WHERE product_id = ?", Integer.class, productId);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.OrderRequest;
+import com.example.demo.dto.OrderResponse;
+import com.example.demo.entity.enums.PaymentMethod;
+import com.example.demo.support.PostgresIntegrationTest;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statements sent by a cart checkout, counted with Hibernate statistics against PostgreSQL
+ *
+ * Hibernate only counts what goes through the session. The stock decrements of a multi-line
+ * order go out as one JdbcTemplate batch (StockReservationService) and are not included, while
+ * a single line is decremented by a repository query and is. A batched insert counts one
+ * prepared statement per batch.
+ */
+@ContextConfiguration(classes = {PostgresIntegrationTest.JpaConfig.class, OrderService.class, CartService.class,
+        StockReservationService.class, HotStockService.class, OrderIdGeneratorService.class, ExportCursor.class})
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class OrderServiceCheckoutStatementsTest extends PostgresIntegrationTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderServiceCheckoutStatementsTest.class);
+
+    /** hibernate.jdbc.batch_size in application.yml */
+    private static final int BATCH_SIZE = 20;
+    /** OrderItem ids per nextval (allocationSize) */
+    private static final int ID_BLOCK = 50;
+    private static final int MAX_LINES = 50;
+
+    @MockBean
+    private MoMoRefundService moMoRefundService;
+
+    @MockBean
+    private ShippingService shippingService;
+
+    @MockBean
+    private ReviewService reviewService;
+
+    @MockBean
+    private CustomerSegmentationService customerSegmentationService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long userId;
+    private Long addressId;
+    private Long cartId;
+    private List<Long> productIds;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, Object> address = jdbcTemplate.queryForMap("SELECT id, user_id FROM Addresses ORDER BY id LIMIT 1");
+        addressId = ((Number) address.get("id")).longValue();
+        userId = ((Number) address.get("user_id")).longValue();
+
+        jdbcTemplate.update("INSERT INTO Carts (user_id, total_amount, total_quantity, created_at) "
+                + "VALUES (?, 0, 0, now()) ON CONFLICT (user_id) DO NOTHING", userId);
+        cartId = jdbcTemplate.queryForObject("SELECT id FROM Carts WHERE user_id = ?", Long.class, userId);
+
+        // The seed data has fewer products than the largest cart
+        int missing = MAX_LINES - jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Products", Integer.class);
+        if (missing > 0) {
+            jdbcTemplate.update("INSERT INTO Products (name, price, stock_quantity, status, created_at) "
+                    + "SELECT 'Checkout test ' || n, 100000, 0, 'ACTIVE', now() FROM generate_series(1, ?) n", missing);
+        }
+        productIds = jdbcTemplate.queryForList("SELECT id FROM Products ORDER BY id LIMIT ?", Long.class, MAX_LINES);
+    }
+
+    @Test
+    @DisplayName("checkout statements do not grow with the number of cart lines")
+    void statementsDoNotGrowWithLines() {
+        // Warm-up: the first checkout also fetches the first blocks of order ids and order item ids
+        checkout(1);
+
+        long one = checkout(1);
+        long ten = checkout(10);
+        long fifty = checkout(50);
+        logger.info("Prepared statements per checkout: 1 line {}, 10 lines {}, 50 lines {}", one, ten, fifty);
+
+        assertThat(ten - one).isLessThanOrEqualTo(extraStatements(10));
+        assertThat(fifty - one).isLessThanOrEqualTo(extraStatements(50));
+    }
+
+    /**
+     * What may legitimately grow with the lines: insert batches after the first one, and one
+     * nextval per started block of order item ids
+     */
+    private static long extraStatements(int lines) {
+        return (lines + BATCH_SIZE - 1) / BATCH_SIZE - 1 + (lines + ID_BLOCK - 1) / ID_BLOCK;
+    }
+
+    /**
+     * Fill the cart with one unit of the first products and check it out
+     * @return Prepared statements counted by Hibernate during the checkout
+     */
+    private long checkout(int lines) {
+        List<Long> ids = productIds.subList(0, lines);
+        jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id = ?", cartId);
+        for (Long productId : ids) {
+            jdbcTemplate.update("UPDATE Products SET stock_quantity = 1000 WHERE id = ?", productId);
+            jdbcTemplate.update("INSERT INTO cart_items (cart_id, product_id, quantity, created_at) VALUES (?, ?, 1, now())",
+                    cartId, productId);
+        }
+
+        OrderRequest request = new OrderRequest();
+        request.setAddressId(addressId);
+        request.setPaymentMethod(PaymentMethod.COD);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        OrderResponse response = orderService.createOrderFromCart(userId, request);
+        long prepared = statistics.getPrepareStatementCount();
+
+        assertThat(response.isSuccess()).as(response.getMessage()).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cart_items WHERE cart_id = ?", Integer.class, cartId))
+                .isZero();
+        return prepared;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.demo.service;
+
+import com.example.demo.client.GeminiClient;
+import com.example.demo.dto.AiAnalysisResult;
+import com.example.demo.entity.enums.IntentType;
+import com.example.demo.support.PostgresIntegrationTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.ArrayList;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * AiResponseCache hits and misses over real conversations, with Gemini and the local classifier mocked
+ *
+ * Messages are inserted the way ChatService stores them: the customer message before routing,
+ * the AI reply after it.
+ */
+@ContextConfiguration(classes = {PostgresIntegrationTest.JpaConfig.class, RoutingServiceResponseCacheTest.CacheConfig.class,
+        RoutingService.class, AiChatService.class, ConversationHistoryCache.class, AiResponseCache.class})
+class RoutingServiceResponseCacheTest extends PostgresIntegrationTest {
+
+    private static final String GREETING = "chào shop";
+    private static final String SHIPPING_QUESTION = "Shop có giao hoa trong ngày ở Thủ Đức không ạ?";
+    private static final String PRODUCT_QUESTION = "Hoa hồng đỏ còn hàng không?";
+
+    @MockBean
+    private GeminiClient geminiClient;
+
+    @MockBean
+    private IntentPreClassifier intentPreClassifier;
+
+    @MockBean
+    private StoreConfigService storeConfigService;
+
+    @MockBean
+    private AiMonitoringService monitoringService;
+
+    @MockBean
+    private AiPromptService promptService;
+
+    @MockBean
+    private AiGenerationProfileService profileService;
+
+    @MockBean
+    private PiiDetectionService piiDetectionService;
+
+    @MockBean
+    private ConversationSummaryService conversationSummaryService;
+
+    @MockBean
+    private WebSocketService webSocketService;
+
+    @MockBean
+    private HandoffService handoffService;
+
+    @Autowired
+    private RoutingService routingService;
+
+    @Autowired
+    private ConversationHistoryCache conversationHistoryCache;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long customerId;
+    private Long staffId;
+
+    @BeforeEach
+    void setUp() {
+        customerId = jdbcTemplate.queryForObject("SELECT id FROM Users WHERE role = 'CUSTOMER' ORDER BY id LIMIT 1", Long.class);
+        staffId = jdbcTemplate.queryForObject("SELECT id FROM Users WHERE role <> 'CUSTOMER' ORDER BY id LIMIT 1", Long.class);
+        cacheManager.getCache(AiResponseCache.CACHE_NAME).clear();
+
+        when(storeConfigService.getConfigAsBoolean(eq("ai.enable_auto_handoff"), any())).thenReturn(true);
+        when(storeConfigService.getConfigAsInt(eq("ai.max_conversation_history"), any())).thenReturn(10);
+        when(intentPreClassifier.classify(GREETING)).thenReturn(Optional.of(
+                analysis(IntentType.CHITCHAT, "Chào bạn! Mình có thể giúp gì cho bạn?")));
+        when(geminiClient.analyzeMessageWithProfile(any(), any(), any())).thenAnswer(invocation ->
+                analysis(IntentType.SHIPPING, "Có bạn nhé, shop giao trong ngày ở Thủ Đức."));
+    }
+
+    @Test
+    @DisplayName("a question after a greeting is answered from the cache")
+    void greetingThenQuestionHitsCache() {
+        Long first = newConversation();
+        AiAnalysisResult answered = customerSays(first, SHIPPING_QUESTION);
+        verify(geminiClient, times(1)).analyzeMessageWithProfile(any(), any(), any());
+
+        Long greeted = newConversation();
+        customerSays(greeted, GREETING);
+        AiAnalysisResult cached = customerSays(greeted, SHIPPING_QUESTION);
+
+        verify(geminiClient, times(1)).analyzeMessageWithProfile(any(), any(), any());
+        verify(monitoringService, times(1)).recordCacheEvent(AiResponseCache.CACHE_NAME, true);
+        assertThat(cached.getReply()).isEqualTo(answered.getReply());
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM routing_decisions WHERE conversation_id = ? AND decided_by = 'CACHE'",
+                Integer.class, greeted)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("a question after a turn Gemini answered is analyzed again")
+    void questionAfterAnalyzedTurnMissesCache() {
+        customerSays(newConversation(), SHIPPING_QUESTION);
+
+        Long conversation = newConversation();
+        customerSays(conversation, GREETING);
+        customerSays(conversation, PRODUCT_QUESTION);
+        customerSays(conversation, SHIPPING_QUESTION);
+
+        verify(geminiClient, times(3)).analyzeMessageWithProfile(any(), any(), any());
+        verify(monitoringService, times(0)).recordCacheEvent(AiResponseCache.CACHE_NAME, true);
+    }
+
+    private Long newConversation() {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO Conversations (customer_id, status, last_message_at) VALUES (?, 'OPEN', now()) RETURNING id",
+                Long.class, customerId);
+    }
+
+    /**
+     * Store the customer message, route it and store the AI reply
+     */
+    private AiAnalysisResult customerSays(Long conversationId, String content) {
+        insertMessage(conversationId, customerId, content, false);
+        RoutingService.RoutingDecision decision = routingService.routeMessage(conversationId, content);
+        assertThat(decision.isHandleByAi()).as(content).isTrue();
+        insertMessage(conversationId, staffId, decision.getAiAnalysis().getReply(), true);
+        return decision.getAiAnalysis();
+    }
+
+    private void insertMessage(Long conversationId, Long senderId, String content, boolean aiGenerated) {
+        jdbcTemplate.update("INSERT INTO Messages (sender_id, content, conversation_id, is_ai_generated) VALUES (?, ?, ?, ?)",
+                senderId, content, conversationId, aiGenerated);
+        // Inserted without JPA, so MessageListener does not update the ring
+        conversationHistoryCache.evict(conversationId);
+    }
+
+    private static AiAnalysisResult analysis(IntentType intent, String reply) {
+        AiAnalysisResult result = new AiAnalysisResult();
+        result.setIntent(intent.name());
+        result.setConfidence(0.95);
+        result.setReply(reply);
+        result.setToolRequests(new ArrayList<>());
+        result.setProductSuggestions(new ArrayList<>());
+        return result;
+    }
+
+    /**
+     * The two caches under test, unbounded
+     */
+    @Configuration
+    static class CacheConfig {
+
+        @Bean
+        public CacheManager cacheManager() {
+            return new CaffeineCacheManager(AiResponseCache.CACHE_NAME, ConversationHistoryCache.CACHE_NAME);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.demo.service;
+
+import com.example.demo.support.PostgresIntegrationTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hundreds of buyers reserving the same products at once, against PostgreSQL
+ */
+@ContextConfiguration(classes = {PostgresIntegrationTest.JpaConfig.class,
+        StockReservationService.class, HotStockService.class})
+@TestPropertySource(properties = "spring.datasource.hikari.maximum-pool-size=50")
+class StockReservationServiceConcurrencyTest extends PostgresIntegrationTest {
+
+    private static final int BUYERS = 300;
+    private static final int STOCK = 100;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    @DisplayName("concurrent single-line orders sell exactly the stock, never more")
+    void singleProductNeverOversells() throws Exception {
+        Long productId = productIds(1).get(0);
+        setStock(productId, STOCK);
+
+        List<Map<Long, Integer>> reserved = runBuyers(buyer -> Map.of(productId, 1));
+
+        assertThat(reserved).hasSize(STOCK);
+        assertThat(stock(productId)).isZero();
+    }
+
+    @Test
+    @DisplayName("concurrent batched orders on a scarce product are all-or-nothing")
+    void batchedOrdersNeverOversell() throws Exception {
+        List<Long> ids = productIds(2);
+        Long scarce = ids.get(0);
+        Long plenty = ids.get(1);
+        setStock(scarce, STOCK);
+        setStock(plenty, 10_000);
+
+        // Half the buyers want one of the scarce product, half want two; all want three of the other
+        List<Map<Long, Integer>> reserved = runBuyers(buyer -> Map.of(scarce, buyer % 2 + 1, plenty, 3));
+
+        int scarceSold = reserved.stream().mapToInt(order -> order.get(scarce)).sum();
+        assertThat(scarceSold).isLessThanOrEqualTo(STOCK);
+        assertThat(stock(scarce)).isEqualTo(STOCK - scarceSold);
+        // Lines taken before a short line was found were given back
+        assertThat(stock(plenty)).isEqualTo(10_000 - 3 * reserved.size());
+    }
+
+    /**
+     * Start every buyer at once, each reserving in its own transaction
+     * @return The orders that got their stock
+     */
+    private List<Map<Long, Integer>> runBuyers(IntFunction<Map<Long, Integer>> orderOfBuyer) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(BUYERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Map<Long, Integer>>> results = new ArrayList<>();
+            for (int buyer = 0; buyer < BUYERS; buyer++) {
+                Map<Long, Integer> quantities = orderOfBuyer.apply(buyer);
+                results.add(pool.submit(() -> {
+                    start.await();
+                    Long outOfStock = transactionTemplate.execute(status -> stockReservationService.reserveAll(quantities));
+                    return outOfStock == null ? quantities : null;
+                }));
+            }
+            start.countDown();
+
+            List<Map<Long, Integer>> reserved = new ArrayList<>();
+            for (Future<Map<Long, Integer>> result : results) {
+                Map<Long, Integer> quantities = result.get(60, TimeUnit.SECONDS);
+                if (quantities != null) {
+                    reserved.add(quantities);
+                }
+            }
+            return reserved;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<Long> productIds(int count) {
+        return jdbcTemplate.queryForList("SELECT id FROM Products ORDER BY id LIMIT ?", Long.class, count);
+    }
+
+    private void setStock(Long productId, int quantity) {
+        jdbcTemplate.update("UPDATE Products SET stock_quantity = ? WHERE id = ?", quantity, productId);
+    }
+
+    private int stock(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT stock_quantity FROM Products WHERE id = ?", Integer.class, productId);
+    }
+}
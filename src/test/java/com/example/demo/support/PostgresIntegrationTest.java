@@ -0,0 +1,51 @@
+package com.example.demo.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.MountableFile;
+
+/**
+ * Base for tests against a real PostgreSQL with the schema and seed data of docker/init
+ *
+ * Each test class gets a fresh container; tests are skipped when Docker is not available.
+ * Tests are not wrapped in a rolled-back transaction: they commit like the application does,
+ * so concurrency and after-commit behaviour are real. Subclasses list the beans under test
+ * next to {@link JpaConfig} in @ContextConfiguration (DemoApplication scans every bean).
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class PostgresIntegrationTest {
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withCopyFileToContainer(MountableFile.forHostPath("docker/init"), "/docker-entrypoint-initdb.d/");
+
+    /**
+     * Entities, repositories and a meter registry
+     */
+    @Configuration
+    @EntityScan("com.example.demo.entity")
+    @EnableJpaRepositories("com.example.demo.repository")
+    public static class JpaConfig {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}